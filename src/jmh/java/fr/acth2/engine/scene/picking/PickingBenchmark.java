@@ -0,0 +1,176 @@
+package fr.acth2.engine.scene.picking;
+
+import fr.acth2.engine.engine.models.CollisionMesh;
+import fr.acth2.engine.engine.models.heightmap.HeightField;
+import fr.acth2.engine.scene.spatial.DynamicBvh;
+import fr.acth2.engine.scene.spatial.RayCallback;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures ray picking over a 1km wide world: a heightfield terrain of 2049x2049 heights (8M
+ * triangles) and 256 instances of a bumpy sphere of about 2M triangles each, scattered over it
+ * behind the same bounding volume hierarchy the scene uses. Rays are cast from above the terrain
+ * towards random points on it, the way a cursor pick would.
+ * <p>
+ * Usage: {@code gradle benchmark -PbenchmarkClass=fr.acth2.engine.scene.picking.PickingBenchmark
+ * [-PbenchmarkArgs=sphereSegments]}. Needs no window or GL context.
+ */
+public final class PickingBenchmark {
+
+    private static final float WORLD_SIZE = 1000f;
+    private static final int TERRAIN_SIZE = 2049;
+    private static final int INSTANCES = 256;
+    private static final int RAYS = 2000;
+
+    private final Random random = new Random(42);
+    private final CollisionMesh mesh;
+    private final float[] heights;
+    private final HeightField terrain;
+    /** Position and uniform scale of each sphere instance, 4 floats each. */
+    private final float[] instances = new float[INSTANCES * 4];
+    private final DynamicBvh<Integer> bvh = new DynamicBvh<>(1f);
+    private final Vector3f normal = new Vector3f();
+    private final RayCallback<Integer> narrowPhase;
+    private float originX, originY, originZ, dirX, dirY, dirZ;
+
+    private PickingBenchmark(int segments) {
+        int rings = segments / 2;
+        float[] meshPositions = new float[(rings + 1) * (segments + 1) * 3];
+        int[] meshIndices = new int[rings * segments * 6];
+        for (int ring = 0; ring <= rings; ring++) {
+            double polar = Math.PI * ring / rings;
+            for (int segment = 0; segment <= segments; segment++) {
+                double azimuth = 2 * Math.PI * segment / segments;
+                float radius = 1f + 0.05f * (float) (Math.sin(polar * 37) * Math.sin(azimuth * 41));
+                int v = (ring * (segments + 1) + segment) * 3;
+                meshPositions[v] = radius * (float) (Math.sin(polar) * Math.cos(azimuth));
+                meshPositions[v + 1] = radius * (float) Math.cos(polar);
+                meshPositions[v + 2] = radius * (float) (Math.sin(polar) * Math.sin(azimuth));
+            }
+        }
+        int i = 0;
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                int a = ring * (segments + 1) + segment;
+                int b = a + segments + 1;
+                meshIndices[i++] = a;
+                meshIndices[i++] = b;
+                meshIndices[i++] = a + 1;
+                meshIndices[i++] = a + 1;
+                meshIndices[i++] = b;
+                meshIndices[i++] = b + 1;
+            }
+        }
+        mesh = new CollisionMesh(meshPositions, meshIndices);
+
+        heights = new float[TERRAIN_SIZE * TERRAIN_SIZE];
+        for (int row = 0; row < TERRAIN_SIZE; row++) {
+            for (int col = 0; col < TERRAIN_SIZE; col++) {
+                heights[row * TERRAIN_SIZE + col] = 20f * (float) (Math.sin(col * 0.01) * Math.cos(row * 0.013))
+                        + 2f * (float) Math.sin(col * 0.31 + row * 0.17) + random.nextFloat() * 0.2f;
+            }
+        }
+        float cellSize = WORLD_SIZE / (TERRAIN_SIZE - 1);
+        terrain = new HeightField(TERRAIN_SIZE, TERRAIN_SIZE, -WORLD_SIZE / 2, -WORLD_SIZE / 2, cellSize, cellSize, heights);
+
+        narrowPhase = (id, boxDistance, maxDistance) -> {
+            if (id < 0) {
+                return terrain.raycast(originX, originY, originZ, dirX, dirY, dirZ, maxDistance, normal);
+            }
+            // Scaling the direction with the instance keeps distances along it in world units.
+            int b = id * 4;
+            float inverseScale = 1f / instances[b + 3];
+            return mesh.raycast((originX - instances[b]) * inverseScale, (originY - instances[b + 1]) * inverseScale,
+                    (originZ - instances[b + 2]) * inverseScale, dirX * inverseScale, dirY * inverseScale,
+                    dirZ * inverseScale, maxDistance, normal);
+        };
+    }
+
+    private void populate() {
+        float half = WORLD_SIZE / 2;
+        bvh.insert(-1, -half, min(heights), -half, half, max(heights), half);
+        for (int id = 0; id < INSTANCES; id++) {
+            int b = id * 4;
+            float scale = 2f + random.nextFloat() * 8f;
+            instances[b] = (random.nextFloat() - 0.5f) * WORLD_SIZE * 0.9f;
+            instances[b + 2] = (random.nextFloat() - 0.5f) * WORLD_SIZE * 0.9f;
+            instances[b + 1] = terrain.getHeight(instances[b], instances[b + 2]) + scale * 0.5f;
+            instances[b + 3] = scale;
+            // The bumps reach 5% past the unit sphere.
+            float extent = scale * 1.05f;
+            bvh.insert(id, instances[b] - extent, instances[b + 1] - extent, instances[b + 2] - extent,
+                    instances[b] + extent, instances[b + 1] + extent, instances[b + 2] + extent);
+        }
+    }
+
+    /**
+     * A ray from a random point above the terrain towards a random point on it.
+     */
+    private void randomRay() {
+        float targetX = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+        float targetZ = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+        originX = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+        originY = 60f + random.nextFloat() * 40f;
+        originZ = (random.nextFloat() - 0.5f) * WORLD_SIZE;
+        dirX = targetX - originX;
+        dirY = terrain.getHeight(targetX, targetZ) - originY;
+        dirZ = targetZ - originZ;
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        dirX /= length;
+        dirY /= length;
+        dirZ /= length;
+    }
+
+    private long[] castRays() {
+        long[] samples = new long[RAYS];
+        for (int r = 0; r < RAYS; r++) {
+            randomRay();
+            long start = System.nanoTime();
+            bvh.raycast(originX, originY, originZ, dirX, dirY, dirZ, Float.POSITIVE_INFINITY, narrowPhase);
+            samples[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static float min(float[] values) {
+        float min = Float.POSITIVE_INFINITY;
+        for (float value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static float max(float[] values) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (float value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    public static void main(String[] args) {
+        int segments = args.length > 0 ? Integer.parseInt(args[0]) : 1448;
+        PickingBenchmark benchmark = new PickingBenchmark(segments);
+        long start = System.nanoTime();
+        benchmark.mesh.buildBvh();
+        long build = System.nanoTime() - start;
+        benchmark.populate();
+
+        benchmark.castRays();
+        long[] samples = benchmark.castRays();
+        long total = 0;
+        for (long sample : samples) {
+            total += sample;
+        }
+        long triangles = (long) benchmark.mesh.getTriangleCount() * INSTANCES + 2L * (TERRAIN_SIZE - 1) * (TERRAIN_SIZE - 1);
+        System.out.println(String.format("%d triangles (%d per sphere), sphere BVH built in %.1fms",
+                triangles, benchmark.mesh.getTriangleCount(), build / 1e6));
+        System.out.println(String.format("%d rays: mean %.1fus, median %.1fus, 99th %.1fus, max %.1fus",
+                RAYS, total / 1e3 / RAYS, samples[RAYS / 2] / 1e3, samples[RAYS * 99 / 100] / 1e3,
+                samples[RAYS - 1] / 1e3));
+    }
+}
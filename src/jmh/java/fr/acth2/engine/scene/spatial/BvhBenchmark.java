@@ -0,0 +1,278 @@
+package fr.acth2.engine.scene.spatial;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the {@link DynamicBvh} at 10k, 100k and 1M items spread over a 2km wide world:
+ * insertion one by one and in a batch, SAH rebuild, a tick in which 10% of the items move a little and 0.1% teleport,
+ * and sphere, box, ray and frustum queries. Sphere queries are compared with a linear scan of the
+ * same bounds, and every query's results are checked against that scan.
+ * <p>
+ * Usage: {@code gradle benchmark -PbenchmarkClass=fr.acth2.engine.scene.spatial.BvhBenchmark
+ * [-PbenchmarkArgs=maxItems]}. Needs no window or GL context.
+ */
+public final class BvhBenchmark {
+
+    private static final float WORLD_SIZE = 2000f;
+    private static final float MARGIN = 1f;
+    private static final int QUERIES = 1000;
+    private static final int MOVE_TICKS = 20;
+
+    private final int count;
+    private final float[] boxes;
+    private final Integer[] ids;
+    private final int[] proxies;
+    private final Random random;
+    private DynamicBvh<Integer> bvh;
+    private int found;
+
+    private BvhBenchmark(int count) {
+        this.count = count;
+        random = new Random(42);
+        boxes = new float[count * 6];
+        ids = new Integer[count];
+        proxies = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+            float size = 0.5f + random.nextFloat() * 4f;
+            place(i, random.nextFloat() * WORLD_SIZE, random.nextFloat() * 100f, random.nextFloat() * WORLD_SIZE, size);
+        }
+    }
+
+    private void place(int i, float x, float y, float z, float size) {
+        int b = i * 6;
+        boxes[b] = x;
+        boxes[b + 1] = y;
+        boxes[b + 2] = z;
+        boxes[b + 3] = x + size;
+        boxes[b + 4] = y + size;
+        boxes[b + 5] = z + size;
+    }
+
+    private long insertAll() {
+        bvh = new DynamicBvh<>(MARGIN);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int b = i * 6;
+            proxies[i] = bvh.insert(ids[i], boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long insertBatch() {
+        bvh = new DynamicBvh<>(MARGIN);
+        long start = System.nanoTime();
+        bvh.beginBatch();
+        for (int i = 0; i < count; i++) {
+            int b = i * 6;
+            proxies[i] = bvh.insert(ids[i], boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+        bvh.endBatch();
+        return System.nanoTime() - start;
+    }
+
+    private long rebuild() {
+        long start = System.nanoTime();
+        bvh.rebuild();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Median duration of a tick moving 10% of the items slightly and teleporting 0.1%.
+     */
+    private long moveTicks() {
+        long[] samples = new long[MOVE_TICKS];
+        int moved = count / 10;
+        int teleported = Math.max(1, count / 1000);
+        for (int tick = 0; tick < MOVE_TICKS; tick++) {
+            for (int k = 0; k < moved; k++) {
+                int i = random.nextInt(count);
+                int b = i * 6;
+                float dx = random.nextFloat() - 0.5f, dz = random.nextFloat() - 0.5f;
+                place(i, boxes[b] + dx, boxes[b + 1], boxes[b + 2] + dz, boxes[b + 3] - boxes[b]);
+            }
+            for (int k = 0; k < teleported; k++) {
+                int i = random.nextInt(count);
+                place(i, random.nextFloat() * WORLD_SIZE, random.nextFloat() * 100f, random.nextFloat() * WORLD_SIZE,
+                        boxes[i * 6 + 3] - boxes[i * 6]);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                int b = i * 6;
+                bvh.update(proxies[i], boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            }
+            bvh.optimize();
+            samples[tick] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[MOVE_TICKS / 2];
+    }
+
+    private int scan(BoundsTest test) {
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            int b = i * 6;
+            if (test.test(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]) != BoundsTest.OUTSIDE) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private int tree(BoundsTest test) {
+        found = 0;
+        bvh.query(test, id -> found++);
+        return found;
+    }
+
+    private void check(int expected, int actual, String query) {
+        if (expected != actual) {
+            throw new IllegalStateException(query + " query found " + actual + " items instead of " + expected);
+        }
+    }
+
+    private BoundsTest[] spheres() {
+        BoundsTest[] tests = new BoundsTest[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            tests[i] = BoundsTest.sphere(random.nextFloat() * WORLD_SIZE, 50f, random.nextFloat() * WORLD_SIZE, 20f);
+        }
+        return tests;
+    }
+
+    private BoundsTest[] boxes() {
+        BoundsTest[] tests = new BoundsTest[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            float x = random.nextFloat() * WORLD_SIZE, z = random.nextFloat() * WORLD_SIZE;
+            tests[i] = BoundsTest.aabb(x, 0f, z, x + 30f, 100f, z + 30f);
+        }
+        return tests;
+    }
+
+    private static double microsPerQuery(long nanos) {
+        return nanos / 1e3 / QUERIES;
+    }
+
+    private long runQueries(BoundsTest[] tests, boolean useTree) {
+        long start = System.nanoTime();
+        for (BoundsTest test : tests) {
+            if (useTree) {
+                tree(test);
+            } else {
+                scan(test);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runRays() {
+        float[] rays = new float[QUERIES * 6];
+        for (int i = 0; i < QUERIES; i++) {
+            float angle = random.nextFloat() * (float) Math.PI * 2f;
+            rays[i * 6] = random.nextFloat() * WORLD_SIZE;
+            rays[i * 6 + 1] = 50f;
+            rays[i * 6 + 2] = random.nextFloat() * WORLD_SIZE;
+            rays[i * 6 + 3] = (float) Math.cos(angle);
+            rays[i * 6 + 4] = -0.05f;
+            rays[i * 6 + 5] = (float) Math.sin(angle);
+        }
+        // Item bounds are the hit shapes, so the first box entered is the closest hit.
+        RayCallback<Integer> boxHit = (id, boxDistance, maxDistance) -> boxDistance;
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            int r = i * 6;
+            bvh.raycast(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], WORLD_SIZE, boxHit);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runFrustum(FrustumIntersection frustum) {
+        long start = System.nanoTime();
+        tree(BoundsTest.frustum(frustum));
+        return System.nanoTime() - start;
+    }
+
+    private void verify(BoundsTest[] spheres, BoundsTest[] boxes, FrustumIntersection frustum) {
+        for (int i = 0; i < 50; i++) {
+            check(scan(spheres[i]), tree(spheres[i]), "sphere");
+            check(scan(boxes[i]), tree(boxes[i]), "box");
+        }
+        BoundsTest frustumTest = BoundsTest.frustum(frustum);
+        check(scan(frustumTest), tree(frustumTest), "frustum");
+
+        for (int i = 0; i < 50; i++) {
+            float ox = random.nextFloat() * WORLD_SIZE, oz = random.nextFloat() * WORLD_SIZE;
+            float dx = random.nextFloat() - 0.5f, dy = -0.05f, dz = random.nextFloat() - 0.5f;
+            float expected = Float.POSITIVE_INFINITY;
+            for (int k = 0; k < count; k++) {
+                expected = Math.min(expected, slab(k, ox, 50f, oz, dx, dy, dz));
+            }
+            float actual = bvh.raycast(ox, 50f, oz, dx, dy, dz, Float.POSITIVE_INFINITY, (id, boxDistance, maxDistance) -> boxDistance);
+            // The tree multiplies by the inverse direction, the scan divides.
+            if (Math.abs(expected - actual) > 1e-4f * Math.max(1f, expected)) {
+                throw new IllegalStateException("ray query hit at " + actual + " instead of " + expected);
+            }
+        }
+    }
+
+    private float slab(int i, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int b = i * 6;
+        float near = 0f, far = Float.POSITIVE_INFINITY;
+        float[] origin = {ox, oy, oz};
+        float[] direction = {dx, dy, dz};
+        for (int axis = 0; axis < 3; axis++) {
+            float t1 = (boxes[b + axis] - origin[axis]) / direction[axis];
+            float t2 = (boxes[b + 3 + axis] - origin[axis]) / direction[axis];
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+
+    public static void main(String[] args) {
+        int maxItems = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println(String.format("%9s %10s %10s %10s %10s %7s %12s %12s %10s %10s %10s",
+                "items", "insert", "batch", "rebuild", "move tick", "cost", "sphere", "sphere scan", "box", "ray", "frustum"));
+
+        Matrix4f projView = new Matrix4f()
+                .perspective((float) Math.toRadians(90), 16f / 9f, 0.01f, 500f)
+                .lookAt(WORLD_SIZE / 2, 50, WORLD_SIZE / 2, WORLD_SIZE / 2, 50, 0, 0, 1, 0);
+        FrustumIntersection frustum = new FrustumIntersection(projView);
+
+        for (int count = 10_000; count <= maxItems; count *= 10) {
+            BvhBenchmark benchmark = new BvhBenchmark(count);
+            // Warm up the JIT on a throwaway tree.
+            benchmark.insertAll();
+            benchmark.insertBatch();
+            benchmark.rebuild();
+            benchmark.moveTicks();
+
+            long insert = benchmark.insertAll();
+            long batch = benchmark.insertBatch();
+            long rebuild = benchmark.rebuild();
+            long move = benchmark.moveTicks();
+            float cost = benchmark.bvh.getCost();
+
+            BoundsTest[] spheres = benchmark.spheres();
+            BoundsTest[] boxes = benchmark.boxes();
+            benchmark.verify(spheres, boxes, frustum);
+            benchmark.runQueries(spheres, true);
+            long sphere = benchmark.runQueries(spheres, true);
+            int scanned = Math.max(1, Math.min(QUERIES, 100_000_000 / count));
+            BoundsTest[] scanTests = Arrays.copyOf(spheres, scanned);
+            long scan = benchmark.runQueries(scanTests, false) * QUERIES / scanned;
+            long box = benchmark.runQueries(boxes, true);
+            benchmark.runRays();
+            long ray = benchmark.runRays();
+            benchmark.runFrustum(frustum);
+            long frustumTime = benchmark.runFrustum(frustum);
+
+            System.out.println(String.format("%9d %8.2fms %8.2fms %8.2fms %8.2fms %7.1f %10.2fus %10.2fus %8.2fus %8.2fus %8.2fms",
+                    count, insert / 1e6, batch / 1e6, rebuild / 1e6, move / 1e6, cost, microsPerQuery(sphere), microsPerQuery(scan),
+                    microsPerQuery(box), microsPerQuery(ray), frustumTime / 1e6));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package fr.acth2.engine.utils.jobs;
+
+import fr.acth2.engine.engine.items.Item;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how the per-tick transform and visibility stages scale on the {@link JobSystem}. For
+ * item counts from 1k to 1M, every item is rotated, its world matrix rebuilt and its bounding
+ * sphere tested against a frustum, first on one thread and then with 1, 2, 4... workers up to
+ * the number of cores. Each configuration reports the median time of several runs and its
+ * speedup over the single-threaded loop.
+ * <p>
+ * Usage: {@code gradle benchmark -PbenchmarkClass=fr.acth2.engine.utils.jobs.JobBenchmark
+ * [-PbenchmarkArgs=maxItems]}. Needs no window or GL context.
+ */
+public final class JobBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 15;
+    private static final int ITEMS_PER_CHUNK = 256;
+
+    private final List<Item> items;
+    private final boolean[] visible;
+    private final FrustumIntersection frustum;
+    private int run;
+
+    private JobBenchmark(int count) {
+        Random random = new Random(42);
+        items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Item item = new Item();
+            item.setPosition(random.nextFloat() * 2000 - 1000, random.nextFloat() * 200, random.nextFloat() * 2000 - 1000);
+            item.setScale(0.5f + random.nextFloat());
+            items.add(item);
+        }
+        visible = new boolean[count];
+        Matrix4f projView = new Matrix4f()
+                .perspective((float) Math.toRadians(90), 16f / 9f, 0.01f, 1000f)
+                .lookAt(0, 50, 0, 0, 50, -1, 0, 1, 0);
+        frustum = new FrustumIntersection(projView);
+    }
+
+    private void process(int from, int to) {
+        Vector3f center = new Vector3f();
+        for (int i = from; i < to; i++) {
+            Item item = items.get(i);
+            item.setRotation(run, run * 0.5f, 0);
+            item.updateWorldMatrices();
+            item.getWorldMatrix().getTranslation(center);
+            visible[i] = frustum.testSphere(center, item.getWorldScale());
+        }
+    }
+
+    private long time(Runnable body) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run++;
+            body.run();
+        }
+        long[] samples = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            run++;
+            long start = System.nanoTime();
+            body.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[MEASURED_RUNS / 2];
+    }
+
+    public static void main(String[] args) {
+        int maxItems = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<Integer> workerCounts = new ArrayList<>();
+        for (int workers = 1; workers < cores; workers *= 2) {
+            workerCounts.add(workers);
+        }
+        workerCounts.add(cores);
+
+        StringBuilder header = new StringBuilder(String.format("%10s %10s", "items", "serial"));
+        for (int workers : workerCounts) {
+            header.append(String.format(" %18s", workers + " worker(s)"));
+        }
+        System.out.println(header);
+
+        for (int count = 1_000; count <= maxItems; count *= 10) {
+            JobBenchmark benchmark = new JobBenchmark(count);
+            int items = count;
+            long serial = benchmark.time(() -> benchmark.process(0, items));
+            StringBuilder line = new StringBuilder(String.format("%10d %8.3fms", count, serial / 1e6));
+
+            for (int workers : workerCounts) {
+                JobSystem jobs = new JobSystem(workers);
+                JobGraph graph = new JobGraph();
+                graph.add(new ParallelFor("benchmark", () -> items, ITEMS_PER_CHUNK, benchmark::process));
+                long parallel = benchmark.time(() -> jobs.run(graph));
+                jobs.shutdown();
+                line.append(String.format(" %8.3fms (x%4.2f)", parallel / 1e6, (double) serial / parallel));
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package fr.acth2.engine.utils.loader;
+
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the bundled models with {@link ObjParser} and with the String based parsing it replaced.
+ * Before measuring, both parses of the model are checked to give the same positions, texture
+ * coordinates, normals and triangle corners.
+ * <p>
+ * Run with {@code gradle jmh -PjmhInclude=ObjParserBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjParserBenchmark {
+
+    @Param({"/models/sun.obj", "/models/torus.obj"})
+    public String model;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteBuffer source = Loader.readResourceBytes(model);
+        bytes = new byte[source.remaining()];
+        source.duplicate().get(bytes);
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        checkSameOutput(ObjParser.parse(buffer.duplicate()), LegacyObjParser.parse(bytes));
+    }
+
+    @Benchmark
+    public ObjParser objParser() {
+        return ObjParser.parse(buffer.duplicate());
+    }
+
+    @Benchmark
+    public LegacyObjParser legacyParser() throws IOException {
+        return LegacyObjParser.parse(bytes);
+    }
+
+    private void checkSameOutput(ObjParser parsed, LegacyObjParser legacy) {
+        FloatList positions = parsed.getPositions();
+        check(positions.size() == legacy.vertices.size() * 3, "position count");
+        for (int i = 0; i < legacy.vertices.size(); i++) {
+            Vector3f v = legacy.vertices.get(i);
+            check(positions.get(i * 3) == v.x && positions.get(i * 3 + 1) == v.y && positions.get(i * 3 + 2) == v.z,
+                    "position " + i);
+        }
+
+        FloatList texCoords = parsed.getTexCoords();
+        check(texCoords.size() == legacy.textures.size() * 2, "texture coordinate count");
+        for (int i = 0; i < legacy.textures.size(); i++) {
+            Vector2f t = legacy.textures.get(i);
+            check(texCoords.get(i * 2) == t.x && texCoords.get(i * 2 + 1) == t.y, "texture coordinate " + i);
+        }
+
+        FloatList normals = parsed.getNormals();
+        check(normals.size() == legacy.normals.size() * 3, "normal count");
+        for (int i = 0; i < legacy.normals.size(); i++) {
+            Vector3f n = legacy.normals.get(i);
+            check(normals.get(i * 3) == n.x && normals.get(i * 3 + 1) == n.y && normals.get(i * 3 + 2) == n.z,
+                    "normal " + i);
+        }
+
+        IntList corners = parsed.getCorners();
+        check(corners.size() == legacy.faces.size() * 9, "corner count");
+        for (int f = 0; f < legacy.faces.size(); f++) {
+            LegacyObjParser.IdxGroup[] groups = legacy.faces.get(f).idxGroups;
+            for (int c = 0; c < 3; c++) {
+                int i = (f * 3 + c) * 3;
+                check(corners.get(i) == groups[c].idxPos && corners.get(i + 1) == groups[c].idxTextCoord
+                        && corners.get(i + 2) == groups[c].idxVecNormal, "corner " + c + " of triangle " + f);
+            }
+        }
+    }
+
+    private void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException(model + ": parsers disagree on " + what);
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package fr.acth2.engine;
 
+import fr.acth2.engine.engine.RenderSnapshot;
+import fr.acth2.engine.engine.RenderState;
 import fr.acth2.engine.engine.Renderer;
 import fr.acth2.engine.engine.ShaderProgram;
+import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.TextureCache;
 import fr.acth2.engine.engine.camera.Camera;
+import fr.acth2.engine.engine.text.FontAtlas;
 import fr.acth2.engine.inputs.KeyManager;
 import fr.acth2.engine.inputs.MouseInput;
 import fr.acth2.engine.scene.Scene;
+import fr.acth2.engine.scene.picking.RaycastHit;
+import fr.acth2.engine.scene.picking.Raycaster;
+import fr.acth2.engine.utils.FrameAllocationMonitor;
 import fr.acth2.engine.utils.Time;
+import fr.acth2.engine.utils.TripleBuffer;
 import fr.acth2.engine.utils.hud.Hud;
+import fr.acth2.engine.utils.jobs.JobSystem;
+import fr.acth2.engine.utils.loader.AssetPipeline;
 import fr.acth2.engine.utils.loader.Loader;
+import org.joml.Vector2d;
 import org.joml.Vector2f;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
 import java.awt.Font;
 
@@ -26,6 +39,7 @@ public class Main implements Runnable {
     public MouseInput mouseInput;
 
     private static Thread loopThread;
+    private static Thread renderThread;
     private static Main main;
     private static Renderer renderer;
     public ShaderProgram shaderProgram;
@@ -33,10 +47,24 @@ public class Main implements Runnable {
     public ShaderProgram skyboxShaderProgram;
     public Hud hud;
     private Scene scene;
+    private Raycaster raycaster;
+    private final RaycastHit pickHit = new RaycastHit();
+    private AssetPipeline assetPipeline;
+    private final JobSystem jobs;
+    private boolean boostRequested;
+    private GLCapabilities capabilities;
+    private TripleBuffer<RenderSnapshot> snapshots;
+    private volatile boolean running;
+    private volatile String renderStats = "";
+    private int windowWidth;
+    private int windowHeight;
+    private int framebufferWidth;
+    private int framebufferHeight;
 
 
     public Main() {
-        this.renderer = new Renderer();
+        this.jobs = new JobSystem(Runtime.getRuntime().availableProcessors());
+        this.renderer = new Renderer(jobs);
         this.camera = new Camera();
         this.mouseInput = new MouseInput();
     }
@@ -69,17 +97,31 @@ public class Main implements Runnable {
         if (this.id == NULL) throw new RuntimeException("Failed to create window");
         this.mouseInput.init(this.id);
 
-        glfwSetFramebufferSizeCallback(this.id, (window, width, height) -> {
-            glViewport(0, 0, width, height);
+        int[] width = new int[1];
+        int[] height = new int[1];
+        glfwGetWindowSize(this.id, width, height);
+        windowWidth = width[0];
+        windowHeight = height[0];
+        glfwGetFramebufferSize(this.id, width, height);
+        framebufferWidth = width[0];
+        framebufferHeight = height[0];
+
+        // The viewport follows the framebuffer size carried by render snapshots.
+        glfwSetWindowSizeCallback(this.id, (window, w, h) -> {
+            windowWidth = w;
+            windowHeight = h;
+        });
+        glfwSetFramebufferSizeCallback(this.id, (window, w, h) -> {
+            framebufferWidth = w;
+            framebufferHeight = h;
             hud.updateSize(this.id);
         });
 
         glfwMakeContextCurrent(this.id);
-        GL.createCapabilities();
+        capabilities = GL.createCapabilities();
         if (DEBUG_BACKGROUND)
             glClearColor(0.2f, 0.3f, 0.4f, 1.0f);
 
-        glfwSwapInterval(1);
         glEnable(GL_DEPTH_TEST);
         glEnable(GL_CULL_FACE);
         glCullFace(GL_BACK);
@@ -107,8 +149,10 @@ public class Main implements Runnable {
 
         renderer.init(shaderProgram, hudShaderProgram, skyboxShaderProgram);
 
-        scene = new Scene();
-        scene.init();
+        assetPipeline = new AssetPipeline(Runtime.getRuntime().availableProcessors() - 1);
+        scene = new Scene(jobs);
+        scene.init(assetPipeline);
+        raycaster = new Raycaster(scene);
 
         camera.setPosition(0, 15, 0);
 
@@ -120,6 +164,7 @@ public class Main implements Runnable {
         System.out.println(" - E = SHOW ERROR");
         System.out.println(" - B = SHOW BOLD TEXT");
         System.out.println(" - I = SHOW ITALIC TEXT");
+        System.out.println(" - P = PICK UNDER CURSOR");
         System.out.println(" - TAB        = FOCUS AND TAKE CAMERA");
         System.out.println(" - CONTROLS   = BOOST");
         System.out.println(" - SHIFT      = HEAD DOWN");
@@ -128,45 +173,182 @@ public class Main implements Runnable {
         System.out.println(" - ESC        = EXIT");
 
         hud.setPersistentText("tabTxt", "PRESS TAB TO TAKE THE CAMERA");
+
+        snapshots = new TripleBuffer<>(new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot());
+        // The context moves to the render thread from here on.
+        glfwMakeContextCurrent(NULL);
     }
 
+    /**
+     * Simulation loop, run on the thread that created the window. It handles window events and
+     * input, runs the simulation in fixed ticks of {@link Time#TICK_NANOS} and publishes a
+     * {@link RenderSnapshot} of the last tick for the render thread to draw.
+     */
     private static void loop() {
         Main instance = Main.getInstance();
 
-        double lastFpsTime = getTime();
-        int frames = 0;
+        double lastStatsTime = getTime();
+        int ticks = 0;
+
+        long maxBacklog = MAX_TICKS_PER_FRAME * Time.TICK_NANOS;
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
 
         while (!glfwWindowShouldClose(instance.id)) {
+            long currentTime = System.nanoTime();
+            accumulator += currentTime - previousTime;
+            previousTime = currentTime;
+            // After a stall, drop the time we can't catch up on instead of spending the next
+            // iterations running ticks, which would only make those slow in turn.
+            if (accumulator > maxBacklog) {
+                accumulator = maxBacklog;
+            }
 
             instance.inputs(instance.id, instance.mouseInput);
-            instance.render();
+            instance.hud.update();
+            boolean ticked = false;
+            while (accumulator >= Time.TICK_NANOS) {
+                accumulator -= Time.TICK_NANOS;
+                if (ticked) {
+                    // The published camera interpolates over the last tick only, as the scene does.
+                    instance.camera.storePreviousState();
+                }
+                instance.tick();
+                ticked = true;
+                ticks++;
+            }
+            // Only the newest snapshot is ever drawn, so catch-up ticks publish once at the end.
+            if (ticked) {
+                instance.publishSnapshot(currentTime - accumulator);
+            }
+
+            double now = getTime();
+            if (now - lastStatsTime >= 1000) {
+                glfwSetWindowTitle(instance.id, WINDOW_TITLE + " | TPS: " + ticks + instance.renderStats);
+                ticks = 0;
+                lastStatsTime = now;
+            }
+
+            // Sleep until the next tick is due, waking up early for input.
+            glfwWaitEventsTimeout((Time.TICK_NANOS - accumulator) / 1e9);
+        }
+    }
+
+    /**
+     * Render loop, run on its own thread with the GL context current. Draws the latest snapshot
+     * published by the simulation, interpolated to the time of the frame.
+     */
+    private void renderLoop() {
+        glfwSwapInterval(1);
+
+        double lastFpsTime = getTime();
+        int frames = 0;
+        FrameAllocationMonitor allocationMonitor = new FrameAllocationMonitor(FRAME_ALLOCATION_BUDGET);
+
+        while (running) {
+            assetPipeline.update(ASSET_UPLOAD_BUDGET_NANOS);
+
+            allocationMonitor.beginFrame();
+            renderer.clear();
+            RenderSnapshot snapshot = snapshots.acquire();
+            if (snapshot != null) {
+                renderer.render(snapshot, snapshot.getAlpha(System.nanoTime()), shaderProgram);
+                renderer.renderHud(snapshot, hudShaderProgram);
+            }
+            glfwSwapBuffers(this.id);
+            allocationMonitor.endFrame();
+            RenderState.endFrame();
 
             frames++;
 
             double now = getTime();
             if (now - lastFpsTime >= 1000) {
-                glfwSetWindowTitle(instance.id, WINDOW_TITLE + " | FPS: " + frames);
+                renderStats = " | FPS: " + frames
+                        + " | Drawn: " + renderer.getDrawnItems() + " | Culled: " + renderer.getCulledItems()
+                        + " | Draw calls: " + renderer.getDrawCalls()
+                        + " | State: " + RenderState.getIssuedChanges() + " issued, " + RenderState.getSkippedChanges() + " skipped"
+                        + " | Textures: " + TextureCache.size() + " cached, " + (Texture.getResidentBytes() >> 10) + "KB"
+                        + " | Alloc/frame: " + allocationMonitor.report() + "B";
                 frames = 0;
                 lastFpsTime = now;
             }
         }
     }
 
+    private void runRenderer() {
+        glfwMakeContextCurrent(this.id);
+        GL.setCapabilities(capabilities);
+        try {
+            renderLoop();
+        } catch (Throwable excp) {
+            excp.printStackTrace();
+            glfwSetWindowShouldClose(this.id, true);
+        } finally {
+            cleanUpGraphics();
+            glfwMakeContextCurrent(NULL);
+        }
+    }
+
     public void start() {
         loopThread = new Thread(this, "GAME_LOOP_THREAD");
         loopThread.start();
     }
 
-    public void render() {
-        renderer.clear();
-        hud.update();
-        scene.update();
+    /**
+     * Runs one fixed simulation step. The camera keeps moving while time is stopped, the scene
+     * does not.
+     */
+    public void tick() {
+        scene.applyPendingChanges();
+        scene.storePreviousState();
+
+        float speed = 0.05f;
+
+        if (boostRequested) {
+            speed = 5f;
+            boostRequested = false;
+        }
+
+        if (KeyManager.getKeyPress(GLFW_KEY_W)) {
+             camera.movePosition(0.0F, 0.0F, -speed);
+        }
+
+        if (KeyManager.getKeyPress(GLFW_KEY_A)) {
+             camera.movePosition(-speed, 0.0F, 0.0F);
+        }
+
+        if (KeyManager.getKeyPress(GLFW_KEY_S)) {
+             camera.movePosition(0.0F, 0.0F, speed);
+        }
+
+        if (KeyManager.getKeyPress(GLFW_KEY_D)) {
+             camera.movePosition(speed, 0.0F, 0.0F);
+        }
+
+        if (KeyManager.getKeyPress(GLFW_KEY_LEFT_SHIFT)) {
+             camera.movePosition(0.0F, -speed, 0.0F);
+        }
 
-        renderer.render(this.id, this.camera, this.shaderProgram, scene);
-        renderer.renderHud(this.id, this.hudShaderProgram, hud);
+        if (KeyManager.getKeyPress(GLFW_KEY_SPACE)) {
+             camera.movePosition(0.0F, speed, 0.0F);
+        }
 
-        glfwSwapBuffers(this.id);
-        glfwPollEvents();
+        if (!Time.isTimeStopped()) {
+            scene.update();
+        }
+        Time.tick();
+    }
+
+    /**
+     * Copies the state of the tick that just ran into the next free snapshot and hands it to the
+     * render thread.
+     */
+    private void publishSnapshot(long stateTime) {
+        RenderSnapshot snapshot = snapshots.getWriteSlot();
+        snapshot.setWindowSize(windowWidth, windowHeight, framebufferWidth, framebufferHeight);
+        scene.capture(snapshot, camera, hud, stateTime);
+        snapshots.publish();
+        camera.storePreviousState();
     }
 
     public void inputs(long window, MouseInput mouseInput) {
@@ -194,34 +376,14 @@ public class Main implements Runnable {
             hud.showInformation("Italic Text", 2000, Font.ITALIC, 18);
         }
 
-        float speed = 0.05f;
-
-        if (KeyManager.getKeyJustPressed(GLFW_KEY_LEFT_CONTROL)) {
-            speed = 5f;
-        }
-
-        if (KeyManager.getKeyPress(GLFW_KEY_W)) {
-             camera.movePosition(0.0F, 0.0F, -speed);
-        }
-
-        if (KeyManager.getKeyPress(GLFW_KEY_A)) {
-             camera.movePosition(-speed, 0.0F, 0.0F);
-        }
-
-        if (KeyManager.getKeyPress(GLFW_KEY_S)) {
-             camera.movePosition(0.0F, 0.0F, speed);
+        if (KeyManager.getKeyJustPressed(GLFW_KEY_P)) {
+            pick(mouseInput);
         }
 
-        if (KeyManager.getKeyPress(GLFW_KEY_D)) {
-             camera.movePosition(speed, 0.0F, 0.0F);
-        }
-
-        if (KeyManager.getKeyPress(GLFW_KEY_LEFT_SHIFT)) {
-             camera.movePosition(0.0F, -speed, 0.0F);
-        }
-
-        if (KeyManager.getKeyPress(GLFW_KEY_SPACE)) {
-             camera.movePosition(0.0F, speed, 0.0F);
+        // The boost is a one-off jump; keep it for the next tick so it isn't lost on frames
+        // that run none.
+        if (KeyManager.getKeyJustPressed(GLFW_KEY_LEFT_CONTROL)) {
+            boostRequested = true;
         }
 
         if (KeyManager.getKeyPress(GLFW_KEY_ESCAPE)) {
@@ -245,7 +407,45 @@ public class Main implements Runnable {
         }
     }
 
+    /**
+     * Casts a ray under the cursor, or through the middle of the window while the camera holds
+     * the cursor, and shows what it hits.
+     */
+    private void pick(MouseInput mouseInput) {
+        Vector2d cursor = mouseInput.getCurrentPos();
+        float x = GRABBED_CURSOR ? windowWidth / 2f : (float) cursor.x;
+        float y = GRABBED_CURSOR ? windowHeight / 2f : (float) cursor.y;
+        if (raycaster.pick(x, y, windowWidth, windowHeight, camera, PROJECTION_Z_FAR, pickHit)) {
+            hud.showInformation(String.format("HIT AT %.1f, %.1f, %.1f (%.1fm)", pickHit.getPoint().x,
+                    pickHit.getPoint().y, pickHit.getPoint().z, pickHit.getDistance()), 2000);
+        } else {
+            hud.showInformation("NOTHING HIT", 1000);
+        }
+    }
+
     public void cleanUp() {
+        if (renderThread != null) {
+            running = false;
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            // Loading failed before the render thread took the context.
+            cleanUpGraphics();
+        }
+        if (hud != null) {
+            hud.cleanUp();
+        }
+        jobs.shutdown();
+    }
+
+    /**
+     * Releases everything owned by the GL context. Runs on the thread holding it once the
+     * simulation has stopped.
+     */
+    private void cleanUpGraphics() {
         if (shaderProgram != null) {
             shaderProgram.cleanup();
         }
@@ -255,16 +455,26 @@ public class Main implements Runnable {
         if (skyboxShaderProgram != null) {
             skyboxShaderProgram.cleanup();
         }
-        if (hud != null) {
-            hud.cleanUp();
+        FontAtlas.cleanupAll();
+        renderer.cleanup();
+        if (scene != null) {
+            scene.cleanUp();
+        }
+        if (assetPipeline != null) {
+            assetPipeline.cleanup();
+        }
+        if (snapshots != null) {
+            snapshots.forEachSlot(RenderSnapshot::free);
         }
-        scene.cleanUp();
     }
 
     @Override
     public void run() {
         try {
             load();
+            running = true;
+            renderThread = new Thread(this::runRenderer, "RENDER_THREAD");
+            renderThread.start();
             loop();
         } catch (Exception excp) {
             excp.printStackTrace();
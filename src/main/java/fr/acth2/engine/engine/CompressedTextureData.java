@@ -0,0 +1,168 @@
+package fr.acth2.engine.engine;
+
+import fr.acth2.engine.utils.Refs;
+import fr.acth2.engine.utils.loader.Loader;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.ktx.ktxTexture;
+import org.lwjgl.util.ktx.ktxTexture2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.util.ktx.KTX.*;
+
+/**
+ * A KTX2 container loaded through libktx, with every mip level and cube face already in memory.
+ * Basis Universal payloads (as written by {@link fr.acth2.engine.utils.loader.TextureConverter})
+ * are transcoded on load to the best block format the GPU supports; containers that already hold
+ * BCn or ETC data are used as is. Loading needs no GL context, so it can run on a loader thread.
+ */
+public class CompressedTextureData {
+
+    public static final String EXTENSION = ".ktx2";
+
+    private static int transcodeFormat = -1;
+
+    private ktxTexture2 texture;
+
+    private CompressedTextureData(ktxTexture2 texture) {
+        this.texture = texture;
+    }
+
+    /**
+     * Picks the block format Basis payloads are transcoded to: BC7 when available, then BC3,
+     * then ETC2, and plain RGBA8 as a last resort. The first call must happen on the GL thread.
+     */
+    public static synchronized int getTranscodeFormat() {
+        if (transcodeFormat < 0) {
+            GLCapabilities caps = GL.getCapabilities();
+            if (caps.GL_ARB_texture_compression_bptc) {
+                transcodeFormat = KTX_TTF_BC7_RGBA;
+            } else if (caps.GL_EXT_texture_compression_s3tc) {
+                transcodeFormat = KTX_TTF_BC3_RGBA;
+            } else if (caps.GL_ARB_ES3_compatibility) {
+                transcodeFormat = KTX_TTF_ETC2_RGBA;
+            } else {
+                transcodeFormat = KTX_TTF_RGBA32;
+            }
+        }
+        return transcodeFormat;
+    }
+
+    /**
+     * Returns the path of the compressed counterpart of an image resource
+     * ({@code /textures/v2.png} becomes {@code /textures/v2.ktx2}).
+     */
+    public static String compressedPath(String path) {
+        int dot = path.lastIndexOf('.');
+        return (dot > path.lastIndexOf('/') ? path.substring(0, dot) : path) + EXTENSION;
+    }
+
+    /**
+     * Returns the compressed resource to load in place of {@code path}: the path itself when it
+     * already names a KTX2 file, otherwise its converted counterpart if one exists and compressed
+     * textures are enabled. Returns {@code null} when the original image should be used.
+     */
+    public static String resolve(String path) {
+        if (path.endsWith(EXTENSION)) {
+            return path;
+        }
+        if (!Refs.COMPRESSED_TEXTURES) {
+            return null;
+        }
+        String compressed = compressedPath(path);
+        return CompressedTextureData.class.getResource(compressed) != null ? compressed : null;
+    }
+
+    public static CompressedTextureData load(String fileName, int transcodeFormat) throws IOException {
+        ByteBuffer source = Loader.readResourceBytes(fileName);
+        ByteBuffer direct = source;
+        if (!source.isDirect()) {
+            direct = MemoryUtil.memAlloc(source.remaining());
+            direct.put(source).flip();
+        }
+
+        ktxTexture2 texture;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer out = stack.mallocPointer(1);
+            check(fileName, ktxTexture2_CreateFromMemory(direct, KTX_TEXTURE_CREATE_LOAD_IMAGE_DATA_BIT, out));
+            texture = ktxTexture2.create(out.get(0));
+        } finally {
+            if (direct != source) {
+                MemoryUtil.memFree(direct);
+            }
+        }
+
+        CompressedTextureData data = new CompressedTextureData(texture);
+        try {
+            if (ktxTexture2_NeedsTranscoding(texture)) {
+                check(fileName, ktxTexture2_TranscodeBasis(texture, transcodeFormat, 0));
+            }
+        } catch (IOException | RuntimeException e) {
+            data.free();
+            throw e;
+        }
+        return data;
+    }
+
+    private static void check(String fileName, int result) throws IOException {
+        if (result != KTX_SUCCESS) {
+            throw new IOException("Unable to load " + fileName + ": " + ktxErrorString(result));
+        }
+    }
+
+    /**
+     * Creates a GL texture holding every level and face. Must be called on the GL thread.
+     *
+     * @param target receives the GL target ({@code GL_TEXTURE_2D} or {@code GL_TEXTURE_CUBE_MAP})
+     * @return the new texture id
+     */
+    int upload(IntBuffer target) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer id = stack.ints(0);
+            IntBuffer glError = stack.mallocInt(1);
+            int result = ktxTexture_GLUpload(ktxTexture.create(texture.address()), id, target, glError);
+            // libktx binds the texture itself.
+            RenderState.invalidate();
+            if (result != KTX_SUCCESS) {
+                throw new IllegalStateException("KTX upload failed: " + ktxErrorString(result) + " (GL error " + glError.get(0) + ")");
+            }
+            return id.get(0);
+        }
+    }
+
+    public int getWidth() {
+        return texture.baseWidth();
+    }
+
+    public int getHeight() {
+        return texture.baseHeight();
+    }
+
+    public int getLevels() {
+        return texture.numLevels();
+    }
+
+    public boolean isCubeMap() {
+        return texture.isCubemap();
+    }
+
+    /**
+     * Size of the image data across all levels and faces, i.e. what the texture occupies on the GPU.
+     */
+    public long getDataSize() {
+        return texture.dataSize();
+    }
+
+    public void free() {
+        if (texture != null) {
+            ktxTexture_Destroy(ktxTexture.create(texture.address()));
+            texture = null;
+        }
+    }
+}
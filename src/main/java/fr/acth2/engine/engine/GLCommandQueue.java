@@ -0,0 +1,45 @@
+package fr.acth2.engine.engine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Work that needs the GL context, submitted from any thread and executed by the GL thread.
+ * The GL thread drains the queue once per frame under a time budget so that bulk uploads are
+ * spread over several frames instead of stalling one.
+ */
+public class GLCommandQueue {
+
+    private final ConcurrentLinkedQueue<Runnable> commands;
+
+    public GLCommandQueue() {
+        commands = new ConcurrentLinkedQueue<>();
+    }
+
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * Runs queued commands until the queue is empty or {@code budgetNanos} has elapsed. At least
+     * one command is run per call, so a single command larger than the budget still progresses.
+     *
+     * @return the number of commands executed
+     */
+    public int drain(long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int executed = 0;
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            executed++;
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        return executed;
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+}
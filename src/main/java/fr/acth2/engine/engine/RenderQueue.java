@@ -0,0 +1,130 @@
+package fr.acth2.engine.engine;
+
+import java.util.Arrays;
+
+/**
+ * Visible items of a frame, as indices into the frame's {@link RenderSnapshot}, together with a
+ * 64-bit sort key each. Keys are laid out so that an
+ * unsigned ascending sort groups draws by shader, then material, texture and mesh, and orders
+ * items sharing all of those front to back:
+ * <pre>
+ *  63      56 55        44 43        32 31        20 19         0
+ * [ shader  ][ material  ][  texture  ][   mesh    ][   depth    ]
+ * </pre>
+ * Ids beyond their field are clamped to its largest value, so they never spill into the next
+ * field and still sort after every smaller id; sharing that value only costs sorting quality since
+ * callers compare the actual objects when splitting the queue into batches.
+ */
+public class RenderQueue {
+
+    private static final int SHADER_BITS = 8;
+    private static final int MATERIAL_BITS = 12;
+    private static final int TEXTURE_BITS = 12;
+    private static final int MESH_BITS = 12;
+    private static final int DEPTH_BITS = 20;
+
+    private static final int MESH_SHIFT = DEPTH_BITS;
+    private static final int TEXTURE_SHIFT = MESH_SHIFT + MESH_BITS;
+    private static final int MATERIAL_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+    private static final int SHADER_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private long[] keys;
+    private int[] items;
+    private long[] sortedKeys;
+    private int[] sortedItems;
+    private final int[] counts;
+    private int size;
+
+    public RenderQueue(int initialCapacity) {
+        keys = new long[initialCapacity];
+        items = new int[initialCapacity];
+        sortedKeys = new long[initialCapacity];
+        sortedItems = new int[initialCapacity];
+        counts = new int[RADIX];
+    }
+
+    public static long makeKey(int shaderId, int materialId, int textureId, int meshId, float depth, float maxDepth) {
+        float normalized = Math.max(0f, Math.min(1f, depth / maxDepth));
+        long quantizedDepth = (long) (normalized * ((1 << DEPTH_BITS) - 1));
+        return field(shaderId, SHADER_BITS) << SHADER_SHIFT
+                | field(materialId, MATERIAL_BITS) << MATERIAL_SHIFT
+                | field(textureId, TEXTURE_BITS) << TEXTURE_SHIFT
+                | field(meshId, MESH_BITS) << MESH_SHIFT
+                | quantizedDepth;
+    }
+
+    private static long field(int id, int bits) {
+        return Math.max(0, Math.min(id, (1 << bits) - 1));
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long key, int item) {
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        items[size] = item;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        items = Arrays.copyOf(items, capacity);
+        sortedKeys = new long[capacity];
+        sortedItems = new int[capacity];
+    }
+
+    /**
+     * Stable LSD radix sort on the keys, one byte per pass. Passes where every key has the same
+     * digit are skipped, which is the common case for the high shader and material bytes.
+     */
+    public void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            if (size == 0 || counts[(int) (keys[0] >>> shift) & (RADIX - 1)] == size) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int count = counts[d];
+                counts[d] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int dest = counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+                sortedKeys[dest] = keys[i];
+                sortedItems[dest] = items[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapItems = items;
+            items = sortedItems;
+            sortedItems = swapItems;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getItem(int index) {
+        return items[index];
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+}
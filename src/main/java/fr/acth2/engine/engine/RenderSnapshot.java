@@ -0,0 +1,225 @@
+package fr.acth2.engine.engine;
+
+import fr.acth2.engine.engine.camera.Camera;
+import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.items.TransformStore;
+import fr.acth2.engine.engine.models.Mesh;
+import fr.acth2.engine.scene.SceneLight;
+import fr.acth2.engine.utils.Time;
+import fr.acth2.engine.utils.hud.IHud;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything the renderer needs to draw one simulation tick, copied out of the scene so the GL
+ * thread never reads state the simulation is changing. Items are stored in flat arrays: their
+ * mesh (which carries the material), world matrix and world scale, plus the world matrix of the
+ * previous tick for items that moved, so frames can be drawn between two ticks. Matrices are
+ * kept off-heap so items living in a {@link TransformStore} are captured, and later drawn, with
+ * plain memory copies.
+ * <p>
+ * Snapshots are filled by {@link fr.acth2.engine.scene.Scene#capture} on the simulation side
+ * and exchanged with the GL thread through a {@link fr.acth2.engine.utils.TripleBuffer}; their
+ * arrays are reused from one capture to the next.
+ */
+public class RenderSnapshot {
+
+    private static final ThreadLocal<Matrix4f> CAPTURE_SCRATCH = ThreadLocal.withInitial(Matrix4f::new);
+
+    private int itemCount;
+    private int culledItemCount;
+    private Mesh[] meshes;
+    private FloatBuffer transforms;
+    private FloatBuffer previousTransforms;
+    private boolean[] moving;
+    private float[] worldScales;
+
+    private final Vector3f cameraPosition;
+    private final Vector3f cameraRotation;
+    private final Vector3f previousCameraPosition;
+    private final Vector3f previousCameraRotation;
+    private final SceneLight sceneLight;
+    private final SpriteList hudSprites;
+    private long hudVersion = -1;
+
+    private int windowWidth;
+    private int windowHeight;
+    private int framebufferWidth;
+    private int framebufferHeight;
+    private long stateTime;
+
+    public RenderSnapshot() {
+        meshes = new Mesh[0];
+        transforms = MemoryUtil.memAllocFloat(16);
+        previousTransforms = MemoryUtil.memAllocFloat(16);
+        moving = new boolean[0];
+        worldScales = new float[0];
+        cameraPosition = new Vector3f();
+        cameraRotation = new Vector3f();
+        previousCameraPosition = new Vector3f();
+        previousCameraRotation = new Vector3f();
+        sceneLight = new SceneLight();
+        hudSprites = new SpriteList();
+    }
+
+    /**
+     * Starts capturing a tick with {@code itemCount} items, to be filled by {@link #captureItems}.
+     *
+     * @param culledItemCount items the scene left out because they cannot be visible
+     */
+    public void beginCapture(int itemCount, int culledItemCount) {
+        if (meshes.length < itemCount) {
+            int capacity = Math.max(itemCount, meshes.length * 2);
+            meshes = Arrays.copyOf(meshes, capacity);
+            transforms = MemoryUtil.memRealloc(transforms, capacity * 16);
+            previousTransforms = MemoryUtil.memRealloc(previousTransforms, capacity * 16);
+            moving = new boolean[capacity];
+            worldScales = new float[capacity];
+        }
+        // Drop references to meshes that may have been removed from the scene since.
+        Arrays.fill(meshes, itemCount, Math.max(itemCount, this.itemCount), null);
+        this.itemCount = itemCount;
+        this.culledItemCount = culledItemCount;
+    }
+
+    /**
+     * Copies the items in {@code [from, to)}. Their world matrices must be up to date; disjoint
+     * ranges may be captured from several threads at once.
+     */
+    public void captureItems(List<Item> items, int from, int to) {
+        Matrix4f previous = CAPTURE_SCRATCH.get();
+        long transformsAddress = MemoryUtil.memAddress(transforms);
+        for (int i = from; i < to; i++) {
+            Item item = items.get(i);
+            meshes[i] = item.getMesh();
+            TransformStore store = item.getStore();
+            if (store != null) {
+                MemoryUtil.memCopy(store.getWorldMatrixAddress(item.getSlot()), transformsAddress + i * 64L, 64);
+            } else {
+                item.getWorldMatrix().get(i * 16, transforms);
+            }
+            worldScales[i] = item.getWorldScale();
+            moving[i] = item.hasMoved();
+            if (moving[i]) {
+                item.getPreviousWorldMatrix(previous).get(i * 16, previousTransforms);
+            }
+        }
+    }
+
+    /**
+     * Copies the rest of the tick's state. The HUD is only copied again when its version changed.
+     *
+     * @param stateTime {@link System#nanoTime()} at which the tick's state is current
+     */
+    public void endCapture(Camera camera, SceneLight light, IHud hud, long stateTime) {
+        cameraPosition.set(camera.getPosition());
+        cameraRotation.set(camera.getRotation());
+        previousCameraPosition.set(camera.getPreviousPosition());
+        previousCameraRotation.set(camera.getPreviousRotation());
+        sceneLight.set(light);
+
+        if (hud.getVersion() != hudVersion) {
+            hudSprites.clear();
+            hud.addTo(hudSprites);
+            hudVersion = hud.getVersion();
+        }
+        this.stateTime = stateTime;
+    }
+
+    public void setWindowSize(int windowWidth, int windowHeight, int framebufferWidth, int framebufferHeight) {
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+        this.framebufferWidth = framebufferWidth;
+        this.framebufferHeight = framebufferHeight;
+    }
+
+    /**
+     * How far a frame drawn at {@code now} lies between the previous tick and this one, from 0
+     * to 1. Frames drawn after the next tick was due hold at 1.
+     */
+    public float getAlpha(long now) {
+        float alpha = (float) (now - stateTime) / Time.TICK_NANOS;
+        return Math.max(0f, Math.min(1f, alpha));
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getCulledItemCount() {
+        return culledItemCount;
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes[index];
+    }
+
+    public float getWorldScale(int index) {
+        return worldScales[index];
+    }
+
+    /**
+     * Writes the world matrix of an item {@code alpha} of the way between the previous tick and
+     * this one to {@code dest}, column-major from {@code offset}. Translation and scale are
+     * interpolated exactly; rotation is blended component wise, which is indistinguishable from a
+     * proper slerp over a single tick. Safe to call from several threads at once.
+     */
+    public void getTransform(int index, float alpha, FloatBuffer dest, int offset) {
+        int base = index * 16;
+        if (!moving[index] || alpha >= 1f) {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(transforms) + base * 4L, MemoryUtil.memAddress(dest) + offset * 4L, 64);
+            return;
+        }
+        for (int i = 0; i < 16; i++) {
+            float from = previousTransforms.get(base + i);
+            dest.put(offset + i, from + (transforms.get(base + i) - from) * alpha);
+        }
+    }
+
+    public Vector3f getCameraPosition(float alpha, Vector3f dest) {
+        return previousCameraPosition.lerp(cameraPosition, alpha, dest);
+    }
+
+    public Vector3f getCameraRotation(float alpha, Vector3f dest) {
+        return previousCameraRotation.lerp(cameraRotation, alpha, dest);
+    }
+
+    public SceneLight getSceneLight() {
+        return sceneLight;
+    }
+
+    public SpriteList getHudSprites() {
+        return hudSprites;
+    }
+
+    public long getHudVersion() {
+        return hudVersion;
+    }
+
+    public int getWindowWidth() {
+        return windowWidth;
+    }
+
+    public int getWindowHeight() {
+        return windowHeight;
+    }
+
+    public int getFramebufferWidth() {
+        return framebufferWidth;
+    }
+
+    public int getFramebufferHeight() {
+        return framebufferHeight;
+    }
+
+    public void free() {
+        MemoryUtil.memFree(transforms);
+        MemoryUtil.memFree(previousTransforms);
+        hudSprites.free();
+    }
+}
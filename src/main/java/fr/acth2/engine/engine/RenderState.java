@@ -0,0 +1,187 @@
+package fr.acth2.engine.engine;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+
+/**
+ * Shadow copy of the GL state the engine touches every frame: bound program, vertex array,
+ * per-unit texture bindings, blending and depth function. All state changes go through here so
+ * that requests matching what is already bound are dropped before reaching the driver.
+ * <p>
+ * The cache assumes a single context used from the render thread. Anything that changes these
+ * bindings behind its back must call {@link #invalidate()}.
+ */
+public final class RenderState {
+
+    public static final int MAX_TEXTURE_UNITS = 16;
+
+    private static final int[] TEXTURE_TARGETS = {GL_TEXTURE_2D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_BUFFER};
+    private static final int UNKNOWN = -1;
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int activeUnit = UNKNOWN;
+    private static final int[] textures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGETS.length];
+    private static int blend = UNKNOWN;
+    private static int blendSrc = UNKNOWN;
+    private static int blendDst = UNKNOWN;
+    private static int depthFunc = UNKNOWN;
+
+    private static int issued;
+    private static int skipped;
+    private static int lastIssued;
+    private static int lastSkipped;
+
+    static {
+        Arrays.fill(textures, UNKNOWN);
+    }
+
+    private RenderState() {
+    }
+
+    public static void useProgram(int programId) {
+        if (program == programId) {
+            skipped++;
+            return;
+        }
+        glUseProgram(programId);
+        program = programId;
+        issued++;
+    }
+
+    public static void bindVertexArray(int vaoId) {
+        if (vertexArray == vaoId) {
+            skipped++;
+            return;
+        }
+        glBindVertexArray(vaoId);
+        vertexArray = vaoId;
+        issued++;
+    }
+
+    public static void bindTexture(int unit, int target, int textureId) {
+        int slot = unit * TEXTURE_TARGETS.length + targetIndex(target);
+        if (textures[slot] == textureId) {
+            skipped++;
+            return;
+        }
+        activeTexture(unit);
+        glBindTexture(target, textureId);
+        textures[slot] = textureId;
+        issued++;
+    }
+
+    private static void activeTexture(int unit) {
+        if (activeUnit == unit) {
+            return;
+        }
+        glActiveTexture(GL_TEXTURE0 + unit);
+        activeUnit = unit;
+        issued++;
+    }
+
+    public static void setBlend(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (blend == value) {
+            skipped++;
+            return;
+        }
+        if (enabled) {
+            glEnable(GL_BLEND);
+        } else {
+            glDisable(GL_BLEND);
+        }
+        blend = value;
+        issued++;
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) {
+            skipped++;
+            return;
+        }
+        glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+        issued++;
+    }
+
+    public static void depthFunc(int func) {
+        if (depthFunc == func) {
+            skipped++;
+            return;
+        }
+        glDepthFunc(func);
+        depthFunc = func;
+        issued++;
+    }
+
+    /**
+     * Forgets a deleted program so a later object reusing its name is not mistaken for it.
+     */
+    public static void programDeleted(int programId) {
+        if (program == programId) {
+            program = UNKNOWN;
+        }
+    }
+
+    public static void vertexArrayDeleted(int vaoId) {
+        if (vertexArray == vaoId) {
+            vertexArray = UNKNOWN;
+        }
+    }
+
+    public static void textureDeleted(int textureId) {
+        for (int i = 0; i < textures.length; i++) {
+            if (textures[i] == textureId) {
+                textures[i] = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Drops every cached value so the next request for each piece of state is issued.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        blend = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        depthFunc = UNKNOWN;
+    }
+
+    /**
+     * Publishes the counters of the frame that just ended and starts counting a new one.
+     */
+    public static void endFrame() {
+        lastIssued = issued;
+        lastSkipped = skipped;
+        issued = 0;
+        skipped = 0;
+    }
+
+    public static int getIssuedChanges() {
+        return lastIssued;
+    }
+
+    public static int getSkippedChanges() {
+        return lastSkipped;
+    }
+
+    private static int targetIndex(int target) {
+        for (int i = 0; i < TEXTURE_TARGETS.length; i++) {
+            if (TEXTURE_TARGETS[i] == target) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Untracked texture target: " + target);
+    }
+}
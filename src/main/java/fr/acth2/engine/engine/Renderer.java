@@ -1,35 +1,87 @@
 package fr.acth2.engine.engine;
 
-import fr.acth2.engine.engine.camera.Camera;
-import fr.acth2.engine.engine.items.Item;
-import fr.acth2.engine.engine.items.SkyBox;
-import fr.acth2.engine.engine.light.DirectionalLight;
-import fr.acth2.engine.engine.light.PointLight;
-import fr.acth2.engine.engine.light.SpotLight;
+import fr.acth2.engine.engine.camera.FrustumCullingFilter;
+import fr.acth2.engine.engine.light.ClusteredLighting;
+import fr.acth2.engine.engine.models.Material;
 import fr.acth2.engine.engine.models.Mesh;
 import fr.acth2.engine.engine.models.Transformation;
-import fr.acth2.engine.scene.Scene;
-import fr.acth2.engine.utils.hud.IHud;
+import fr.acth2.engine.engine.uniforms.FrameUniformBuffer;
+import fr.acth2.engine.engine.uniforms.MaterialUniform;
+import fr.acth2.engine.engine.uniforms.Uniform;
 import fr.acth2.engine.utils.Refs;
+import fr.acth2.engine.utils.jobs.JobGraph;
+import fr.acth2.engine.utils.jobs.JobSystem;
+import fr.acth2.engine.utils.jobs.ParallelFor;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
-import java.nio.IntBuffer;
+import java.nio.FloatBuffer;
 
-import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.*;
 
 public class Renderer {
 
-    private static final int MAX_POINT_LIGHTS = 5;
-    private static final int MAX_SPOT_LIGHTS = 5;
+    private static final int CLUSTERS_X = 16;
+    private static final int CLUSTERS_Y = 9;
+    private static final int CLUSTERS_Z = 24;
+    private static final int INITIAL_INSTANCES = 64;
+    private static final float SPECULAR_POWER = 10f;
+    private static final int ITEMS_PER_CHUNK = 256;
+    private static final ThreadLocal<Matrix4f> VISIBILITY_SCRATCH = ThreadLocal.withInitial(Matrix4f::new);
     private static Transformation transformation;
-
-    public Renderer() {
+    private final FrustumCullingFilter frustumFilter;
+    private int drawnItems;
+    private int culledItems;
+    private int drawCalls;
+    private final RenderQueue renderQueue;
+    private FloatBuffer instanceBuffer;
+    private FloatBuffer worldMatrices;
+    private float[] depths;
+    private final JobSystem jobs;
+    private final JobGraph visibilityGraph;
+    private RenderSnapshot frameSnapshot;
+    private float frameAlpha;
+    private Matrix4f frameViewMatrix;
+    private final Matrix4f modelMatrix;
+    private final Vector3f cameraPosition;
+    private final Vector3f cameraRotation;
+    private int viewportWidth;
+    private int viewportHeight;
+    private SpriteBatch hudBatch;
+    private long hudVersion = -1;
+    private FrameUniformBuffer frameUniformBuffer;
+    private ClusteredLighting clusteredLighting;
+
+    private Uniform modelViewMatrixUniform;
+    private Uniform isInstancedUniform;
+    private Uniform octNormalsUniform;
+    private Uniform positionScaleUniform;
+    private Uniform positionOffsetUniform;
+    private Uniform textureSamplerUniform;
+    private MaterialUniform materialUniform;
+    private Uniform lightDataUniform;
+    private Uniform lightGridUniform;
+    private Uniform lightIndicesUniform;
+
+    private Uniform hudProjectionMatrixUniform;
+    private Uniform hudTextureSamplerUniform;
+
+    private Uniform skyboxSamplerUniform;
+
+    public Renderer(JobSystem jobs) {
+        this.jobs = jobs;
         transformation = new Transformation();
+        frustumFilter = new FrustumCullingFilter();
+        renderQueue = new RenderQueue(INITIAL_INSTANCES);
+        instanceBuffer = MemoryUtil.memAllocFloat(INITIAL_INSTANCES * 16);
+        worldMatrices = MemoryUtil.memAllocFloat(INITIAL_INSTANCES * 16);
+        depths = new float[INITIAL_INSTANCES];
+        visibilityGraph = new JobGraph();
+        visibilityGraph.add(new ParallelFor("visibility", () -> frameSnapshot.getItemCount(), ITEMS_PER_CHUNK, this::computeVisibility));
+        modelMatrix = new Matrix4f();
+        cameraPosition = new Vector3f();
+        cameraRotation = new Vector3f();
     }
 
     public void clear() {
@@ -37,151 +89,220 @@ public class Renderer {
     }
 
     public void init(ShaderProgram shaderProgram, ShaderProgram hudShaderProgram, ShaderProgram skyboxShaderProgram) {
-        shaderProgram.createUniform("projectionMatrix");
-        shaderProgram.createUniform("modelViewMatrix");
-        shaderProgram.createUniform("texture_sampler");
-        shaderProgram.createMaterialUniform("material");
-        shaderProgram.createUniform("specularPower");
-        shaderProgram.createUniform("ambientLight");
-        shaderProgram.createDirectionalLightUniform("directionalLight");
-        shaderProgram.createPointLightListUniform("pointLights", MAX_POINT_LIGHTS);
-        shaderProgram.createSpotLightListUniform("spotLights", MAX_SPOT_LIGHTS);
-        shaderProgram.createUniform("pointLightCount");
-        shaderProgram.createUniform("spotLightCount");
-
-        hudShaderProgram.createUniform("projModelMatrix");
-        hudShaderProgram.createUniform("colour");
-        hudShaderProgram.createUniform("texture_sampler");
-
-        skyboxShaderProgram.createUniform("projectionMatrix");
-        skyboxShaderProgram.createUniform("viewMatrix");
-        skyboxShaderProgram.createUniform("skybox");
+        frameUniformBuffer = new FrameUniformBuffer();
+        hudBatch = new SpriteBatch();
+        clusteredLighting = new ClusteredLighting(CLUSTERS_X, CLUSTERS_Y, CLUSTERS_Z);
+        frameUniformBuffer.bindBlocks(shaderProgram);
+        frameUniformBuffer.bindBlocks(skyboxShaderProgram);
+
+        modelViewMatrixUniform = shaderProgram.createUniform("modelViewMatrix");
+        isInstancedUniform = shaderProgram.createUniform("isInstanced");
+        octNormalsUniform = shaderProgram.createUniform("octNormals");
+        positionScaleUniform = shaderProgram.createUniform("positionScale");
+        positionOffsetUniform = shaderProgram.createUniform("positionOffset");
+        textureSamplerUniform = shaderProgram.createUniform("texture_sampler");
+        materialUniform = shaderProgram.createMaterialUniform("material");
+        lightDataUniform = shaderProgram.createUniform("lightData");
+        lightGridUniform = shaderProgram.createUniform("lightGrid");
+        lightIndicesUniform = shaderProgram.createUniform("lightIndices");
+
+        hudProjectionMatrixUniform = hudShaderProgram.createUniform("projectionMatrix");
+        hudTextureSamplerUniform = hudShaderProgram.createUniform("texture_sampler");
+
+        skyboxSamplerUniform = skyboxShaderProgram.createUniform("skybox");
     }
 
-    public void render(long windowId, Camera camera, ShaderProgram shaderProgram, Scene scene) {
+    /**
+     * Draws the items of {@code snapshot} {@code alpha} of the way between its previous tick and
+     * its own.
+     */
+    public void render(RenderSnapshot snapshot, float alpha, ShaderProgram shaderProgram) {
         shaderProgram.bind();
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer width = stack.mallocInt(1);
-            IntBuffer height = stack.mallocInt(1);
-            glfwGetWindowSize(windowId, width, height);
-            Matrix4f projectionMatrix = transformation.getProjectionMatrix(
-                    Refs.PROJECTION_FOV, width.get(0), height.get(0), Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR);
-            shaderProgram.setUniform("projectionMatrix", projectionMatrix);
+        if (snapshot.getFramebufferWidth() != viewportWidth || snapshot.getFramebufferHeight() != viewportHeight) {
+            viewportWidth = snapshot.getFramebufferWidth();
+            viewportHeight = snapshot.getFramebufferHeight();
+            glViewport(0, 0, viewportWidth, viewportHeight);
         }
-
-        Matrix4f viewMatrix = transformation.getViewMatrix(camera);
-
-        PointLight[] pointLights = scene.getSceneLight().getPointLights();
-        int numLights = pointLights != null ? pointLights.length : 0;
-        PointLight[] viewPointLights = new PointLight[numLights];
-        for (int i = 0; i < numLights; i++) {
-            PointLight currPointLight = new PointLight(pointLights[i]);
-            Vector3f lightPos = currPointLight.getPosition();
-            Vector4f aux = new Vector4f(lightPos, 1);
-            aux.mul(viewMatrix);
-            lightPos.x = aux.x;
-            lightPos.y = aux.y;
-            lightPos.z = aux.z;
-            viewPointLights[i] = currPointLight;
+        Matrix4f projectionMatrix = transformation.getProjectionMatrix(Refs.PROJECTION_FOV,
+                snapshot.getWindowWidth(), snapshot.getWindowHeight(), Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR);
+
+        Matrix4f viewMatrix = transformation.getViewMatrix(
+                snapshot.getCameraPosition(alpha, cameraPosition), snapshot.getCameraRotation(alpha, cameraRotation));
+        frustumFilter.updateFrustum(projectionMatrix, viewMatrix);
+
+        clusteredLighting.update(projectionMatrix, viewMatrix, Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR, snapshot.getSceneLight());
+        frameUniformBuffer.update(projectionMatrix, viewMatrix, snapshot.getSceneLight(), SPECULAR_POWER,
+                clusteredLighting.getGrid(), viewportWidth, viewportHeight);
+        clusteredLighting.bind();
+
+        textureSamplerUniform.set(0);
+        lightDataUniform.set(ClusteredLighting.LIGHT_DATA_UNIT);
+        lightGridUniform.set(ClusteredLighting.LIGHT_GRID_UNIT);
+        lightIndicesUniform.set(ClusteredLighting.LIGHT_INDICES_UNIT);
+
+        drawnItems = 0;
+        culledItems = snapshot.getCulledItemCount();
+        drawCalls = 0;
+        renderQueue.clear();
+        int programId = shaderProgram.getProgramId();
+        int itemCount = snapshot.getItemCount();
+        if (depths.length < itemCount) {
+            int capacity = Math.max(itemCount, depths.length * 2);
+            worldMatrices = MemoryUtil.memRealloc(worldMatrices, capacity * 16);
+            depths = new float[capacity];
         }
 
-        SpotLight[] spotLights = scene.getSceneLight().getSpotLights();
-        numLights = spotLights != null ? spotLights.length : 0;
-        SpotLight[] viewSpotLights = new SpotLight[numLights];
-        for (int i = 0; i < numLights; i++) {
-            SpotLight currSpotLight = new SpotLight(spotLights[i]);
-            Vector4f lightPos = new Vector4f(currSpotLight.getPointLight().getPosition(), 1);
-            lightPos.mul(viewMatrix);
-            currSpotLight.getPointLight().setPosition(new Vector3f(lightPos.x, lightPos.y, lightPos.z));
-
-            Vector4f coneDir = new Vector4f(currSpotLight.getConeDirection(), 0);
-            coneDir.mul(viewMatrix);
-            currSpotLight.setConeDirection(new Vector3f(coneDir.x, coneDir.y, coneDir.z));
-            viewSpotLights[i] = currSpotLight;
+        frameSnapshot = snapshot;
+        frameAlpha = alpha;
+        frameViewMatrix = viewMatrix;
+        try {
+            jobs.run(visibilityGraph);
+        } finally {
+            frameSnapshot = null;
         }
 
-        DirectionalLight directionalLight = scene.getSceneLight().getDirectionalLight();
-        DirectionalLight currDirLight = new DirectionalLight(directionalLight);
-        Vector4f dir = new Vector4f(currDirLight.getPosition(), 0);
-        dir.mul(viewMatrix);
-        currDirLight.setPosition(new Vector3f(dir.x, dir.y, dir.z));
-
-        shaderProgram.setUniform("ambientLight", scene.getSceneLight().getAmbientLight());
-        shaderProgram.setUniform("specularPower", 10f);
-        shaderProgram.setUniform("pointLightCount", viewPointLights.length);
-        shaderProgram.setUniform("pointLights", viewPointLights);
-        shaderProgram.setUniform("spotLightCount", viewSpotLights.length);
-        shaderProgram.setUniform("spotLights", viewSpotLights);
-        shaderProgram.setUniform("directionalLight", currDirLight);
-
-        shaderProgram.setUniform("texture_sampler", 0);
-
-        for (Item gameItem : scene.getGameItems()) {
-            Mesh mesh = gameItem.getMesh();
-            Matrix4f modelViewMatrix = transformation.getModelViewMatrix(gameItem, viewMatrix);
-            shaderProgram.setUniform("modelViewMatrix", modelViewMatrix);
-            shaderProgram.setUniform("material", mesh.getMaterial());
-            mesh.render();
+        // Sort keys are built here rather than in the jobs: reading texture ids may upload
+        // deferred textures, which needs the GL thread.
+        for (int i = 0; i < itemCount; i++) {
+            if (Float.isNaN(depths[i])) {
+                culledItems++;
+                continue;
+            }
+            Mesh mesh = snapshot.getMesh(i);
+            Material material = mesh.getMaterial();
+            Texture texture = material.getTexture();
+            renderQueue.add(RenderQueue.makeKey(programId, material.getId(), texture != null ? texture.getId() : 0,
+                    mesh.getVaoId(), depths[i], Refs.PROJECTION_Z_FAR), i);
         }
+        renderQueue.sort();
+
+        materialUniform.reset();
+        int queueSize = renderQueue.size();
+        int start = 0;
+        while (start < queueSize) {
+            Mesh mesh = snapshot.getMesh(renderQueue.getItem(start));
+            int end = start + 1;
+            while (end < queueSize && snapshot.getMesh(renderQueue.getItem(end)) == mesh) {
+                end++;
+            }
 
-        shaderProgram.unbind();
+            materialUniform.set(mesh.getMaterial());
+            octNormalsUniform.set(mesh.getVertexFormat().hasOctNormals());
+            positionScaleUniform.set(mesh.getPositionScale());
+            positionOffsetUniform.set(mesh.getPositionOffset());
+            if (end - start == 1) {
+                modelMatrix.set(renderQueue.getItem(start) * 16, worldMatrices);
+                Matrix4f modelViewMatrix = transformation.getModelViewMatrix(modelMatrix, viewMatrix);
+                isInstancedUniform.set(0);
+                modelViewMatrixUniform.set(modelViewMatrix);
+                mesh.render();
+            } else {
+                renderInstanced(mesh, start, end - start);
+            }
+            drawnItems += end - start;
+            drawCalls++;
+            start = end;
+        }
     }
 
-    public void renderSkyBox(long windowId, Camera camera, ShaderProgram skyboxShaderProgram, Scene scene) {
-        skyboxShaderProgram.bind();
+    /**
+     * Interpolates the world matrices of the items in {@code [from, to)} and tests them against
+     * the frustum. Culled items get a NaN depth.
+     */
+    private void computeVisibility(int from, int to) {
+        Matrix4f worldMatrix = VISIBILITY_SCRATCH.get();
+        Matrix4f viewMatrix = frameViewMatrix;
+        for (int i = from; i < to; i++) {
+            frameSnapshot.getTransform(i, frameAlpha, worldMatrices, i * 16);
+            worldMatrix.set(i * 16, worldMatrices);
+            if (!frustumFilter.insideFrustum(frameSnapshot.getMesh(i), worldMatrix, frameSnapshot.getWorldScale(i))) {
+                depths[i] = Float.NaN;
+                continue;
+            }
+            depths[i] = -(viewMatrix.m02() * worldMatrix.m30() + viewMatrix.m12() * worldMatrix.m31()
+                    + viewMatrix.m22() * worldMatrix.m32() + viewMatrix.m32());
+        }
+    }
 
-        skyboxShaderProgram.setUniform("skybox", 0);
+    private void renderInstanced(Mesh mesh, int first, int numInstances) {
+        if (instanceBuffer.capacity() < numInstances * 16) {
+            instanceBuffer = MemoryUtil.memRealloc(instanceBuffer, numInstances * 16);
+        }
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer width = stack.mallocInt(1);
-            IntBuffer height = stack.mallocInt(1);
-            glfwGetWindowSize(windowId, width, height);
-            Matrix4f projectionMatrix = transformation.getProjectionMatrix(Refs.PROJECTION_FOV, width.get(0), height.get(0), Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR);
-            skyboxShaderProgram.setUniform("projectionMatrix", projectionMatrix);
+        long source = MemoryUtil.memAddress(worldMatrices);
+        long target = MemoryUtil.memAddress0(instanceBuffer);
+        for (int i = 0; i < numInstances; i++) {
+            MemoryUtil.memCopy(source + renderQueue.getItem(first + i) * 64L, target + i * 64L, 64);
         }
+        instanceBuffer.position(0).limit(numInstances * 16);
+
+        isInstancedUniform.set(1);
+        mesh.renderInstanced(instanceBuffer, numInstances);
+    }
+
+    public int getDrawnItems() {
+        return drawnItems;
+    }
 
-        Matrix4f viewMatrix = transformation.getViewMatrix(camera);
-        viewMatrix.m30(0);
-        viewMatrix.m31(0);
-        viewMatrix.m32(0);
-        viewMatrix.rotate((float)Math.toRadians(360), new Vector3f(0, 1, 0));
-        skyboxShaderProgram.setUniform("viewMatrix", viewMatrix);
+    public int getCulledItems() {
+        return culledItems;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void cleanup() {
+        if (hudBatch != null) {
+            hudBatch.cleanup();
+            hudBatch = null;
+        }
+        if (instanceBuffer != null) {
+            MemoryUtil.memFree(instanceBuffer);
+            instanceBuffer = null;
+        }
+        if (worldMatrices != null) {
+            MemoryUtil.memFree(worldMatrices);
+            worldMatrices = null;
+        }
+        if (frameUniformBuffer != null) {
+            frameUniformBuffer.cleanup();
+            frameUniformBuffer = null;
+        }
+        if (clusteredLighting != null) {
+            clusteredLighting.cleanup();
+            clusteredLighting = null;
+        }
+    }
 
-        glDepthFunc(GL_LEQUAL);
-        
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkyBox().getMesh().getMaterial().getTexture().getId());
+    public void renderSkyBox(Mesh skyBoxMesh, ShaderProgram skyboxShaderProgram) {
+        skyboxShaderProgram.bind();
 
-        scene.getSkyBox().getMesh().render();
-        glDepthFunc(GL_LESS);
+        skyboxSamplerUniform.set(0);
 
-        skyboxShaderProgram.unbind();
+        RenderState.depthFunc(GL_LEQUAL);
+        skyBoxMesh.render();
+        RenderState.depthFunc(GL_LESS);
     }
 
-    public void renderHud(long windowId, ShaderProgram hudShaderProgram, IHud hud) {
+    public void renderHud(RenderSnapshot snapshot, ShaderProgram hudShaderProgram) {
         hudShaderProgram.bind();
-        
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer width = stack.mallocInt(1);
-            IntBuffer height = stack.mallocInt(1);
-            glfwGetWindowSize(windowId, width, height);
-            Matrix4f ortho = transformation.getOrthoMatrix(0, width.get(0), height.get(0), 0, -1, 1);
-
-            for (Item gameItem : hud.getItems()) {
-                Mesh mesh = gameItem.getMesh();
-                Matrix4f projModelMatrix = transformation.buildOrthoProjModelMatrix(gameItem, ortho);
-                hudShaderProgram.setUniform("projModelMatrix", projModelMatrix);
-                hudShaderProgram.setUniform("colour", gameItem.getMesh().getMaterial().getAmbientColor());
-                hudShaderProgram.setUniform("texture_sampler", 0);
-                mesh.render();
-            }
+
+        RenderState.setBlend(true);
+        RenderState.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+
+        Matrix4f ortho = transformation.getOrthoMatrix(0, snapshot.getWindowWidth(), snapshot.getWindowHeight(), 0, -1, 1);
+        hudProjectionMatrixUniform.set(ortho);
+        hudTextureSamplerUniform.set(0);
+
+        if (snapshot.getHudVersion() != hudVersion) {
+            hudVersion = snapshot.getHudVersion();
+            hudBatch.upload(snapshot.getHudSprites());
         }
+        hudBatch.draw();
+        drawCalls += hudBatch.getDrawCalls();
 
-        glDisable(GL_BLEND);
-        hudShaderProgram.unbind();
+        RenderState.setBlend(false);
     }
 }
@@ -1,26 +1,23 @@
 package fr.acth2.engine.engine;
 
-import fr.acth2.engine.engine.light.DirectionalLight;
-import fr.acth2.engine.engine.light.PointLight;
-import fr.acth2.engine.engine.light.SpotLight;
-import fr.acth2.engine.engine.models.Material;
+import fr.acth2.engine.engine.uniforms.MaterialUniform;
+import fr.acth2.engine.engine.uniforms.Uniform;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
 
-import java.nio.FloatBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.*;
 
 public class ShaderProgram {
 
     private final int programId;
     private int vertexShaderId;
     private int fragmentShaderId;
-    private final Map<String, Integer> uniforms;
+    private final Map<String, Uniform> uniforms;
 
     public ShaderProgram() {
         programId = glCreateProgram();
@@ -30,129 +27,55 @@ public class ShaderProgram {
         }
     }
 
-    public void createUniform(String uniformName) {
+    public Uniform createUniform(String uniformName) {
         int uniformLocation = glGetUniformLocation(programId, uniformName);
         if (uniformLocation < 0) {
             System.err.println("Could not find uniform:" + uniformName);
         }
-        uniforms.put(uniformName, uniformLocation);
+        Uniform uniform = new Uniform(uniformName, uniformLocation);
+        uniforms.put(uniformName, uniform);
+        return uniform;
     }
 
-    public void createPointLightListUniform(String uniformName, int size) {
-        for (int i = 0; i < size; i++) {
-            createPointLightUniform(uniformName + "[" + i + "]");
-        }
-    }
-
-    public void createPointLightUniform(String uniformName) {
-        createUniform(uniformName + ".color");
-        createUniform(uniformName + ".position");
-        createUniform(uniformName + ".intensity");
-        createUniform(uniformName + ".att.constant");
-        createUniform(uniformName + ".att.linear");
-        createUniform(uniformName + ".att.exponent");
+    public MaterialUniform createMaterialUniform(String uniformName) {
+        return new MaterialUniform(this, uniformName);
     }
 
-    public void createSpotLightListUniform(String uniformName, int size) {
-        for (int i = 0; i < size; i++) {
-            createSpotLightUniform(uniformName + "[" + i + "]");
+    public void bindUniformBlock(String blockName, int bindingPoint) {
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex == GL_INVALID_INDEX) {
+            System.err.println("Could not find uniform block:" + blockName);
+            return;
         }
+        glUniformBlockBinding(programId, blockIndex, bindingPoint);
     }
 
-    public void createSpotLightUniform(String uniformName) {
-        createPointLightUniform(uniformName + ".pl");
-        createUniform(uniformName + ".coneDirection");
-        createUniform(uniformName + ".cutOff");
+    public int getProgramId() {
+        return programId;
     }
 
-    public void createMaterialUniform(String uniformName) {
-        createUniform(uniformName + ".ambient");
-        createUniform(uniformName + ".diffuse");
-        createUniform(uniformName + ".specular");
-        createUniform(uniformName + ".hasTexture");
-        createUniform(uniformName + ".reflectance");
-        createUniform(uniformName + ".unlit");
-        createUniform(uniformName + ".disableSpecular");
-    }
-
-    public void createDirectionalLightUniform(String uniformName) {
-        createUniform(uniformName + ".color");
-        createUniform(uniformName + ".direction");
-        createUniform(uniformName + ".intensity");
-    }
-
-    public void setUniform(String uniformName, DirectionalLight dirLight) {
-        setUniform(uniformName + ".color", dirLight.getColor() );
-        setUniform(uniformName + ".direction", dirLight.getPosition());
-        setUniform(uniformName + ".intensity", dirLight.getIntensity());
+    public Uniform getUniform(String uniformName) {
+        return uniforms.get(uniformName);
     }
 
     public void setUniform(String uniformName, Matrix4f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer fb = stack.mallocFloat(16);
-            value.get(fb);
-            glUniformMatrix4fv(uniforms.get(uniformName), false, fb);
-        }
-    }
-
-    public void setUniform(String uniformName, PointLight[] pointLights) {
-        int numLights = pointLights != null ? pointLights.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            setUniform(uniformName + "[" + i + "]", pointLights[i]);
-        }
-    }
-
-    public void setUniform(String uniformName, PointLight pointLight) {
-        if (pointLight != null) {
-            setUniform(uniformName + ".color", pointLight.getColor());
-            setUniform(uniformName + ".position", pointLight.getPosition());
-            setUniform(uniformName + ".intensity", pointLight.getIntensity());
-            PointLight.Attenuation att = pointLight.getAttenuation();
-            setUniform(uniformName + ".att.constant", att.getConstant());
-            setUniform(uniformName + ".att.linear", att.getLinear());
-            setUniform(uniformName + ".att.exponent", att.getExponent());
-        } else {
-            setUniform(uniformName + ".intensity", 0.0f);
-        }
-    }
-
-    public void setUniform(String uniformName, SpotLight[] spotLights) {
-        int numLights = spotLights != null ? spotLights.length : 0;
-        for (int i = 0; i < numLights; i++) {
-            setUniform(uniformName + "[" + i + "]", spotLights[i]);
-        }
-    }
-
-    public void setUniform(String uniformName, SpotLight spotLight) {
-        setUniform(uniformName + ".pl", spotLight.getPointLight());
-        setUniform(uniformName + ".coneDirection", spotLight.getConeDirection());
-        setUniform(uniformName + ".cutOff", spotLight.getCutOff());
-    }
-
-    public void setUniform(String uniformName, Material material) {
-        setUniform(uniformName + ".ambient", material.getAmbientColor());
-        setUniform(uniformName + ".diffuse", material.getDiffuseColor());
-        setUniform(uniformName + ".specular", material.getSpecularColor());
-        setUniform(uniformName + ".hasTexture", material.isTextured() ? 1 : 0);
-        setUniform(uniformName + ".reflectance", material.getReflectance());
-        setUniform(uniformName + ".unlit", material.isUnlit() ? 1 : 0);
-        setUniform(uniformName + ".disableSpecular", material.isDisableSpecular() ? 1 : 0);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, Vector4f value) {
-        glUniform4f(uniforms.get(uniformName), value.x, value.y, value.z, value.w);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, Vector3f value) {
-        glUniform3f(uniforms.get(uniformName), value.x, value.y, value.z);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, int value) {
-        glUniform1i(uniforms.get(uniformName), value);
+        uniforms.get(uniformName).set(value);
     }
 
     public void setUniform(String uniformName, float value) {
-        glUniform1f(uniforms.get(uniformName), value);
+        uniforms.get(uniformName).set(value);
     }
 
     public void createVertexShader(String shaderCode) throws Exception {
@@ -201,17 +124,18 @@ public class ShaderProgram {
     }
 
     public void bind() {
-        glUseProgram(programId);
+        RenderState.useProgram(programId);
     }
 
     public void unbind() {
-        glUseProgram(0);
+        RenderState.useProgram(0);
     }
 
     public void cleanup() {
         unbind();
         if (programId != 0) {
             glDeleteProgram(programId);
+            RenderState.programDeleted(programId);
         }
     }
 }
@@ -0,0 +1,160 @@
+package fr.acth2.engine.engine;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Retained batch of textured 2D quads. {@link #upload(SpriteList)} writes the quads of a
+ * {@link SpriteList} into one vertex buffer grouped by texture; {@link #draw()} then issues one
+ * draw call per texture, however many quads there are. Since the batch is retained, callers only
+ * upload again when what they draw changes.
+ */
+public class SpriteBatch {
+
+    private static final int VERTEX_SIZE_BYTES = SpriteList.VERTEX_SIZE_BYTES;
+    private static final int QUAD_SIZE_BYTES = SpriteList.QUAD_SIZE_BYTES;
+
+    private final int vaoId;
+    private final int vboId;
+    private final int idxVboId;
+    private final List<Texture> textures;
+    private final List<Run> uploadedRuns;
+    private int quadCapacity;
+    private int quadCount;
+    private int drawCalls;
+
+    public SpriteBatch() {
+        textures = new ArrayList<>();
+        uploadedRuns = new ArrayList<>();
+
+        vaoId = glGenVertexArrays();
+        RenderState.bindVertexArray(vaoId);
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, VERTEX_SIZE_BYTES, 0);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, VERTEX_SIZE_BYTES, 8);
+        glVertexAttribPointer(2, 4, GL_UNSIGNED_BYTE, true, VERTEX_SIZE_BYTES, 16);
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        idxVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        RenderState.bindVertexArray(0);
+    }
+
+    /**
+     * Copies the quads of {@code sprites} to the GPU, ordered so that quads sharing a texture are
+     * contiguous.
+     */
+    public void upload(SpriteList sprites) {
+        int runCount = sprites.getRunCount();
+        textures.clear();
+        int totalQuads = 0;
+        for (int run = 0; run < runCount; run++) {
+            if (!textures.contains(sprites.getTexture(run))) {
+                textures.add(sprites.getTexture(run));
+            }
+            totalQuads += sprites.getQuads(run);
+        }
+
+        RenderState.bindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        if (totalQuads > quadCapacity) {
+            reserve(Math.max(totalQuads, quadCapacity * 2));
+        }
+        glBufferData(GL_ARRAY_BUFFER, (long) quadCapacity * QUAD_SIZE_BYTES, GL_DYNAMIC_DRAW);
+
+        uploadedRuns.clear();
+        long offset = 0;
+        int firstQuad = 0;
+        ByteBuffer view = sprites.getVertices().duplicate();
+        for (Texture texture : textures) {
+            int quads = 0;
+            for (int run = 0; run < runCount; run++) {
+                if (sprites.getTexture(run) != texture) {
+                    continue;
+                }
+                int start = sprites.getStart(run);
+                view.limit(start + sprites.getQuads(run) * QUAD_SIZE_BYTES).position(start);
+                glBufferSubData(GL_ARRAY_BUFFER, offset, view);
+                offset += (long) sprites.getQuads(run) * QUAD_SIZE_BYTES;
+                quads += sprites.getQuads(run);
+            }
+            uploadedRuns.add(new Run(texture, firstQuad, quads));
+            firstQuad += quads;
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        quadCount = totalQuads;
+    }
+
+    private void reserve(int capacity) {
+        quadCapacity = capacity;
+        IntBuffer indices = MemoryUtil.memAllocInt(capacity * 6);
+        try {
+            for (int i = 0; i < capacity; i++) {
+                int v = i * 4;
+                indices.put(v).put(v + 1).put(v + 2).put(v).put(v + 2).put(v + 3);
+            }
+            indices.flip();
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        } finally {
+            MemoryUtil.memFree(indices);
+        }
+    }
+
+    /**
+     * Draws the uploaded quads, one draw call per texture, sampling from texture unit 0.
+     */
+    public void draw() {
+        drawCalls = 0;
+        if (quadCount == 0) {
+            return;
+        }
+        RenderState.bindVertexArray(vaoId);
+        for (Run run : uploadedRuns) {
+            RenderState.bindTexture(0, run.texture.getTarget(), run.texture.getId());
+            glDrawElements(GL_TRIANGLES, run.quads * 6, GL_UNSIGNED_INT, (long) run.start * 6 * 4);
+            drawCalls++;
+        }
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(vboId);
+        glDeleteBuffers(idxVboId);
+        glDeleteVertexArrays(vaoId);
+        RenderState.vertexArrayDeleted(vaoId);
+    }
+
+    /**
+     * Quads sharing a texture, starting at a quad index of the vertex buffer.
+     */
+    private static final class Run {
+        private final Texture texture;
+        private final int start;
+        private final int quads;
+
+        Run(Texture texture, int start, int quads) {
+            this.texture = texture;
+            this.start = start;
+            this.quads = quads;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package fr.acth2.engine.engine;
+
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Textured 2D quads recorded on the CPU for a {@link SpriteBatch} to upload. Filling a list needs
+ * no GL context, so it can happen on the simulation thread while the GL thread draws an older one.
+ * <p>
+ * Quads are stored in the vertex layout of the batch: a position and texture coordinates as
+ * floats followed by an RGBA8 colour. Quad vertices are given top-left, bottom-left, bottom-right,
+ * top-right. Each call to an {@code add} method records a run of quads sharing one texture.
+ */
+public class SpriteList {
+
+    static final int VERTEX_SIZE_BYTES = 4 * 4 + 4;
+    static final int QUAD_SIZE_BYTES = 4 * VERTEX_SIZE_BYTES;
+
+    private ByteBuffer vertices;
+    private Texture[] textures;
+    private int[] starts;
+    private int[] quads;
+    private int runCount;
+
+    public SpriteList() {
+        vertices = MemoryUtil.memAlloc(64 * QUAD_SIZE_BYTES);
+        textures = new Texture[16];
+        starts = new int[16];
+        quads = new int[16];
+    }
+
+    public void clear() {
+        Arrays.fill(textures, 0, runCount, null);
+        runCount = 0;
+        vertices.clear();
+    }
+
+    /**
+     * Adds quads whose vertices are stored as (x, y, u, v) floats, four vertices per quad, moved
+     * by {@code (x, y)} and scaled by {@code scale}.
+     */
+    public void add(Texture texture, float[] vertices, int quads, float x, float y, float scale, Vector4f colour) {
+        if (quads == 0) {
+            return;
+        }
+        ensureCapacity(quads);
+        int rgba = packColour(colour);
+        int start = this.vertices.position();
+        for (int i = 0; i < quads * 16; i += 4) {
+            this.vertices.putFloat(x + vertices[i] * scale)
+                    .putFloat(y + vertices[i + 1] * scale)
+                    .putFloat(vertices[i + 2])
+                    .putFloat(vertices[i + 3])
+                    .putInt(rgba);
+        }
+        addRun(texture, start, quads);
+    }
+
+    /**
+     * Adds a single axis-aligned sprite covering {@code [x0, x1] x [y0, y1]}.
+     */
+    public void addQuad(Texture texture, float x0, float y0, float x1, float y1,
+                        float u0, float v0, float u1, float v1, Vector4f colour) {
+        ensureCapacity(1);
+        int rgba = packColour(colour);
+        int start = vertices.position();
+        vertices.putFloat(x0).putFloat(y0).putFloat(u0).putFloat(v0).putInt(rgba);
+        vertices.putFloat(x0).putFloat(y1).putFloat(u0).putFloat(v1).putInt(rgba);
+        vertices.putFloat(x1).putFloat(y1).putFloat(u1).putFloat(v1).putInt(rgba);
+        vertices.putFloat(x1).putFloat(y0).putFloat(u1).putFloat(v0).putInt(rgba);
+        addRun(texture, start, 1);
+    }
+
+    private void addRun(Texture texture, int start, int count) {
+        if (runCount == textures.length) {
+            int capacity = runCount * 2;
+            textures = Arrays.copyOf(textures, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            quads = Arrays.copyOf(quads, capacity);
+        }
+        textures[runCount] = texture;
+        starts[runCount] = start;
+        quads[runCount] = count;
+        runCount++;
+    }
+
+    private static int packColour(Vector4f colour) {
+        // Written in native order so the bytes land in memory as R, G, B, A.
+        int r = Math.round(Math.min(Math.max(colour.x, 0), 1) * 255);
+        int g = Math.round(Math.min(Math.max(colour.y, 0), 1) * 255);
+        int b = Math.round(Math.min(Math.max(colour.z, 0), 1) * 255);
+        int a = Math.round(Math.min(Math.max(colour.w, 0), 1) * 255);
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+                ? r | g << 8 | b << 16 | a << 24
+                : r << 24 | g << 16 | b << 8 | a;
+    }
+
+    private void ensureCapacity(int quads) {
+        int needed = vertices.position() + quads * QUAD_SIZE_BYTES;
+        if (needed > vertices.capacity()) {
+            vertices = MemoryUtil.memRealloc(vertices, Math.max(needed, vertices.capacity() * 2));
+        }
+    }
+
+    /**
+     * Vertex data of every run; each run starts at the byte offset given by {@link #getStart}.
+     */
+    ByteBuffer getVertices() {
+        return vertices;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public Texture getTexture(int run) {
+        return textures[run];
+    }
+
+    int getStart(int run) {
+        return starts[run];
+    }
+
+    public int getQuads(int run) {
+        return quads[run];
+    }
+
+    public void free() {
+        if (vertices != null) {
+            MemoryUtil.memFree(vertices);
+            vertices = null;
+        }
+    }
+}
@@ -3,34 +3,86 @@ package fr.acth2.engine.engine;
 import de.matthiasmann.twl.utils.PNGDecoder;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import org.lwjgl.system.MemoryStack;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
-import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 
+/**
+ * GL texture object. A texture starts with one reference held by whoever created it; users that
+ * share it call {@link #retain()} and every user calls {@link #release()} when done. The GL
+ * object is deleted when the last reference goes away.
+ * <p>
+ * Textures streamed by a {@link TextureStreamer} exist before their pixels do. Until the upload
+ * has completed on the GPU, {@link #getId()} returns the id of a placeholder texture.
+ * <p>
+ * Deferred textures are created without a GL context and upload their pixels the first time
+ * {@link #getId()} is called, which then has to happen on the GL thread.
+ */
 public class Texture {
 
+    private static long residentBytes;
+
     private int id;
+    private int target;
     private int width;
     private int height;
+    private long sizeBytes;
+    private int refCount = 1;
+    private Object cacheKey;
+    private Texture placeholder;
+    private TextureData deferredData;
+    private TextureSampler deferredSampler;
 
     public Texture(ByteBuffer imageBuffer, int width, int height) {
-        this.width = width;
-        this.height = height;
-        this.id = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, this.id);
-        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageBuffer);
-        glGenerateMipmap(GL_TEXTURE_2D);
-        glBindTexture(GL_TEXTURE_2D, 0);
+        upload(imageBuffer, width, height, TextureSampler.DEFAULT);
+    }
+
+    public Texture(TextureData data) {
+        this(data, TextureSampler.DEFAULT);
+    }
+
+    public Texture(TextureData data, TextureSampler sampler) {
+        upload(data.getPixels(), data.getWidth(), data.getHeight(), sampler);
+    }
+
+    /**
+     * Uploads a KTX2 texture with the mip levels and faces it was stored with; no mipmaps are
+     * generated. The data stays owned by the caller.
+     */
+    public Texture(CompressedTextureData data, TextureSampler sampler) {
+        upload(data, sampler);
+    }
+
+    private Texture(Texture placeholder) {
+        this.target = GL_TEXTURE_2D;
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * Creates a texture with no storage yet that samples as {@code placeholder} until it is
+     * allocated, filled and marked ready.
+     */
+    static Texture pending(Texture placeholder) {
+        return new Texture(placeholder);
+    }
+
+    /**
+     * Creates a texture that uploads {@code data} on first use. Takes ownership of the data.
+     */
+    public static Texture deferred(TextureData data, TextureSampler sampler) {
+        Texture texture = new Texture((Texture) null);
+        texture.width = data.getWidth();
+        texture.height = data.getHeight();
+        texture.deferredData = data;
+        texture.deferredSampler = sampler;
+        return texture;
     }
 
     public Texture(String[] textureFiles) throws Exception {
+        target = GL_TEXTURE_CUBE_MAP;
         id = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, id);
+        RenderState.bindTexture(0, GL_TEXTURE_CUBE_MAP, id);
 
         for (int i = 0; i < textureFiles.length; i++) {
             try (InputStream in = Texture.class.getResourceAsStream(textureFiles[i])) {
@@ -42,50 +94,164 @@ public class Texture {
                 decoder.decode(buf, decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
                 buf.flip();
                 glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_RGBA, decoder.getWidth(), decoder.getHeight(), 0, GL_RGBA, GL_UNSIGNED_BYTE, buf);
+                width = decoder.getWidth();
+                height = decoder.getHeight();
+                sizeBytes += 4L * width * height;
             }
         }
+        residentBytes += sizeBytes;
 
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
-        
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);
     }
 
     public Texture(String fileName) {
-        try (InputStream in = Texture.class.getResourceAsStream(fileName)) {
-            if (in == null) {
-                throw new RuntimeException("Resource not found: " + fileName);
-            }
-
-            PNGDecoder decoder = new PNGDecoder(in);
-            this.width = decoder.getWidth();
-            this.height = decoder.getHeight();
-
-            ByteBuffer buf = ByteBuffer.allocateDirect(4 * width * height);
-            decoder.decode(buf, width * 4, PNGDecoder.Format.RGBA);
-            buf.flip();
-
-            this.id = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, this.id);
-            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buf);
-            glGenerateMipmap(GL_TEXTURE_2D);
-            glBindTexture(GL_TEXTURE_2D, 0);
+        TextureData data = null;
+        try {
+            data = TextureData.decodePng(fileName);
+            upload(data.getPixels(), data.getWidth(), data.getHeight(), TextureSampler.DEFAULT);
         } catch (Exception e) {
             System.err.println("Error loading texture: " + fileName);
             e.printStackTrace();
+        } finally {
+            if (data != null) {
+                data.free();
+            }
+        }
+    }
+
+    private void upload(ByteBuffer imageBuffer, int width, int height, TextureSampler sampler) {
+        this.width = width;
+        this.height = height;
+        this.target = GL_TEXTURE_2D;
+        this.id = glGenTextures();
+        RenderState.bindTexture(0, GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageBuffer);
+        sampler.apply();
+
+        long baseBytes = 4L * width * height;
+        sizeBytes = sampler.hasMipmaps() ? baseBytes * 4 / 3 : baseBytes;
+        residentBytes += sizeBytes;
+    }
+
+    /**
+     * Allocates uninitialized storage for a pending texture.
+     */
+    void allocate(int width, int height, TextureSampler sampler) {
+        this.width = width;
+        this.height = height;
+        this.id = glGenTextures();
+        RenderState.bindTexture(0, GL_TEXTURE_2D, this.id);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+
+        long baseBytes = 4L * width * height;
+        sizeBytes = sampler.hasMipmaps() ? baseBytes * 4 / 3 : baseBytes;
+        residentBytes += sizeBytes;
+    }
+
+    /**
+     * Copies the base level from the buffer bound to {@code GL_PIXEL_UNPACK_BUFFER}, starting at
+     * offset 0, then applies the sampler. The copy is queued on the GPU and does not block.
+     */
+    void uploadFromUnpackBuffer(TextureSampler sampler) {
+        RenderState.bindTexture(0, GL_TEXTURE_2D, id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        sampler.apply();
+    }
+
+    void markReady() {
+        placeholder = null;
+    }
+
+    public boolean isReady() {
+        return placeholder == null;
+    }
+
+    private void upload(CompressedTextureData data, TextureSampler sampler) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer targetBuffer = stack.mallocInt(1);
+            this.id = data.upload(targetBuffer);
+            this.target = targetBuffer.get(0);
         }
+        this.width = data.getWidth();
+        this.height = data.getHeight();
+        RenderState.bindTexture(0, target, id);
+        sampler.applyParameters(target, data.getLevels());
+
+        sizeBytes = data.getDataSize();
+        residentBytes += sizeBytes;
+    }
+
+    /**
+     * Fills a pending texture from compressed data in one go. Compressed images are small enough
+     * that a direct upload costs less than staging them.
+     */
+    void allocate(CompressedTextureData data, TextureSampler sampler) {
+        upload(data, sampler);
+    }
+
+    public Texture retain() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("Texture " + id + " has already been released");
+        }
+        refCount++;
+        return this;
+    }
+
+    /**
+     * Drops one reference and deletes the texture when it was the last one.
+     */
+    public void release() {
+        if (refCount <= 0) {
+            return;
+        }
+        if (--refCount == 0) {
+            if (cacheKey != null) {
+                TextureCache.evict(cacheKey, this);
+                cacheKey = null;
+            }
+            cleanup();
+        }
+    }
+
+    void setCacheKey(Object cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Estimated GPU memory held by all live textures, mip chains included.
+     */
+    public static long getResidentBytes() {
+        return residentBytes;
     }
 
     public int getId() {
-        return id;
+        if (deferredData != null) {
+            try {
+                upload(deferredData.getPixels(), deferredData.getWidth(), deferredData.getHeight(), deferredSampler);
+            } finally {
+                deferredData.free();
+                deferredData = null;
+            }
+        }
+        return placeholder != null ? placeholder.getId() : id;
+    }
+
+    public int getTarget() {
+        return target;
     }
 
     public int getWidth() {
@@ -97,6 +263,17 @@ public class Texture {
     }
 
     public void cleanup() {
+        if (deferredData != null) {
+            deferredData.free();
+            deferredData = null;
+        }
+        if (id == 0) {
+            return;
+        }
         glDeleteTextures(id);
+        RenderState.textureDeleted(id);
+        residentBytes -= sizeBytes;
+        sizeBytes = 0;
+        id = 0;
     }
 }
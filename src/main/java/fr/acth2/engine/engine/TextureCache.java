@@ -0,0 +1,134 @@
+package fr.acth2.engine.engine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of textures loaded from resources, keyed by resource path and sampler settings.
+ * When a converted KTX2 file sits next to a PNG (see {@link CompressedTextureData#resolve}),
+ * the compressed version is loaded instead.
+ * Acquiring a texture that is already resident returns the same GL texture with one more
+ * reference instead of decoding and uploading it again. Releasing the last reference (through
+ * {@link Texture#release()}) deletes it and removes it from the registry.
+ * <p>
+ * Like the rest of the GL state, the registry is only used from the GL thread.
+ */
+public final class TextureCache {
+
+    private static final Map<Key, Texture> textures = new HashMap<>();
+
+    private TextureCache() {
+    }
+
+    public static Texture acquire(String path) throws IOException {
+        return acquire(path, TextureSampler.DEFAULT);
+    }
+
+    public static Texture acquire(String path, TextureSampler sampler) throws IOException {
+        Key key = new Key(path, sampler);
+        Texture texture = textures.get(key);
+        if (texture != null) {
+            return texture.retain();
+        }
+
+        return register(key, load(path, sampler));
+    }
+
+    private static Texture load(String path, TextureSampler sampler) throws IOException {
+        String compressedPath = CompressedTextureData.resolve(path);
+        if (compressedPath != null) {
+            CompressedTextureData data = CompressedTextureData.load(compressedPath, CompressedTextureData.getTranscodeFormat());
+            try {
+                return new Texture(data, sampler);
+            } finally {
+                data.free();
+            }
+        }
+
+        TextureData data = TextureData.decodePng(path);
+        try {
+            return new Texture(data, sampler);
+        } finally {
+            data.free();
+        }
+    }
+
+    /**
+     * Variant for callers that already decoded the image, typically on a loader thread. The
+     * decoded data is only uploaded on a miss; either way it stays owned by the caller.
+     */
+    public static Texture acquire(String path, TextureSampler sampler, TextureData decoded) {
+        Key key = new Key(path, sampler);
+        Texture texture = textures.get(key);
+        if (texture != null) {
+            return texture.retain();
+        }
+        return register(key, new Texture(decoded, sampler));
+    }
+
+    /**
+     * Variant that streams the texture in the background on a miss. The returned texture samples
+     * as the streamer's placeholder until its upload has completed.
+     */
+    public static Texture acquire(String path, TextureSampler sampler, TextureStreamer streamer) {
+        Key key = new Key(path, sampler);
+        Texture texture = textures.get(key);
+        if (texture != null) {
+            return texture.retain();
+        }
+        return register(key, streamer.load(path, sampler));
+    }
+
+    public static boolean contains(String path, TextureSampler sampler) {
+        return textures.containsKey(new Key(path, sampler));
+    }
+
+    private static Texture register(Key key, Texture texture) {
+        texture.setCacheKey(key);
+        textures.put(key, texture);
+        return texture;
+    }
+
+    static void evict(Object key, Texture texture) {
+        textures.remove(key, texture);
+    }
+
+    public static int size() {
+        return textures.size();
+    }
+
+    /**
+     * Estimated GPU memory held by the textures currently in the registry.
+     */
+    public static long getCachedBytes() {
+        long bytes = 0;
+        for (Texture texture : textures.values()) {
+            bytes += texture.getSizeBytes();
+        }
+        return bytes;
+    }
+
+    private static final class Key {
+        private final String path;
+        private final TextureSampler sampler;
+
+        Key(String path, TextureSampler sampler) {
+            this.path = path;
+            this.sampler = sampler;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return path.equals(k.path) && sampler.equals(k.sampler);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + sampler.hashCode();
+        }
+    }
+}
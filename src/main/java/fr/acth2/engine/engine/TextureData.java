@@ -0,0 +1,65 @@
+package fr.acth2.engine.engine;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decoded RGBA8 pixels waiting to be uploaded by a {@link Texture}. Decoding needs no GL context,
+ * so it can run on a loader thread.
+ */
+public class TextureData {
+
+    private ByteBuffer pixels;
+    private final int width;
+    private final int height;
+
+    public TextureData(ByteBuffer pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static TextureData decodePng(String fileName) throws IOException {
+        try (InputStream in = TextureData.class.getResourceAsStream(fileName)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + fileName);
+            }
+
+            PNGDecoder decoder = new PNGDecoder(in);
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            ByteBuffer buf = MemoryUtil.memAlloc(4 * width * height);
+            try {
+                decoder.decode(buf, width * 4, PNGDecoder.Format.RGBA);
+            } catch (IOException | RuntimeException e) {
+                MemoryUtil.memFree(buf);
+                throw e;
+            }
+            buf.flip();
+            return new TextureData(buf, width, height);
+        }
+    }
+
+    public ByteBuffer getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void free() {
+        if (pixels != null) {
+            MemoryUtil.memFree(pixels);
+            pixels = null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fr.acth2.engine.engine;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_WRAP_R;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL30.glGenerateMipmap;
+
+/**
+ * Filtering, wrapping and mipmapping applied to a texture when it is created. Samplers are
+ * immutable and compare by value so they can take part in a {@link TextureCache} key.
+ */
+public final class TextureSampler {
+
+    public static final TextureSampler DEFAULT = new TextureSampler(GL_LINEAR, GL_LINEAR, GL_REPEAT, GL_REPEAT, true);
+    public static final TextureSampler CLAMPED = new TextureSampler(GL_LINEAR, GL_LINEAR, GL_CLAMP_TO_EDGE, GL_CLAMP_TO_EDGE, false);
+
+    private final int minFilter;
+    private final int magFilter;
+    private final int wrapS;
+    private final int wrapT;
+    private final boolean mipmaps;
+
+    public TextureSampler(int minFilter, int magFilter, int wrapS, int wrapT, boolean mipmaps) {
+        this.minFilter = minFilter;
+        this.magFilter = magFilter;
+        this.wrapS = wrapS;
+        this.wrapT = wrapT;
+        this.mipmaps = mipmaps;
+    }
+
+    /**
+     * Sets the parameters on the texture bound to {@code GL_TEXTURE_2D} and builds its mip chain
+     * if requested. Must be called after the base level is specified.
+     */
+    void apply() {
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, wrapS);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, wrapT);
+        if (mipmaps) {
+            glGenerateMipmap(GL_TEXTURE_2D);
+        }
+    }
+
+    /**
+     * Sets the parameters on the texture bound to {@code target} without touching its levels.
+     * Used for textures whose mip chain was loaded with them; sampling is limited to the
+     * {@code levels} that exist so a single-level texture stays complete.
+     */
+    void applyParameters(int target, int levels) {
+        glTexParameteri(target, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(target, GL_TEXTURE_MAG_FILTER, magFilter);
+        glTexParameteri(target, GL_TEXTURE_WRAP_S, wrapS);
+        glTexParameteri(target, GL_TEXTURE_WRAP_T, wrapT);
+        if (target == GL_TEXTURE_CUBE_MAP) {
+            glTexParameteri(target, GL_TEXTURE_WRAP_R, wrapT);
+        }
+        glTexParameteri(target, GL_TEXTURE_MAX_LEVEL, levels - 1);
+    }
+
+    public boolean hasMipmaps() {
+        return mipmaps;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TextureSampler)) return false;
+        TextureSampler s = (TextureSampler) o;
+        return minFilter == s.minFilter && magFilter == s.magFilter
+                && wrapS == s.wrapS && wrapT == s.wrapT && mipmaps == s.mipmaps;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = minFilter;
+        result = 31 * result + magFilter;
+        result = 31 * result + wrapS;
+        result = 31 * result + wrapT;
+        result = 31 * result + (mipmaps ? 1 : 0);
+        return result;
+    }
+}
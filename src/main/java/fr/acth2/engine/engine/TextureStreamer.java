@@ -0,0 +1,398 @@
+package fr.acth2.engine.engine;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.glBufferStorage;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * Streams PNG textures to the GPU without blocking the GL thread.
+ * <p>
+ * A streamed texture goes through four steps:
+ * <ol>
+ *     <li>a worker opens the resource and reads the PNG header to learn its size;</li>
+ *     <li>the GL thread reserves a pixel buffer object large enough for the image, maps it and
+ *     allocates the texture storage;</li>
+ *     <li>a worker decodes the pixels straight into the mapped staging memory;</li>
+ *     <li>the GL thread issues {@code glTexSubImage2D} from the PBO, which the driver executes
+ *     asynchronously, and places a fence behind it.</li>
+ * </ol>
+ * Once the fence has signaled the texture is marked ready and the staging buffer is reused.
+ * Until then the texture samples as a small placeholder.
+ * <p>
+ * Images that have a converted KTX2 counterpart (see {@link CompressedTextureData#resolve}) skip
+ * the staging path: a worker loads and transcodes the container, and the GL thread uploads the
+ * much smaller compressed levels directly.
+ * <p>
+ * When {@code ARB_buffer_storage} is available the staging buffers are mapped once, persistently;
+ * otherwise they are mapped for each upload. Only a few staging buffers exist at a time, so the
+ * amount of memory in flight stays bounded and further requests wait for a free one.
+ * <p>
+ * {@link #load}, {@link #update()} and {@link #cleanup()} belong to the GL thread.
+ */
+public class TextureStreamer {
+
+    private static final int MAX_STAGING_BUFFERS = 4;
+
+    private final Executor workers;
+    private final boolean persistentMapping;
+    private final int transcodeFormat;
+    private final Texture placeholder;
+    private final List<StagingBuffer> stagingBuffers;
+    private final ConcurrentLinkedQueue<Request> headersRead;
+    private final ConcurrentLinkedQueue<Request> decoded;
+    private final ConcurrentLinkedQueue<Request> compressedLoaded;
+    private final ArrayDeque<Request> waitingForStaging;
+    private final List<Request> inFlight;
+    private int pending;
+
+    public TextureStreamer(Executor workers) {
+        this.workers = workers;
+        this.persistentMapping = GL.getCapabilities().GL_ARB_buffer_storage;
+        this.transcodeFormat = CompressedTextureData.getTranscodeFormat();
+        this.placeholder = createPlaceholder();
+        this.stagingBuffers = new ArrayList<>();
+        this.headersRead = new ConcurrentLinkedQueue<>();
+        this.decoded = new ConcurrentLinkedQueue<>();
+        this.compressedLoaded = new ConcurrentLinkedQueue<>();
+        this.waitingForStaging = new ArrayDeque<>();
+        this.inFlight = new ArrayList<>();
+    }
+
+    private static Texture createPlaceholder() {
+        ByteBuffer pixels = MemoryUtil.memAlloc(2 * 2 * 4);
+        try {
+            // 2x2 checker, one RGBA byte at a time so the layout doesn't depend on byte order.
+            putGrey(pixels, (byte) 0xA0);
+            putGrey(pixels, (byte) 0x70);
+            putGrey(pixels, (byte) 0x70);
+            putGrey(pixels, (byte) 0xA0);
+            pixels.flip();
+            TextureSampler sampler = new TextureSampler(GL_NEAREST, GL_NEAREST, GL_REPEAT, GL_REPEAT, false);
+            return new Texture(new TextureData(pixels, 2, 2), sampler);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    private static void putGrey(ByteBuffer pixels, byte level) {
+        pixels.put(level).put(level).put(level).put((byte) 0xFF);
+    }
+
+    /**
+     * Starts streaming a PNG resource and returns its texture right away. Prefer
+     * {@link TextureCache#acquire(String, TextureSampler, TextureStreamer)}, which avoids streaming
+     * the same resource twice.
+     */
+    public Texture load(String path, TextureSampler sampler) {
+        Request request = new Request(path, sampler, Texture.pending(placeholder));
+        pending++;
+        String compressedPath = CompressedTextureData.resolve(path);
+        if (compressedPath != null) {
+            workers.execute(() -> loadCompressed(request, compressedPath));
+        } else {
+            workers.execute(() -> readHeader(request));
+        }
+        return request.texture;
+    }
+
+    private void loadCompressed(Request request, String compressedPath) {
+        try {
+            request.compressed = CompressedTextureData.load(compressedPath, transcodeFormat);
+        } catch (Throwable e) {
+            request.error = e;
+        }
+        compressedLoaded.add(request);
+    }
+
+    private void readHeader(Request request) {
+        try {
+            request.in = TextureStreamer.class.getResourceAsStream(request.path);
+            if (request.in == null) {
+                throw new IOException("Resource not found: " + request.path);
+            }
+            request.decoder = new PNGDecoder(request.in);
+        } catch (Throwable e) {
+            request.error = e;
+        }
+        headersRead.add(request);
+    }
+
+    private void decode(Request request) {
+        try {
+            ByteBuffer target = request.staging.memory.duplicate();
+            target.clear();
+            target.limit(request.byteSize());
+            request.decoder.decode(target, request.decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
+        } catch (Throwable e) {
+            request.error = e;
+        } finally {
+            request.closeInput();
+        }
+        decoded.add(request);
+    }
+
+    /**
+     * Advances streamed textures: hands staging memory to decoded headers, queues the GPU copies
+     * of decoded images and retires the copies that have completed. Never waits on the GPU.
+     */
+    public void update() {
+        Request request;
+        while ((request = compressedLoaded.poll()) != null) {
+            if (request.error != null) {
+                fail(request);
+                continue;
+            }
+            try {
+                if (request.texture.getRefCount() > 0) {
+                    request.texture.allocate(request.compressed, request.sampler);
+                    request.texture.markReady();
+                }
+                pending--;
+            } catch (RuntimeException e) {
+                request.error = e;
+                fail(request);
+            } finally {
+                request.compressed.free();
+            }
+        }
+
+        while ((request = headersRead.poll()) != null) {
+            if (request.error != null) {
+                fail(request);
+            } else {
+                waitingForStaging.add(request);
+            }
+        }
+
+        while ((request = waitingForStaging.peek()) != null) {
+            if (request.texture.getRefCount() == 0) {
+                waitingForStaging.poll();
+                request.closeInput();
+                pending--;
+                continue;
+            }
+            StagingBuffer staging = reserveStaging(request.byteSize());
+            if (staging == null) {
+                break;
+            }
+            waitingForStaging.poll();
+            request.staging = staging;
+            request.texture.allocate(request.decoder.getWidth(), request.decoder.getHeight(), request.sampler);
+            Request toDecode = request;
+            workers.execute(() -> decode(toDecode));
+        }
+
+        while ((request = decoded.poll()) != null) {
+            StagingBuffer staging = request.staging;
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, staging.id);
+            if (!persistentMapping) {
+                glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+                staging.memory = null;
+            }
+            if (request.error != null || request.texture.getRefCount() == 0) {
+                glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+                staging.busy = false;
+                if (request.error != null) {
+                    fail(request);
+                } else {
+                    pending--;
+                }
+                continue;
+            }
+            request.texture.uploadFromUnpackBuffer(request.sampler);
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+            request.fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            inFlight.add(request);
+        }
+
+        Iterator<Request> it = inFlight.iterator();
+        while (it.hasNext()) {
+            request = it.next();
+            int status = glClientWaitSync(request.fence, 0, 0);
+            if (status == GL_TIMEOUT_EXPIRED) {
+                continue;
+            }
+            glDeleteSync(request.fence);
+            request.staging.busy = false;
+            request.texture.markReady();
+            pending--;
+            it.remove();
+        }
+    }
+
+    private void fail(Request request) {
+        pending--;
+        request.closeInput();
+        System.err.println("Error streaming texture: " + request.path);
+        request.error.printStackTrace();
+    }
+
+    private StagingBuffer reserveStaging(int size) {
+        StagingBuffer reusable = null;
+        StagingBuffer tooSmall = null;
+        for (StagingBuffer staging : stagingBuffers) {
+            if (staging.busy) {
+                continue;
+            }
+            if (staging.capacity >= size) {
+                reusable = staging;
+                break;
+            }
+            tooSmall = staging;
+        }
+
+        if (reusable == null) {
+            if (stagingBuffers.size() >= MAX_STAGING_BUFFERS) {
+                if (tooSmall == null) {
+                    return null;
+                }
+                tooSmall.delete();
+                stagingBuffers.remove(tooSmall);
+            }
+            reusable = new StagingBuffer(size, persistentMapping);
+            stagingBuffers.add(reusable);
+        }
+
+        if (!persistentMapping) {
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, reusable.id);
+            reusable.memory = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, size,
+                    GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT, null);
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+        reusable.busy = true;
+        return reusable;
+    }
+
+    public boolean isIdle() {
+        return pending == 0;
+    }
+
+    public Texture getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * Releases the staging buffers, fences and placeholder, and drops every request still
+     * streaming: their inputs are closed, their decoded data freed and the storage of their
+     * unfinished textures deleted. The worker pool must have stopped before this is called, since
+     * workers write into requests and mapped staging memory.
+     */
+    public void cleanup() {
+        for (Request request : inFlight) {
+            glDeleteSync(request.fence);
+            discard(request);
+        }
+        inFlight.clear();
+        discardAll(compressedLoaded);
+        discardAll(headersRead);
+        discardAll(waitingForStaging);
+        discardAll(decoded);
+        pending = 0;
+        for (StagingBuffer staging : stagingBuffers) {
+            staging.delete();
+        }
+        stagingBuffers.clear();
+        placeholder.cleanup();
+    }
+
+    private static void discardAll(Queue<Request> requests) {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            discard(request);
+        }
+    }
+
+    private static void discard(Request request) {
+        request.closeInput();
+        if (request.compressed != null) {
+            request.compressed.free();
+            request.compressed = null;
+        }
+        // Holders keep their reference; the texture just stays on its placeholder, empty.
+        request.texture.cleanup();
+    }
+
+    private static final class StagingBuffer {
+        private final int id;
+        private final int capacity;
+        private ByteBuffer memory;
+        private boolean busy;
+
+        StagingBuffer(int capacity, boolean persistent) {
+            this.capacity = capacity;
+            this.id = glGenBuffers();
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, id);
+            if (persistent) {
+                int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+                glBufferStorage(GL_PIXEL_UNPACK_BUFFER, capacity, flags);
+                memory = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, capacity, flags, null);
+            } else {
+                glBufferData(GL_PIXEL_UNPACK_BUFFER, capacity, GL_STREAM_DRAW);
+            }
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+
+        void delete() {
+            if (memory != null) {
+                glBindBuffer(GL_PIXEL_UNPACK_BUFFER, id);
+                glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+                glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+                memory = null;
+            }
+            glDeleteBuffers(id);
+        }
+    }
+
+    private static final class Request {
+        private final String path;
+        private final TextureSampler sampler;
+        private final Texture texture;
+        private InputStream in;
+        private PNGDecoder decoder;
+        private CompressedTextureData compressed;
+        private StagingBuffer staging;
+        private long fence;
+        private Throwable error;
+
+        Request(String path, TextureSampler sampler, Texture texture) {
+            this.path = path;
+            this.sampler = sampler;
+            this.texture = texture;
+        }
+
+        int byteSize() {
+            return 4 * decoder.getWidth() * decoder.getHeight();
+        }
+
+        void closeInput() {
+            if (in == null) {
+                return;
+            }
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            in = null;
+        }
+    }
+}
@@ -9,14 +9,36 @@ public class Camera {
 
     private final Vector3f rotation;
 
+    private final Vector3f previousPosition;
+
+    private final Vector3f previousRotation;
+
     public Camera() {
-        position = new Vector3f(0, 0, 0);
-        rotation = new Vector3f(0, 0, 0);
+        this(new Vector3f(0, 0, 0), new Vector3f(0, 0, 0));
     }
 
     public Camera(Vector3f position, Vector3f rotation) {
         this.position = position;
         this.rotation = rotation;
+        this.previousPosition = new Vector3f(position);
+        this.previousRotation = new Vector3f(rotation);
+    }
+
+    /**
+     * Records the state renderers interpolate from until the next call. Called each time the
+     * camera is handed to the renderer, so mouse look between ticks is interpolated as well.
+     */
+    public void storePreviousState() {
+        previousPosition.set(position);
+        previousRotation.set(rotation);
+    }
+
+    public Vector3f getPreviousPosition() {
+        return previousPosition;
+    }
+
+    public Vector3f getPreviousRotation() {
+        return previousRotation;
     }
 
     public Vector3f getPosition() {
@@ -27,6 +49,7 @@ public class Camera {
         position.x = x;
         position.y = y;
         position.z = z;
+        previousPosition.set(position);
     }
 
     public void movePosition(float offsetX, float offsetY, float offsetZ) {
@@ -0,0 +1,50 @@
+package fr.acth2.engine.engine.camera;
+
+import fr.acth2.engine.engine.models.Mesh;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Tests meshes against the view frustum. Once the frustum is set, {@link #insideFrustum} may be
+ * called from several threads at once.
+ */
+public class FrustumCullingFilter {
+
+    private static final ThreadLocal<Vector3f[]> SCRATCH =
+            ThreadLocal.withInitial(() -> new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f()});
+
+    private final Matrix4f prjViewMatrix;
+    private final FrustumIntersection frustumInt;
+
+    public FrustumCullingFilter() {
+        prjViewMatrix = new Matrix4f();
+        frustumInt = new FrustumIntersection();
+    }
+
+    public void updateFrustum(Matrix4f projMatrix, Matrix4f viewMatrix) {
+        prjViewMatrix.set(projMatrix);
+        prjViewMatrix.mul(viewMatrix);
+        frustumInt.set(prjViewMatrix);
+    }
+
+    public boolean insideFrustum(Mesh mesh, Matrix4f modelMatrix, float scale) {
+        Vector3f[] scratch = SCRATCH.get();
+        Vector3f center = scratch[0];
+        Vector3f aabbMin = scratch[1];
+        Vector3f aabbMax = scratch[2];
+        modelMatrix.transformPosition(mesh.getBoundingCenter(), center);
+        if (!frustumInt.testSphere(center, mesh.getBoundingRadius() * scale)) {
+            return false;
+        }
+
+        Vector3f min = mesh.getAabbMin();
+        Vector3f max = mesh.getAabbMax();
+        modelMatrix.transformAab(min.x, min.y, min.z, max.x, max.y, max.z, aabbMin, aabbMax);
+        return frustumInt.testAab(aabbMin, aabbMax);
+    }
+
+    public Matrix4f getPrjViewMatrix() {
+        return prjViewMatrix;
+    }
+}
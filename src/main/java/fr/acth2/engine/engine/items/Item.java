@@ -1,10 +1,15 @@
 package fr.acth2.engine.engine.items;
 
 import fr.acth2.engine.engine.models.Mesh;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Item {
 
+
     private Mesh mesh;
 
     private final Vector3f position;
@@ -13,17 +18,40 @@ public class Item {
 
     private final Vector3f rotation;
 
+    private final Matrix4f worldMatrix;
+
+    private float worldScale;
+
+    private boolean dirty;
+
+    private Item parent;
+
+    private List<Item> children;
+
+    private Vector3f previousPosition;
+
+    private Vector3f previousRotation;
+
+    private float previousScale;
+
+    private TransformStore store;
+
+    private int slot = -1;
+
+    private int proxy = -1;
+
     public Item(Mesh mesh) {
+        this();
         this.mesh = mesh;
-        position = new Vector3f(0, 0, 0);
-        scale = 1;
-        rotation = new Vector3f(0, 0, 0);
     }
 
     public Item() {
         position = new Vector3f(0, 0, 0);
         scale = 1;
         rotation = new Vector3f(0, 0, 0);
+        worldMatrix = new Matrix4f();
+        worldScale = 1;
+        dirty = true;
     }
 
     public Vector3f getPosition() {
@@ -34,6 +62,7 @@ public class Item {
         this.position.x = x;
         this.position.y = y;
         this.position.z = z;
+        markDirty();
     }
 
     public float getScale() {
@@ -42,6 +71,7 @@ public class Item {
 
     public void setScale(float scale) {
         this.scale = scale;
+        markDirty();
     }
 
     public Vector3f getRotation() {
@@ -52,6 +82,245 @@ public class Item {
         this.rotation.x = x;
         this.rotation.y = y;
         this.rotation.z = z;
+        markDirty();
+    }
+
+    /**
+     * Flags this item and its whole subtree for a world matrix rebuild.
+     * Must be called after mutating the vectors returned by {@link #getPosition()} or {@link #getRotation()} directly.
+     */
+    public void markDirty() {
+        if (store != null) {
+            writeToStore();
+            return;
+        }
+        if (dirty) {
+            return;
+        }
+        dirty = true;
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                children.get(i).markDirty();
+            }
+        }
+    }
+
+    public boolean isDirty() {
+        return store != null ? store.isDirty(slot) : dirty;
+    }
+
+    public Matrix4f getWorldMatrix() {
+        if (store != null) {
+            return store.getWorldMatrix(slot, worldMatrix);
+        }
+        if (dirty) {
+            updateWorldMatrix();
+        }
+        return worldMatrix;
+    }
+
+    public float getWorldScale() {
+        if (store != null) {
+            return scale;
+        }
+        if (dirty) {
+            updateWorldMatrix();
+        }
+        return worldScale;
+    }
+
+    /**
+     * Rebuilds the world matrices of this item and its whole subtree where they are out of date.
+     * Afterwards they can be read from several threads at once.
+     */
+    public void updateWorldMatrices() {
+        if (store != null) {
+            store.updateWorldMatrix(slot);
+            return;
+        }
+        if (dirty) {
+            updateWorldMatrix();
+        }
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                children.get(i).updateWorldMatrices();
+            }
+        }
+    }
+
+    private void updateWorldMatrix() {
+        worldMatrix.identity().translate(position).
+                rotateX((float)Math.toRadians(-rotation.x)).
+                rotateY((float)Math.toRadians(-rotation.y)).
+                rotateZ((float)Math.toRadians(-rotation.z)).
+                scale(scale);
+        worldScale = scale;
+        if (parent != null) {
+            parent.getWorldMatrix().mul(worldMatrix, worldMatrix);
+            worldScale *= parent.getWorldScale();
+        }
+        dirty = false;
+    }
+
+    /**
+     * Records the current transform as the state of the previous simulation tick. Called at the
+     * start of every tick, before anything moves the item.
+     */
+    public void storePreviousState() {
+        if (store != null) {
+            store.storePreviousState(slot);
+            return;
+        }
+        if (previousPosition == null) {
+            previousPosition = new Vector3f();
+            previousRotation = new Vector3f();
+        }
+        previousPosition.set(position);
+        previousRotation.set(rotation);
+        previousScale = scale;
+    }
+
+    private boolean movedThisTick() {
+        return previousPosition != null && (!previousPosition.equals(position)
+                || !previousRotation.equals(rotation) || previousScale != scale);
+    }
+
+    /**
+     * Whether the item, or one of its ancestors, changed since {@link #storePreviousState()}.
+     */
+    public boolean hasMoved() {
+        if (store != null) {
+            return store.hasMoved(slot);
+        }
+        return movedThisTick() || parent != null && parent.hasMoved();
+    }
+
+    /**
+     * Computes the world matrix the item had when {@link #storePreviousState()} was last called,
+     * which renderers interpolate from. Items that never stored a state use their current one.
+     */
+    public Matrix4f getPreviousWorldMatrix(Matrix4f dest) {
+        if (store != null) {
+            return store.getPreviousWorldMatrix(slot, dest);
+        }
+        if (parent != null) {
+            parent.getPreviousWorldMatrix(dest);
+        } else {
+            dest.identity();
+        }
+        boolean stored = previousPosition != null;
+        Vector3f fromPosition = stored ? previousPosition : position;
+        Vector3f fromRotation = stored ? previousRotation : rotation;
+        return dest.translate(fromPosition).
+                rotateX((float)Math.toRadians(-fromRotation.x)).
+                rotateY((float)Math.toRadians(-fromRotation.y)).
+                rotateZ((float)Math.toRadians(-fromRotation.z)).
+                scale(stored ? previousScale : scale);
+    }
+
+    public Item getParent() {
+        return parent;
+    }
+
+    public List<Item> getChildren() {
+        return children;
+    }
+
+    public void addChild(Item child) {
+        // Hierarchies are built from heap transforms only.
+        detach();
+        child.detach();
+        if (child.parent != null) {
+            child.parent.removeChild(child);
+        }
+        if (children == null) {
+            children = new ArrayList<>();
+        }
+        children.add(child);
+        child.parent = this;
+        child.markDirty();
+    }
+
+    public void removeChild(Item child) {
+        if (children != null && children.remove(child)) {
+            child.parent = null;
+            child.markDirty();
+        }
+    }
+
+    /**
+     * Moves this item's transform into a slot of {@code store}, which then holds its world matrix.
+     * The item keeps its position, rotation and scale so they can still be read and edited as
+     * before; every change is written through to the slot. Only root items without children can
+     * be stored. The transform the item had before is kept as its previous state.
+     */
+    public void attachTo(TransformStore store) {
+        if (parent != null || children != null && !children.isEmpty()) {
+            throw new IllegalStateException("Items kept in a transform store cannot have a parent or children");
+        }
+        if (this.store != null) {
+            detach();
+        }
+        this.store = store;
+        slot = store.allocate();
+        writeToStore();
+        store.storePreviousState(slot);
+    }
+
+    /**
+     * Gives the item's slot back to its store. The item then computes its own world matrix again,
+     * and is not interpolated until its next {@link #storePreviousState()}. Adding a parent or a
+     * child detaches an item.
+     */
+    public void detach() {
+        if (store == null) {
+            return;
+        }
+        store.free(slot);
+        store = null;
+        slot = -1;
+        previousPosition = null;
+        previousRotation = null;
+        dirty = true;
+    }
+
+    public TransformStore getStore() {
+        return store;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Id of the item in its scene's bounding volume hierarchy, or -1 while it is not in one.
+     */
+    public int getProxy() {
+        return proxy;
+    }
+
+    public void setProxy(int proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * Same rotation as {@link org.joml.Quaternionf#rotationXYZ}, but with each cosine computed
+     * directly: JOML derives it from the sine, which loses precision near half-turns.
+     */
+    private void writeToStore() {
+        double halfX = Math.toRadians(-rotation.x) * 0.5;
+        double halfY = Math.toRadians(-rotation.y) * 0.5;
+        double halfZ = Math.toRadians(-rotation.z) * 0.5;
+        double sx = Math.sin(halfX), cx = Math.cos(halfX);
+        double sy = Math.sin(halfY), cy = Math.cos(halfY);
+        double sz = Math.sin(halfZ), cz = Math.cos(halfZ);
+        store.setPosition(slot, position.x, position.y, position.z);
+        store.setRotation(slot,
+                (float)(sx * cy * cz + cx * sy * sz),
+                (float)(cx * sy * cz - sx * cy * sz),
+                (float)(cx * cy * sz + sx * sy * cz),
+                (float)(cx * cy * cz - sx * sy * sz));
+        store.setScale(slot, scale);
     }
 
     public Mesh getMesh() {
@@ -61,4 +330,4 @@ public class Item {
     public void setMesh(Mesh mesh) {
         this.mesh = mesh;
     }
-}
\ No newline at end of file
+}
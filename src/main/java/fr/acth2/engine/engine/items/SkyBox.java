@@ -1,6 +1,7 @@
 package fr.acth2.engine.engine.items;
 
 import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.TextureCache;
 import fr.acth2.engine.engine.models.Material;
 import fr.acth2.engine.engine.models.Mesh;
 import fr.acth2.engine.utils.loader.Loader;
@@ -10,7 +11,7 @@ public class SkyBox extends Item {
     public SkyBox(String objModel, String textureFile) throws Exception {
         super();
         Mesh skyBoxMesh = Loader.loadMesh(objModel);
-        Texture skyBoxtexture = new Texture(textureFile);
+        Texture skyBoxtexture = TextureCache.acquire(textureFile);
         skyBoxMesh.setMaterial(new Material(skyBoxtexture, 0.0f));
         setMesh(skyBoxMesh);
         setPosition(0, 0, 0);
@@ -0,0 +1,239 @@
+package fr.acth2.engine.engine.items;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Off-heap, struct-of-arrays storage for the transforms of many {@link Item}s. Positions,
+ * rotations (as quaternions), scales and world matrices each live in one contiguous buffer
+ * allocated through {@link MemoryUtil}, indexed by slot, so bulk work such as rebuilding world
+ * matrices walks memory linearly instead of chasing one object graph per item. World matrices can
+ * be copied from {@link #getWorldMatrixAddress(int)} straight into snapshots and instance buffers.
+ * <p>
+ * Items join a store with {@link Item#attachTo(TransformStore)} and then keep their slot in sync
+ * on every change. Only root items without children can be stored: matrices are built from the
+ * slot alone. The store belongs to the simulation thread; {@link #updateWorldMatrices(int, int)}
+ * may run on disjoint slot ranges from several threads at once.
+ */
+public class TransformStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private FloatBuffer positions;
+    private FloatBuffer rotations;
+    private FloatBuffer scales;
+    private FloatBuffer previousPositions;
+    private FloatBuffer previousRotations;
+    private FloatBuffer previousScales;
+    private FloatBuffer worldMatrices;
+    private ByteBuffer dirty;
+    private int capacity;
+    private int size;
+    private int[] freeSlots;
+    private int freeCount;
+
+    public TransformStore() {
+        capacity = INITIAL_CAPACITY;
+        positions = MemoryUtil.memAllocFloat(capacity * 3);
+        rotations = MemoryUtil.memAllocFloat(capacity * 4);
+        scales = MemoryUtil.memAllocFloat(capacity);
+        previousPositions = MemoryUtil.memAllocFloat(capacity * 3);
+        previousRotations = MemoryUtil.memAllocFloat(capacity * 4);
+        previousScales = MemoryUtil.memAllocFloat(capacity);
+        worldMatrices = MemoryUtil.memAllocFloat(capacity * 16);
+        dirty = MemoryUtil.memCalloc(capacity);
+        freeSlots = new int[16];
+    }
+
+    /**
+     * Reserves a slot holding the identity transform.
+     */
+    int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (size == capacity) {
+                grow(capacity * 2);
+            }
+            slot = size++;
+        }
+        setPosition(slot, 0, 0, 0);
+        setRotation(slot, 0, 0, 0, 1);
+        setScale(slot, 1);
+        storePreviousState(slot);
+        return slot;
+    }
+
+    void free(int slot) {
+        dirty.put(slot, (byte) 0);
+        if (freeCount == freeSlots.length) {
+            int[] grown = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+            freeSlots = grown;
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow(int newCapacity) {
+        positions = MemoryUtil.memRealloc(positions, newCapacity * 3);
+        rotations = MemoryUtil.memRealloc(rotations, newCapacity * 4);
+        scales = MemoryUtil.memRealloc(scales, newCapacity);
+        previousPositions = MemoryUtil.memRealloc(previousPositions, newCapacity * 3);
+        previousRotations = MemoryUtil.memRealloc(previousRotations, newCapacity * 4);
+        previousScales = MemoryUtil.memRealloc(previousScales, newCapacity);
+        worldMatrices = MemoryUtil.memRealloc(worldMatrices, newCapacity * 16);
+        dirty = MemoryUtil.memRealloc(dirty, newCapacity);
+        MemoryUtil.memSet(MemoryUtil.memAddress(dirty) + capacity, 0, newCapacity - capacity);
+        capacity = newCapacity;
+    }
+
+    void setPosition(int slot, float x, float y, float z) {
+        positions.put(slot * 3, x).put(slot * 3 + 1, y).put(slot * 3 + 2, z);
+        dirty.put(slot, (byte) 1);
+    }
+
+    void setRotation(int slot, float x, float y, float z, float w) {
+        rotations.put(slot * 4, x).put(slot * 4 + 1, y).put(slot * 4 + 2, z).put(slot * 4 + 3, w);
+        dirty.put(slot, (byte) 1);
+    }
+
+    void setScale(int slot, float scale) {
+        scales.put(slot, scale);
+        dirty.put(slot, (byte) 1);
+    }
+
+    boolean isDirty(int slot) {
+        return dirty.get(slot) != 0;
+    }
+
+    /**
+     * Records the current transform of every slot as the previous one, in three bulk copies.
+     */
+    public void storePreviousState() {
+        MemoryUtil.memCopy(MemoryUtil.memAddress(positions), MemoryUtil.memAddress(previousPositions), size * 3L * 4);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(rotations), MemoryUtil.memAddress(previousRotations), size * 4L * 4);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(scales), MemoryUtil.memAddress(previousScales), size * 4L);
+    }
+
+    void storePreviousState(int slot) {
+        for (int i = 0; i < 3; i++) {
+            previousPositions.put(slot * 3 + i, positions.get(slot * 3 + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            previousRotations.put(slot * 4 + i, rotations.get(slot * 4 + i));
+        }
+        previousScales.put(slot, scales.get(slot));
+    }
+
+    boolean hasMoved(int slot) {
+        for (int i = 0; i < 3; i++) {
+            if (previousPositions.get(slot * 3 + i) != positions.get(slot * 3 + i)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            if (previousRotations.get(slot * 4 + i) != rotations.get(slot * 4 + i)) {
+                return true;
+            }
+        }
+        return previousScales.get(slot) != scales.get(slot);
+    }
+
+    /**
+     * Rebuilds the world matrices of the dirty slots in {@code [from, to)}.
+     */
+    public void updateWorldMatrices(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (dirty.get(slot) != 0) {
+                writeMatrix(positions, rotations, scales, slot, worldMatrices, slot * 16);
+                dirty.put(slot, (byte) 0);
+            }
+        }
+    }
+
+    void updateWorldMatrix(int slot) {
+        if (dirty.get(slot) != 0) {
+            writeMatrix(positions, rotations, scales, slot, worldMatrices, slot * 16);
+            dirty.put(slot, (byte) 0);
+        }
+    }
+
+    /**
+     * Writes translation * rotation * scale, column-major, as {@link Matrix4f#translationRotateScale} would.
+     */
+    private static void writeMatrix(FloatBuffer positions, FloatBuffer rotations, FloatBuffer scales, int slot,
+                                    FloatBuffer dest, int offset) {
+        float qx = rotations.get(slot * 4);
+        float qy = rotations.get(slot * 4 + 1);
+        float qz = rotations.get(slot * 4 + 2);
+        float qw = rotations.get(slot * 4 + 3);
+        float s = scales.get(slot);
+
+        float dqx = qx + qx, dqy = qy + qy, dqz = qz + qz;
+        float q00 = dqx * qx, q11 = dqy * qy, q22 = dqz * qz;
+        float q01 = dqx * qy, q02 = dqx * qz, q03 = dqx * qw;
+        float q12 = dqy * qz, q13 = dqy * qw, q23 = dqz * qw;
+
+        dest.put(offset, s - (q11 + q22) * s)
+                .put(offset + 1, (q01 + q23) * s)
+                .put(offset + 2, (q02 - q13) * s)
+                .put(offset + 3, 0f)
+                .put(offset + 4, (q01 - q23) * s)
+                .put(offset + 5, s - (q22 + q00) * s)
+                .put(offset + 6, (q12 + q03) * s)
+                .put(offset + 7, 0f)
+                .put(offset + 8, (q02 + q13) * s)
+                .put(offset + 9, (q12 - q03) * s)
+                .put(offset + 10, s - (q11 + q00) * s)
+                .put(offset + 11, 0f)
+                .put(offset + 12, positions.get(slot * 3))
+                .put(offset + 13, positions.get(slot * 3 + 1))
+                .put(offset + 14, positions.get(slot * 3 + 2))
+                .put(offset + 15, 1f);
+    }
+
+    Matrix4f getWorldMatrix(int slot, Matrix4f dest) {
+        updateWorldMatrix(slot);
+        return dest.set(slot * 16, worldMatrices);
+    }
+
+    Matrix4f getPreviousWorldMatrix(int slot, Matrix4f dest) {
+        float qx = previousRotations.get(slot * 4);
+        float qy = previousRotations.get(slot * 4 + 1);
+        float qz = previousRotations.get(slot * 4 + 2);
+        float qw = previousRotations.get(slot * 4 + 3);
+        float s = previousScales.get(slot);
+        return dest.translationRotateScale(previousPositions.get(slot * 3), previousPositions.get(slot * 3 + 1),
+                previousPositions.get(slot * 3 + 2), qx, qy, qz, qw, s, s, s);
+    }
+
+    /**
+     * Address of the 16 floats of a slot's world matrix, valid until the store grows. The matrix
+     * must be up to date.
+     */
+    public long getWorldMatrixAddress(int slot) {
+        return MemoryUtil.memAddress(worldMatrices) + slot * 16L * 4;
+    }
+
+    /**
+     * Number of slots in use or freed, i.e. the range bulk operations cover.
+     */
+    public int size() {
+        return size;
+    }
+
+    public void free() {
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(rotations);
+        MemoryUtil.memFree(scales);
+        MemoryUtil.memFree(previousPositions);
+        MemoryUtil.memFree(previousRotations);
+        MemoryUtil.memFree(previousScales);
+        MemoryUtil.memFree(worldMatrices);
+        MemoryUtil.memFree(dirty);
+    }
+}
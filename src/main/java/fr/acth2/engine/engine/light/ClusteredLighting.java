@@ -0,0 +1,177 @@
+package fr.acth2.engine.engine.light;
+
+import fr.acth2.engine.engine.RenderState;
+import fr.acth2.engine.scene.SceneLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+public class ClusteredLighting {
+
+    public static final int LIGHT_DATA_UNIT = 1;
+    public static final int LIGHT_GRID_UNIT = 2;
+    public static final int LIGHT_INDICES_UNIT = 3;
+
+    private static final int LIGHT_TEXELS = 4;
+    private static final float POINT_LIGHT = 0;
+    private static final float SPOT_LIGHT = 1;
+
+    private final LightClusterGrid grid;
+    private final Vector3f aux;
+    private final int lightDataVboId;
+    private final int lightDataTexId;
+    private final int lightGridVboId;
+    private final int lightGridTexId;
+    private final int lightIndicesVboId;
+    private final int lightIndicesTexId;
+    private FloatBuffer lightData;
+    private IntBuffer lightGrid;
+    private IntBuffer lightIndices;
+    private float[] lightSpheres;
+    private int numLights;
+
+    public ClusteredLighting(int numX, int numY, int numZ) {
+        grid = new LightClusterGrid(numX, numY, numZ);
+        aux = new Vector3f();
+        lightSpheres = new float[16 * 4];
+        lightData = MemoryUtil.memAllocFloat(16 * LIGHT_TEXELS * 4);
+        lightGrid = MemoryUtil.memAllocInt(grid.getNumClusters() * 2);
+        lightIndices = MemoryUtil.memAllocInt(grid.getNumClusters());
+
+        lightDataVboId = glGenBuffers();
+        lightDataTexId = createBufferTexture(lightDataVboId, GL_RGBA32F);
+        lightGridVboId = glGenBuffers();
+        lightGridTexId = createBufferTexture(lightGridVboId, GL_RG32I);
+        lightIndicesVboId = glGenBuffers();
+        lightIndicesTexId = createBufferTexture(lightIndicesVboId, GL_R32I);
+    }
+
+    private int createBufferTexture(int vboId, int internalFormat) {
+        glBindBuffer(GL_TEXTURE_BUFFER, vboId);
+        glBufferData(GL_TEXTURE_BUFFER, 16, GL_STREAM_DRAW);
+        int texId = glGenTextures();
+        RenderState.bindTexture(0, GL_TEXTURE_BUFFER, texId);
+        glTexBuffer(GL_TEXTURE_BUFFER, internalFormat, vboId);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+        return texId;
+    }
+
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, float zNear, float zFar, SceneLight sceneLight) {
+        grid.updateClusters(projectionMatrix, zNear, zFar);
+
+        PointLight[] pointLights = sceneLight.getPointLights();
+        SpotLight[] spotLights = sceneLight.getSpotLights();
+        int numPointLights = pointLights != null ? pointLights.length : 0;
+        int numSpotLights = spotLights != null ? spotLights.length : 0;
+        numLights = numPointLights + numSpotLights;
+        ensureLightCapacity(numLights);
+
+        lightData.clear();
+        for (int i = 0; i < numPointLights; i++) {
+            putLight(i, pointLights[i], viewMatrix, POINT_LIGHT);
+            putVector(0, 0, 0, 0);
+        }
+        for (int i = 0; i < numSpotLights; i++) {
+            SpotLight spotLight = spotLights[i];
+            putLight(numPointLights + i, spotLight.getPointLight(), viewMatrix, SPOT_LIGHT);
+            viewMatrix.transformDirection(spotLight.getConeDirection(), aux);
+            putVector(aux.x, aux.y, aux.z, spotLight.getCutOff());
+        }
+        grid.assignLights(lightSpheres, numLights);
+
+        lightData.flip();
+        upload(lightDataVboId, lightData);
+
+        lightGrid.clear();
+        lightGrid.put(grid.getClusterLights()).flip();
+        upload(lightGridVboId, lightGrid);
+
+        int indexCount = grid.getLightIndexCount();
+        if (lightIndices.capacity() < indexCount) {
+            lightIndices = MemoryUtil.memRealloc(lightIndices, indexCount);
+        }
+        lightIndices.clear();
+        lightIndices.put(grid.getLightIndices(), 0, indexCount).flip();
+        upload(lightIndicesVboId, lightIndices);
+    }
+
+    private void putLight(int index, PointLight pointLight, Matrix4f viewMatrix, float type) {
+        viewMatrix.transformPosition(pointLight.getPosition(), aux);
+        lightSpheres[index * 4] = aux.x;
+        lightSpheres[index * 4 + 1] = aux.y;
+        lightSpheres[index * 4 + 2] = aux.z;
+        lightSpheres[index * 4 + 3] = pointLight.getRange();
+
+        PointLight.Attenuation att = pointLight.getAttenuation();
+        Vector3f color = pointLight.getColor();
+        putVector(aux.x, aux.y, aux.z, pointLight.getIntensity());
+        putVector(color.x, color.y, color.z, att.getConstant());
+        putVector(att.getLinear(), att.getExponent(), type, 0);
+    }
+
+    private void putVector(float x, float y, float z, float w) {
+        lightData.put(x).put(y).put(z).put(w);
+    }
+
+    private void ensureLightCapacity(int count) {
+        if (lightSpheres.length < count * 4) {
+            lightSpheres = new float[count * 4];
+        }
+        if (lightData.capacity() < count * LIGHT_TEXELS * 4) {
+            lightData = MemoryUtil.memRealloc(lightData, count * LIGHT_TEXELS * 4);
+        }
+    }
+
+    private void upload(int vboId, FloatBuffer data) {
+        glBindBuffer(GL_TEXTURE_BUFFER, vboId);
+        if (data.remaining() > 0) {
+            glBufferData(GL_TEXTURE_BUFFER, data, GL_STREAM_DRAW);
+        }
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    private void upload(int vboId, IntBuffer data) {
+        glBindBuffer(GL_TEXTURE_BUFFER, vboId);
+        if (data.remaining() > 0) {
+            glBufferData(GL_TEXTURE_BUFFER, data, GL_STREAM_DRAW);
+        }
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    public void bind() {
+        RenderState.bindTexture(LIGHT_DATA_UNIT, GL_TEXTURE_BUFFER, lightDataTexId);
+        RenderState.bindTexture(LIGHT_GRID_UNIT, GL_TEXTURE_BUFFER, lightGridTexId);
+        RenderState.bindTexture(LIGHT_INDICES_UNIT, GL_TEXTURE_BUFFER, lightIndicesTexId);
+    }
+
+    public LightClusterGrid getGrid() {
+        return grid;
+    }
+
+    public int getNumLights() {
+        return numLights;
+    }
+
+    public void cleanup() {
+        glDeleteTextures(lightDataTexId);
+        glDeleteTextures(lightGridTexId);
+        glDeleteTextures(lightIndicesTexId);
+        RenderState.textureDeleted(lightDataTexId);
+        RenderState.textureDeleted(lightGridTexId);
+        RenderState.textureDeleted(lightIndicesTexId);
+        glDeleteBuffers(lightDataVboId);
+        glDeleteBuffers(lightGridVboId);
+        glDeleteBuffers(lightIndicesVboId);
+        MemoryUtil.memFree(lightData);
+        MemoryUtil.memFree(lightGrid);
+        MemoryUtil.memFree(lightIndices);
+    }
+}
@@ -0,0 +1,237 @@
+package fr.acth2.engine.engine.light;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * CPU side of the clustered forward lighting: splits the view frustum into a
+ * {@code numX * numY * numZ} grid (screen tiles, exponential depth slices) and
+ * assigns view-space light spheres to every cluster they touch.
+ * This class does not use OpenGL so the assignment can be checked without a GPU.
+ */
+public class LightClusterGrid {
+
+    private final int numX;
+    private final int numY;
+    private final int numZ;
+    private final int numClusters;
+    private final float[] clusterBounds;
+    private final int[] clusterLights;
+    private final Matrix4f projectionMatrix;
+    private final Matrix4f invProjectionMatrix;
+    private final Vector3f[] tileCorners;
+    private float zNear;
+    private float zFar;
+    private float sliceScale;
+    private float sliceBias;
+    private int[] lightIndices;
+    private int lightIndexCount;
+    private int[] sliceCandidates;
+
+    public LightClusterGrid(int numX, int numY, int numZ) {
+        this.numX = numX;
+        this.numY = numY;
+        this.numZ = numZ;
+        this.numClusters = numX * numY * numZ;
+        this.clusterBounds = new float[numClusters * 6];
+        this.clusterLights = new int[numClusters * 2];
+        this.projectionMatrix = new Matrix4f().zero();
+        this.invProjectionMatrix = new Matrix4f();
+        this.tileCorners = new Vector3f[4];
+        for (int i = 0; i < tileCorners.length; i++) {
+            tileCorners[i] = new Vector3f();
+        }
+        this.lightIndices = new int[numClusters];
+        this.sliceCandidates = new int[16];
+    }
+
+    public void updateClusters(Matrix4f projectionMatrix, float zNear, float zFar) {
+        if (this.projectionMatrix.equals(projectionMatrix) && this.zNear == zNear && this.zFar == zFar) {
+            return;
+        }
+        this.projectionMatrix.set(projectionMatrix);
+        this.zNear = zNear;
+        this.zFar = zFar;
+        float logRatio = (float) Math.log(zFar / zNear);
+        sliceScale = numZ / logRatio;
+        sliceBias = numZ * (float) Math.log(zNear) / logRatio;
+        projectionMatrix.invert(invProjectionMatrix);
+
+        for (int j = 0; j < numY; j++) {
+            float y0 = -1 + 2.0f * j / numY;
+            float y1 = -1 + 2.0f * (j + 1) / numY;
+            for (int i = 0; i < numX; i++) {
+                float x0 = -1 + 2.0f * i / numX;
+                float x1 = -1 + 2.0f * (i + 1) / numX;
+                invProjectionMatrix.transformProject(x0, y0, -1, tileCorners[0]);
+                invProjectionMatrix.transformProject(x1, y0, -1, tileCorners[1]);
+                invProjectionMatrix.transformProject(x0, y1, -1, tileCorners[2]);
+                invProjectionMatrix.transformProject(x1, y1, -1, tileCorners[3]);
+
+                for (int k = 0; k < numZ; k++) {
+                    int offset = getClusterIndex(i, j, k) * 6;
+                    clusterBounds[offset] = clusterBounds[offset + 1] = clusterBounds[offset + 2] = Float.POSITIVE_INFINITY;
+                    clusterBounds[offset + 3] = clusterBounds[offset + 4] = clusterBounds[offset + 5] = Float.NEGATIVE_INFINITY;
+                    includeSlice(offset, getSliceDepth(k));
+                    includeSlice(offset, getSliceDepth(k + 1));
+                }
+            }
+        }
+    }
+
+    private void includeSlice(int offset, float depth) {
+        for (Vector3f corner : tileCorners) {
+            float t = depth / -corner.z;
+            float x = corner.x * t;
+            float y = corner.y * t;
+            float z = -depth;
+            clusterBounds[offset] = Math.min(clusterBounds[offset], x);
+            clusterBounds[offset + 1] = Math.min(clusterBounds[offset + 1], y);
+            clusterBounds[offset + 2] = Math.min(clusterBounds[offset + 2], z);
+            clusterBounds[offset + 3] = Math.max(clusterBounds[offset + 3], x);
+            clusterBounds[offset + 4] = Math.max(clusterBounds[offset + 4], y);
+            clusterBounds[offset + 5] = Math.max(clusterBounds[offset + 5], z);
+        }
+    }
+
+    /**
+     * Assigns lights to clusters.
+     * @param lightSpheres view-space spheres packed as {@code x, y, z, radius} per light.
+     * @param numLights number of spheres to read from {@code lightSpheres}.
+     */
+    public void assignLights(float[] lightSpheres, int numLights) {
+        if (sliceCandidates.length < numLights) {
+            sliceCandidates = new int[numLights];
+        }
+        lightIndexCount = 0;
+
+        for (int k = 0; k < numZ; k++) {
+            float sliceNear = getSliceDepth(k);
+            float sliceFar = getSliceDepth(k + 1);
+            int numCandidates = 0;
+            for (int l = 0; l < numLights; l++) {
+                float depth = -lightSpheres[l * 4 + 2];
+                float radius = lightSpheres[l * 4 + 3];
+                if (depth + radius >= sliceNear && depth - radius <= sliceFar) {
+                    sliceCandidates[numCandidates++] = l;
+                }
+            }
+
+            for (int j = 0; j < numY; j++) {
+                for (int i = 0; i < numX; i++) {
+                    int cluster = getClusterIndex(i, j, k);
+                    int start = lightIndexCount;
+                    for (int c = 0; c < numCandidates; c++) {
+                        int l = sliceCandidates[c];
+                        if (sphereIntersectsCluster(cluster, lightSpheres, l * 4)) {
+                            addLightIndex(l);
+                        }
+                    }
+                    clusterLights[cluster * 2] = start;
+                    clusterLights[cluster * 2 + 1] = lightIndexCount - start;
+                }
+            }
+        }
+    }
+
+    private boolean sphereIntersectsCluster(int cluster, float[] spheres, int sphereOffset) {
+        int offset = cluster * 6;
+        float distSq = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float v = spheres[sphereOffset + axis];
+            float min = clusterBounds[offset + axis];
+            float max = clusterBounds[offset + 3 + axis];
+            if (v < min) {
+                distSq += (min - v) * (min - v);
+            } else if (v > max) {
+                distSq += (v - max) * (v - max);
+            }
+        }
+        float radius = spheres[sphereOffset + 3];
+        return distSq <= radius * radius;
+    }
+
+    private void addLightIndex(int lightIndex) {
+        if (lightIndexCount == lightIndices.length) {
+            int[] newIndices = new int[lightIndices.length * 2];
+            System.arraycopy(lightIndices, 0, newIndices, 0, lightIndexCount);
+            lightIndices = newIndices;
+        }
+        lightIndices[lightIndexCount++] = lightIndex;
+    }
+
+    public float getSliceDepth(int slice) {
+        return zNear * (float) Math.pow(zFar / zNear, (float) slice / numZ);
+    }
+
+    public int getSlice(float viewDepth) {
+        int slice = (int) Math.max(Math.log(viewDepth) * sliceScale - sliceBias, 0);
+        return Math.min(slice, numZ - 1);
+    }
+
+    public int getClusterIndex(int x, int y, int z) {
+        return x + numX * (y + numY * z);
+    }
+
+    /**
+     * Same lookup as the fragment shader.
+     * @param ndcX normalized device x coordinate in [-1, 1].
+     * @param ndcY normalized device y coordinate in [-1, 1].
+     * @param viewDepth positive distance along the view direction.
+     */
+    public int getClusterIndex(float ndcX, float ndcY, float viewDepth) {
+        int x = Math.min((int) ((ndcX * 0.5f + 0.5f) * numX), numX - 1);
+        int y = Math.min((int) ((ndcY * 0.5f + 0.5f) * numY), numY - 1);
+        return getClusterIndex(Math.max(x, 0), Math.max(y, 0), getSlice(viewDepth));
+    }
+
+    public int getClusterLightOffset(int cluster) {
+        return clusterLights[cluster * 2];
+    }
+
+    public int getClusterLightCount(int cluster) {
+        return clusterLights[cluster * 2 + 1];
+    }
+
+    public void getClusterBounds(int cluster, Vector3f min, Vector3f max) {
+        int offset = cluster * 6;
+        min.set(clusterBounds[offset], clusterBounds[offset + 1], clusterBounds[offset + 2]);
+        max.set(clusterBounds[offset + 3], clusterBounds[offset + 4], clusterBounds[offset + 5]);
+    }
+
+    public int[] getClusterLights() {
+        return clusterLights;
+    }
+
+    public int[] getLightIndices() {
+        return lightIndices;
+    }
+
+    public int getLightIndexCount() {
+        return lightIndexCount;
+    }
+
+    public int getNumX() {
+        return numX;
+    }
+
+    public int getNumY() {
+        return numY;
+    }
+
+    public int getNumZ() {
+        return numZ;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public float getSliceScale() {
+        return sliceScale;
+    }
+
+    public float getSliceBias() {
+        return sliceBias;
+    }
+}
@@ -4,6 +4,8 @@ import org.joml.Vector3f;
 
 public class PointLight {
 
+    public static final float LIGHT_CUTOFF = 1.0f / 256.0f;
+
     private Vector3f color;
     private Vector3f position;
     private float intensity;
@@ -58,6 +60,26 @@ public class PointLight {
         this.attenuation = attenuation;
     }
 
+    /**
+     * Distance at which the attenuated intensity drops below {@link #LIGHT_CUTOFF}.
+     * @return the light range, or {@link Float#POSITIVE_INFINITY} if the light never fades out.
+     */
+    public float getRange() {
+        float a = attenuation.getExponent();
+        float b = attenuation.getLinear();
+        float c = attenuation.getConstant() - intensity / LIGHT_CUTOFF;
+        if (c >= 0) {
+            return 0;
+        }
+        if (a > 0) {
+            return (float) ((-b + Math.sqrt(b * b - 4 * a * c)) / (2 * a));
+        }
+        if (b > 0) {
+            return -c / b;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
     public static class Attenuation {
         private float constant;
         private float linear;
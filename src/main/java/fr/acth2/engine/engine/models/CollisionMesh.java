@@ -0,0 +1,379 @@
+package fr.acth2.engine.engine.models;
+
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * CPU-side copy of a mesh's triangles for exact ray casts. Triangles are stored flat, nine floats
+ * each, so tests never chase vertex indices. Meshes with more than a few dozen triangles get a
+ * bounding volume hierarchy over them, built with the binned surface area heuristic the first time
+ * a ray is cast (or up front with {@link #buildBvh()}); smaller ones are tested one by one.
+ * <p>
+ * Once its hierarchy exists, the mesh may be cast against from several threads at once.
+ */
+public class CollisionMesh implements CollisionShape {
+
+    /** Meshes with fewer triangles are tested without a hierarchy. */
+    private static final int BVH_MIN_TRIANGLES = 64;
+    private static final int BINS = 12;
+    private static final int MAX_LEAF_TRIANGLES = 8;
+    /** Cost of visiting a node, relative to testing one triangle. */
+    private static final float TRAVERSAL_COST = 1f;
+
+    private static final ThreadLocal<int[][]> STACKS = ThreadLocal.withInitial(() -> new int[][]{new int[64]});
+
+    private final int triangleCount;
+    /** Triangle corners, 9 floats per triangle, in hierarchy order once it is built. */
+    private float[] triangles;
+    /** Node bounds, 6 floats per node. */
+    private float[] nodeBounds;
+    /** First triangle of a leaf, or the left child of an internal node (the right one follows it). */
+    private int[] nodeStarts;
+    /** Triangles in a leaf, 0 for internal nodes. */
+    private int[] nodeCounts;
+    private volatile boolean bvhBuilt;
+
+    public CollisionMesh(float[] positions, int[] indices) {
+        triangleCount = indices.length / 3;
+        triangles = new float[triangleCount * 9];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                System.arraycopy(positions, indices[t * 3 + corner] * 3, triangles, t * 9 + corner * 3, 3);
+            }
+        }
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Builds the hierarchy now rather than on the first ray cast. Does nothing for small meshes or
+     * when it already exists.
+     */
+    public synchronized void buildBvh() {
+        if (bvhBuilt || triangleCount < BVH_MIN_TRIANGLES) {
+            return;
+        }
+        int count = triangleCount;
+        float[] bounds = new float[count * 6];
+        float[] centroids = new float[count * 3];
+        int[] order = new int[count];
+        for (int t = 0; t < count; t++) {
+            order[t] = t;
+            int v = t * 9;
+            for (int axis = 0; axis < 3; axis++) {
+                float a = triangles[v + axis], b = triangles[v + 3 + axis], c = triangles[v + 6 + axis];
+                float min = min(a, min(b, c));
+                float max = max(a, max(b, c));
+                bounds[t * 6 + axis] = min;
+                bounds[t * 6 + 3 + axis] = max;
+                centroids[t * 3 + axis] = (min + max) * 0.5f;
+            }
+        }
+
+        int maxNodes = 2 * count - 1;
+        float[] builtBounds = new float[maxNodes * 6];
+        int[] starts = new int[maxNodes];
+        int[] counts = new int[maxNodes];
+        int nodeCount = 1;
+
+        int[] binCounts = new int[BINS];
+        float[] binBounds = new float[BINS * 6];
+        float[] rightAreas = new float[BINS];
+
+        // Work list of (node, start, end) ranges still to split.
+        int[] work = new int[3 * 64];
+        int pending = 0;
+        work[pending++] = 0;
+        work[pending++] = 0;
+        work[pending++] = count;
+        while (pending > 0) {
+            int end = work[--pending];
+            int start = work[--pending];
+            int node = work[--pending];
+
+            int nb = node * 6;
+            emptyBounds(builtBounds, nb);
+            float cMinX = Float.POSITIVE_INFINITY, cMinY = Float.POSITIVE_INFINITY, cMinZ = Float.POSITIVE_INFINITY;
+            float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                int t = order[i];
+                unionInto(builtBounds, nb, bounds, t * 6);
+                cMinX = min(cMinX, centroids[t * 3]);
+                cMinY = min(cMinY, centroids[t * 3 + 1]);
+                cMinZ = min(cMinZ, centroids[t * 3 + 2]);
+                cMaxX = max(cMaxX, centroids[t * 3]);
+                cMaxY = max(cMaxY, centroids[t * 3 + 1]);
+                cMaxZ = max(cMaxZ, centroids[t * 3 + 2]);
+            }
+
+            int n = end - start;
+            int axis = 0;
+            float axisMin = cMinX;
+            float extent = cMaxX - cMinX;
+            if (cMaxY - cMinY > extent) {
+                axis = 1;
+                axisMin = cMinY;
+                extent = cMaxY - cMinY;
+            }
+            if (cMaxZ - cMinZ > extent) {
+                axis = 2;
+                axisMin = cMinZ;
+                extent = cMaxZ - cMinZ;
+            }
+
+            int mid;
+            if (n <= 2 && n <= MAX_LEAF_TRIANGLES) {
+                mid = -1;
+            } else if (extent <= 0f) {
+                // Every centroid coincides: no split separates them, so only cut oversized leaves.
+                mid = n <= MAX_LEAF_TRIANGLES ? -1 : start + n / 2;
+            } else {
+                Arrays.fill(binCounts, 0);
+                for (int b = 0; b < BINS; b++) {
+                    emptyBounds(binBounds, b * 6);
+                }
+                float scale = BINS / extent;
+                for (int i = start; i < end; i++) {
+                    int t = order[i];
+                    int bin = Math.min(BINS - 1, (int) ((centroids[t * 3 + axis] - axisMin) * scale));
+                    binCounts[bin]++;
+                    unionInto(binBounds, bin * 6, bounds, t * 6);
+                }
+                float rMinX = Float.POSITIVE_INFINITY, rMinY = Float.POSITIVE_INFINITY, rMinZ = Float.POSITIVE_INFINITY;
+                float rMaxX = Float.NEGATIVE_INFINITY, rMaxY = Float.NEGATIVE_INFINITY, rMaxZ = Float.NEGATIVE_INFINITY;
+                for (int b = BINS - 1; b > 0; b--) {
+                    if (binCounts[b] > 0) {
+                        rMinX = min(rMinX, binBounds[b * 6]);
+                        rMinY = min(rMinY, binBounds[b * 6 + 1]);
+                        rMinZ = min(rMinZ, binBounds[b * 6 + 2]);
+                        rMaxX = max(rMaxX, binBounds[b * 6 + 3]);
+                        rMaxY = max(rMaxY, binBounds[b * 6 + 4]);
+                        rMaxZ = max(rMaxZ, binBounds[b * 6 + 5]);
+                    }
+                    rightAreas[b] = area(rMaxX - rMinX, rMaxY - rMinY, rMaxZ - rMinZ);
+                }
+                float lMinX = Float.POSITIVE_INFINITY, lMinY = Float.POSITIVE_INFINITY, lMinZ = Float.POSITIVE_INFINITY;
+                float lMaxX = Float.NEGATIVE_INFINITY, lMaxY = Float.NEGATIVE_INFINITY, lMaxZ = Float.NEGATIVE_INFINITY;
+                int leftCount = 0;
+                int bestBin = -1;
+                float bestCost = Float.POSITIVE_INFINITY;
+                for (int b = 0; b < BINS - 1; b++) {
+                    leftCount += binCounts[b];
+                    if (binCounts[b] > 0) {
+                        lMinX = min(lMinX, binBounds[b * 6]);
+                        lMinY = min(lMinY, binBounds[b * 6 + 1]);
+                        lMinZ = min(lMinZ, binBounds[b * 6 + 2]);
+                        lMaxX = max(lMaxX, binBounds[b * 6 + 3]);
+                        lMaxY = max(lMaxY, binBounds[b * 6 + 4]);
+                        lMaxZ = max(lMaxZ, binBounds[b * 6 + 5]);
+                    }
+                    if (leftCount == 0 || leftCount == n) {
+                        continue;
+                    }
+                    float cost = leftCount * area(lMaxX - lMinX, lMaxY - lMinY, lMaxZ - lMinZ)
+                            + (n - leftCount) * rightAreas[b + 1];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestBin = b;
+                    }
+                }
+                float nodeArea = area(builtBounds, nb);
+                float splitCost = TRAVERSAL_COST + bestCost / max(nodeArea, Float.MIN_NORMAL);
+                if (bestBin < 0 || splitCost >= n && n <= MAX_LEAF_TRIANGLES) {
+                    mid = n <= MAX_LEAF_TRIANGLES ? -1 : start + n / 2;
+                } else {
+                    int i = start;
+                    int j = end - 1;
+                    while (i <= j) {
+                        int t = order[i];
+                        int bin = Math.min(BINS - 1, (int) ((centroids[t * 3 + axis] - axisMin) * scale));
+                        if (bin <= bestBin) {
+                            i++;
+                        } else {
+                            order[i] = order[j];
+                            order[j--] = t;
+                        }
+                    }
+                    mid = i;
+                }
+            }
+
+            if (mid < 0) {
+                starts[node] = start;
+                counts[node] = n;
+                continue;
+            }
+            int left = nodeCount;
+            nodeCount += 2;
+            starts[node] = left;
+            counts[node] = 0;
+            if (pending + 6 > work.length) {
+                work = Arrays.copyOf(work, work.length * 2);
+            }
+            work[pending++] = left + 1;
+            work[pending++] = mid;
+            work[pending++] = end;
+            work[pending++] = left;
+            work[pending++] = start;
+            work[pending++] = mid;
+        }
+
+        float[] sorted = new float[triangles.length];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(triangles, order[i] * 9, sorted, i * 9, 9);
+        }
+        triangles = sorted;
+        nodeBounds = Arrays.copyOf(builtBounds, nodeCount * 6);
+        nodeStarts = Arrays.copyOf(starts, nodeCount);
+        nodeCounts = Arrays.copyOf(counts, nodeCount);
+        bvhBuilt = true;
+    }
+
+    @Override
+    public float raycast(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                         float maxDistance, Vector3f normalDest) {
+        if (!bvhBuilt) {
+            buildBvh();
+        }
+        if (!bvhBuilt) {
+            float closest = intersectTriangles(0, triangleCount, originX, originY, originZ, dirX, dirY, dirZ,
+                    maxDistance, normalDest);
+            return closest < maxDistance ? closest : Float.POSITIVE_INFINITY;
+        }
+
+        float invX = 1f / dirX, invY = 1f / dirY, invZ = 1f / dirZ;
+        float closest = maxDistance;
+        int[][] stackHolder = STACKS.get();
+        int[] stack = stackHolder[0];
+        int size = 0;
+        if (boxEntry(nodeBounds, 0, originX, originY, originZ, invX, invY, invZ, closest) >= 0f) {
+            stack[size++] = 0;
+        }
+        while (size > 0) {
+            int node = stack[--size];
+            if (nodeCounts[node] > 0) {
+                closest = intersectTriangles(nodeStarts[node], nodeCounts[node], originX, originY, originZ,
+                        dirX, dirY, dirZ, closest, normalDest);
+                continue;
+            }
+            int left = nodeStarts[node];
+            int right = left + 1;
+            float leftEntry = boxEntry(nodeBounds, left * 6, originX, originY, originZ, invX, invY, invZ, closest);
+            float rightEntry = boxEntry(nodeBounds, right * 6, originX, originY, originZ, invX, invY, invZ, closest);
+            if (size + 2 > stack.length) {
+                stack = stackHolder[0] = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // Nearer child on top, so its hits clip the farther one.
+            if (leftEntry >= 0f && rightEntry >= 0f) {
+                boolean leftFirst = leftEntry <= rightEntry;
+                stack[size++] = leftFirst ? right : left;
+                stack[size++] = leftFirst ? left : right;
+            } else if (leftEntry >= 0f) {
+                stack[size++] = left;
+            } else if (rightEntry >= 0f) {
+                stack[size++] = right;
+            }
+        }
+        return closest < maxDistance ? closest : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Moller-Trumbore test of {@code count} triangles from {@code first}, two-sided. Returns the
+     * new closest distance and writes the normal of the triangle hit there.
+     */
+    private float intersectTriangles(int first, int count, float originX, float originY, float originZ,
+                                     float dirX, float dirY, float dirZ, float closest, Vector3f normalDest) {
+        float[] tris = triangles;
+        for (int t = first; t < first + count; t++) {
+            int v = t * 9;
+            float v0x = tris[v], v0y = tris[v + 1], v0z = tris[v + 2];
+            float e1x = tris[v + 3] - v0x, e1y = tris[v + 4] - v0y, e1z = tris[v + 5] - v0z;
+            float e2x = tris[v + 6] - v0x, e2y = tris[v + 7] - v0y, e2z = tris[v + 8] - v0z;
+            float px = dirY * e2z - dirZ * e2y;
+            float py = dirZ * e2x - dirX * e2z;
+            float pz = dirX * e2y - dirY * e2x;
+            float det = e1x * px + e1y * py + e1z * pz;
+            if (det == 0f) {
+                continue;
+            }
+            float invDet = 1f / det;
+            float sx = originX - v0x, sy = originY - v0y, sz = originZ - v0z;
+            float u = (sx * px + sy * py + sz * pz) * invDet;
+            if (!(u >= 0f && u <= 1f)) {
+                continue;
+            }
+            float qx = sy * e1z - sz * e1y;
+            float qy = sz * e1x - sx * e1z;
+            float qz = sx * e1y - sy * e1x;
+            float w = (dirX * qx + dirY * qy + dirZ * qz) * invDet;
+            if (!(w >= 0f && u + w <= 1f)) {
+                continue;
+            }
+            float distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+            if (distance >= 0f && distance < closest) {
+                closest = distance;
+                normalDest.set(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Distance at which the ray enters the box at {@code b}, 0 when it starts inside, or -1 when it
+     * misses the box before {@code maxDistance}.
+     */
+    static float boxEntry(float[] boxes, int b, float originX, float originY, float originZ,
+                          float invX, float invY, float invZ, float maxDistance) {
+        float t1 = (boxes[b] - originX) * invX;
+        float t2 = (boxes[b + 3] - originX) * invX;
+        float near = min(t1, t2);
+        float far = max(t1, t2);
+        t1 = (boxes[b + 1] - originY) * invY;
+        t2 = (boxes[b + 4] - originY) * invY;
+        near = max(near, min(t1, t2));
+        far = min(far, max(t1, t2));
+        t1 = (boxes[b + 2] - originZ) * invZ;
+        t2 = (boxes[b + 5] - originZ) * invZ;
+        near = max(near, min(t1, t2));
+        far = min(far, max(t1, t2));
+        if (far < max(near, 0f) || near >= maxDistance) {
+            return -1f;
+        }
+        return max(near, 0f);
+    }
+
+    // Bounds are never NaN, so plain comparisons do without the NaN and signed zero branches of
+    // Math.min and Math.max.
+    private static float min(float a, float b) {
+        return a < b ? a : b;
+    }
+
+    private static float max(float a, float b) {
+        return a > b ? a : b;
+    }
+
+    private static float area(float dx, float dy, float dz) {
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static float area(float[] boxes, int b) {
+        return area(boxes[b + 3] - boxes[b], boxes[b + 4] - boxes[b + 1], boxes[b + 5] - boxes[b + 2]);
+    }
+
+    private static void emptyBounds(float[] boxes, int b) {
+        boxes[b] = boxes[b + 1] = boxes[b + 2] = Float.POSITIVE_INFINITY;
+        boxes[b + 3] = boxes[b + 4] = boxes[b + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void unionInto(float[] dest, int d, float[] src, int s) {
+        dest[d] = min(dest[d], src[s]);
+        dest[d + 1] = min(dest[d + 1], src[s + 1]);
+        dest[d + 2] = min(dest[d + 2], src[s + 2]);
+        dest[d + 3] = max(dest[d + 3], src[s + 3]);
+        dest[d + 4] = max(dest[d + 4], src[s + 4]);
+        dest[d + 5] = max(dest[d + 5], src[s + 5]);
+    }
+}
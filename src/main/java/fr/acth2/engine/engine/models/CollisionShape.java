@@ -0,0 +1,19 @@
+package fr.acth2.engine.engine.models;
+
+import org.joml.Vector3f;
+
+/**
+ * CPU-side shape of a {@link Mesh} that rays can be cast against, in the mesh's local space.
+ * Distances are measured in multiples of the ray direction, which need not be normalized, so a
+ * ray transformed into local space by an item's inverse world matrix keeps its distances.
+ */
+public interface CollisionShape {
+
+    /**
+     * @param normalDest receives the local surface normal at the hit, not normalized
+     * @return the distance of the nearest hit below {@code maxDistance}, or
+     * {@link Float#POSITIVE_INFINITY} when the ray misses
+     */
+    float raycast(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                  float maxDistance, Vector3f normalDest);
+}
@@ -3,9 +3,13 @@ package fr.acth2.engine.engine.models;
 import fr.acth2.engine.engine.Texture;
 import org.joml.Vector4f;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Material {
 
     public static final Vector4f DEFAULT_COLOR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private final int id = NEXT_ID.incrementAndGet();
     private Vector4f ambientColor;
     private Vector4f diffuseColor;
     private Vector4f specularColor;
@@ -48,6 +52,10 @@ public class Material {
         this.texture = texture;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public Texture getTexture() {
         return texture;
     }
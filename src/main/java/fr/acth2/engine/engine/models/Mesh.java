@@ -1,80 +1,137 @@
 package fr.acth2.engine.engine.models;
 
+import fr.acth2.engine.engine.RenderState;
 import fr.acth2.engine.engine.Texture;
-import org.lwjgl.system.MemoryUtil;
+import fr.acth2.engine.utils.Refs;
+import org.joml.Vector3f;
 
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
-import static org.lwjgl.system.MemoryUtil.memAllocFloat;
-import static org.lwjgl.system.MemoryUtil.memAllocInt;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 
 public class Mesh {
 
+    private static final int INSTANCE_MATRIX_LOCATION = 3;
+    private static final int VECTOR4F_SIZE_BYTES = 4 * 4;
+    private static final int MATRIX_SIZE_BYTES = 4 * VECTOR4F_SIZE_BYTES;
+
     private final int vaoId;
-    private final int posVboId;
-    private int texVboId;
-    private int normalsVboId;
+    private final int vboId;
     private final int idxVboId;
+    private int instanceVboId;
     private final int vertexCount;
+    private final int indexType;
+    private final VertexFormat vertexFormat;
     private Material material;
+    private final Vector3f aabbMin;
+    private final Vector3f aabbMax;
+    private final Vector3f boundingCenter;
+    private final float boundingRadius;
+    private final Vector3f positionScale;
+    private final Vector3f positionOffset;
+    private CollisionShape collisionShape;
 
     public Mesh(float[] positions, float[] texCoords, float[] normals, int[] indices) {
-        FloatBuffer posBuffer = null;
-        FloatBuffer texBuffer = null;
-        FloatBuffer normalsBuffer = null;
-        IntBuffer indicesBuffer = null;
+        this(positions, texCoords, normals, indices, VertexFormat.SEPARATE);
+    }
+
+    public Mesh(float[] positions, float[] texCoords, float[] normals, int[] indices, VertexFormat vertexFormat) {
+        this(MeshData.build(positions, texCoords, normals, indices, vertexFormat), true, null);
+    }
+
+    public Mesh(MeshData data) {
+        this(data, false, null);
+    }
+
+    /**
+     * Uploads a mesh whose rays are cast against {@code collisionShape} rather than its own
+     * triangles, for meshes such as terrain that have a cheaper exact shape.
+     */
+    public Mesh(MeshData data, CollisionShape collisionShape) {
+        this(data, false, collisionShape);
+    }
+
+    private Mesh(MeshData data, boolean freeData, CollisionShape collisionShape) {
         try {
-            vertexCount = indices.length;
+            vertexCount = data.getNumIndices();
+            indexType = data.getIndexType();
+            vertexFormat = data.getVertexFormat();
             this.material = new Material();
+            aabbMin = new Vector3f(data.getAabbMin());
+            aabbMax = new Vector3f(data.getAabbMax());
+            boundingCenter = new Vector3f(data.getBoundingCenter());
+            boundingRadius = data.getBoundingRadius();
 
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
-
-            posVboId = glGenBuffers();
-            posBuffer = memAllocFloat(positions.length);
-            posBuffer.put(positions).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, posVboId);
-            glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-
-            if (texCoords != null && texCoords.length > 0) {
-                texVboId = glGenBuffers();
-                texBuffer = memAllocFloat(texCoords.length);
-                texBuffer.put(texCoords).flip();
-                glBindBuffer(GL_ARRAY_BUFFER, texVboId);
-                glBufferData(GL_ARRAY_BUFFER, texBuffer, GL_STATIC_DRAW);
-                glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
+            positionScale = new Vector3f(1, 1, 1);
+            positionOffset = new Vector3f();
+            if (vertexFormat.hasQuantizedPositions()) {
+                aabbMax.sub(aabbMin, positionScale);
+                positionOffset.set(aabbMin);
             }
 
-            if (normals != null && normals.length > 0) {
-                normalsVboId = glGenBuffers();
-                normalsBuffer = memAllocFloat(normals.length);
-                normalsBuffer.put(normals).flip();
-                glBindBuffer(GL_ARRAY_BUFFER, normalsVboId);
-                glBufferData(GL_ARRAY_BUFFER, normalsBuffer, GL_STATIC_DRAW);
-                glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
+            vaoId = glGenVertexArrays();
+            RenderState.bindVertexArray(vaoId);
+
+            vboId = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            glBufferData(GL_ARRAY_BUFFER, data.getVertices(), GL_STATIC_DRAW);
+
+            if (vertexFormat.isInterleaved()) {
+                int stride = vertexFormat.getStride();
+                int offset;
+                if (vertexFormat.hasQuantizedPositions()) {
+                    glVertexAttribPointer(0, 3, GL_UNSIGNED_SHORT, true, stride, 0);
+                    offset = 8;
+                } else {
+                    glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, 0);
+                    offset = 12;
+                }
+                glVertexAttribPointer(1, 2, GL_HALF_FLOAT, false, stride, offset);
+                glVertexAttribPointer(2, 2, GL_SHORT, true, stride, offset + 4);
+            } else {
+                long offset = (long) data.getNumVertices() * 3 * 4;
+                glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+                if (data.hasTexCoords()) {
+                    glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, offset);
+                    offset += (long) data.getNumVertices() * 2 * 4;
+                }
+                if (data.hasNormals()) {
+                    glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, offset);
+                }
             }
 
             idxVboId = glGenBuffers();
-            indicesBuffer = memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
             glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, data.getIndices(), GL_STATIC_DRAW);
+
+            glEnableVertexAttribArray(0);
+            if (data.hasTexCoords()) {
+                glEnableVertexAttribArray(1);
+            }
+            if (data.hasNormals()) {
+                glEnableVertexAttribArray(2);
+            }
 
             glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
+            RenderState.bindVertexArray(0);
+
+            if (collisionShape != null) {
+                this.collisionShape = collisionShape;
+            } else if (data.getCollisionMesh() != null) {
+                this.collisionShape = data.getCollisionMesh();
+            } else if (Refs.COLLISION_MESHES_ENABLED) {
+                // Its hierarchy is built on the first ray cast against it.
+                this.collisionShape = data.createCollisionMesh();
+            }
         } finally {
-            if (posBuffer != null) MemoryUtil.memFree(posBuffer);
-            if (texBuffer != null) MemoryUtil.memFree(texBuffer);
-            if (normalsBuffer != null) MemoryUtil.memFree(normalsBuffer);
-            if (indicesBuffer != null) MemoryUtil.memFree(indicesBuffer);
+            if (freeData) {
+                data.free();
+            }
         }
     }
 
@@ -85,56 +142,58 @@ public class Mesh {
         this.material.attachTexture(texture);
     }
 
-    public void render() {
+    private void initRender() {
         if (material != null && material.isTextured()) {
-            glActiveTexture(GL_TEXTURE0);
-            glBindTexture(GL_TEXTURE_2D, material.getTexture().getId());
+            Texture texture = material.getTexture();
+            RenderState.bindTexture(0, texture.getTarget(), texture.getId());
         }
+        RenderState.bindVertexArray(vaoId);
+    }
 
-        glBindVertexArray(vaoId);
-        glEnableVertexAttribArray(0);
-        if (texVboId > 0) {
-            glEnableVertexAttribArray(1);
-        }
-        if (normalsVboId > 0) {
-            glEnableVertexAttribArray(2);
+    public void render() {
+        initRender();
+        glDrawElements(GL_TRIANGLES, vertexCount, indexType, 0);
+    }
+
+    private void initInstanceBuffer() {
+        instanceVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
+        for (int i = 0; i < 4; i++) {
+            glVertexAttribPointer(INSTANCE_MATRIX_LOCATION + i, 4, GL_FLOAT, false, MATRIX_SIZE_BYTES, (long) i * VECTOR4F_SIZE_BYTES);
+            glVertexAttribDivisor(INSTANCE_MATRIX_LOCATION + i, 1);
+            glEnableVertexAttribArray(INSTANCE_MATRIX_LOCATION + i);
         }
+    }
 
-        glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
+    public void renderInstanced(FloatBuffer modelMatrices, int numInstances) {
+        initRender();
 
-        glDisableVertexAttribArray(0);
-        if (texVboId > 0) {
-            glDisableVertexAttribArray(1);
+        if (instanceVboId == 0) {
+            initInstanceBuffer();
+        } else {
+            glBindBuffer(GL_ARRAY_BUFFER, instanceVboId);
         }
-        if (normalsVboId > 0) {
-            glDisableVertexAttribArray(2);
-        }
-        glBindVertexArray(0);
-        glBindTexture(GL_TEXTURE_2D, 0);
+        glBufferData(GL_ARRAY_BUFFER, modelMatrices, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        glDrawElementsInstanced(GL_TRIANGLES, vertexCount, indexType, 0, numInstances);
     }
 
     public void deleteBuffers() {
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-
         glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glDeleteBuffers(posVboId);
-        if (texVboId > 0) {
-            glDeleteBuffers(texVboId);
-        }
-        if (normalsVboId > 0) {
-            glDeleteBuffers(normalsVboId);
-        }
+        glDeleteBuffers(vboId);
         glDeleteBuffers(idxVboId);
+        if (instanceVboId > 0) {
+            glDeleteBuffers(instanceVboId);
+        }
 
-        glBindVertexArray(0);
         glDeleteVertexArrays(vaoId);
+        RenderState.vertexArrayDeleted(vaoId);
     }
 
     public void cleanUp() {
         if (material != null && material.isTextured() && material.getTexture() != null) {
-            material.getTexture().cleanup();
+            material.getTexture().release();
         }
         deleteBuffers();
     }
@@ -154,4 +213,44 @@ public class Mesh {
     public int getVertexCount() {
         return vertexCount;
     }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    public Vector3f getPositionScale() {
+        return positionScale;
+    }
+
+    public Vector3f getPositionOffset() {
+        return positionOffset;
+    }
+
+    /**
+     * Shape rays are cast against when picking, in the mesh's local space, or null if the mesh
+     * cannot be picked beyond its bounds.
+     */
+    public CollisionShape getCollisionShape() {
+        return collisionShape;
+    }
+
+    public void setCollisionShape(CollisionShape collisionShape) {
+        this.collisionShape = collisionShape;
+    }
+
+    public Vector3f getAabbMin() {
+        return aabbMin;
+    }
+
+    public Vector3f getAabbMax() {
+        return aabbMax;
+    }
+
+    public Vector3f getBoundingCenter() {
+        return boundingCenter;
+    }
+
+    public float getBoundingRadius() {
+        return boundingRadius;
+    }
 }
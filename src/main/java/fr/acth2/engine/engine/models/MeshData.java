@@ -0,0 +1,291 @@
+package fr.acth2.engine.engine.models;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * CPU side of a {@link Mesh}: vertex and index bytes already laid out the way they are handed to
+ * {@code glBufferData}, together with the layout description and bounds. Building one needs no
+ * GL context, so it can be produced by a loader or read back from the mesh cache and uploaded
+ * later.
+ * <p>
+ * For {@link VertexFormat#SEPARATE} the vertex blob is planar: all positions, then all texture
+ * coordinates, then all normals. The compact formats store interleaved vertices.
+ */
+public class MeshData {
+
+    private static final int MAX_SHORT_INDEX_VERTICES = 65536;
+
+    private final VertexFormat vertexFormat;
+    private final int numVertices;
+    private final int numIndices;
+    private final int indexType;
+    private final boolean hasTexCoords;
+    private final boolean hasNormals;
+    private final Vector3f aabbMin;
+    private final Vector3f aabbMax;
+    private final Vector3f boundingCenter;
+    private final float boundingRadius;
+    private ByteBuffer vertices;
+    private ByteBuffer indices;
+    private final boolean ownsBuffers;
+    private CollisionMesh collisionMesh;
+
+    public MeshData(VertexFormat vertexFormat, int numVertices, int numIndices, int indexType,
+                    boolean hasTexCoords, boolean hasNormals,
+                    Vector3f aabbMin, Vector3f aabbMax, Vector3f boundingCenter, float boundingRadius,
+                    ByteBuffer vertices, ByteBuffer indices, boolean ownsBuffers) {
+        this.vertexFormat = vertexFormat;
+        this.numVertices = numVertices;
+        this.numIndices = numIndices;
+        this.indexType = indexType;
+        this.hasTexCoords = hasTexCoords;
+        this.hasNormals = hasNormals;
+        this.aabbMin = aabbMin;
+        this.aabbMax = aabbMax;
+        this.boundingCenter = boundingCenter;
+        this.boundingRadius = boundingRadius;
+        this.vertices = vertices;
+        this.indices = indices;
+        this.ownsBuffers = ownsBuffers;
+    }
+
+    public static MeshData build(float[] positions, float[] texCoords, float[] normals, int[] indices, VertexFormat vertexFormat) {
+        int numVertices = positions.length / 3;
+        boolean hasTexCoords = texCoords != null && texCoords.length > 0;
+        boolean hasNormals = normals != null && normals.length > 0;
+
+        Vector3f aabbMin = new Vector3f();
+        Vector3f aabbMax = new Vector3f();
+        Vector3f boundingCenter = new Vector3f();
+        float boundingRadius = calcBounds(positions, aabbMin, aabbMax, boundingCenter);
+
+        ByteBuffer vertexBuffer = vertexFormat.isInterleaved()
+                ? packInterleaved(vertexFormat, positions, texCoords, normals, hasTexCoords, hasNormals, aabbMin, aabbMax)
+                : packPlanar(positions, texCoords, normals, hasTexCoords, hasNormals);
+
+        ByteBuffer indexBuffer;
+        int indexType;
+        if (vertexFormat.isInterleaved() && numVertices <= MAX_SHORT_INDEX_VERTICES) {
+            indexType = GL_UNSIGNED_SHORT;
+            indexBuffer = MemoryUtil.memAlloc(indices.length * 2);
+            for (int index : indices) {
+                indexBuffer.putShort((short) index);
+            }
+        } else {
+            indexType = GL_UNSIGNED_INT;
+            indexBuffer = MemoryUtil.memAlloc(indices.length * 4);
+            indexBuffer.asIntBuffer().put(indices);
+            indexBuffer.position(indexBuffer.capacity());
+        }
+        indexBuffer.flip();
+
+        return new MeshData(vertexFormat, numVertices, indices.length, indexType, hasTexCoords, hasNormals,
+                aabbMin, aabbMax, boundingCenter, boundingRadius, vertexBuffer, indexBuffer, true);
+    }
+
+    private static ByteBuffer packPlanar(float[] positions, float[] texCoords, float[] normals,
+                                         boolean hasTexCoords, boolean hasNormals) {
+        int floats = positions.length + (hasTexCoords ? texCoords.length : 0) + (hasNormals ? normals.length : 0);
+        ByteBuffer buffer = MemoryUtil.memAlloc(floats * 4);
+        buffer.asFloatBuffer().put(positions);
+        int offset = positions.length;
+        if (hasTexCoords) {
+            buffer.position(offset * 4);
+            buffer.asFloatBuffer().put(texCoords);
+            offset += texCoords.length;
+        }
+        if (hasNormals) {
+            buffer.position(offset * 4);
+            buffer.asFloatBuffer().put(normals);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static ByteBuffer packInterleaved(VertexFormat vertexFormat, float[] positions, float[] texCoords, float[] normals,
+                                              boolean hasTexCoords, boolean hasNormals, Vector3f aabbMin, Vector3f aabbMax) {
+        int numVertices = positions.length / 3;
+        ByteBuffer buffer = MemoryUtil.memAlloc(numVertices * vertexFormat.getStride());
+        float[] oct = new float[2];
+        for (int i = 0; i < numVertices; i++) {
+            if (vertexFormat.hasQuantizedPositions()) {
+                buffer.putShort(quantize(positions[i * 3], aabbMin.x, aabbMax.x));
+                buffer.putShort(quantize(positions[i * 3 + 1], aabbMin.y, aabbMax.y));
+                buffer.putShort(quantize(positions[i * 3 + 2], aabbMin.z, aabbMax.z));
+                buffer.putShort((short) 0);
+            } else {
+                buffer.putFloat(positions[i * 3]);
+                buffer.putFloat(positions[i * 3 + 1]);
+                buffer.putFloat(positions[i * 3 + 2]);
+            }
+
+            if (hasTexCoords) {
+                buffer.putShort(VertexPacking.toHalf(texCoords[i * 2]));
+                buffer.putShort(VertexPacking.toHalf(texCoords[i * 2 + 1]));
+            } else {
+                buffer.putInt(0);
+            }
+
+            if (hasNormals) {
+                VertexPacking.octEncode(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2], oct, 0);
+                buffer.putShort(VertexPacking.toSnorm16(oct[0]));
+                buffer.putShort(VertexPacking.toSnorm16(oct[1]));
+            } else {
+                buffer.putInt(0);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static short quantize(float value, float min, float max) {
+        float extent = max - min;
+        return extent > 0 ? VertexPacking.toUnorm16((value - min) / extent) : 0;
+    }
+
+    private static float calcBounds(float[] positions, Vector3f aabbMin, Vector3f aabbMax, Vector3f boundingCenter) {
+        if (positions == null || positions.length < 3) {
+            return 0;
+        }
+
+        aabbMin.set(Float.POSITIVE_INFINITY);
+        aabbMax.set(Float.NEGATIVE_INFINITY);
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            aabbMin.x = Math.min(aabbMin.x, positions[i]);
+            aabbMin.y = Math.min(aabbMin.y, positions[i + 1]);
+            aabbMin.z = Math.min(aabbMin.z, positions[i + 2]);
+            aabbMax.x = Math.max(aabbMax.x, positions[i]);
+            aabbMax.y = Math.max(aabbMax.y, positions[i + 1]);
+            aabbMax.z = Math.max(aabbMax.z, positions[i + 2]);
+        }
+        aabbMin.add(aabbMax, boundingCenter).mul(0.5f);
+
+        float maxDistSq = 0;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            float distSq = boundingCenter.distanceSquared(positions[i], positions[i + 1], positions[i + 2]);
+            if (distSq > maxDistSq) {
+                maxDistSq = distSq;
+            }
+        }
+        return (float) Math.sqrt(maxDistSq);
+    }
+
+    /**
+     * Creates the collision mesh handed to the {@link Mesh} uploaded from this data, with its
+     * hierarchy already built. Meant for loader threads, so neither the upload nor the first pick
+     * pays for it.
+     */
+    public void buildCollisionMesh() {
+        collisionMesh = createCollisionMesh();
+        collisionMesh.buildBvh();
+    }
+
+    /**
+     * Collision mesh made by {@link #buildCollisionMesh()}, or null.
+     */
+    public CollisionMesh getCollisionMesh() {
+        return collisionMesh;
+    }
+
+    /**
+     * Decodes the positions and indices back out of the GPU layout into a {@link CollisionMesh}.
+     * Quantized positions come back at 16-bit precision, which is what the mesh is drawn with.
+     */
+    public CollisionMesh createCollisionMesh() {
+        float[] positions = new float[numVertices * 3];
+        if (vertexFormat.isInterleaved()) {
+            int stride = vertexFormat.getStride();
+            boolean quantized = vertexFormat.hasQuantizedPositions();
+            Vector3f extent = new Vector3f(aabbMax).sub(aabbMin);
+            for (int i = 0; i < numVertices; i++) {
+                int offset = i * stride;
+                for (int axis = 0; axis < 3; axis++) {
+                    positions[i * 3 + axis] = quantized
+                            ? (vertices.getShort(offset + axis * 2) & 0xFFFF) / 65535f * extent.get(axis) + aabbMin.get(axis)
+                            : vertices.getFloat(offset + axis * 4);
+                }
+            }
+        } else {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = vertices.getFloat(i * 4);
+            }
+        }
+
+        int[] triangleIndices = new int[numIndices];
+        for (int i = 0; i < numIndices; i++) {
+            triangleIndices[i] = indexType == GL_UNSIGNED_SHORT ? indices.getShort(i * 2) & 0xFFFF : indices.getInt(i * 4);
+        }
+        return new CollisionMesh(positions, triangleIndices);
+    }
+
+    /**
+     * Releases the vertex and index buffers if they were allocated by this object. Buffers that
+     * belong to someone else, such as slices of a memory-mapped file, are only dropped.
+     */
+    public void free() {
+        if (ownsBuffers) {
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(indices);
+        }
+        vertices = null;
+        indices = null;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    public int getNumIndices() {
+        return numIndices;
+    }
+
+    public int getIndexType() {
+        return indexType;
+    }
+
+    public int getIndexSize() {
+        return indexType == GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+
+    public boolean hasTexCoords() {
+        return hasTexCoords;
+    }
+
+    public boolean hasNormals() {
+        return hasNormals;
+    }
+
+    public Vector3f getAabbMin() {
+        return aabbMin;
+    }
+
+    public Vector3f getAabbMax() {
+        return aabbMax;
+    }
+
+    public Vector3f getBoundingCenter() {
+        return boundingCenter;
+    }
+
+    public float getBoundingRadius() {
+        return boundingRadius;
+    }
+
+    public ByteBuffer getVertices() {
+        return vertices;
+    }
+
+    public ByteBuffer getIndices() {
+        return indices;
+    }
+}
@@ -1,20 +1,16 @@
 package fr.acth2.engine.engine.models;
 
-import fr.acth2.engine.engine.camera.Camera;
-import fr.acth2.engine.engine.items.Item;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 public class Transformation {
 
     private final Matrix4f projectionMatrix;
-    private final Matrix4f worldMatrix;
     private final Matrix4f viewMatrix;
     private final Matrix4f modelViewMatrix;
     private final Matrix4f orthoMatrix;
 
     public Transformation() {
-        worldMatrix = new Matrix4f();
         projectionMatrix = new Matrix4f();
         viewMatrix = new Matrix4f();
         modelViewMatrix = new Matrix4f();
@@ -28,24 +24,14 @@ public class Transformation {
         return projectionMatrix;
     }
 
-    public Matrix4f getModelViewMatrix(Item gameItem, Matrix4f viewMatrix) {
-        Vector3f rotation = gameItem.getRotation();
-        modelViewMatrix.identity().translate(gameItem.getPosition()).
-                rotateX((float)Math.toRadians(-rotation.x)).
-                rotateY((float)Math.toRadians(-rotation.y)).
-                rotateZ((float)Math.toRadians(-rotation.z)).
-                scale(gameItem.getScale());
-        Matrix4f viewCurr = new Matrix4f(viewMatrix);
-        return viewCurr.mul(modelViewMatrix);
+    public Matrix4f getModelViewMatrix(Matrix4f modelMatrix, Matrix4f viewMatrix) {
+        return modelViewMatrix.set(viewMatrix).mul(modelMatrix);
     }
 
-    public Matrix4f getViewMatrix(Camera camera) {
-        Vector3f cameraPos = camera.getPosition();
-        Vector3f rotation = camera.getRotation();
-
+    public Matrix4f getViewMatrix(Vector3f cameraPos, Vector3f rotation) {
         viewMatrix.identity();
-        viewMatrix.rotate((float)Math.toRadians(rotation.x), new Vector3f(1, 0, 0))
-                  .rotate((float)Math.toRadians(rotation.y), new Vector3f(0, 1, 0));
+        viewMatrix.rotateX((float)Math.toRadians(rotation.x))
+                  .rotateY((float)Math.toRadians(rotation.y));
         viewMatrix.translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
         return viewMatrix;
     }
@@ -55,17 +41,4 @@ public class Transformation {
         orthoMatrix.ortho(left, right, bottom, top, zNear, zFar);
         return orthoMatrix;
     }
-
-    public Matrix4f buildOrthoProjModelMatrix(Item gameItem, Matrix4f orthoMatrix) {
-        Vector3f rotation = gameItem.getRotation();
-        Matrix4f modelMatrix = new Matrix4f();
-        modelMatrix.identity().translate(gameItem.getPosition()).
-                rotateX((float)Math.toRadians(-rotation.x)).
-                rotateY((float)Math.toRadians(-rotation.y)).
-                rotateZ((float)Math.toRadians(-rotation.z)).
-                scale(gameItem.getScale());
-        Matrix4f orthoMatrixCurr = new Matrix4f(orthoMatrix);
-        orthoMatrixCurr.mul(modelMatrix);
-        return orthoMatrixCurr;
-    }
 }
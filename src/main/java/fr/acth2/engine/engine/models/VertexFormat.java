@@ -0,0 +1,43 @@
+package fr.acth2.engine.engine.models;
+
+/**
+ * Vertex layouts a {@link Mesh} can be uploaded with. The compact layouts store everything in a
+ * single interleaved VBO with half-float texture coordinates and octahedral-encoded 16-bit
+ * normals, and use 16-bit indices whenever the mesh has at most 65536 vertices. They are meant
+ * for the scene shader, which decodes them; the HUD and skybox shaders expect {@link #SEPARATE}.
+ */
+public enum VertexFormat {
+
+    /** Positions, texture coordinates and normals in three separate float VBOs, 32-bit indices. */
+    SEPARATE(32, false, false),
+    /** Float positions, half-float texture coordinates and octahedral normals, interleaved. */
+    INTERLEAVED(20, true, false),
+    /** As {@link #INTERLEAVED} with positions quantized to 16 bits over the mesh bounds. */
+    QUANTIZED(16, true, true);
+
+    private final int stride;
+    private final boolean octNormals;
+    private final boolean quantizedPositions;
+
+    VertexFormat(int stride, boolean octNormals, boolean quantizedPositions) {
+        this.stride = stride;
+        this.octNormals = octNormals;
+        this.quantizedPositions = quantizedPositions;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public boolean isInterleaved() {
+        return this != SEPARATE;
+    }
+
+    public boolean hasOctNormals() {
+        return octNormals;
+    }
+
+    public boolean hasQuantizedPositions() {
+        return quantizedPositions;
+    }
+}
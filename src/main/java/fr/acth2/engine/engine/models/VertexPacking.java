@@ -0,0 +1,80 @@
+package fr.acth2.engine.engine.models;
+
+/**
+ * Scalar encoders used to build the compact {@link VertexFormat} layouts.
+ */
+public final class VertexPacking {
+
+    private VertexPacking() {
+    }
+
+    /**
+     * Converts a float to IEEE 754 half precision, rounding to nearest. Values too large for a
+     * half saturate to infinity and values too small flush to (signed) zero.
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+        int rounded = abs + 0x1000;
+
+        if (rounded >= 0x47800000) {
+            if (abs >= 0x47800000) {
+                if (abs < 0x7f800000) {
+                    return (short) (sign | 0x7c00);
+                }
+                return (short) (sign | 0x7c00 | ((abs & 0x007fffff) >>> 13));
+            }
+            return (short) (sign | 0x7bff);
+        }
+        if (rounded >= 0x38800000) {
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        }
+        if (rounded < 0x33000000) {
+            return (short) sign;
+        }
+        int exponent = abs >>> 23;
+        return (short) (sign | ((((abs & 0x7fffff) | 0x800000) + (0x800000 >>> (exponent - 102))) >>> (126 - exponent)));
+    }
+
+    /**
+     * Maps a value from [-1, 1] to a signed normalized 16-bit integer.
+     */
+    public static short toSnorm16(float value) {
+        float clamped = Math.max(-1f, Math.min(1f, value));
+        return (short) Math.round(clamped * 32767f);
+    }
+
+    /**
+     * Maps a value from [0, 1] to an unsigned normalized 16-bit integer.
+     */
+    public static short toUnorm16(float value) {
+        float clamped = Math.max(0f, Math.min(1f, value));
+        return (short) Math.round(clamped * 65535f);
+    }
+
+    /**
+     * Projects a normal onto the octahedron and unfolds it into the [-1, 1] square. The two
+     * components are written to {@code dest[offset]} and {@code dest[offset + 1]}. A zero
+     * normal encodes to the centre of the square, which decodes to +Z.
+     */
+    public static void octEncode(float x, float y, float z, float[] dest, int offset) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0f) {
+            dest[offset] = 0f;
+            dest[offset + 1] = 0f;
+            return;
+        }
+
+        float u = x / l1;
+        float v = y / l1;
+        if (z < 0f) {
+            float foldedU = (1f - Math.abs(v)) * (u >= 0f ? 1f : -1f);
+            float foldedV = (1f - Math.abs(u)) * (v >= 0f ? 1f : -1f);
+            u = foldedU;
+            v = foldedV;
+        }
+        dest[offset] = u;
+        dest[offset + 1] = v;
+    }
+}
@@ -0,0 +1,206 @@
+package fr.acth2.engine.engine.models.heightmap;
+
+import fr.acth2.engine.engine.models.CollisionShape;
+import org.joml.Vector3f;
+
+/**
+ * Collision shape of a {@link HeightMapMesh}: its grid of heights, with the same two triangles
+ * per cell as the rendered mesh. Rays march through the cells they cross in the XZ plane, in
+ * order, like a 2D DDA line walk, and stop at the first cell they hit, so a cast costs a few
+ * hundred cell visits at most whatever the resolution. Cells entirely below the ray's span over
+ * them are skipped without testing their triangles.
+ */
+public class HeightField implements CollisionShape {
+
+    private final int width;
+    private final int depth;
+    private final float startX;
+    private final float startZ;
+    private final float cellSizeX;
+    private final float cellSizeZ;
+    private final float[] heights;
+    /** Highest corner of each cell. */
+    private final float[] cellMaxHeights;
+    private final float minHeight;
+    private final float maxHeight;
+
+    /**
+     * @param heights {@code width * depth} heights, row by row along Z
+     */
+    public HeightField(int width, int depth, float startX, float startZ, float cellSizeX, float cellSizeZ, float[] heights) {
+        this.width = width;
+        this.depth = depth;
+        this.startX = startX;
+        this.startZ = startZ;
+        this.cellSizeX = cellSizeX;
+        this.cellSizeZ = cellSizeZ;
+        this.heights = heights;
+
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float height : heights) {
+            min = Math.min(min, height);
+            max = Math.max(max, height);
+        }
+        minHeight = min;
+        maxHeight = max;
+
+        cellMaxHeights = new float[(width - 1) * (depth - 1)];
+        for (int row = 0; row < depth - 1; row++) {
+            for (int col = 0; col < width - 1; col++) {
+                cellMaxHeights[row * (width - 1) + col] = Math.max(
+                        Math.max(heights[row * width + col], heights[row * width + col + 1]),
+                        Math.max(heights[(row + 1) * width + col], heights[(row + 1) * width + col + 1]));
+            }
+        }
+    }
+
+    @Override
+    public float raycast(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                         float maxDistance, Vector3f normalDest) {
+        // Clip the ray to the field's bounds.
+        float endX = startX + (width - 1) * cellSizeX;
+        float endZ = startZ + (depth - 1) * cellSizeZ;
+        float near = 0f;
+        float far = maxDistance;
+        float invX = 1f / dirX, invY = 1f / dirY, invZ = 1f / dirZ;
+        float t1 = (startX - originX) * invX, t2 = (endX - originX) * invX;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (minHeight - originY) * invY;
+        t2 = (maxHeight - originY) * invY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (startZ - originZ) * invZ;
+        t2 = (endZ - originZ) * invZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        if (!(near <= far)) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        // Cell of the entry point, and the distances to its next X and Z borders.
+        float entryX = (originX + dirX * near - startX) / cellSizeX;
+        float entryZ = (originZ + dirZ * near - startZ) / cellSizeZ;
+        int col = Math.min(width - 2, Math.max(0, (int) entryX));
+        int row = Math.min(depth - 2, Math.max(0, (int) entryZ));
+        int stepCol = dirX > 0 ? 1 : -1;
+        int stepRow = dirZ > 0 ? 1 : -1;
+        float deltaX = Math.abs(cellSizeX * invX);
+        float deltaZ = Math.abs(cellSizeZ * invZ);
+        float nextX = dirX == 0 ? Float.POSITIVE_INFINITY
+                : (startX + (col + (dirX > 0 ? 1 : 0)) * cellSizeX - originX) * invX;
+        float nextZ = dirZ == 0 ? Float.POSITIVE_INFINITY
+                : (startZ + (row + (dirZ > 0 ? 1 : 0)) * cellSizeZ - originZ) * invZ;
+
+        float cellEnter = near;
+        while (true) {
+            float cellExit = Math.min(Math.min(nextX, nextZ), far);
+            float enterY = originY + dirY * cellEnter;
+            float exitY = originY + dirY * cellExit;
+            if (Math.min(enterY, exitY) <= cellMaxHeights[row * (width - 1) + col]) {
+                float hit = intersectCell(col, row, originX, originY, originZ, dirX, dirY, dirZ, far, normalDest);
+                if (hit < far) {
+                    return hit;
+                }
+            }
+            if (cellExit >= far) {
+                return Float.POSITIVE_INFINITY;
+            }
+            if (nextX < nextZ) {
+                col += stepCol;
+                cellEnter = nextX;
+                nextX += deltaX;
+                if (col < 0 || col >= width - 1) {
+                    return Float.POSITIVE_INFINITY;
+                }
+            } else {
+                row += stepRow;
+                cellEnter = nextZ;
+                nextZ += deltaZ;
+                if (row < 0 || row >= depth - 1) {
+                    return Float.POSITIVE_INFINITY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the two triangles of a cell, split the way {@link HeightMapMesh} splits them.
+     */
+    private float intersectCell(int col, int row, float originX, float originY, float originZ,
+                                float dirX, float dirY, float dirZ, float maxDistance, Vector3f normalDest) {
+        float x0 = startX + col * cellSizeX;
+        float x1 = x0 + cellSizeX;
+        float z0 = startZ + row * cellSizeZ;
+        float z1 = z0 + cellSizeZ;
+        float leftTop = heights[row * width + col];
+        float rightTop = heights[row * width + col + 1];
+        float leftBottom = heights[(row + 1) * width + col];
+        float rightBottom = heights[(row + 1) * width + col + 1];
+
+        float closest = intersectTriangle(x0, leftTop, z0, x0, leftBottom, z1, x1, rightTop, z0,
+                originX, originY, originZ, dirX, dirY, dirZ, maxDistance, normalDest);
+        return intersectTriangle(x1, rightTop, z0, x0, leftBottom, z1, x1, rightBottom, z1,
+                originX, originY, originZ, dirX, dirY, dirZ, closest, normalDest);
+    }
+
+    private static float intersectTriangle(float v0x, float v0y, float v0z, float v1x, float v1y, float v1z,
+                                           float v2x, float v2y, float v2z,
+                                           float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                                           float closest, Vector3f normalDest) {
+        float e1x = v1x - v0x, e1y = v1y - v0y, e1z = v1z - v0z;
+        float e2x = v2x - v0x, e2y = v2y - v0y, e2z = v2z - v0z;
+        float px = dirY * e2z - dirZ * e2y;
+        float py = dirZ * e2x - dirX * e2z;
+        float pz = dirX * e2y - dirY * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det == 0f) {
+            return closest;
+        }
+        float invDet = 1f / det;
+        float sx = originX - v0x, sy = originY - v0y, sz = originZ - v0z;
+        float u = (sx * px + sy * py + sz * pz) * invDet;
+        if (!(u >= 0f && u <= 1f)) {
+            return closest;
+        }
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float v = (dirX * qx + dirY * qy + dirZ * qz) * invDet;
+        if (!(v >= 0f && u + v <= 1f)) {
+            return closest;
+        }
+        float distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+        if (distance >= 0f && distance < closest) {
+            // Winding of the terrain faces up, so this normal points up.
+            normalDest.set(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
+            return distance;
+        }
+        return closest;
+    }
+
+    /**
+     * Height of the surface at a local position, or NaN outside the field.
+     */
+    public float getHeight(float x, float z) {
+        float cellX = (x - startX) / cellSizeX;
+        float cellZ = (z - startZ) / cellSizeZ;
+        if (!(cellX >= 0 && cellZ >= 0 && cellX <= width - 1 && cellZ <= depth - 1)) {
+            return Float.NaN;
+        }
+        int col = Math.min(width - 2, (int) cellX);
+        int row = Math.min(depth - 2, (int) cellZ);
+        float fx = cellX - col;
+        float fz = cellZ - row;
+        float leftTop = heights[row * width + col];
+        float rightTop = heights[row * width + col + 1];
+        float leftBottom = heights[(row + 1) * width + col];
+        float rightBottom = heights[(row + 1) * width + col + 1];
+        // The diagonal runs from right-top to left-bottom.
+        if (fx + fz <= 1f) {
+            return leftTop + (rightTop - leftTop) * fx + (leftBottom - leftTop) * fz;
+        }
+        return rightBottom + (leftBottom - rightBottom) * (1f - fx) + (rightTop - rightBottom) * (1f - fz);
+    }
+}
@@ -1,16 +1,26 @@
 package fr.acth2.engine.engine.models.heightmap;
 
 import de.matthiasmann.twl.utils.PNGDecoder;
-import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.TextureCache;
+import fr.acth2.engine.engine.TextureSampler;
+import fr.acth2.engine.engine.TextureStreamer;
 import fr.acth2.engine.engine.models.Material;
 import fr.acth2.engine.engine.models.Mesh;
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.VertexFormat;
 import fr.acth2.engine.utils.loader.Loader;
 import org.joml.Vector3f;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Terrain block mesh built from a heightmap image. Construction only decodes the heightmap and
+ * builds vertex data, so it may run on a loader thread; {@link #upload()} creates the GL mesh and
+ * texture and must run on the GL thread.
+ */
 public class HeightMapMesh {
     private static final int MAX_COLOUR = 255 * 255 * 255;
     private static final float STARTX = -0.5f;
@@ -18,12 +28,20 @@ public class HeightMapMesh {
 
     private final float minY;
     private final float maxY;
-    private final Mesh mesh;
     private final int width;
+    private final String textureFile;
+    private final HeightField heightField;
+    private MeshData meshData;
+    private Mesh mesh;
 
     public HeightMapMesh(float minY, float maxY, String heightMapFile, String textureFile, int textInc) throws Exception {
+        this(minY, maxY, heightMapFile, textureFile, textInc, VertexFormat.SEPARATE);
+    }
+
+    public HeightMapMesh(float minY, float maxY, String heightMapFile, String textureFile, int textInc, VertexFormat vertexFormat) throws Exception {
         this.minY = minY;
         this.maxY = maxY;
+        this.textureFile = textureFile;
 
         PNGDecoder decoder = new PNGDecoder(getClass().getResourceAsStream(heightMapFile));
         this.width = decoder.getWidth();
@@ -33,8 +51,6 @@ public class HeightMapMesh {
         decoder.decode(buf, decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
         buf.flip();
 
-        Texture texture = new Texture(textureFile);
-
         float incx = getXLength() / (width - 1);
         float incz = getZLength() / (height - 1);
 
@@ -72,14 +88,59 @@ public class HeightMapMesh {
         int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
         float[] textCoordsArr = Loader.listToArray(textCoords);
         float[] normalsArr = calcNormals(posArr, width, height);
-        this.mesh = new Mesh(posArr, textCoordsArr, normalsArr, indicesArr);
-        Material material = new Material(texture, 0.0f);
-        mesh.setMaterial(material);
+        float[] heights = new float[width * height];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = posArr[i * 3 + 1];
+        }
+        this.heightField = new HeightField(width, height, STARTX, STARTZ, incx, incz, heights);
+        this.meshData = MeshData.build(posArr, textCoordsArr, normalsArr, indicesArr, vertexFormat);
+    }
+
+    /**
+     * Uploads the mesh and its texture and releases the CPU copy. Calling it again is a no-op.
+     */
+    public HeightMapMesh upload() throws IOException {
+        if (mesh != null) {
+            return this;
+        }
+        try {
+            mesh = new Mesh(meshData, heightField);
+            mesh.setMaterial(new Material(TextureCache.acquire(textureFile), 0.0f));
+        } finally {
+            freeMeshData();
+        }
+        return this;
+    }
+
+    /**
+     * Uploads the mesh and streams its texture in the background; the terrain renders with the
+     * streamer's placeholder until the texture is ready.
+     */
+    public HeightMapMesh upload(TextureStreamer streamer) {
+        if (mesh != null) {
+            return this;
+        }
+        try {
+            mesh = new Mesh(meshData, heightField);
+            mesh.setMaterial(new Material(TextureCache.acquire(textureFile, TextureSampler.DEFAULT, streamer), 0.0f));
+        } finally {
+            freeMeshData();
+        }
+        return this;
+    }
+
+    private void freeMeshData() {
+        meshData.free();
+        meshData = null;
     }
 
     public Mesh getMesh() {
         return mesh;
     }
+
+    public HeightField getHeightField() {
+        return heightField;
+    }
     
     public int getWidth() {
         return width;
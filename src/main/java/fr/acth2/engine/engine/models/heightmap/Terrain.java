@@ -1,14 +1,22 @@
 package fr.acth2.engine.engine.models.heightmap;
 
 import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.models.VertexFormat;
 
 public class Terrain {
 
     private final Item[] items;
 
     public Terrain(int blocksPerRow, float scale, float minY, float maxY, String heightMap, String textureFile, int textInc) throws Exception {
+        this(blocksPerRow, scale, minY, maxY, heightMap, textureFile, textInc, VertexFormat.SEPARATE);
+    }
+
+    public Terrain(int blocksPerRow, float scale, float minY, float maxY, String heightMap, String textureFile, int textInc, VertexFormat vertexFormat) throws Exception {
+        this(blocksPerRow, scale, new HeightMapMesh(minY, maxY, heightMap, textureFile, textInc, vertexFormat).upload());
+    }
+
+    public Terrain(int blocksPerRow, float scale, HeightMapMesh heightMapMesh) {
         items = new Item[blocksPerRow * blocksPerRow];
-        HeightMapMesh heightMapMesh = new HeightMapMesh(minY, maxY, heightMap, textureFile, textInc);
         for (int row = 0; row < blocksPerRow; row++) {
             for (int col = 0; col < blocksPerRow; col++) {
                 float xDisplacement = (col - ((float) blocksPerRow - 1) / (float) 2) * scale * HeightMapMesh.getXLength();
@@ -1,6 +1,8 @@
 package fr.acth2.engine.engine.models.skybox;
 
 import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.TextureCache;
+import fr.acth2.engine.engine.TextureSampler;
 import fr.acth2.engine.engine.items.Item;
 import fr.acth2.engine.engine.models.Material;
 import fr.acth2.engine.engine.models.Mesh;
@@ -16,6 +18,18 @@ public class SkyBox extends Item {
         setPosition(0, 0, 0);
     }
 
+    /**
+     * Builds the sky box from a single KTX2 cube map, as written by the texture converter.
+     */
+    public SkyBox(String cubeMapFile) throws Exception {
+        super();
+        Mesh skyBoxMesh = buildSkyBoxMesh();
+        Texture skyBoxtexture = TextureCache.acquire(cubeMapFile, TextureSampler.CLAMPED);
+        skyBoxMesh.setMaterial(new Material(skyBoxtexture, 0.0f));
+        setMesh(skyBoxMesh);
+        setPosition(0, 0, 0);
+    }
+
     private Mesh buildSkyBoxMesh() {
         float[] positions = {
             // V0
@@ -0,0 +1,359 @@
+package fr.acth2.engine.engine.text;
+
+import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.TextureData;
+import fr.acth2.engine.engine.TextureSampler;
+import fr.acth2.engine.utils.loader.Loader;
+import org.lwjgl.stb.STBTTAlignedQuad;
+import org.lwjgl.stb.STBTTFontinfo;
+import org.lwjgl.stb.STBTTPackContext;
+import org.lwjgl.stb.STBTTPackedchar;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.lwjgl.stb.STBTruetype.*;
+
+/**
+ * Glyphs of one font face at one size, rasterized once with stb_truetype into a texture. Text is
+ * drawn as quads sampling that texture (see {@link #layout}), so changing a string never creates
+ * a texture. Atlases are shared through {@link #get} and live until {@link #cleanupAll()}.
+ * <p>
+ * Fonts are looked up as {@code /fonts/<name>.ttf} (with {@code -Bold}, {@code -Italic} or
+ * {@code -BoldItalic} appended for styled faces) in the resources first, then among the system
+ * fonts. Styles use {@link Font} constants and sizes are in points, as with AWT.
+ */
+public class FontAtlas {
+
+    private static final int FIRST_CHAR = 32;
+    private static final int CHAR_COUNT = 256 - FIRST_CHAR;
+    private static final int FALLBACK_CHAR = '?';
+    private static final int MIN_ATLAS_SIZE = 256;
+    private static final int MAX_ATLAS_SIZE = 4096;
+    private static final String[] FALLBACK_FONTS = {"arial", "dejavusans", "liberationsans", "helvetica"};
+    private static final String[] FONT_DIRECTORIES = {
+            System.getenv("WINDIR") + "/Fonts",
+            "/usr/share/fonts",
+            "/usr/local/share/fonts",
+            System.getProperty("user.home") + "/.fonts",
+            System.getProperty("user.home") + "/.local/share/fonts",
+            "/Library/Fonts",
+            "/System/Library/Fonts",
+    };
+
+    private static final Map<String, FontAtlas> atlases = new HashMap<>();
+    private static Map<String, File> systemFonts;
+
+    private final ByteBuffer fontData;
+    private final STBTTFontinfo info;
+    private final STBTTPackedchar.Buffer chars;
+    private final Texture texture;
+    private final int atlasWidth;
+    private final int atlasHeight;
+    private final float scale;
+    private final float ascent;
+    private final float lineHeight;
+
+    private FontAtlas(ByteBuffer fontData, int size) {
+        this.fontData = fontData;
+        this.info = STBTTFontinfo.malloc();
+        if (!stbtt_InitFont(info, fontData)) {
+            info.free();
+            throw new IllegalStateException("Invalid font data");
+        }
+        this.scale = stbtt_ScaleForMappingEmToPixels(info, size);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer ascentBuffer = stack.mallocInt(1);
+            IntBuffer descentBuffer = stack.mallocInt(1);
+            IntBuffer lineGapBuffer = stack.mallocInt(1);
+            stbtt_GetFontVMetrics(info, ascentBuffer, descentBuffer, lineGapBuffer);
+            this.ascent = ascentBuffer.get(0) * scale;
+            this.lineHeight = (ascentBuffer.get(0) - descentBuffer.get(0) + lineGapBuffer.get(0)) * scale;
+        }
+
+        this.chars = STBTTPackedchar.malloc(CHAR_COUNT);
+        int atlasSize = MIN_ATLAS_SIZE;
+        ByteBuffer alpha = null;
+        try {
+            while (true) {
+                alpha = MemoryUtil.memCalloc(atlasSize * atlasSize);
+                if (pack(alpha, atlasSize, size)) {
+                    break;
+                }
+                MemoryUtil.memFree(alpha);
+                alpha = null;
+                if (atlasSize >= MAX_ATLAS_SIZE) {
+                    throw new IllegalStateException("Glyphs do not fit in a " + MAX_ATLAS_SIZE + " atlas at size " + size);
+                }
+                atlasSize *= 2;
+            }
+            this.atlasWidth = atlasSize;
+            this.atlasHeight = atlasSize;
+            this.texture = createTexture(alpha, atlasSize, atlasSize);
+        } catch (RuntimeException e) {
+            chars.free();
+            info.free();
+            throw e;
+        } finally {
+            if (alpha != null) {
+                MemoryUtil.memFree(alpha);
+            }
+        }
+    }
+
+    private boolean pack(ByteBuffer alpha, int atlasSize, int size) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            STBTTPackContext context = STBTTPackContext.malloc(stack);
+            if (!stbtt_PackBegin(context, alpha, atlasSize, atlasSize, 0, 1)) {
+                return false;
+            }
+            // Horizontal oversampling keeps small HUD text crisp when it lands between pixels.
+            stbtt_PackSetOversampling(context, 2, 1);
+            boolean packed = stbtt_PackFontRange(context, fontData, 0, STBTT_POINT_SIZE(size), FIRST_CHAR, chars);
+            stbtt_PackEnd(context);
+            return packed;
+        }
+    }
+
+    private static Texture createTexture(ByteBuffer alpha, int width, int height) {
+        ByteBuffer rgba = MemoryUtil.memAlloc(width * height * 4);
+        for (int i = 0; i < width * height; i++) {
+            rgba.put((byte) 0xFF).put((byte) 0xFF).put((byte) 0xFF).put(alpha.get(i));
+        }
+        rgba.flip();
+        // Atlases are built wherever text is created, so the upload waits for the GL thread.
+        return Texture.deferred(new TextureData(rgba, width, height), TextureSampler.CLAMPED);
+    }
+
+    /**
+     * Returns the shared atlas for a font face and size, building it on first use. Needs no GL
+     * context; the texture is uploaded when it is first drawn.
+     */
+    public static FontAtlas get(String fontName, int style, int size) {
+        String key = fontName.toLowerCase(Locale.ROOT) + ':' + style + ':' + size;
+        FontAtlas atlas = atlases.get(key);
+        if (atlas == null) {
+            ByteBuffer fontData;
+            try {
+                fontData = loadFont(fontName, style);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to load font " + fontName, e);
+            }
+            try {
+                atlas = new FontAtlas(fontData, size);
+            } catch (RuntimeException e) {
+                MemoryUtil.memFree(fontData);
+                throw e;
+            }
+            atlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Writes one quad per visible glyph of {@code text} into {@code vertices}, four vertices of
+     * (x, y, u, v) each, with the top-left corner of the first line at the origin and y pointing
+     * down. Line breaks start a new line; characters outside Latin-1 are drawn as '?'.
+     *
+     * @param bounds receives the width and height of the laid out text
+     * @return the number of quads written
+     */
+    public int layout(CharSequence text, FloatBuffer vertices, float[] bounds) {
+        int quads = 0;
+        float width = 0;
+        int lines = 1;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            STBTTAlignedQuad quad = STBTTAlignedQuad.malloc(stack);
+            float[] x = {0};
+            float[] y = {ascent};
+            int previous = -1;
+            for (int i = 0; i < text.length(); i++) {
+                int c = text.charAt(i);
+                if (c == '\n') {
+                    width = Math.max(width, x[0]);
+                    x[0] = 0;
+                    y[0] += lineHeight;
+                    lines++;
+                    previous = -1;
+                    continue;
+                }
+                if (c < FIRST_CHAR || c >= FIRST_CHAR + CHAR_COUNT) {
+                    c = FALLBACK_CHAR;
+                }
+                if (previous >= 0) {
+                    x[0] += stbtt_GetCodepointKernAdvance(info, previous, c) * scale;
+                }
+                previous = c;
+
+                stbtt_GetPackedQuad(chars, atlasWidth, atlasHeight, c - FIRST_CHAR, x, y, quad, false);
+                if (quad.x1() <= quad.x0()) {
+                    continue;
+                }
+                vertices.put(quad.x0()).put(quad.y0()).put(quad.s0()).put(quad.t0());
+                vertices.put(quad.x0()).put(quad.y1()).put(quad.s0()).put(quad.t1());
+                vertices.put(quad.x1()).put(quad.y1()).put(quad.s1()).put(quad.t1());
+                vertices.put(quad.x1()).put(quad.y0()).put(quad.s1()).put(quad.t0());
+                quads++;
+            }
+            width = Math.max(width, x[0]);
+        }
+        bounds[0] = width;
+        bounds[1] = lines * lineHeight;
+        return quads;
+    }
+
+    public Texture getTexture() {
+        return texture;
+    }
+
+    public float getLineHeight() {
+        return lineHeight;
+    }
+
+    private void cleanup() {
+        texture.release();
+        chars.free();
+        info.free();
+        MemoryUtil.memFree(fontData);
+    }
+
+    /**
+     * Frees every atlas. Textures still held by text meshes stay alive until those are cleaned.
+     */
+    public static void cleanupAll() {
+        for (FontAtlas atlas : atlases.values()) {
+            atlas.cleanup();
+        }
+        atlases.clear();
+    }
+
+    private static ByteBuffer loadFont(String fontName, int style) throws IOException {
+        String suffix = styleSuffix(style);
+        String resource = "/fonts/" + fontName + suffix + ".ttf";
+        if (FontAtlas.class.getResource(resource) != null) {
+            ByteBuffer bytes = Loader.readResourceBytes(resource);
+            ByteBuffer copy = MemoryUtil.memAlloc(bytes.remaining());
+            copy.put(bytes).flip();
+            return copy;
+        }
+
+        File file = findSystemFont(fontName, style);
+        if (file == null) {
+            throw new IOException("No font file found for " + fontName + suffix);
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            ByteBuffer data = MemoryUtil.memAlloc((int) in.length());
+            try {
+                while (data.hasRemaining()) {
+                    if (in.getChannel().read(data) < 0) {
+                        throw new IOException("Unexpected end of " + file);
+                    }
+                }
+            } catch (IOException e) {
+                MemoryUtil.memFree(data);
+                throw e;
+            }
+            data.flip();
+            return data;
+        }
+    }
+
+    private static String styleSuffix(int style) {
+        switch (style & (Font.BOLD | Font.ITALIC)) {
+            case Font.BOLD:
+                return "-Bold";
+            case Font.ITALIC:
+                return "-Italic";
+            case Font.BOLD | Font.ITALIC:
+                return "-BoldItalic";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Finds a TrueType file for a family and style among the system fonts, accepting both the
+     * Windows naming ({@code arialbd.ttf}) and the usual {@code Family-Bold.ttf} one. Falls back
+     * to the regular face of the family, then to a few common sans-serif families.
+     */
+    private static File findSystemFont(String fontName, int style) {
+        Map<String, File> fonts = getSystemFonts();
+        String family = fontName.toLowerCase(Locale.ROOT).replace(" ", "");
+
+        List<String> families = new ArrayList<>();
+        families.add(family);
+        for (String fallback : FALLBACK_FONTS) {
+            if (!fallback.equals(family)) {
+                families.add(fallback);
+            }
+        }
+
+        for (String candidateFamily : families) {
+            for (String name : candidateNames(candidateFamily, style)) {
+                File file = fonts.get(name);
+                if (file != null) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> candidateNames(String family, int style) {
+        List<String> names = new ArrayList<>();
+        boolean bold = (style & Font.BOLD) != 0;
+        boolean italic = (style & Font.ITALIC) != 0;
+        if (bold && italic) {
+            names.add(family + "bi");
+            names.add(family + "-bolditalic");
+            names.add(family + "-boldoblique");
+        } else if (bold) {
+            names.add(family + "bd");
+            names.add(family + "-bold");
+        } else if (italic) {
+            names.add(family + "i");
+            names.add(family + "-italic");
+            names.add(family + "-oblique");
+        }
+        names.add(family);
+        names.add(family + "-regular");
+        return names;
+    }
+
+    private static synchronized Map<String, File> getSystemFonts() {
+        if (systemFonts == null) {
+            systemFonts = new HashMap<>();
+            for (String directory : FONT_DIRECTORIES) {
+                collectFonts(new File(directory), 0);
+            }
+        }
+        return systemFonts;
+    }
+
+    private static void collectFonts(File directory, int depth) {
+        File[] files = directory.listFiles();
+        if (files == null || depth > 4) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (file.isDirectory()) {
+                collectFonts(file, depth + 1);
+            } else if (name.endsWith(".ttf")) {
+                systemFonts.putIfAbsent(name.substring(0, name.length() - 4), file);
+            }
+        }
+    }
+}
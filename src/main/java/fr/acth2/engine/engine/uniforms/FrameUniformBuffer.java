@@ -0,0 +1,99 @@
+package fr.acth2.engine.engine.uniforms;
+
+import fr.acth2.engine.engine.ShaderProgram;
+import fr.acth2.engine.engine.light.DirectionalLight;
+import fr.acth2.engine.engine.light.LightClusterGrid;
+import fr.acth2.engine.scene.SceneLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Per-frame constants shared by every shader program through two std140 uniform blocks
+ * stored in a single buffer: {@code FrameMatrices} (projection and view) and
+ * {@code FrameLights} (ambient light, specular power, directional light in view space and
+ * the cluster grid parameters used to look up local lights).
+ */
+public class FrameUniformBuffer {
+
+    public static final int MATRICES_BINDING = 0;
+    public static final int LIGHTS_BINDING = 1;
+
+    private static final int MATRICES_SIZE = 2 * 64;
+    private static final int CLUSTER_DIMS_OFFSET = 16;
+    private static final int CLUSTER_PARAMS_OFFSET = 32;
+    private static final int DIRECTIONAL_LIGHT_OFFSET = 48;
+    private static final int LIGHTS_SIZE = DIRECTIONAL_LIGHT_OFFSET + 32;
+
+    private final int uboId;
+    private final int lightsOffset;
+    private final ByteBuffer buffer;
+    private final Vector3f aux;
+
+    public FrameUniformBuffer() {
+        this.aux = new Vector3f();
+
+        int alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+        lightsOffset = (MATRICES_SIZE + alignment - 1) / alignment * alignment;
+        buffer = MemoryUtil.memCalloc(lightsOffset + LIGHTS_SIZE);
+
+        uboId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+        glBufferData(GL_UNIFORM_BUFFER, buffer.capacity(), GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+
+        glBindBufferRange(GL_UNIFORM_BUFFER, MATRICES_BINDING, uboId, 0, MATRICES_SIZE);
+        glBindBufferRange(GL_UNIFORM_BUFFER, LIGHTS_BINDING, uboId, lightsOffset, LIGHTS_SIZE);
+    }
+
+    public void bindBlocks(ShaderProgram shaderProgram) {
+        shaderProgram.bindUniformBlock("FrameMatrices", MATRICES_BINDING);
+        shaderProgram.bindUniformBlock("FrameLights", LIGHTS_BINDING);
+    }
+
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix, SceneLight sceneLight, float specularPower,
+                       LightClusterGrid clusterGrid, int framebufferWidth, int framebufferHeight) {
+        projectionMatrix.get(0, buffer);
+        viewMatrix.get(64, buffer);
+
+        int offset = lightsOffset;
+        putVector3(offset, sceneLight.getAmbientLight());
+        buffer.putFloat(offset + 12, specularPower);
+
+        buffer.putInt(offset + CLUSTER_DIMS_OFFSET, clusterGrid.getNumX());
+        buffer.putInt(offset + CLUSTER_DIMS_OFFSET + 4, clusterGrid.getNumY());
+        buffer.putInt(offset + CLUSTER_DIMS_OFFSET + 8, clusterGrid.getNumZ());
+        buffer.putFloat(offset + CLUSTER_PARAMS_OFFSET, clusterGrid.getSliceScale());
+        buffer.putFloat(offset + CLUSTER_PARAMS_OFFSET + 4, clusterGrid.getSliceBias());
+        buffer.putFloat(offset + CLUSTER_PARAMS_OFFSET + 8, (float) clusterGrid.getNumX() / Math.max(framebufferWidth, 1));
+        buffer.putFloat(offset + CLUSTER_PARAMS_OFFSET + 12, (float) clusterGrid.getNumY() / Math.max(framebufferHeight, 1));
+
+        offset += DIRECTIONAL_LIGHT_OFFSET;
+        DirectionalLight directionalLight = sceneLight.getDirectionalLight();
+        putVector3(offset, directionalLight.getColor());
+        putVector3(offset + 16, viewMatrix.transformDirection(directionalLight.getPosition(), aux));
+        buffer.putFloat(offset + 28, directionalLight.getIntensity());
+
+        glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, buffer);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    private void putVector3(int offset, Vector3f value) {
+        buffer.putFloat(offset, value.x);
+        buffer.putFloat(offset + 4, value.y);
+        buffer.putFloat(offset + 8, value.z);
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(uboId);
+        MemoryUtil.memFree(buffer);
+    }
+}
@@ -0,0 +1,48 @@
+package fr.acth2.engine.engine.uniforms;
+
+import fr.acth2.engine.engine.ShaderProgram;
+import fr.acth2.engine.engine.models.Material;
+
+public class MaterialUniform {
+
+    private final Uniform ambient;
+    private final Uniform diffuse;
+    private final Uniform specular;
+    private final Uniform hasTexture;
+    private final Uniform reflectance;
+    private final Uniform unlit;
+    private final Uniform disableSpecular;
+    private Material current;
+
+    public MaterialUniform(ShaderProgram shaderProgram, String uniformName) {
+        ambient = shaderProgram.createUniform(uniformName + ".ambient");
+        diffuse = shaderProgram.createUniform(uniformName + ".diffuse");
+        specular = shaderProgram.createUniform(uniformName + ".specular");
+        hasTexture = shaderProgram.createUniform(uniformName + ".hasTexture");
+        reflectance = shaderProgram.createUniform(uniformName + ".reflectance");
+        unlit = shaderProgram.createUniform(uniformName + ".unlit");
+        disableSpecular = shaderProgram.createUniform(uniformName + ".disableSpecular");
+    }
+
+    public void set(Material material) {
+        if (material == current) {
+            return;
+        }
+        current = material;
+        ambient.set(material.getAmbientColor());
+        diffuse.set(material.getDiffuseColor());
+        specular.set(material.getSpecularColor());
+        hasTexture.set(material.isTextured());
+        reflectance.set(material.getReflectance());
+        unlit.set(material.isUnlit());
+        disableSpecular.set(material.isDisableSpecular());
+    }
+
+    /**
+     * Forgets the last material so the next {@link #set(Material)} uploads it even if it is the
+     * same instance, picking up any change made to it since.
+     */
+    public void reset() {
+        current = null;
+    }
+}
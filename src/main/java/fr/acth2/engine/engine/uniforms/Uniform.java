@@ -0,0 +1,90 @@
+package fr.acth2.engine.engine.uniforms;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import static org.lwjgl.opengl.GL20.*;
+
+public class Uniform {
+
+    private final String name;
+    private final int location;
+    private final float[] lastValue;
+    private int lastInt;
+    private Matrix4f lastMatrix;
+    private float[] matrixValues;
+    private boolean uploaded;
+
+    public Uniform(String name, int location) {
+        this.name = name;
+        this.location = location;
+        this.lastValue = new float[4];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+
+    public void set(int value) {
+        if (uploaded && lastInt == value) {
+            return;
+        }
+        lastInt = value;
+        uploaded = true;
+        glUniform1i(location, value);
+    }
+
+    public void set(boolean value) {
+        set(value ? 1 : 0);
+    }
+
+    public void set(float value) {
+        if (uploaded && lastValue[0] == value) {
+            return;
+        }
+        lastValue[0] = value;
+        uploaded = true;
+        glUniform1f(location, value);
+    }
+
+    public void set(Vector3f value) {
+        if (uploaded && lastValue[0] == value.x && lastValue[1] == value.y && lastValue[2] == value.z) {
+            return;
+        }
+        lastValue[0] = value.x;
+        lastValue[1] = value.y;
+        lastValue[2] = value.z;
+        uploaded = true;
+        glUniform3f(location, value.x, value.y, value.z);
+    }
+
+    public void set(Vector4f value) {
+        if (uploaded && lastValue[0] == value.x && lastValue[1] == value.y
+                && lastValue[2] == value.z && lastValue[3] == value.w) {
+            return;
+        }
+        lastValue[0] = value.x;
+        lastValue[1] = value.y;
+        lastValue[2] = value.z;
+        lastValue[3] = value.w;
+        uploaded = true;
+        glUniform4f(location, value.x, value.y, value.z, value.w);
+    }
+
+    public void set(Matrix4f value) {
+        if (lastMatrix == null) {
+            lastMatrix = new Matrix4f();
+            matrixValues = new float[16];
+        } else if (uploaded && lastMatrix.equals(value)) {
+            return;
+        }
+        lastMatrix.set(value);
+        uploaded = true;
+        glUniformMatrix4fv(location, false, lastMatrix.get(matrixValues));
+    }
+}
@@ -1,73 +1,45 @@
 package fr.acth2.engine.inputs;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import static org.lwjgl.glfw.GLFW.*;
 import static fr.acth2.engine.utils.Refs.*;
 
 public class KeyManager {
-    private static List<Integer> pressedKeysList = new ArrayList<>();
-    private static List<Integer> releasedKeysList = new ArrayList<>();
-    private static List<Integer> justReleasedKeysList = new ArrayList<>();
-    private static List<Integer> justPressedKeysList = new ArrayList<>();
-
-    public static void update() {
-        justPressedKeysList.clear();
-        justReleasedKeysList.clear();
+    private static final int[] TRACKED_KEYS = {
+            GLFW_KEY_W, GLFW_KEY_A, GLFW_KEY_S, GLFW_KEY_D,
+            GLFW_KEY_SPACE, GLFW_KEY_LEFT_SHIFT,
+            GLFW_KEY_X, GLFW_KEY_ESCAPE, GLFW_KEY_TAB, GLFW_KEY_LEFT_CONTROL,
+            GLFW_KEY_T, GLFW_KEY_E, GLFW_KEY_B, GLFW_KEY_I
+    };
 
-        for (int i = pressedKeysList.size() - 1; i >= 0; i--) {
-            int key = pressedKeysList.get(i);
-            if (!glfwKeyPress(key)) {
+    private static final boolean[] pressedKeys = new boolean[GLFW_KEY_LAST + 1];
+    private static final boolean[] justPressedKeys = new boolean[GLFW_KEY_LAST + 1];
+    private static final boolean[] justReleasedKeys = new boolean[GLFW_KEY_LAST + 1];
 
-                pressedKeysList.remove(i);
-                releasedKeysList.add(key);
-                justReleasedKeysList.add(key);
-            }
+    public static void update() {
+        for (int keyCode : TRACKED_KEYS) {
+            checkKey(keyCode);
         }
-
-        checkKey(GLFW_KEY_W);
-        checkKey(GLFW_KEY_A);
-        checkKey(GLFW_KEY_S);
-        checkKey(GLFW_KEY_D);
-
-        checkKey(GLFW_KEY_SPACE);
-        checkKey(GLFW_KEY_LEFT_SHIFT);
-
-        checkKey(GLFW_KEY_X);
-        checkKey(GLFW_KEY_ESCAPE);
-        checkKey(GLFW_KEY_TAB);
-        checkKey(GLFW_KEY_LEFT_CONTROL);
-
-        checkKey(GLFW_KEY_T);
-        checkKey(GLFW_KEY_E);
-        checkKey(GLFW_KEY_B);
-        checkKey(GLFW_KEY_I);
     }
 
     private static void checkKey(int keyCode) {
         boolean isPressed = glfwKeyPress(keyCode);
-        boolean wasPressed = pressedKeysList.contains(keyCode);
+        boolean wasPressed = pressedKeys[keyCode];
 
-        if (isPressed && !wasPressed) {
-            pressedKeysList.add(keyCode);
-            justPressedKeysList.add(keyCode);
-        } else if (!isPressed && wasPressed) {
-            justPressedKeysList.remove(keyCode);
-            justReleasedKeysList.add(keyCode);
-        }
+        justPressedKeys[keyCode] = isPressed && !wasPressed;
+        justReleasedKeys[keyCode] = !isPressed && wasPressed;
+        pressedKeys[keyCode] = isPressed;
     }
 
     public static boolean getKeyPress(int keyCode) {
-        return pressedKeysList.contains(keyCode);
+        return pressedKeys[keyCode];
     }
 
     public static boolean getKeyJustPressed(int keyCode) {
-        return justPressedKeysList.contains(keyCode);
+        return justPressedKeys[keyCode];
     }
 
     public static boolean getKeyJustReleased(int keyCode) {
-        return justReleasedKeysList.contains(keyCode);
+        return justReleasedKeys[keyCode];
     }
 
     private static boolean glfwKeyPress(int keyCode) {
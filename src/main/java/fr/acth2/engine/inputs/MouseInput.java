@@ -40,6 +40,13 @@ public class MouseInput {
         });
     }
 
+    /**
+     * Cursor position in screen coordinates from the window's top-left corner.
+     */
+    public Vector2d getCurrentPos() {
+        return currentPos;
+    }
+
     public Vector2f getDisplVec() {
         return displVec;
     }
@@ -1,69 +1,410 @@
 package fr.acth2.engine.scene;
 
+import fr.acth2.engine.engine.RenderSnapshot;
 import fr.acth2.engine.engine.Texture;
+import fr.acth2.engine.engine.camera.Camera;
 import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.items.TransformStore;
 import fr.acth2.engine.engine.light.DirectionalLight;
 import fr.acth2.engine.engine.light.PointLight;
 import fr.acth2.engine.engine.light.SpotLight;
 import fr.acth2.engine.engine.models.Material;
 import fr.acth2.engine.engine.models.Mesh;
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.Transformation;
+import fr.acth2.engine.engine.models.VertexFormat;
+import fr.acth2.engine.engine.models.heightmap.HeightMapMesh;
 import fr.acth2.engine.engine.models.heightmap.Terrain;
 import fr.acth2.engine.engine.models.skybox.SkyBox;
+import fr.acth2.engine.scene.spatial.BoundsTest;
+import fr.acth2.engine.scene.spatial.DynamicBvh;
+import fr.acth2.engine.utils.Refs;
 import fr.acth2.engine.utils.Time;
+import fr.acth2.engine.utils.hud.IHud;
+import fr.acth2.engine.utils.jobs.Job;
+import fr.acth2.engine.utils.jobs.JobGraph;
+import fr.acth2.engine.utils.jobs.JobSystem;
+import fr.acth2.engine.utils.jobs.ParallelFor;
+import fr.acth2.engine.utils.loader.AssetPipeline;
 import fr.acth2.engine.utils.loader.Loader;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
+/**
+ * Items, lights and sky of the world. The scene belongs to the simulation thread: it is updated
+ * by ticks and read from there when render snapshots are captured. Other threads, such as the GL
+ * thread finishing asset uploads, add and remove items through {@link #addItem} and
+ * {@link #removeItem}, which queue the change until the next {@link #applyPendingChanges()}.
+ * <p>
+ * When {@link Refs#TRANSFORM_STORE_ENABLED} is set, root items without children are attached to
+ * a {@link TransformStore} as they join the scene, so their world matrices are rebuilt and
+ * captured in bulk over contiguous memory.
+ * <p>
+ * Items with a mesh are also kept in a {@link DynamicBvh} of their world bounds, refreshed at
+ * every capture. Captures only copy the items whose bounds meet the view frustum of the tick or of
+ * the one before, between which frames are drawn, and gameplay code can query the same tree.
+ * Only items that moved during the tick, as {@link Item#hasMoved()} reports it, get new bounds,
+ * so items should be moved by ticks rather than between them.
+ */
 public class Scene {
 
+    private static final int ITEMS_PER_CHUNK = 256;
+    /** How far items may move before the bounding volume hierarchy has to change. */
+    private static final float BVH_MARGIN = 1f;
+    private static final ThreadLocal<Vector3f[]> BOUNDS_SCRATCH = ThreadLocal.withInitial(
+            () -> new Vector3f[]{new Vector3f(), new Vector3f(), new Vector3f(), new Vector3f()});
+    private static final ThreadLocal<Matrix4f> PREVIOUS_MATRIX_SCRATCH = ThreadLocal.withInitial(Matrix4f::new);
+
+    private final JobSystem jobs;
+    private final JobGraph captureGraph;
+    private RenderSnapshot captureTarget;
+    private final DynamicBvh<Item> boundingVolumes;
+    private float[] itemBounds;
+    private boolean[] boundsChanged;
+    private final List<Item> visibleItems;
+    private final Consumer<Item> visibleCollector;
+    private final Transformation cullTransformation;
+    private final Matrix4f cullMatrix;
+    private final FrustumIntersection frustum;
+    private final FrustumIntersection previousFrustum;
+    private final BoundsTest cullTest;
+    private boolean culling;
+    private final ConcurrentLinkedQueue<Runnable> pendingChanges;
+    private final TransformStore transformStore;
     private List<Item> gameItems;
     private SkyBox skyBox;
     private SceneLight sceneLight;
     private Terrain terrain;
     private Item sun;
+    private final Vector3f sunDirection;
 
-    public Scene() {
+    public Scene(JobSystem jobs) {
+        this.jobs = jobs;
+        pendingChanges = new ConcurrentLinkedQueue<>();
+        transformStore = Refs.TRANSFORM_STORE_ENABLED ? new TransformStore() : null;
         gameItems = new ArrayList<>();
+        sunDirection = new Vector3f();
+        boundingVolumes = new DynamicBvh<>(BVH_MARGIN);
+        itemBounds = new float[0];
+        boundsChanged = new boolean[0];
+        visibleItems = new ArrayList<>();
+        visibleCollector = visibleItems::add;
+        cullTransformation = new Transformation();
+        cullMatrix = new Matrix4f();
+        frustum = new FrustumIntersection();
+        previousFrustum = new FrustumIntersection();
+        cullTest = (minX, minY, minZ, maxX, maxY, maxZ) -> {
+            int current = BoundsTest.classify(frustum, minX, minY, minZ, maxX, maxY, maxZ);
+            if (current == BoundsTest.INSIDE) {
+                return current;
+            }
+            return Math.max(current, BoundsTest.classify(previousFrustum, minX, minY, minZ, maxX, maxY, maxZ));
+        };
+
+        // World matrices are rebuilt per root item, so each hierarchy is handled by one worker and
+        // children only ever read parents that are already up to date.
+        captureGraph = new JobGraph();
+        Job transforms = captureGraph.add(new ParallelFor("transforms", () -> gameItems.size(), ITEMS_PER_CHUNK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Item item = gameItems.get(i);
+                if (item.getParent() == null && item.getStore() == null) {
+                    item.updateWorldMatrices();
+                }
+            }
+        }));
+        Job storedTransforms = captureGraph.add(new ParallelFor("storedTransforms",
+                () -> transformStore != null ? transformStore.size() : 0, ITEMS_PER_CHUNK,
+                (from, to) -> transformStore.updateWorldMatrices(from, to)));
+        Job bounds = captureGraph.add(new ParallelFor("bounds", () -> gameItems.size(), ITEMS_PER_CHUNK,
+                this::computeBounds)).after(transforms, storedTransforms);
+        // Tree updates cannot be split across workers; they only touch the items that moved.
+        Job cull = captureGraph.add(new Job("cull", this::updateBoundingVolumes)).after(bounds);
+        captureGraph.add(new ParallelFor("capture", () -> visibleItems.size(), ITEMS_PER_CHUNK,
+                (from, to) -> captureTarget.captureItems(visibleItems, from, to))).after(cull);
     }
 
-    public void init() throws Exception {
+    public void init(AssetPipeline assets) {
         sceneLight = new SceneLight();
         sceneLight.setAmbientLight(new Vector3f(0.8f, 0.8f, 0.8f));
         sceneLight.setPointLights(new PointLight[0]);
         sceneLight.setSpotLights(new SpotLight[0]);
         sceneLight.setDirectionalLight(new DirectionalLight(new Vector3f(1,1,1), new Vector3f(-1, -1, -1), 0.8f));
 
-        terrain = new Terrain(2, 32, 0.0F, 0.25F, "/textures/heightmap.png", "/textures/v2.png", 16);
-        gameItems.addAll(Arrays.asList(terrain.getGameItems()));
+        assets.submit("terrain",
+                () -> new HeightMapMesh(0.0F, 0.25F, "/textures/heightmap.png", "/textures/v2.png", 16, VertexFormat.QUANTIZED),
+                heightMapMesh -> new Terrain(2, 32, heightMapMesh.upload(assets.getTextureStreamer())))
+                .whenLoaded(loaded -> pendingChanges.add(() -> {
+                    terrain = loaded;
+                    for (Item block : terrain.getGameItems()) {
+                        add(block);
+                    }
+                }));
+
+        assets.submit("/models/light.obj",
+                () -> Loader.loadMeshData("/models/light.obj", VertexFormat.INTERLEAVED),
+                Scene::uploadMesh)
+                .whenLoaded(sunMesh -> {
+                    Material sunMaterial = new Material(new Vector4f(1f, 1f, 1f, 1.0f), 0f, true);
+                    sunMesh.setMaterial(sunMaterial);
+                    Item sunItem = new Item(sunMesh);
+                    sunItem.setScale(10f);
+                    pendingChanges.add(() -> {
+                        sun = sunItem;
+                        add(sun);
+                    });
+                });
+    }
+
+    private static Mesh uploadMesh(MeshData data) {
+        try {
+            return new Mesh(data);
+        } finally {
+            data.free();
+        }
+    }
+
+    /**
+     * Adds an item at the start of the next tick. Safe to call from any thread.
+     */
+    public void addItem(Item item) {
+        pendingChanges.add(() -> add(item));
+    }
+
+    /**
+     * Removes an item at the start of the next tick. Safe to call from any thread.
+     */
+    public void removeItem(Item item) {
+        pendingChanges.add(() -> {
+            if (gameItems.remove(item)) {
+                item.detach();
+                if (item.getProxy() != DynamicBvh.NULL) {
+                    boundingVolumes.remove(item.getProxy());
+                    item.setProxy(DynamicBvh.NULL);
+                }
+            }
+        });
+    }
 
-        Mesh sunMesh = Loader.loadMesh("/models/light.obj");
-        Material sunMaterial = new Material(new Vector4f(1f, 1f, 1f, 1.0f), 0f, true);
-        sunMesh.setMaterial(sunMaterial);
-        sun = new Item(sunMesh);
-        sun.setScale(10f);
-        gameItems.add(sun);
+    private void add(Item item) {
+        if (transformStore != null && item.getParent() == null
+                && (item.getChildren() == null || item.getChildren().isEmpty())) {
+            item.attachTo(transformStore);
+        }
+        gameItems.add(item);
     }
 
+    /**
+     * Applies the changes queued by other threads. Called by the simulation thread before each
+     * tick.
+     */
+    public void applyPendingChanges() {
+        Runnable change;
+        while ((change = pendingChanges.poll()) != null) {
+            change.run();
+        }
+    }
+
+    /**
+     * Snapshots every item's transform before a simulation tick moves it.
+     */
+    public void storePreviousState() {
+        if (transformStore != null) {
+            transformStore.storePreviousState();
+        }
+        for (int i = 0; i < gameItems.size(); i++) {
+            Item item = gameItems.get(i);
+            if (item.getStore() == null) {
+                item.storePreviousState();
+            }
+        }
+    }
+
+    /**
+     * Advances the scene by one simulation tick of {@link Time#TICK_SECONDS}.
+     */
     public void update() {
-        Vector3f lightDirection = new Vector3f(sceneLight.getDirectionalLight().getPosition()).normalize().negate();
-        sun.setPosition(lightDirection.x * 100, lightDirection.y * 100, lightDirection.z * 100);
+        if (sun == null) {
+            return;
+        }
+        sunDirection.set(sceneLight.getDirectionalLight().getPosition()).normalize().negate();
+        sun.setPosition(sunDirection.x * 100, sunDirection.y * 100, sunDirection.z * 100);
     }
     
+    /**
+     * Copies the state of the tick that just ran into {@code snapshot}, whose window size must be
+     * set. World matrices and bounds are updated and items copied in parallel on the job system.
+     * Child items are updated along with their root, which must be part of the scene as well.
+     */
+    public void capture(RenderSnapshot snapshot, Camera camera, IHud hud, long stateTime) {
+        int width = snapshot.getWindowWidth();
+        int height = snapshot.getWindowHeight();
+        culling = width > 0 && height > 0;
+        if (culling) {
+            Matrix4f projection = cullTransformation.getProjectionMatrix(Refs.PROJECTION_FOV, width, height,
+                    Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR);
+            cullMatrix.set(projection).mul(cullTransformation.getViewMatrix(camera.getPosition(), camera.getRotation()));
+            frustum.set(cullMatrix);
+            cullMatrix.set(projection).mul(cullTransformation.getViewMatrix(
+                    camera.getPreviousPosition(), camera.getPreviousRotation()));
+            previousFrustum.set(cullMatrix);
+        }
+
+        int count = gameItems.size();
+        if (boundsChanged.length < count) {
+            int capacity = Math.max(count, boundsChanged.length * 2);
+            itemBounds = new float[capacity * 6];
+            boundsChanged = new boolean[capacity];
+        }
+        captureTarget = snapshot;
+        try {
+            jobs.run(captureGraph);
+        } finally {
+            captureTarget = null;
+        }
+        snapshot.endCapture(camera, sceneLight, hud, stateTime);
+    }
+
+    /**
+     * Computes the world bounds of the items in {@code [from, to)} that are new or moved during
+     * the tick. Bounds cover both the previous and the current transform, so they hold for every
+     * frame drawn in between.
+     */
+    private void computeBounds(int from, int to) {
+        Vector3f[] scratch = BOUNDS_SCRATCH.get();
+        Matrix4f previousMatrix = PREVIOUS_MATRIX_SCRATCH.get();
+        for (int i = from; i < to; i++) {
+            Item item = gameItems.get(i);
+            Mesh mesh = item.getMesh();
+            boundsChanged[i] = mesh != null && (item.getProxy() == DynamicBvh.NULL || item.hasMoved());
+            if (!boundsChanged[i]) {
+                continue;
+            }
+            Vector3f min = mesh.getAabbMin();
+            Vector3f max = mesh.getAabbMax();
+            item.getWorldMatrix().transformAab(min.x, min.y, min.z, max.x, max.y, max.z, scratch[0], scratch[1]);
+            item.getPreviousWorldMatrix(previousMatrix).transformAab(min.x, min.y, min.z, max.x, max.y, max.z, scratch[2], scratch[3]);
+            scratch[0].min(scratch[2]);
+            scratch[1].max(scratch[3]);
+            int b = i * 6;
+            itemBounds[b] = scratch[0].x;
+            itemBounds[b + 1] = scratch[0].y;
+            itemBounds[b + 2] = scratch[0].z;
+            itemBounds[b + 3] = scratch[1].x;
+            itemBounds[b + 4] = scratch[1].y;
+            itemBounds[b + 5] = scratch[1].z;
+        }
+    }
+
+    /**
+     * Applies the bounds computed by {@link #computeBounds} to the tree, then collects the items
+     * the capture has to copy.
+     */
+    private void updateBoundingVolumes() {
+        int count = gameItems.size();
+        int inserted = 0;
+        for (int i = 0; i < count; i++) {
+            if (boundsChanged[i] && gameItems.get(i).getProxy() == DynamicBvh.NULL) {
+                inserted++;
+            }
+        }
+        // Placing many new items one by one is far slower than building over them at once.
+        boolean batch = inserted > boundingVolumes.size() / 4;
+        if (batch) {
+            boundingVolumes.beginBatch();
+        }
+        for (int i = 0; i < count; i++) {
+            Item item = gameItems.get(i);
+            if (boundsChanged[i] && item.getProxy() == DynamicBvh.NULL) {
+                int b = i * 6;
+                item.setProxy(boundingVolumes.insert(item, itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                        itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5]));
+            }
+        }
+        if (batch) {
+            boundingVolumes.endBatch();
+        }
+        for (int i = 0; i < count; i++) {
+            Item item = gameItems.get(i);
+            if (boundsChanged[i] && item.getProxy() != DynamicBvh.NULL) {
+                int b = i * 6;
+                boundingVolumes.update(item.getProxy(), itemBounds[b], itemBounds[b + 1], itemBounds[b + 2],
+                        itemBounds[b + 3], itemBounds[b + 4], itemBounds[b + 5]);
+            }
+        }
+        boundingVolumes.optimize();
+
+        visibleItems.clear();
+        if (culling) {
+            boundingVolumes.query(cullTest, visibleCollector);
+        } else {
+            for (int i = 0; i < count; i++) {
+                if (gameItems.get(i).getMesh() != null) {
+                    visibleItems.add(gameItems.get(i));
+                }
+            }
+        }
+        captureTarget.beginCapture(visibleItems.size(), boundingVolumes.size() - visibleItems.size());
+    }
+
+    /**
+     * Adds to {@code dest} the items whose world bounds lie within {@code radius} of
+     * {@code point}. Bounds are those of the last captured tick.
+     */
+    public void getItemsNear(Vector3f point, float radius, List<Item> dest) {
+        boundingVolumes.querySphere(point.x, point.y, point.z, radius, dest::add);
+    }
+
+    /**
+     * Bounding volume hierarchy of the items with a mesh, as of the last captured tick, for
+     * frustum, box, sphere and ray queries. Only the simulation thread may use it.
+     */
+    public DynamicBvh<Item> getBoundingVolumes() {
+        return boundingVolumes;
+    }
+
+    /**
+     * Deletes the meshes of every item. Must be called on the GL thread once the simulation has
+     * stopped.
+     */
     public void cleanUp() {
+        applyPendingChanges();
+        // Terrain blocks share one mesh; clean each mesh once so its texture is released once.
+        Set<Mesh> meshes = Collections.newSetFromMap(new IdentityHashMap<>());
         for (Item item : gameItems) {
-            item.getMesh().cleanUp();
+            if (item.getMesh() != null && meshes.add(item.getMesh())) {
+                item.getMesh().cleanUp();
+            }
+        }
+        if (transformStore != null) {
+            transformStore.free();
         }
     }
 
+    /**
+     * Items of the scene. Only the simulation thread may read or change this list.
+     */
     public List<Item> getGameItems() {
         return gameItems;
     }
 
     public void setGameItems(List<Item> gameItems) {
+        for (Item item : this.gameItems) {
+            item.setProxy(DynamicBvh.NULL);
+        }
+        boundingVolumes.clear();
+        for (Item item : gameItems) {
+            item.setProxy(DynamicBvh.NULL);
+        }
         this.gameItems = gameItems;
     }
 
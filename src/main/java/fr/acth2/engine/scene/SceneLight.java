@@ -12,6 +12,61 @@ public class SceneLight {
     private SpotLight[] spotLights;
     private DirectionalLight directionalLight;
 
+    /**
+     * Makes this a deep copy of {@code other}, reusing the lights already held when their
+     * number did not change. Attenuations are shared, as in the light copy constructors.
+     */
+    public void set(SceneLight other) {
+        if (ambientLight == null) {
+            ambientLight = new Vector3f();
+        }
+        ambientLight.set(other.getAmbientLight());
+
+        PointLight[] otherPointLights = other.getPointLights();
+        if (pointLights == null || pointLights.length != otherPointLights.length) {
+            pointLights = new PointLight[otherPointLights.length];
+            for (int i = 0; i < pointLights.length; i++) {
+                pointLights[i] = new PointLight(otherPointLights[i]);
+            }
+        } else {
+            for (int i = 0; i < pointLights.length; i++) {
+                copy(otherPointLights[i], pointLights[i]);
+            }
+        }
+
+        SpotLight[] otherSpotLights = other.getSpotLights();
+        if (spotLights == null || spotLights.length != otherSpotLights.length) {
+            spotLights = new SpotLight[otherSpotLights.length];
+            for (int i = 0; i < spotLights.length; i++) {
+                spotLights[i] = new SpotLight(otherSpotLights[i]);
+            }
+        } else {
+            for (int i = 0; i < spotLights.length; i++) {
+                copy(otherSpotLights[i].getPointLight(), spotLights[i].getPointLight());
+                spotLights[i].getConeDirection().set(otherSpotLights[i].getConeDirection());
+                spotLights[i].setCutOff(otherSpotLights[i].getCutOff());
+            }
+        }
+
+        DirectionalLight otherDirectional = other.getDirectionalLight();
+        if (otherDirectional == null) {
+            directionalLight = null;
+        } else if (directionalLight == null) {
+            directionalLight = new DirectionalLight(otherDirectional);
+        } else {
+            directionalLight.getColor().set(otherDirectional.getColor());
+            directionalLight.getPosition().set(otherDirectional.getPosition());
+            directionalLight.setIntensity(otherDirectional.getIntensity());
+        }
+    }
+
+    private static void copy(PointLight source, PointLight dest) {
+        dest.getColor().set(source.getColor());
+        dest.getPosition().set(source.getPosition());
+        dest.setIntensity(source.getIntensity());
+        dest.setAttenuation(source.getAttenuation());
+    }
+
     public Vector3f getAmbientLight() {
         return ambientLight;
     }
@@ -0,0 +1,37 @@
+package fr.acth2.engine.scene.picking;
+
+import fr.acth2.engine.engine.items.Item;
+import org.joml.Vector3f;
+
+/**
+ * Result of a {@link Raycaster} cast: the item hit, how far along the ray, and the world point
+ * and unit surface normal there.
+ */
+public class RaycastHit {
+
+    private Item item;
+    private float distance;
+    private final Vector3f point = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+
+    void set(Item item, float distance) {
+        this.item = item;
+        this.distance = distance;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    public Vector3f getPoint() {
+        return point;
+    }
+
+    public Vector3f getNormal() {
+        return normal;
+    }
+}
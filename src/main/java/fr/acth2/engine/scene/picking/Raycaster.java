@@ -0,0 +1,122 @@
+package fr.acth2.engine.scene.picking;
+
+import fr.acth2.engine.engine.camera.Camera;
+import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.models.CollisionShape;
+import fr.acth2.engine.engine.models.Mesh;
+import fr.acth2.engine.engine.models.Transformation;
+import fr.acth2.engine.scene.Scene;
+import fr.acth2.engine.scene.spatial.RayCallback;
+import fr.acth2.engine.utils.Refs;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Finds what a ray, or the cursor, points at. The scene's bounding volume hierarchy gives the
+ * items whose bounds the ray crosses, nearest first; each is then tested exactly against its
+ * mesh's {@link CollisionShape} in the mesh's local space, and the search stops at the first
+ * bounds farther than the closest hit. Items whose mesh has no collision shape are hit at their
+ * bounds.
+ * <p>
+ * Bounds are those of the last captured tick, so a raycaster must only be used on the simulation
+ * thread, outside of {@link Scene#capture}.
+ */
+public class Raycaster {
+
+    private final Scene scene;
+    private final Transformation transformation = new Transformation();
+    private final int[] viewport = new int[4];
+    private final Matrix4f projectionView = new Matrix4f();
+    private final Vector3f pickOrigin = new Vector3f();
+    private final Vector3f pickDirection = new Vector3f();
+
+    private final Vector3f origin = new Vector3f();
+    private final Vector3f direction = new Vector3f();
+    private final Matrix4f inverseWorld = new Matrix4f();
+    private final Matrix3f normalMatrix = new Matrix3f();
+    private final Vector3f localOrigin = new Vector3f();
+    private final Vector3f localDirection = new Vector3f();
+    private final Vector3f localNormal = new Vector3f();
+    private final Vector3f hitNormal = new Vector3f();
+    private final RayCallback<Item> narrowPhase = this::intersect;
+    private Item hitItem;
+
+    public Raycaster(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Casts a ray from {@code origin} along {@code direction}, which need not be normalized.
+     *
+     * @return whether anything was hit within {@code maxDistance}; if so {@code dest} holds the
+     * closest hit
+     */
+    public boolean raycast(Vector3f origin, Vector3f direction, float maxDistance, RaycastHit dest) {
+        this.origin.set(origin);
+        direction.normalize(this.direction);
+        hitItem = null;
+        float distance = scene.getBoundingVolumes().raycast(this.origin.x, this.origin.y, this.origin.z,
+                this.direction.x, this.direction.y, this.direction.z, maxDistance, narrowPhase);
+        if (hitItem == null || !(distance <= maxDistance)) {
+            return false;
+        }
+        dest.set(hitItem, distance);
+        this.direction.mulAdd(distance, this.origin, dest.getPoint());
+        hitNormal.normalize(dest.getNormal());
+        hitItem = null;
+        return true;
+    }
+
+    /**
+     * Casts the ray under a point of the window, in pixels from its top-left corner, as seen by
+     * {@code camera}.
+     */
+    public boolean pick(float x, float y, int windowWidth, int windowHeight, Camera camera, float maxDistance,
+                        RaycastHit dest) {
+        screenToRay(x, y, windowWidth, windowHeight, camera, pickOrigin, pickDirection);
+        return raycast(pickOrigin, pickDirection, maxDistance, dest);
+    }
+
+    /**
+     * Turns a point of the window, in pixels from its top-left corner, into a world ray starting
+     * on the near plane, with the projection and view the renderer draws {@code camera} with.
+     */
+    public void screenToRay(float x, float y, int windowWidth, int windowHeight, Camera camera,
+                            Vector3f originDest, Vector3f directionDest) {
+        viewport[2] = windowWidth;
+        viewport[3] = windowHeight;
+        projectionView.set(transformation.getProjectionMatrix(Refs.PROJECTION_FOV, windowWidth, windowHeight,
+                        Refs.PROJECTION_Z_NEAR, Refs.PROJECTION_Z_FAR))
+                .mul(transformation.getViewMatrix(camera.getPosition(), camera.getRotation()))
+                .unprojectRay(x, windowHeight - y, viewport, originDest, directionDest);
+        directionDest.normalize();
+    }
+
+    private float intersect(Item item, float boxDistance, float maxDistance) {
+        Mesh mesh = item.getMesh();
+        CollisionShape shape = mesh != null ? mesh.getCollisionShape() : null;
+        if (shape == null) {
+            hitItem = item;
+            direction.negate(hitNormal);
+            return boxDistance;
+        }
+
+        // The local direction keeps its scale, so distances along it are world distances.
+        item.getWorldMatrix().invertAffine(inverseWorld);
+        inverseWorld.transformPosition(origin, localOrigin);
+        inverseWorld.transformDirection(direction, localDirection);
+        float distance = shape.raycast(localOrigin.x, localOrigin.y, localOrigin.z,
+                localDirection.x, localDirection.y, localDirection.z, maxDistance, localNormal);
+        if (!(distance < maxDistance)) {
+            return Float.POSITIVE_INFINITY;
+        }
+        hitItem = item;
+        inverseWorld.get3x3(normalMatrix).transpose().transform(localNormal, hitNormal);
+        // Triangles are two-sided: face the normal back towards the ray.
+        if (hitNormal.dot(direction) > 0f) {
+            hitNormal.negate();
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,60 @@
+package fr.acth2.engine.scene.spatial;
+
+import org.joml.FrustumIntersection;
+
+/**
+ * Classifies an axis-aligned box against a query volume, for {@link DynamicBvh#query}. Boxes
+ * found {@link #INSIDE} have their whole subtree accepted without further tests.
+ */
+@FunctionalInterface
+public interface BoundsTest {
+
+    int OUTSIDE = 0;
+    int INTERSECT = 1;
+    int INSIDE = 2;
+
+    int test(float minX, float minY, float minZ, float maxX, float maxY, float maxZ);
+
+    static BoundsTest frustum(FrustumIntersection frustum) {
+        return (minX, minY, minZ, maxX, maxY, maxZ) -> classify(frustum, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    static int classify(FrustumIntersection frustum, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = frustum.intersectAab(minX, minY, minZ, maxX, maxY, maxZ);
+        if (result == FrustumIntersection.INSIDE) {
+            return INSIDE;
+        }
+        return result == FrustumIntersection.INTERSECT ? INTERSECT : OUTSIDE;
+    }
+
+    static BoundsTest aabb(float queryMinX, float queryMinY, float queryMinZ, float queryMaxX, float queryMaxY, float queryMaxZ) {
+        return (minX, minY, minZ, maxX, maxY, maxZ) -> {
+            if (maxX < queryMinX || minX > queryMaxX || maxY < queryMinY || minY > queryMaxY
+                    || maxZ < queryMinZ || minZ > queryMaxZ) {
+                return OUTSIDE;
+            }
+            if (minX >= queryMinX && maxX <= queryMaxX && minY >= queryMinY && maxY <= queryMaxY
+                    && minZ >= queryMinZ && maxZ <= queryMaxZ) {
+                return INSIDE;
+            }
+            return INTERSECT;
+        };
+    }
+
+    static BoundsTest sphere(float x, float y, float z, float radius) {
+        float radiusSquared = radius * radius;
+        return (minX, minY, minZ, maxX, maxY, maxZ) -> {
+            float dx = Math.max(Math.max(minX - x, 0f), x - maxX);
+            float dy = Math.max(Math.max(minY - y, 0f), y - maxY);
+            float dz = Math.max(Math.max(minZ - z, 0f), z - maxZ);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                return OUTSIDE;
+            }
+            // Inside when the farthest corner is within the sphere.
+            float fx = Math.max(x - minX, maxX - x);
+            float fy = Math.max(y - minY, maxY - y);
+            float fz = Math.max(z - minZ, maxZ - z);
+            return fx * fx + fy * fy + fz * fz <= radiusSquared ? INSIDE : INTERSECT;
+        };
+    }
+}
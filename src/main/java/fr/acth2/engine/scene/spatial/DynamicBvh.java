@@ -0,0 +1,782 @@
+package fr.acth2.engine.scene.spatial;
+
+import org.joml.FrustumIntersection;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Dynamic bounding volume hierarchy over axis-aligned boxes. Each item is a leaf identified by
+ * the proxy returned from {@link #insert}; leaves keep both the item's exact bounds and a copy
+ * enlarged by a margin, so small moves leave the tree untouched.
+ * <p>
+ * Moves that escape the enlarged bounds are handled incrementally: a leaf that still overlaps its
+ * old bounds is refitted in place and its ancestors grown, one that jumped away is removed and
+ * re-inserted where it increases the surface area the least. Refits slowly degrade the tree, so
+ * {@link #optimize()} rebuilds it top-down with the binned surface area heuristic (SAH) once its
+ * cost has grown enough.
+ * <p>
+ * Nodes live in flat arrays indexed by node id. Queries only read the tree and may run from
+ * several threads at once, but not while it is being changed.
+ */
+public class DynamicBvh<T> {
+
+    public static final int NULL = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int BINS = 16;
+    private static final int MAX_SAH_DEPTH = 64;
+    /** Fraction of the leaves that must have changed before {@link #optimize()} measures the tree. */
+    private static final float CHANGES_BEFORE_CHECK = 0.1f;
+    /** Growth of the SAH cost over the last build that triggers a rebuild. */
+    private static final float REBUILD_COST_RATIO = 1.3f;
+
+    /** Traversal stacks per thread, pooled so visitors may run queries of their own. */
+    private static final ThreadLocal<ArrayDeque<int[]>> STACKS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final float margin;
+
+    /** Node bounds, 6 floats per node: enlarged for leaves, the union of the children otherwise. */
+    private float[] bounds;
+    /** Exact item bounds, 6 floats per node, only meaningful for leaves. */
+    private float[] itemBounds;
+    /** Parent of each node, or the next free node for nodes on the free list. */
+    private int[] parents;
+    private int[] lefts;
+    private int[] rights;
+    private Object[] items;
+    private int capacity;
+    private int nodeCount;
+    private int freeList;
+    private int root;
+    private int leafCount;
+    private int changesSinceCheck;
+    private float builtCost;
+    private boolean batching;
+    private int batchedLeaves;
+
+    private int[] buildLeaves;
+    /** Leaf bounds copied next to each other in build order, so builds read memory sequentially. */
+    private float[] buildBounds;
+    private int[] buildBins;
+    private final int[] binCounts;
+    private final float[] binBounds;
+    private final float[] sweepAreas;
+
+    public DynamicBvh(float margin) {
+        this.margin = margin;
+        capacity = INITIAL_CAPACITY;
+        bounds = new float[capacity * 6];
+        itemBounds = new float[capacity * 6];
+        parents = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        items = new Object[capacity];
+        freeList = NULL;
+        root = NULL;
+        buildLeaves = new int[0];
+        buildBounds = new float[0];
+        buildBins = new int[0];
+        binCounts = new int[BINS];
+        binBounds = new float[BINS * 6];
+        sweepAreas = new float[BINS];
+    }
+
+    /**
+     * Adds an item with the given bounds and returns its proxy.
+     */
+    public int insert(T item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int leaf = allocateNode();
+        items[leaf] = item;
+        setItemBounds(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+        setFatBounds(leaf);
+        if (batching) {
+            // Linked by the rebuild in endBatch().
+            parents[leaf] = NULL;
+            batchedLeaves++;
+        } else {
+            insertLeaf(leaf);
+        }
+        leafCount++;
+        changesSinceCheck++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+        changesSinceCheck++;
+    }
+
+    /**
+     * Gives an item new bounds.
+     *
+     * @return whether the tree had to change, i.e. the item left its enlarged bounds
+     */
+    public boolean update(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        setItemBounds(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        int b = proxy * 6;
+        if (minX >= bounds[b] && minY >= bounds[b + 1] && minZ >= bounds[b + 2]
+                && maxX <= bounds[b + 3] && maxY <= bounds[b + 4] && maxZ <= bounds[b + 5]) {
+            return false;
+        }
+        boolean overlaps = maxX >= bounds[b] && minX <= bounds[b + 3] && maxY >= bounds[b + 1]
+                && minY <= bounds[b + 4] && maxZ >= bounds[b + 2] && minZ <= bounds[b + 5];
+        if (overlaps) {
+            setFatBounds(proxy);
+            refitAncestors(parents[proxy]);
+        } else {
+            removeLeaf(proxy);
+            setFatBounds(proxy);
+            insertLeaf(proxy);
+        }
+        changesSinceCheck++;
+        return true;
+    }
+
+    /**
+     * Starts deferring insertions: until {@link #endBatch()}, inserted items are not placed in the
+     * tree one by one but all linked by a single SAH build, which is much faster for large
+     * numbers of items. Only insertions may happen during a batch, and queries miss batched items.
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    public void endBatch() {
+        batching = false;
+        if (batchedLeaves > 0) {
+            batchedLeaves = 0;
+            rebuild();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxy) {
+        return (T) items[proxy];
+    }
+
+    public int size() {
+        return leafCount;
+    }
+
+    /**
+     * Removes every item. Proxies handed out before are invalid afterwards.
+     */
+    public void clear() {
+        Arrays.fill(items, 0, nodeCount, null);
+        nodeCount = 0;
+        freeList = NULL;
+        root = NULL;
+        leafCount = 0;
+        changesSinceCheck = 0;
+        builtCost = 0;
+    }
+
+    /**
+     * Rebuilds the tree with the SAH when enough leaves changed since the last check and its cost
+     * grew past {@link #REBUILD_COST_RATIO} times the cost it had after the last build.
+     *
+     * @return whether the tree was rebuilt
+     */
+    public boolean optimize() {
+        if (changesSinceCheck < Math.max(1, leafCount * CHANGES_BEFORE_CHECK)) {
+            return false;
+        }
+        changesSinceCheck = 0;
+        if (builtCost > 0 && getCost() <= builtCost * REBUILD_COST_RATIO) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * SAH cost of the tree: the total surface area of the internal nodes relative to the root's.
+     */
+    public float getCost() {
+        if (root == NULL || lefts[root] == NULL) {
+            return 0f;
+        }
+        int[] stack = acquireStack();
+        int size = 0;
+        stack[size++] = root;
+        float total = 0f;
+        while (size > 0) {
+            int node = stack[--size];
+            if (lefts[node] == NULL) {
+                continue;
+            }
+            total += area(bounds, node * 6);
+            stack = ensureCapacity(stack, size + 2);
+            stack[size++] = lefts[node];
+            stack[size++] = rights[node];
+        }
+        releaseStack(stack);
+        return total / max(area(bounds, root * 6), Float.MIN_NORMAL);
+    }
+
+    /**
+     * Rebuilds every internal node top-down, splitting each range of leaves where the binned
+     * surface area heuristic is lowest. Proxies stay valid.
+     */
+    public void rebuild() {
+        if (buildLeaves.length < leafCount) {
+            buildLeaves = new int[leafCount];
+            buildBounds = new float[leafCount * 6];
+            buildBins = new int[leafCount];
+        }
+        int count = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (items[node] != null) {
+                buildLeaves[count++] = node;
+            } else if (lefts[node] != NULL) {
+                // Internal node: will be rebuilt.
+                freeNode(node);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(bounds, buildLeaves[i] * 6, buildBounds, i * 6, 6);
+        }
+        root = count == 0 ? NULL : build(0, count, 0);
+        if (root != NULL) {
+            parents[root] = NULL;
+        }
+        changesSinceCheck = 0;
+        builtCost = getCost();
+    }
+
+    private int build(int start, int end, int depth) {
+        if (end - start == 1) {
+            return buildLeaves[start];
+        }
+
+        float cMinX = Float.POSITIVE_INFINITY, cMinY = Float.POSITIVE_INFINITY, cMinZ = Float.POSITIVE_INFINITY;
+        float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+        // Centroids are kept doubled (min + max) to save a multiplication per leaf.
+        for (int i = start; i < end; i++) {
+            int b = i * 6;
+            float x = buildBounds[b] + buildBounds[b + 3];
+            float y = buildBounds[b + 1] + buildBounds[b + 4];
+            float z = buildBounds[b + 2] + buildBounds[b + 5];
+            cMinX = min(cMinX, x);
+            cMinY = min(cMinY, y);
+            cMinZ = min(cMinZ, z);
+            cMaxX = max(cMaxX, x);
+            cMaxY = max(cMaxY, y);
+            cMaxZ = max(cMaxZ, z);
+        }
+        int axis = 0;
+        float extent = cMaxX - cMinX;
+        float axisMin = cMinX;
+        if (cMaxY - cMinY > extent) {
+            axis = 1;
+            extent = cMaxY - cMinY;
+            axisMin = cMinY;
+        }
+        if (cMaxZ - cMinZ > extent) {
+            axis = 2;
+            extent = cMaxZ - cMinZ;
+            axisMin = cMinZ;
+        }
+
+        int mid = start + (end - start) / 2;
+        if (extent > 0f && depth < MAX_SAH_DEPTH) {
+            int split = findSahSplit(start, end, axis, axisMin, extent);
+            mid = partition(start, end, split);
+            if (mid == start || mid == end) {
+                mid = start + (end - start) / 2;
+            }
+        }
+        // Past MAX_SAH_DEPTH, or when every centroid coincides, halves keep the depth logarithmic.
+
+        int node = allocateNode();
+        int left = build(start, mid, depth + 1);
+        int right = build(mid, end, depth + 1);
+        lefts[node] = left;
+        rights[node] = right;
+        parents[left] = node;
+        parents[right] = node;
+        unionChildren(node);
+        return node;
+    }
+
+    /**
+     * Bins the leaves of {@code [start, end)} along {@code axis} and returns the last bin of the
+     * left side of the cheapest split.
+     */
+    private int findSahSplit(int start, int end, int axis, float axisMin, float extent) {
+        Arrays.fill(binCounts, 0);
+        for (int i = 0; i < BINS; i++) {
+            emptyBounds(binBounds, i * 6);
+        }
+        float scale = BINS / extent;
+        for (int i = start; i < end; i++) {
+            float centroid = buildBounds[i * 6 + axis] + buildBounds[i * 6 + 3 + axis];
+            int bin = Math.min(BINS - 1, (int) ((centroid - axisMin) * scale));
+            buildBins[i] = bin;
+            binCounts[bin]++;
+            unionInto(binBounds, bin * 6, buildBounds, i * 6);
+        }
+
+        // Sweep from the right to get the area and count of every right side...
+        float rMinX = Float.POSITIVE_INFINITY, rMinY = Float.POSITIVE_INFINITY, rMinZ = Float.POSITIVE_INFINITY;
+        float rMaxX = Float.NEGATIVE_INFINITY, rMaxY = Float.NEGATIVE_INFINITY, rMaxZ = Float.NEGATIVE_INFINITY;
+        for (int i = BINS - 1; i > 0; i--) {
+            int b = i * 6;
+            rMinX = min(rMinX, binBounds[b]);
+            rMinY = min(rMinY, binBounds[b + 1]);
+            rMinZ = min(rMinZ, binBounds[b + 2]);
+            rMaxX = max(rMaxX, binBounds[b + 3]);
+            rMaxY = max(rMaxY, binBounds[b + 4]);
+            rMaxZ = max(rMaxZ, binBounds[b + 5]);
+            sweepAreas[i] = area(rMaxX - rMinX, rMaxY - rMinY, rMaxZ - rMinZ);
+        }
+
+        // ...then from the left, pricing each split as leftCount * leftArea + rightCount * rightArea.
+        float lMinX = Float.POSITIVE_INFINITY, lMinY = Float.POSITIVE_INFINITY, lMinZ = Float.POSITIVE_INFINITY;
+        float lMaxX = Float.NEGATIVE_INFINITY, lMaxY = Float.NEGATIVE_INFINITY, lMaxZ = Float.NEGATIVE_INFINITY;
+        int leftCount = 0;
+        int total = end - start;
+        int bestSplit = BINS / 2 - 1;
+        float bestCost = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < BINS - 1; i++) {
+            int b = i * 6;
+            leftCount += binCounts[i];
+            lMinX = min(lMinX, binBounds[b]);
+            lMinY = min(lMinY, binBounds[b + 1]);
+            lMinZ = min(lMinZ, binBounds[b + 2]);
+            lMaxX = max(lMaxX, binBounds[b + 3]);
+            lMaxY = max(lMaxY, binBounds[b + 4]);
+            lMaxZ = max(lMaxZ, binBounds[b + 5]);
+            if (leftCount == 0 || leftCount == total) {
+                continue;
+            }
+            float cost = leftCount * area(lMaxX - lMinX, lMaxY - lMinY, lMaxZ - lMinZ)
+                    + (total - leftCount) * sweepAreas[i + 1];
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestSplit = i;
+            }
+        }
+        return bestSplit;
+    }
+
+    private int partition(int start, int end, int split) {
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (buildBins[i] <= split) {
+                i++;
+            } else {
+                swapLeaves(i, j);
+                j--;
+            }
+        }
+        return i;
+    }
+
+    private void swapLeaves(int a, int b) {
+        int leaf = buildLeaves[a];
+        buildLeaves[a] = buildLeaves[b];
+        buildLeaves[b] = leaf;
+        int bin = buildBins[a];
+        buildBins[a] = buildBins[b];
+        buildBins[b] = bin;
+        for (int k = 0; k < 6; k++) {
+            float bound = buildBounds[a * 6 + k];
+            buildBounds[a * 6 + k] = buildBounds[b * 6 + k];
+            buildBounds[b * 6 + k] = bound;
+        }
+    }
+
+    /**
+     * Visits the items whose bounds {@code test} does not find {@link BoundsTest#OUTSIDE}.
+     * Subtrees found {@link BoundsTest#INSIDE} are visited without further tests.
+     */
+    public void query(BoundsTest test, Consumer<? super T> visitor) {
+        if (root == NULL) {
+            return;
+        }
+        int[] stack = acquireStack();
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            int node = stack[--size];
+            boolean leaf = lefts[node] == NULL;
+            float[] tested = leaf ? itemBounds : bounds;
+            int b = node * 6;
+            int result = test.test(tested[b], tested[b + 1], tested[b + 2], tested[b + 3], tested[b + 4], tested[b + 5]);
+            if (result == BoundsTest.OUTSIDE) {
+                continue;
+            }
+            if (leaf) {
+                visitor.accept(getItem(node));
+            } else if (result == BoundsTest.INSIDE) {
+                stack = visitSubtree(node, visitor, stack, size);
+            } else {
+                stack = ensureCapacity(stack, size + 2);
+                stack[size++] = rights[node];
+                stack[size++] = lefts[node];
+            }
+        }
+        releaseStack(stack);
+    }
+
+    /**
+     * Visits every leaf under {@code node}, using {@code stack} above {@code base}, and returns
+     * the stack, which may have grown.
+     */
+    private int[] visitSubtree(int node, Consumer<? super T> visitor, int[] stack, int base) {
+        int size = base;
+        stack[size++] = node;
+        while (size > base) {
+            int current = stack[--size];
+            if (lefts[current] == NULL) {
+                visitor.accept(getItem(current));
+                continue;
+            }
+            stack = ensureCapacity(stack, size + 2);
+            stack[size++] = rights[current];
+            stack[size++] = lefts[current];
+        }
+        return stack;
+    }
+
+    public void queryFrustum(FrustumIntersection frustum, Consumer<? super T> visitor) {
+        query(BoundsTest.frustum(frustum), visitor);
+    }
+
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Consumer<? super T> visitor) {
+        query(BoundsTest.aabb(minX, minY, minZ, maxX, maxY, maxZ), visitor);
+    }
+
+    public void querySphere(float x, float y, float z, float radius, Consumer<? super T> visitor) {
+        query(BoundsTest.sphere(x, y, z, radius), visitor);
+    }
+
+    /**
+     * Casts a ray, visiting the items it may hit nearest first and skipping everything past the
+     * closest hit reported by {@code callback}.
+     *
+     * @return the distance of the closest hit, or {@link Float#POSITIVE_INFINITY} when nothing
+     * was hit within {@code maxDistance}
+     */
+    public float raycast(float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                         float maxDistance, RayCallback<? super T> callback) {
+        if (root == NULL) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float invX = 1f / dirX, invY = 1f / dirY, invZ = 1f / dirZ;
+        float closest = maxDistance;
+        boolean hit = false;
+
+        int[] stack = acquireStack();
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            int node = stack[--size];
+            if (lefts[node] == NULL) {
+                float entry = rayEntry(itemBounds, node * 6, originX, originY, originZ, invX, invY, invZ, closest);
+                if (entry >= 0f) {
+                    float distance = callback.intersect(getItem(node), entry, closest);
+                    if (distance < closest) {
+                        closest = distance;
+                        hit = true;
+                    }
+                }
+                continue;
+            }
+            if (rayEntry(bounds, node * 6, originX, originY, originZ, invX, invY, invZ, closest) < 0f) {
+                continue;
+            }
+            int left = lefts[node];
+            int right = rights[node];
+            float leftEntry = rayEntry(bounds, left * 6, originX, originY, originZ, invX, invY, invZ, closest);
+            float rightEntry = rayEntry(bounds, right * 6, originX, originY, originZ, invX, invY, invZ, closest);
+            stack = ensureCapacity(stack, size + 2);
+            // Push the farther child first so the nearer one is popped, and can clip, first.
+            if (leftEntry >= 0f && rightEntry >= 0f) {
+                boolean leftFirst = leftEntry <= rightEntry;
+                stack[size++] = leftFirst ? right : left;
+                stack[size++] = leftFirst ? left : right;
+            } else if (leftEntry >= 0f) {
+                stack[size++] = left;
+            } else if (rightEntry >= 0f) {
+                stack[size++] = right;
+            }
+        }
+        releaseStack(stack);
+        return hit ? closest : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Checks the links and bounds of the tree: parents point back at their children, internal
+     * nodes contain their children and leaves contain their item bounds. For tests.
+     *
+     * @throws IllegalStateException when the tree is corrupt
+     */
+    void validate() {
+        if (root == NULL) {
+            if (leafCount != batchedLeaves) {
+                throw new IllegalStateException("Empty tree holding " + leafCount + " items");
+            }
+            return;
+        }
+        if (parents[root] != NULL) {
+            throw new IllegalStateException("Root " + root + " has a parent");
+        }
+        int leaves = 0;
+        int[] stack = acquireStack();
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            int node = stack[--size];
+            if (lefts[node] == NULL) {
+                if (rights[node] != NULL || items[node] == null || !contains(bounds, node * 6, itemBounds, node * 6)) {
+                    throw new IllegalStateException("Bad leaf " + node);
+                }
+                leaves++;
+                continue;
+            }
+            int left = lefts[node];
+            int right = rights[node];
+            if (right == NULL || items[node] != null || parents[left] != node || parents[right] != node
+                    || !contains(bounds, node * 6, bounds, left * 6) || !contains(bounds, node * 6, bounds, right * 6)) {
+                throw new IllegalStateException("Bad internal node " + node);
+            }
+            stack = ensureCapacity(stack, size + 2);
+            stack[size++] = left;
+            stack[size++] = right;
+        }
+        releaseStack(stack);
+        if (leaves != leafCount - batchedLeaves) {
+            throw new IllegalStateException(leaves + " leaves in the tree for " + leafCount + " items");
+        }
+    }
+
+    private static boolean contains(float[] outer, int o, float[] inner, int i) {
+        return outer[o] <= inner[i] && outer[o + 1] <= inner[i + 1] && outer[o + 2] <= inner[i + 2]
+                && outer[o + 3] >= inner[i + 3] && outer[o + 4] >= inner[i + 4] && outer[o + 5] >= inner[i + 5];
+    }
+
+    private static int[] acquireStack() {
+        int[] stack = STACKS.get().poll();
+        return stack != null ? stack : new int[64];
+    }
+
+    private static void releaseStack(int[] stack) {
+        STACKS.get().push(stack);
+    }
+
+    private static int[] ensureCapacity(int[] stack, int size) {
+        return size <= stack.length ? stack : Arrays.copyOf(stack, stack.length * 2);
+    }
+
+    /**
+     * Slab test: the distance at which the ray enters the box, clamped to 0 for rays starting
+     * inside, or -1 when it misses the box within {@code maxDistance}.
+     */
+    private static float rayEntry(float[] boxes, int b, float originX, float originY, float originZ,
+                                  float invX, float invY, float invZ, float maxDistance) {
+        float t1 = (boxes[b] - originX) * invX;
+        float t2 = (boxes[b + 3] - originX) * invX;
+        float near = min(t1, t2);
+        float far = max(t1, t2);
+        t1 = (boxes[b + 1] - originY) * invY;
+        t2 = (boxes[b + 4] - originY) * invY;
+        near = max(near, min(t1, t2));
+        far = min(far, max(t1, t2));
+        t1 = (boxes[b + 2] - originZ) * invZ;
+        t2 = (boxes[b + 5] - originZ) * invZ;
+        near = max(near, min(t1, t2));
+        far = min(far, max(t1, t2));
+        if (far < max(near, 0f) || near > maxDistance) {
+            return -1f;
+        }
+        return max(near, 0f);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parents[leaf] = NULL;
+            return;
+        }
+
+        // Walk down towards the sibling whose enlargement costs the least surface area.
+        int lb = leaf * 6;
+        int node = root;
+        while (lefts[node] != NULL) {
+            float nodeArea = area(bounds, node * 6);
+            float combinedArea = unionArea(bounds, node * 6, bounds, lb);
+            float cost = 2f * combinedArea;
+            float inheritanceCost = 2f * (combinedArea - nodeArea);
+            float leftCost = descendCost(lefts[node], lb) + inheritanceCost;
+            float rightCost = descendCost(rights[node], lb) + inheritanceCost;
+            if (cost < leftCost && cost < rightCost) {
+                break;
+            }
+            node = leftCost < rightCost ? lefts[node] : rights[node];
+        }
+
+        int sibling = node;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        lefts[newParent] = sibling;
+        rights[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (lefts[oldParent] == sibling) {
+            lefts[oldParent] = newParent;
+        } else {
+            rights[oldParent] = newParent;
+        }
+        refitAncestors(newParent);
+    }
+
+    private float descendCost(int child, int lb) {
+        float combined = unionArea(bounds, child * 6, bounds, lb);
+        return lefts[child] == NULL ? combined : combined - area(bounds, child * 6);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = lefts[parent] == leaf ? rights[parent] : lefts[parent];
+        if (grandParent == NULL) {
+            root = sibling;
+            parents[sibling] = NULL;
+        } else {
+            if (lefts[grandParent] == parent) {
+                lefts[grandParent] = sibling;
+            } else {
+                rights[grandParent] = sibling;
+            }
+            parents[sibling] = grandParent;
+            refitAncestors(grandParent);
+        }
+        freeNode(parent);
+    }
+
+    private void refitAncestors(int node) {
+        while (node != NULL) {
+            unionChildren(node);
+            node = parents[node];
+        }
+    }
+
+    private void unionChildren(int node) {
+        int b = node * 6;
+        int l = lefts[node] * 6;
+        int r = rights[node] * 6;
+        bounds[b] = min(bounds[l], bounds[r]);
+        bounds[b + 1] = min(bounds[l + 1], bounds[r + 1]);
+        bounds[b + 2] = min(bounds[l + 2], bounds[r + 2]);
+        bounds[b + 3] = max(bounds[l + 3], bounds[r + 3]);
+        bounds[b + 4] = max(bounds[l + 4], bounds[r + 4]);
+        bounds[b + 5] = max(bounds[l + 5], bounds[r + 5]);
+    }
+
+    private void setItemBounds(int leaf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = leaf * 6;
+        itemBounds[b] = minX;
+        itemBounds[b + 1] = minY;
+        itemBounds[b + 2] = minZ;
+        itemBounds[b + 3] = maxX;
+        itemBounds[b + 4] = maxY;
+        itemBounds[b + 5] = maxZ;
+    }
+
+    private void setFatBounds(int leaf) {
+        int b = leaf * 6;
+        for (int i = 0; i < 3; i++) {
+            bounds[b + i] = itemBounds[b + i] - margin;
+            bounds[b + 3 + i] = itemBounds[b + 3 + i] + margin;
+        }
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) {
+            if (nodeCount == capacity) {
+                grow(capacity * 2);
+            }
+            int node = nodeCount++;
+            lefts[node] = NULL;
+            rights[node] = NULL;
+            parents[node] = NULL;
+            return node;
+        }
+        int node = freeList;
+        freeList = parents[node];
+        lefts[node] = NULL;
+        rights[node] = NULL;
+        parents[node] = NULL;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        items[node] = null;
+        lefts[node] = NULL;
+        rights[node] = NULL;
+        parents[node] = freeList;
+        freeList = node;
+    }
+
+    private void grow(int newCapacity) {
+        bounds = Arrays.copyOf(bounds, newCapacity * 6);
+        itemBounds = Arrays.copyOf(itemBounds, newCapacity * 6);
+        parents = Arrays.copyOf(parents, newCapacity);
+        lefts = Arrays.copyOf(lefts, newCapacity);
+        rights = Arrays.copyOf(rights, newCapacity);
+        items = Arrays.copyOf(items, newCapacity);
+        capacity = newCapacity;
+    }
+
+    // Math.min and Math.max handle NaN and signed zeros, which costs branches in the build and
+    // traversal loops; bounds are never NaN.
+    private static float min(float a, float b) {
+        return a < b ? a : b;
+    }
+
+    private static float max(float a, float b) {
+        return a > b ? a : b;
+    }
+
+    private static float area(float dx, float dy, float dz) {
+        return 2f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static float area(float[] boxes, int b) {
+        return area(boxes[b + 3] - boxes[b], boxes[b + 4] - boxes[b + 1], boxes[b + 5] - boxes[b + 2]);
+    }
+
+    private static float unionArea(float[] a, int ai, float[] b, int bi) {
+        return area(max(a[ai + 3], b[bi + 3]) - min(a[ai], b[bi]),
+                max(a[ai + 4], b[bi + 4]) - min(a[ai + 1], b[bi + 1]),
+                max(a[ai + 5], b[bi + 5]) - min(a[ai + 2], b[bi + 2]));
+    }
+
+    private static void emptyBounds(float[] boxes, int b) {
+        boxes[b] = boxes[b + 1] = boxes[b + 2] = Float.POSITIVE_INFINITY;
+        boxes[b + 3] = boxes[b + 4] = boxes[b + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void unionInto(float[] dest, int d, float[] src, int s) {
+        dest[d] = min(dest[d], src[s]);
+        dest[d + 1] = min(dest[d + 1], src[s + 1]);
+        dest[d + 2] = min(dest[d + 2], src[s + 2]);
+        dest[d + 3] = max(dest[d + 3], src[s + 3]);
+        dest[d + 4] = max(dest[d + 4], src[s + 4]);
+        dest[d + 5] = max(dest[d + 5], src[s + 5]);
+    }
+}
@@ -0,0 +1,16 @@
+package fr.acth2.engine.scene.spatial;
+
+/**
+ * Narrow phase of {@link DynamicBvh#raycast}, called for each item whose bounds the ray enters.
+ */
+@FunctionalInterface
+public interface RayCallback<T> {
+
+    /**
+     * @param boxDistance   distance along the ray at which it enters the item's bounds
+     * @param maxDistance   distance of the closest hit so far; farther hits are useless
+     * @return the distance at which the ray hits {@code item}, or any value not below
+     * {@code maxDistance} (such as {@link Float#POSITIVE_INFINITY}) for a miss
+     */
+    float intersect(T item, float boxDistance, float maxDistance);
+}
@@ -0,0 +1,92 @@
+package fr.acth2.engine.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap bytes allocated by the thread that created the monitor between {@link #beginFrame()}
+ * and {@link #endFrame()} and reports frames that exceed the allocation budget.
+ */
+public class FrameAllocationMonitor {
+
+    private static final int WARMUP_FRAMES = 120;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final long threadId;
+    private final long budget;
+    private final boolean supported;
+    private long overhead;
+    private long frameStart;
+    private long lastFrameBytes;
+    private long totalBytes;
+    private int frames;
+    private int framesOverBudget;
+    private long framesMeasured;
+
+    public FrameAllocationMonitor(long budget) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadBean = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+        this.threadId = Thread.currentThread().getId();
+        this.budget = budget;
+        this.supported = threadBean != null && threadBean.isThreadAllocatedMemorySupported();
+        if (supported) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+            calibrate();
+        }
+    }
+
+    private void calibrate() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            long end = threadBean.getThreadAllocatedBytes(threadId);
+            min = Math.min(min, end - start);
+        }
+        overhead = min;
+    }
+
+    public void beginFrame() {
+        if (supported) {
+            frameStart = threadBean.getThreadAllocatedBytes(threadId);
+        }
+    }
+
+    public void endFrame() {
+        if (!supported) {
+            return;
+        }
+        lastFrameBytes = Math.max(threadBean.getThreadAllocatedBytes(threadId) - frameStart - overhead, 0);
+        framesMeasured++;
+        if (framesMeasured <= WARMUP_FRAMES) {
+            return;
+        }
+        totalBytes += lastFrameBytes;
+        frames++;
+        if (lastFrameBytes > budget) {
+            framesOverBudget++;
+        }
+    }
+
+    /**
+     * Prints a warning if any frame since the last report went over budget, then resets the counters.
+     * @return the average number of bytes allocated per frame since the last report.
+     */
+    public long report() {
+        long average = frames > 0 ? totalBytes / frames : 0;
+        if (framesOverBudget > 0) {
+            System.err.println("Frame allocation budget exceeded: " + framesOverBudget + "/" + frames
+                    + " frames over " + budget + " bytes (average " + average + " bytes/frame)");
+        }
+        totalBytes = 0;
+        frames = 0;
+        framesOverBudget = 0;
+        return average;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+}
@@ -0,0 +1,190 @@
+package fr.acth2.engine.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from {@code long} keys to {@code int} values with linear probing.
+ * Keys and values live in two primitive arrays, so lookups and inserts never box or allocate
+ * (other than when the table grows). Key hashing uses the SplitMix64 finalizer, which spreads
+ * structured keys such as packed index triples evenly over the table.
+ */
+public class LongIntHashMap {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Packs three vertex attribute indices into one key. Texture and normal indices may be -1
+     * ("absent") and are stored plus one in the low {@code texBits + normBits} bits, sized with
+     * {@link #bitsFor} from the element counts. The caller checks that the three fit in 64 bits.
+     */
+    public static long packIndices(int idxPos, int idxTextCoord, int idxVecNormal, int texBits, int normBits) {
+        return (long) idxPos << (texBits + normBits) | (idxTextCoord + 1L) << normBits | (idxVecNormal + 1L);
+    }
+
+    /**
+     * Number of bits needed to store every value in {@code [0, count)}.
+     */
+    public static int bitsFor(int count) {
+        return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+
+    public int get(long key, int missingValue) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : missingValue;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return values[slot];
+            }
+            if (existing == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return true;
+            }
+            if (existing == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                size++;
+            }
+            emptyKeyValue = value;
+            return;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            values[slot] = value;
+            return;
+        }
+        insertAt(slot, key, value);
+    }
+
+    /**
+     * Returns the value mapped to {@code key}, or maps it to {@code value} and returns
+     * {@code value} if there was none. Lookup and insert share a single probe sequence, which
+     * is what vertex deduplication needs: pass the next free vertex index and compare.
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                hasEmptyKey = true;
+                emptyKeyValue = value;
+                size++;
+            }
+            return emptyKeyValue;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            return values[slot];
+        }
+        insertAt(slot, key, value);
+        return value;
+    }
+
+    private int findSlot(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insertAt(int slot, long key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            if (keys.length == MAX_CAPACITY) {
+                throw new IllegalStateException("LongIntHashMap is full");
+            }
+            rehash(keys.length * 2);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every mapping but keeps the table, so the map can be reused for the next mesh.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        hasEmptyKey = false;
+    }
+
+    private int slot(long key) {
+        return (int) mix(key) & mask;
+    }
+
+    private static long mix(long key) {
+        long z = key;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = findSlot(key);
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        // The largest table fills up instead of growing; one slot stays empty to end probes.
+        resizeAt = capacity == MAX_CAPACITY ? capacity - 1 : capacity / 2;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity / 2 <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
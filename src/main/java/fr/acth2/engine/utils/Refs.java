@@ -1,6 +1,7 @@
 package fr.acth2.engine.utils;
 
 import fr.acth2.engine.Main;
+import fr.acth2.engine.utils.loader.MeshCache;
 
 public class Refs {
     public static String WINDOW_TITLE = "Test Engine";
@@ -18,12 +19,32 @@ public class Refs {
 
     public static final float MOUSE_SENSITIVITY = 1F;
 
+    public static final long FRAME_ALLOCATION_BUDGET = 0;
+
+    public static final int TICK_RATE = 60;
+    public static final int MAX_TICKS_PER_FRAME = 5;
+
+    public static boolean TRANSFORM_STORE_ENABLED = true;
+
+    public static boolean COLLISION_MESHES_ENABLED = true;
+
+    public static final long ASSET_UPLOAD_BUDGET_NANOS = 4_000_000L;
+
+    public static boolean COMPRESSED_TEXTURES = true;
+
+    public static boolean MESH_CACHE_ENABLED = true;
+    public static String MESH_CACHE_DIRECTORY = System.getProperty("user.home") + "/.acth2engine/meshcache";
+    public static MeshCache.Compression MESH_CACHE_COMPRESSION = MeshCache.Compression.NONE;
+
 
     public static long getWindowID() {
         return Main.getInstance().id;
     }
 
+    /**
+     * Milliseconds from a monotonic clock, for measuring intervals only.
+     */
     public static double getTime() {
-        return System.currentTimeMillis();
+        return System.nanoTime() / 1_000_000.0;
     }
 }
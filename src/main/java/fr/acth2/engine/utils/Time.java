@@ -1,8 +1,17 @@
 package fr.acth2.engine.utils;
 
+import static fr.acth2.engine.utils.Refs.TICK_RATE;
+
 public class Time {
 
+    /**
+     * Length of one simulation tick.
+     */
+    public static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+    public static final float TICK_SECONDS = 1.0F / TICK_RATE;
+
     private static boolean isTimeStopped = false;
+    private static long ticks;
 
     /**
      * Toggles the state of time between stopped and running.
@@ -18,4 +27,27 @@ public class Time {
     public static boolean isTimeStopped() {
         return isTimeStopped;
     }
+
+    /**
+     * Counts one simulation tick, unless time is stopped.
+     */
+    public static void tick() {
+        if (!isTimeStopped) {
+            ticks++;
+        }
+    }
+
+    /**
+     * Number of simulation ticks run while time was not stopped.
+     */
+    public static long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Simulated time in seconds. Depends only on the number of ticks, not on the frame rate.
+     */
+    public static double getSimulationTime() {
+        return ticks * (double) TICK_SECONDS;
+    }
 }
@@ -0,0 +1,78 @@
+package fr.acth2.engine.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free handoff of the latest value from one producer thread to one consumer thread, using
+ * three preallocated slots. The producer always owns one slot to write into and the consumer one
+ * slot to read from; the third is exchanged between them through a single atomic, so neither side
+ * ever waits for the other. The consumer sees the newest published slot and skips any older ones.
+ * <p>
+ * Slots are reused: a value returned by {@link #getWriteSlot()} still holds whatever was written
+ * to it three publications ago, and must be filled completely before {@link #publish()}.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final Object[] slots;
+    private final AtomicInteger shared;
+    private int writeIndex;
+    private int readIndex;
+    private boolean published;
+
+    public TripleBuffer(T first, T second, T third) {
+        slots = new Object[]{first, second, third};
+        writeIndex = 0;
+        shared = new AtomicInteger(1);
+        readIndex = 2;
+    }
+
+    /**
+     * Slot the producer fills before calling {@link #publish()}. Producer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) slots[writeIndex];
+    }
+
+    /**
+     * Makes the write slot the latest value and hands the producer a new slot to write into.
+     * Producer thread only.
+     */
+    public void publish() {
+        writeIndex = shared.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the most recently published value, or {@code null} if nothing has been published
+     * yet. The value stays valid, and unchanged, until the next call. Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((shared.get() & FRESH) != 0) {
+            readIndex = shared.getAndSet(readIndex) & INDEX_MASK;
+            published = true;
+        }
+        return published ? (T) slots[readIndex] : null;
+    }
+
+    /**
+     * Visits all three slots, e.g. to release them once neither thread uses the buffer anymore.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachSlot(Consumer<? super T> action) {
+        for (Object slot : slots) {
+            action.accept((T) slot);
+        }
+    }
+
+    /**
+     * Whether a value newer than the one last returned by {@link #acquire()} is waiting.
+     */
+    public boolean hasUpdate() {
+        return (shared.get() & FRESH) != 0;
+    }
+}
@@ -1,6 +1,6 @@
 package fr.acth2.engine.utils.hud;
 
-import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.SpriteList;
 import fr.acth2.engine.engine.items.TextItem;
 import org.joml.Vector4f;
 import org.lwjgl.system.MemoryStack;
@@ -9,7 +9,6 @@ import java.awt.Font;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -20,6 +19,7 @@ public class Hud implements IHud {
     private final List<TemporaryText> temporaryTexts;
     private final Map<String, TextItem> persistentTexts;
     private long windowId;
+    private long version;
 
     private static class TemporaryText {
         TextItem textItem;
@@ -42,7 +42,7 @@ public class Hud implements IHud {
 
     public void showInformation(String text, int duration, int style, int size) {
         TextItem textItem = new TextItem(text, "Arial", style, size);
-        textItem.getMesh().getMaterial().setColour(new Vector4f(1, 1, 1, 1));
+        textItem.setColour(new Vector4f(1, 1, 1, 1));
         long deathTime = System.currentTimeMillis() + duration;
         temporaryTexts.add(new TemporaryText(textItem, deathTime));
         updateTextPositions();
@@ -54,7 +54,7 @@ public class Hud implements IHud {
 
     public void showError(String text, int duration, int style, int size) {
         TextItem textItem = new TextItem(text, "Arial", style, size);
-        textItem.getMesh().getMaterial().setColour(new Vector4f(1, 0, 0, 1));
+        textItem.setColour(new Vector4f(1, 0, 0, 1));
         long deathTime = System.currentTimeMillis() + duration;
         temporaryTexts.add(new TemporaryText(textItem, deathTime));
         updateTextPositions();
@@ -68,10 +68,10 @@ public class Hud implements IHud {
         TextItem textItem = persistentTexts.get(key);
         if (textItem == null) {
             textItem = new TextItem(text, "Arial", style, size);
-            textItem.getMesh().getMaterial().setColour(new Vector4f(1, 1, 1, 1));
+            textItem.setColour(new Vector4f(1, 1, 1, 1));
             persistentTexts.put(key, textItem);
-        } else {
-            textItem.setText(text);
+        } else if (!textItem.setText(text)) {
+            return;
         }
         updateTextPositions();
     }
@@ -79,20 +79,17 @@ public class Hud implements IHud {
     public void removePersistentText(String key) {
         TextItem textItem = persistentTexts.remove(key);
         if (textItem != null) {
-            textItem.getMesh().cleanUp();
             updateTextPositions();
         }
     }
 
     public void update() {
         long now = System.currentTimeMillis();
-        Iterator<TemporaryText> iterator = temporaryTexts.iterator();
         boolean changed = false;
-        while (iterator.hasNext()) {
-            TemporaryText tempText = iterator.next();
+        for (int i = temporaryTexts.size() - 1; i >= 0; i--) {
+            TemporaryText tempText = temporaryTexts.get(i);
             if (now >= tempText.deathTime) {
-                tempText.textItem.getMesh().cleanUp();
-                iterator.remove();
+                temporaryTexts.remove(i);
                 changed = true;
             }
         }
@@ -103,13 +100,18 @@ public class Hud implements IHud {
     }
 
     @Override
-    public Item[] getItems() {
-        List<Item> items = new ArrayList<>();
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void addTo(SpriteList sprites) {
         for (TemporaryText tempText : temporaryTexts) {
-            items.add(tempText.textItem);
+            tempText.textItem.addTo(sprites);
+        }
+        for (TextItem textItem : persistentTexts.values()) {
+            textItem.addTo(sprites);
         }
-        items.addAll(persistentTexts.values());
-        return items.toArray(new Item[0]);
     }
 
     public void updateSize(long windowId) {
@@ -118,15 +120,13 @@ public class Hud implements IHud {
     }
     
     public void cleanUp() {
-        for (TemporaryText tempText : temporaryTexts) {
-            tempText.textItem.getMesh().cleanUp();
-        }
-        for (TextItem textItem : persistentTexts.values()) {
-            textItem.getMesh().cleanUp();
-        }
+        temporaryTexts.clear();
+        persistentTexts.clear();
+        version++;
     }
 
     private void updateTextPositions() {
+        version++;
         if (windowId == 0) return;
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -1,15 +1,19 @@
 package fr.acth2.engine.utils.hud;
 
-import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.SpriteList;
 
 public interface IHud {
 
-    public Item[] getItems();
+    /**
+     * Changes whenever what the HUD draws changes, so renderers know when to rebuild their batch.
+     */
+    public long getVersion();
+
+    /**
+     * Adds everything the HUD draws to {@code sprites}.
+     */
+    public void addTo(SpriteList sprites);
 
     default void cleanup() {
-        Item[] gameItems = getItems();
-        for (Item gameItem : gameItems) {
-            gameItem.getMesh().cleanUp();
-        }
     }
-}
\ No newline at end of file
+}
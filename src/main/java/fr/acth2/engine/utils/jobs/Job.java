@@ -0,0 +1,88 @@
+package fr.acth2.engine.utils.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A unit of work in a {@link JobGraph}. A job starts once every job it runs {@link #after} has
+ * finished, on whichever worker finished the last of them. Jobs and their dependencies are set up
+ * once and run any number of times; running them allocates nothing.
+ */
+public class Job {
+
+    private final String name;
+    private final Runnable body;
+    private final List<Job> dependents;
+    private int dependencyCount;
+    private final AtomicInteger pendingDependencies;
+    private final Task task;
+
+    public Job(String name, Runnable body) {
+        this.name = name;
+        this.body = body;
+        this.dependents = new ArrayList<>();
+        this.pendingDependencies = new AtomicInteger();
+        this.task = new Task();
+    }
+
+    /**
+     * Makes this job wait for {@code jobs}. Must not be called while the graph is running.
+     */
+    public Job after(Job... jobs) {
+        for (Job job : jobs) {
+            job.dependents.add(this);
+            dependencyCount++;
+        }
+        return this;
+    }
+
+    /**
+     * Work of the job, run on a worker of the pool.
+     */
+    protected void execute() {
+        body.run();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    boolean hasDependencies() {
+        return dependencyCount > 0;
+    }
+
+    void reset() {
+        pendingDependencies.set(dependencyCount);
+        task.reinitialize();
+    }
+
+    void fork() {
+        task.fork();
+    }
+
+    void join() {
+        task.join();
+    }
+
+    @SuppressWarnings("serial")
+    private final class Task extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            try {
+                execute();
+            } finally {
+                // Dependents are released even if this job failed, so the graph always completes;
+                // the failure is rethrown when the graph joins this job.
+                for (int i = 0; i < dependents.size(); i++) {
+                    Job dependent = dependents.get(i);
+                    if (dependent.pendingDependencies.decrementAndGet() == 0) {
+                        dependent.fork();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fr.acth2.engine.utils.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed set of jobs run together by {@link JobSystem#run(JobGraph)}. Jobs without dependencies
+ * start right away, the others as soon as their dependencies are done. The graph is built once;
+ * every run reuses the same tasks.
+ */
+public class JobGraph {
+
+    private final List<Job> jobs;
+    private final Root root;
+
+    public JobGraph() {
+        jobs = new ArrayList<>();
+        root = new Root();
+    }
+
+    /**
+     * Adds a job. Jobs must be added after the jobs they depend on.
+     */
+    public <J extends Job> J add(J job) {
+        jobs.add(job);
+        return job;
+    }
+
+    public List<Job> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Readies the graph for a run that {@code waiter} will wait for with {@link #await()}.
+     */
+    RecursiveAction prepare(Thread waiter) {
+        root.waiter = waiter;
+        root.failure = null;
+        root.done = false;
+        root.reinitialize();
+        return root;
+    }
+
+    /**
+     * Parks until the run started after {@link #prepare} is over, then rethrows what a job threw.
+     * Joining the root task from outside the pool would do the same, but allocates a wait node
+     * every time the caller has to block.
+     */
+    void await() {
+        boolean interrupted = false;
+        while (!root.done) {
+            LockSupport.park(this);
+            // Park returns at once while the interrupt flag is set, so it is cleared until the
+            // run is over and restored then.
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        // The root is marked complete just after it signals; it must be before the next run
+        // reinitializes it, or the pool would take it for done and never run it.
+        while (!root.isDone()) {
+            Thread.yield();
+        }
+        root.waiter = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable failure = root.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class Root extends RecursiveAction {
+
+        private volatile boolean done;
+        private Thread waiter;
+        private Throwable failure;
+
+        @Override
+        protected void compute() {
+            try {
+                for (int i = 0; i < jobs.size(); i++) {
+                    jobs.get(i).reset();
+                }
+                for (int i = 0; i < jobs.size(); i++) {
+                    Job job = jobs.get(i);
+                    if (!job.hasDependencies()) {
+                        job.fork();
+                    }
+                }
+                // Jobs are in dependency order, so by the time one is joined its dependencies have
+                // usually forked it already.
+                for (int i = 0; i < jobs.size(); i++) {
+                    jobs.get(i).join();
+                }
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                done = true;
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package fr.acth2.engine.utils.jobs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work-stealing pool for per-frame CPU work, kept separate from the asset loading workers so a
+ * long decode never delays a frame. Work is described once as a {@link JobGraph} of {@link Job}s
+ * and {@link ParallelFor}s and then run every frame without allocating.
+ * <p>
+ * Several threads may run graphs at the same time (the simulation and render threads both do),
+ * but a given graph must not be run by two threads at once.
+ */
+public class JobSystem {
+
+    private final ForkJoinPool pool;
+
+    public JobSystem(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("JOB_THREAD_" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Runs every job of {@code graph} and returns once they are all done. Exceptions thrown by
+     * jobs are rethrown here.
+     */
+    public void run(JobGraph graph) {
+        pool.execute(graph.prepare(Thread.currentThread()));
+        graph.await();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package fr.acth2.engine.utils.jobs;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntSupplier;
+
+/**
+ * Job running a {@link RangeBody} over {@code [0, count)} split into chunks of at least
+ * {@code grain} indices. Chunks are forked onto the pool and balanced by work stealing; the
+ * worker running the job takes the first chunk itself. The count is read each time the job runs,
+ * and chunk tasks are reused, so only a run needing more chunks than any before allocates.
+ */
+public class ParallelFor extends Job {
+
+    /**
+     * Chunks per worker. More than one lets stealing even out chunks of uneven cost.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final IntSupplier count;
+    private final int grain;
+    private final RangeBody body;
+    private Chunk[] chunks;
+
+    public ParallelFor(String name, IntSupplier count, int grain, RangeBody body) {
+        super(name, null);
+        this.count = count;
+        this.grain = Math.max(1, grain);
+        this.body = body;
+        this.chunks = new Chunk[0];
+    }
+
+    @Override
+    protected void execute() {
+        int n = count.getAsInt();
+        if (n <= 0) {
+            return;
+        }
+        int maxChunks = ForkJoinTask.getPool().getParallelism() * CHUNKS_PER_WORKER;
+        int chunkCount = Math.min((n + grain - 1) / grain, maxChunks);
+        if (chunkCount <= 1) {
+            body.run(0, n);
+            return;
+        }
+
+        if (chunks.length < chunkCount) {
+            Chunk[] grown = new Chunk[chunkCount];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            for (int i = chunks.length; i < chunkCount; i++) {
+                grown[i] = new Chunk();
+            }
+            chunks = grown;
+        }
+
+        for (int i = 1; i < chunkCount; i++) {
+            Chunk chunk = chunks[i];
+            chunk.from = (int) ((long) n * i / chunkCount);
+            chunk.to = (int) ((long) n * (i + 1) / chunkCount);
+            chunk.reinitialize();
+            chunk.fork();
+        }
+        try {
+            body.run(0, (int) ((long) n / chunkCount));
+        } finally {
+            for (int i = chunkCount - 1; i >= 1; i--) {
+                chunks[i].join();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class Chunk extends RecursiveAction {
+        private int from;
+        private int to;
+
+        @Override
+        protected void compute() {
+            body.run(from, to);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package fr.acth2.engine.utils.jobs;
+
+/**
+ * Body of a {@link ParallelFor}, called with disjoint {@code [from, to)} ranges, possibly from
+ * several threads at once.
+ */
+@FunctionalInterface
+public interface RangeBody {
+
+    void run(int from, int to);
+}
@@ -0,0 +1,134 @@
+package fr.acth2.engine.utils.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Handle on something being loaded by the {@link AssetPipeline}. State changes made by worker
+ * threads are only the timestamps; the value, failure and callbacks are touched by the GL
+ * thread alone.
+ */
+public class Asset<T> {
+
+    public enum State {
+        DECODING,
+        UPLOADING,
+        LOADED,
+        FAILED
+    }
+
+    private final String name;
+    private volatile State state;
+    private T value;
+    private Throwable error;
+    private List<Consumer<T>> callbacks;
+
+    private final long submitNanos;
+    private volatile long decodeStartNanos;
+    private volatile long decodeEndNanos;
+    private long uploadStartNanos;
+    private long uploadEndNanos;
+
+    Asset(String name) {
+        this.name = name;
+        this.state = State.DECODING;
+        this.submitNanos = System.nanoTime();
+    }
+
+    /**
+     * Runs {@code callback} on the GL thread once the asset is uploaded, or immediately if it
+     * already is. Must be called from the GL thread.
+     */
+    public Asset<T> whenLoaded(Consumer<T> callback) {
+        if (state == State.LOADED) {
+            callback.accept(value);
+            return this;
+        }
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+        }
+        callbacks.add(callback);
+        return this;
+    }
+
+    void decodeStarted() {
+        decodeStartNanos = System.nanoTime();
+    }
+
+    void decodeFinished() {
+        decodeEndNanos = System.nanoTime();
+        state = State.UPLOADING;
+    }
+
+    void uploadStarted() {
+        uploadStartNanos = System.nanoTime();
+    }
+
+    void loaded(T value) {
+        uploadEndNanos = System.nanoTime();
+        this.value = value;
+        state = State.LOADED;
+        if (callbacks != null) {
+            for (Consumer<T> callback : callbacks) {
+                callback.accept(value);
+            }
+            callbacks = null;
+        }
+    }
+
+    void failed(Throwable error) {
+        long now = System.nanoTime();
+        if (decodeEndNanos == 0) {
+            decodeEndNanos = now;
+        }
+        if (uploadStartNanos == 0) {
+            uploadStartNanos = now;
+        }
+        uploadEndNanos = now;
+        this.error = error;
+        state = State.FAILED;
+        callbacks = null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        State current = state;
+        return current == State.LOADED || current == State.FAILED;
+    }
+
+    public T get() {
+        return value;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getDecodeNanos() {
+        return decodeEndNanos - decodeStartNanos;
+    }
+
+    /**
+     * Time spent waiting: in the worker pool before decoding started, and in the upload queue
+     * between the end of decoding and the start of the upload.
+     */
+    public long getWaitNanos() {
+        return (decodeStartNanos - submitNanos) + (uploadStartNanos - decodeEndNanos);
+    }
+
+    public long getUploadNanos() {
+        return uploadEndNanos - uploadStartNanos;
+    }
+
+    public long getTotalNanos() {
+        return uploadEndNanos - submitNanos;
+    }
+}
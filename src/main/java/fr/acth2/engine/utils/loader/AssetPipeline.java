@@ -0,0 +1,132 @@
+package fr.acth2.engine.utils.loader;
+
+import fr.acth2.engine.engine.GLCommandQueue;
+import fr.acth2.engine.engine.TextureStreamer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Loads assets in two stages. The decode stage (reading files, decoding images, parsing and
+ * preprocessing geometry) runs on a worker pool and must not touch GL. Its result is handed to
+ * the upload stage, which is queued on a {@link GLCommandQueue} and executed by the GL thread
+ * from {@link #update(long)} within a per-frame time budget.
+ * <p>
+ * {@link #update(long)} and the {@link Asset} callbacks belong to the GL thread, as does
+ * {@link #submit} once the GL thread runs {@link #update(long)}. When the last pending asset finishes a timing report is printed.
+ * <p>
+ * Textures are streamed separately by a {@link TextureStreamer} sharing the same workers; it is
+ * advanced from {@link #update(long)} as well.
+ */
+public class AssetPipeline {
+
+    private final ForkJoinPool workers;
+    private final GLCommandQueue uploads;
+    private final TextureStreamer textures;
+    private final List<Asset<?>> assets;
+    private int pending;
+    private boolean reported;
+
+    public AssetPipeline(int parallelism) {
+        workers = new ForkJoinPool(Math.max(1, parallelism));
+        uploads = new GLCommandQueue();
+        textures = new TextureStreamer(workers);
+        assets = new ArrayList<>();
+        reported = true;
+    }
+
+    public <D, T> Asset<T> submit(String name, Callable<D> decode, Function<D, T> upload) {
+        Asset<T> asset = new Asset<>(name);
+        assets.add(asset);
+        pending++;
+        reported = false;
+
+        workers.execute(() -> {
+            asset.decodeStarted();
+            D data;
+            try {
+                data = decode.call();
+            } catch (Throwable e) {
+                uploads.submit(() -> fail(asset, e));
+                return;
+            }
+            asset.decodeFinished();
+            uploads.submit(() -> {
+                asset.uploadStarted();
+                T value;
+                try {
+                    value = upload.apply(data);
+                } catch (Throwable e) {
+                    fail(asset, e);
+                    return;
+                }
+                pending--;
+                asset.loaded(value);
+            });
+        });
+        return asset;
+    }
+
+    private void fail(Asset<?> asset, Throwable e) {
+        pending--;
+        asset.failed(e);
+        System.err.println("Failed to load asset: " + asset.getName());
+        e.printStackTrace();
+    }
+
+    /**
+     * Runs queued uploads for at most {@code budgetNanos}. Must be called from the GL thread.
+     */
+    public void update(long budgetNanos) {
+        textures.update();
+        if (pending == 0 && reported) {
+            return;
+        }
+        uploads.drain(budgetNanos);
+        if (pending == 0 && !reported) {
+            reported = true;
+            printReport();
+        }
+    }
+
+    public boolean isIdle() {
+        return pending == 0 && textures.isIdle();
+    }
+
+    public TextureStreamer getTextureStreamer() {
+        return textures;
+    }
+
+    public List<Asset<?>> getAssets() {
+        return assets;
+    }
+
+    public void printReport() {
+        System.out.println("Asset loading report:");
+        System.out.println(String.format("  %-32s %10s %10s %10s %10s  %s", "asset", "decode", "wait", "upload", "total", "state"));
+        for (Asset<?> asset : assets) {
+            System.out.println(String.format("  %-32s %8.2fms %8.2fms %8.2fms %8.2fms  %s",
+                    asset.getName(),
+                    asset.getDecodeNanos() / 1e6,
+                    asset.getWaitNanos() / 1e6,
+                    asset.getUploadNanos() / 1e6,
+                    asset.getTotalNanos() / 1e6,
+                    asset.getState()));
+        }
+    }
+
+    public void cleanup() {
+        workers.shutdownNow();
+        try {
+            // Decodes write into mapped staging buffers, which must outlive them.
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        textures.cleanup();
+    }
+}
@@ -0,0 +1,39 @@
+package fr.acth2.engine.utils.loader;
+
+import java.util.Arrays;
+
+/**
+ * Growable {@code float[]} used while building mesh data, avoiding a boxed {@code List<Float>}.
+ */
+public class FloatList {
+
+    private float[] data;
+    private int size;
+
+    public FloatList(int initialCapacity) {
+        data = new float[Math.max(initialCapacity, 4)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
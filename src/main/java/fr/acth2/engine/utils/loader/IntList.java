@@ -0,0 +1,39 @@
+package fr.acth2.engine.utils.loader;
+
+import java.util.Arrays;
+
+/**
+ * Growable {@code int[]} used while building mesh data, avoiding a boxed {@code List<Integer>}.
+ */
+public class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList(int initialCapacity) {
+        data = new int[Math.max(initialCapacity, 4)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
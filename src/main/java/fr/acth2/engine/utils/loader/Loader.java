@@ -1,17 +1,22 @@
 package fr.acth2.engine.utils.loader;
 
 import fr.acth2.engine.engine.models.Mesh;
-import fr.acth2.engine.utils.models.Face;
-import fr.acth2.engine.utils.models.IdxGroup;
-import fr.acth2.engine.utils.models.VertexKey;
-import org.joml.Vector2f;
-import org.joml.Vector3f;
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.VertexFormat;
+import fr.acth2.engine.utils.LongIntHashMap;
+import fr.acth2.engine.utils.Refs;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class Loader {
@@ -50,117 +55,166 @@ public class Loader {
     }
 
     public static Mesh loadMesh(String fileName) throws Exception {
-        List<String> lines = readAllLines(fileName);
-
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Vector2f> textures = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
-
-        for (String line : lines) {
-            String[] tokens = line.split("\\s+");
-            switch (tokens[0]) {
-                case "v":
-                    Vector3f vec3f = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    vertices.add(vec3f);
-                    break;
-                case "vt":
-                    Vector2f vec2f = new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]));
-                    textures.add(vec2f);
-                    break;
-                case "vn":
-                    // Vertex normal
-                    Vector3f vec3fNorm = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    normals.add(vec3fNorm);
-                    break;
-                case "f":
-                    if (tokens.length > 4) {
-                        for (int i = 2; i < tokens.length - 1; i++) {
-                            faces.add(new Face(tokens[1], tokens[i], tokens[i + 1]));
-                        }
-                    } else {
-                        faces.add(new Face(tokens[1], tokens[2], tokens[3]));
-                    }
-                    break;
-                default:
-                    break;
+        return loadMesh(fileName, VertexFormat.SEPARATE);
+    }
+
+    public static Mesh loadMesh(String fileName, VertexFormat vertexFormat) throws Exception {
+        MeshData data = loadMeshData(fileName, vertexFormat);
+        try {
+            return new Mesh(data);
+        } finally {
+            data.free();
+        }
+    }
+
+    /**
+     * Reads an OBJ resource into upload-ready mesh data without touching GL. When the mesh cache
+     * is enabled, a previous conversion of the same file contents is reused, and a fresh
+     * conversion is written back for the next run. The mesh's collision shape is built here too,
+     * so uploading it costs nothing extra.
+     */
+    public static MeshData loadMeshData(String fileName, VertexFormat vertexFormat) throws Exception {
+        MeshData data = readMeshData(fileName, vertexFormat);
+        if (Refs.COLLISION_MESHES_ENABLED) {
+            data.buildCollisionMesh();
+        }
+        return data;
+    }
+
+    private static MeshData readMeshData(String fileName, VertexFormat vertexFormat) throws Exception {
+        ByteBuffer source = readResourceBytes(fileName);
+        if (!Refs.MESH_CACHE_ENABLED) {
+            return reorderLists(ObjParser.parse(source), vertexFormat);
+        }
+
+        long sourceHash = MeshCache.hash(source);
+        MeshData cached = MeshCache.load(sourceHash, vertexFormat);
+        if (cached != null) {
+            return cached;
+        }
+
+        MeshData data = reorderLists(ObjParser.parse(source), vertexFormat);
+        MeshCache.store(sourceHash, data, Refs.MESH_CACHE_COMPRESSION);
+        return data;
+    }
+
+    /**
+     * Returns the bytes of a resource. Resources living on the file system are memory-mapped;
+     * anything else (e.g. inside a jar) is read into a heap buffer.
+     */
+    public static ByteBuffer readResourceBytes(String fileName) throws IOException {
+        URL url = Loader.class.getResource(fileName);
+        if (url == null) {
+            throw new RuntimeException("Resource not found: " + fileName);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid resource path: " + url, e);
             }
         }
 
-        return reorderLists(vertices, textures, normals, faces);
+        try (InputStream in = url.openStream()) {
+            byte[] bytes = new byte[8192];
+            int length = 0;
+            int read;
+            while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+            }
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
     }
 
-    private static Mesh reorderLists(
-            List<Vector3f> positions,
-            List<Vector2f> texCoords,
-            List<Vector3f> normals,
-            List<Face> faces) {
-
-        List<Float> posArr = new ArrayList<>();
-        List<Float> texArr = new ArrayList<>();
-        List<Float> normArr = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-
-        Map<VertexKey, Integer> vertexMap = new HashMap<>();
-
-        for (Face face : faces) {
-            for (IdxGroup idx : face.getFaceVertexIndices()) {
-
-                VertexKey key = new VertexKey(
-                        idx.idxPos,
-                        idx.idxTextCoord,
-                        idx.idxVecNormal
-                );
-
-                Integer index = vertexMap.get(key);
-
-                if (index == null) {
-                    index = posArr.size() / 3;
-                    vertexMap.put(key, index);
-
-                    Vector3f pos = positions.get(idx.idxPos);
-                    posArr.add(pos.x);
-                    posArr.add(pos.y);
-                    posArr.add(pos.z);
-
-                    if (idx.idxTextCoord >= 0) {
-                        Vector2f tex = texCoords.get(idx.idxTextCoord);
-                        texArr.add(tex.x);
-                        texArr.add(1 - tex.y);
-                    } else {
-                        texArr.add(0f);
-                        texArr.add(0f);
-                    }
-
-                    if (idx.idxVecNormal >= 0) {
-                        Vector3f norm = normals.get(idx.idxVecNormal);
-                        normArr.add(norm.x);
-                        normArr.add(norm.y);
-                        normArr.add(norm.z);
-                    } else {
-                        normArr.add(0f);
-                        normArr.add(0f);
-                        normArr.add(0f);
-                    }
+    private static MeshData reorderLists(ObjParser obj, VertexFormat vertexFormat) {
+        return reorderLists(obj, vertexFormat, true);
+    }
+
+    /**
+     * Builds one vertex per distinct position/texture/normal triple. With {@code allowPacked}
+     * false the triples are always keyed through the pair map, as they are for meshes too large
+     * to pack; tests use it to check both paths agree.
+     */
+    static MeshData reorderLists(ObjParser obj, VertexFormat vertexFormat, boolean allowPacked) {
+        FloatList positions = obj.getPositions();
+        FloatList texCoords = obj.getTexCoords();
+        FloatList normals = obj.getNormals();
+        IntList corners = obj.getCorners();
+
+        int numCorners = corners.size() / 3;
+        FloatList posArr = new FloatList(positions.size());
+        FloatList texArr = new FloatList(positions.size() / 3 * 2);
+        FloatList normArr = new FloatList(positions.size());
+        int[] indices = new int[numCorners];
+
+        int numPositions = positions.size() / 3;
+        int numTexCoords = texCoords.size() / 2;
+        int numNormals = normals.size() / 3;
+        int texBits = LongIntHashMap.bitsFor(numTexCoords + 1);
+        int normBits = LongIntHashMap.bitsFor(numNormals + 1);
+        boolean packed = allowPacked && LongIntHashMap.bitsFor(numPositions) + texBits + normBits <= 64;
+        LongIntHashMap vertexMap = new LongIntHashMap(numCorners);
+        // When the three indices don't fit in one key, position and texture coordinate pairs are
+        // numbered first and the pair number is keyed with the normal.
+        LongIntHashMap pairMap = packed ? null : new LongIntHashMap(numCorners);
+
+        for (int i = 0; i < numCorners; i++) {
+            int idxPos = corners.get(i * 3);
+            int idxTextCoord = corners.get(i * 3 + 1);
+            int idxVecNormal = corners.get(i * 3 + 2);
+            if (idxPos < 0 || idxPos >= numPositions || idxTextCoord < -1 || idxTextCoord >= numTexCoords
+                    || idxVecNormal < -1 || idxVecNormal >= numNormals) {
+                throw new IllegalStateException("Vertex indices out of range: "
+                        + idxPos + "/" + idxTextCoord + "/" + idxVecNormal);
+            }
+
+            long key;
+            if (packed) {
+                key = LongIntHashMap.packIndices(idxPos, idxTextCoord, idxVecNormal, texBits, normBits);
+            } else {
+                int pair = pairMap.putIfAbsent((long) idxPos << 32 | (idxTextCoord + 1L), pairMap.size());
+                key = (long) pair << 32 | (idxVecNormal + 1L);
+            }
+            int nextIndex = posArr.size() / 3;
+            int index = vertexMap.putIfAbsent(key, nextIndex);
+
+            if (index == nextIndex) {
+                posArr.add(positions.get(idxPos * 3));
+                posArr.add(positions.get(idxPos * 3 + 1));
+                posArr.add(positions.get(idxPos * 3 + 2));
+
+                if (idxTextCoord >= 0) {
+                    texArr.add(texCoords.get(idxTextCoord * 2));
+                    texArr.add(1 - texCoords.get(idxTextCoord * 2 + 1));
+                } else {
+                    texArr.add(0f);
+                    texArr.add(0f);
                 }
 
-                indices.add(index);
+                if (idxVecNormal >= 0) {
+                    normArr.add(normals.get(idxVecNormal * 3));
+                    normArr.add(normals.get(idxVecNormal * 3 + 1));
+                    normArr.add(normals.get(idxVecNormal * 3 + 2));
+                } else {
+                    normArr.add(0f);
+                    normArr.add(0f);
+                    normArr.add(0f);
+                }
             }
+
+            indices[i] = index;
         }
 
-        return new Mesh(
-                listToArray(posArr),
-                listToArray(texArr),
-                listToArray(normArr),
-                indices.stream().mapToInt(i -> i).toArray()
+        return MeshData.build(
+                posArr.toArray(),
+                texArr.toArray(),
+                normArr.toArray(),
+                indices,
+                vertexFormat
         );
     }
 
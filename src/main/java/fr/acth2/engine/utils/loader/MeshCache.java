@@ -0,0 +1,302 @@
+package fr.acth2.engine.utils.loader;
+
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.VertexFormat;
+import fr.acth2.engine.utils.Refs;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.util.lz4.LZ4.*;
+import static org.lwjgl.util.xxhash.XXHash.XXH3_64bits;
+import static org.lwjgl.util.zstd.Zstd.*;
+
+/**
+ * On-disk cache of converted meshes. Each entry is a single file holding a fixed little-endian
+ * header (layout, counts, bounds, blob sizes and the hash of the source) followed by the vertex
+ * and index blobs exactly as {@link MeshData} hands them to GL, each 16-byte aligned.
+ * <p>
+ * Entries are keyed by the XXH3 hash of the source file plus the vertex format, so editing a
+ * model or asking for another layout simply misses. Uncompressed entries are memory-mapped and
+ * their blobs passed to GL as slices of the mapping; compressed entries are inflated into
+ * native memory. A cache file that cannot be read is ignored and rewritten.
+ */
+public final class MeshCache {
+
+    public enum Compression {
+        NONE,
+        LZ4,
+        ZSTD
+    }
+
+    private static final int MAGIC = 0x48534d41; // "AMSH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 96;
+    private static final int BLOB_ALIGNMENT = 16;
+    private static final int FLAG_TEX_COORDS = 1;
+    private static final int FLAG_NORMALS = 1 << 1;
+    private static final int ZSTD_LEVEL = 9;
+
+    private MeshCache() {
+    }
+
+    public static long hash(ByteBuffer source) {
+        if (source.isDirect()) {
+            return XXH3_64bits(source);
+        }
+        ByteBuffer copy = MemoryUtil.memAlloc(source.remaining());
+        try {
+            copy.put(source.duplicate()).flip();
+            return XXH3_64bits(copy);
+        } finally {
+            MemoryUtil.memFree(copy);
+        }
+    }
+
+    public static Path pathFor(long sourceHash, VertexFormat vertexFormat) {
+        return Paths.get(Refs.MESH_CACHE_DIRECTORY,
+                String.format("%016x-%s.mesh", sourceHash, vertexFormat.name().toLowerCase()));
+    }
+
+    /**
+     * Returns the cached mesh for this source and layout, or {@code null} on a miss.
+     */
+    public static MeshData load(long sourceHash, VertexFormat vertexFormat) {
+        Path path = pathFor(sourceHash, vertexFormat);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("truncated header");
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            file.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (file.getInt(0) != MAGIC || file.getInt(4) != VERSION) {
+                throw new IOException("unknown format");
+            }
+            if (file.getInt(8) != vertexFormat.ordinal() || file.getLong(88) != sourceHash) {
+                throw new IOException("entry does not match its key");
+            }
+
+            int flags = file.getInt(12);
+            int compressionOrdinal = file.getInt(16);
+            if (compressionOrdinal < 0 || compressionOrdinal >= Compression.values().length) {
+                throw new IOException("unknown compression " + compressionOrdinal);
+            }
+            Compression compression = Compression.values()[compressionOrdinal];
+            int indexType = file.getInt(20);
+            if (indexType != GL_UNSIGNED_SHORT && indexType != GL_UNSIGNED_INT) {
+                throw new IOException("unknown index type " + indexType);
+            }
+            int numVertices = file.getInt(24);
+            int numIndices = file.getInt(28);
+            if (numVertices < 0 || numIndices < 0) {
+                throw new IOException("negative counts");
+            }
+            Vector3f aabbMin = new Vector3f(file.getFloat(32), file.getFloat(36), file.getFloat(40));
+            Vector3f aabbMax = new Vector3f(file.getFloat(44), file.getFloat(48), file.getFloat(52));
+            Vector3f boundingCenter = new Vector3f(file.getFloat(56), file.getFloat(60), file.getFloat(64));
+            float boundingRadius = file.getFloat(68);
+            int vertexBytes = file.getInt(72);
+            int vertexStoredBytes = file.getInt(76);
+            int indexBytes = file.getInt(80);
+            int indexStoredBytes = file.getInt(84);
+
+            if (vertexBytes != vertexBytesFor(vertexFormat, flags, numVertices)
+                    || indexBytes != (long) numIndices * (indexType == GL_UNSIGNED_SHORT ? 2 : 4)) {
+                throw new IOException("blob sizes do not match the counts");
+            }
+            if (!fitsStored(compression, vertexBytes, vertexStoredBytes)
+                    || !fitsStored(compression, indexBytes, indexStoredBytes)) {
+                throw new IOException("stored sizes do not match the raw sizes");
+            }
+
+            long vertexOffset = HEADER_SIZE;
+            long indexOffset = align(vertexOffset + vertexStoredBytes);
+            if (indexOffset + indexStoredBytes > file.capacity()) {
+                throw new IOException("truncated data");
+            }
+
+            ByteBuffer vertexBlob = slice(file, (int) vertexOffset, vertexStoredBytes);
+            ByteBuffer indexBlob = slice(file, (int) indexOffset, indexStoredBytes);
+
+            if (compression == Compression.NONE) {
+                return new MeshData(vertexFormat, numVertices, numIndices, indexType,
+                        (flags & FLAG_TEX_COORDS) != 0, (flags & FLAG_NORMALS) != 0,
+                        aabbMin, aabbMax, boundingCenter, boundingRadius, vertexBlob, indexBlob, false);
+            }
+
+            ByteBuffer vertices = decompress(compression, vertexBlob, vertexBytes);
+            ByteBuffer indices;
+            try {
+                indices = decompress(compression, indexBlob, indexBytes);
+            } catch (IOException e) {
+                MemoryUtil.memFree(vertices);
+                throw e;
+            }
+            return new MeshData(vertexFormat, numVertices, numIndices, indexType,
+                    (flags & FLAG_TEX_COORDS) != 0, (flags & FLAG_NORMALS) != 0,
+                    aabbMin, aabbMax, boundingCenter, boundingRadius, vertices, indices, true);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring mesh cache entry " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry for this source. The file is written next to its final name and moved into
+     * place, so a crash never leaves a half-written entry behind. Failures are reported and
+     * otherwise ignored: the cache is an optimisation, not a requirement.
+     */
+    public static void store(long sourceHash, MeshData data, Compression compression) {
+        Path path = pathFor(sourceHash, data.getVertexFormat());
+        ByteBuffer vertexBlob = null;
+        ByteBuffer indexBlob = null;
+        try {
+            Files.createDirectories(path.getParent());
+
+            ByteBuffer vertices = data.getVertices().duplicate();
+            ByteBuffer indices = data.getIndices().duplicate();
+            if (compression == Compression.NONE) {
+                vertexBlob = vertices;
+                indexBlob = indices;
+            } else {
+                vertexBlob = compress(compression, vertices);
+                indexBlob = compress(compression, indices);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(data.getVertexFormat().ordinal());
+            header.putInt((data.hasTexCoords() ? FLAG_TEX_COORDS : 0) | (data.hasNormals() ? FLAG_NORMALS : 0));
+            header.putInt(compression.ordinal());
+            header.putInt(data.getIndexType());
+            header.putInt(data.getNumVertices());
+            header.putInt(data.getNumIndices());
+            putVector(header, data.getAabbMin());
+            putVector(header, data.getAabbMax());
+            putVector(header, data.getBoundingCenter());
+            header.putFloat(data.getBoundingRadius());
+            header.putInt(vertices.remaining());
+            header.putInt(vertexBlob.remaining());
+            header.putInt(indices.remaining());
+            header.putInt(indexBlob.remaining());
+            header.putLong(sourceHash);
+            header.flip();
+
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(channel, header, 0);
+                writeFully(channel, vertexBlob.duplicate(), HEADER_SIZE);
+                writeFully(channel, indexBlob.duplicate(), align(HEADER_SIZE + vertexBlob.remaining()));
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write mesh cache entry " + path + ": " + e.getMessage());
+        } finally {
+            if (compression != Compression.NONE) {
+                if (vertexBlob != null) MemoryUtil.memFree(vertexBlob);
+                if (indexBlob != null) MemoryUtil.memFree(indexBlob);
+            }
+        }
+    }
+
+    private static long vertexBytesFor(VertexFormat vertexFormat, int flags, int numVertices) {
+        if (vertexFormat.isInterleaved()) {
+            return (long) numVertices * vertexFormat.getStride();
+        }
+        int floatsPerVertex = 3
+                + ((flags & FLAG_TEX_COORDS) != 0 ? 2 : 0)
+                + ((flags & FLAG_NORMALS) != 0 ? 3 : 0);
+        return (long) numVertices * floatsPerVertex * Float.BYTES;
+    }
+
+    /**
+     * Whether a blob stored with this compression can hold {@code rawBytes}: raw blobs are stored
+     * as is, compressed ones never exceed the compressor's worst case.
+     */
+    private static boolean fitsStored(Compression compression, int rawBytes, int storedBytes) {
+        switch (compression) {
+            case NONE:
+                return storedBytes == rawBytes;
+            case LZ4:
+                return storedBytes >= 0 && storedBytes <= Math.max(1, LZ4_compressBound(rawBytes));
+            default:
+                return storedBytes >= 0 && storedBytes <= Math.max(1, ZSTD_compressBound(rawBytes));
+        }
+    }
+
+    private static ByteBuffer compress(Compression compression, ByteBuffer src) throws IOException {
+        ByteBuffer dst;
+        long size;
+        if (compression == Compression.LZ4) {
+            dst = MemoryUtil.memAlloc(Math.max(1, LZ4_compressBound(src.remaining())));
+            size = LZ4_compress_default(src, dst);
+            if (size <= 0 && src.remaining() > 0) {
+                MemoryUtil.memFree(dst);
+                throw new IOException("LZ4 compression failed");
+            }
+        } else {
+            dst = MemoryUtil.memAlloc((int) Math.max(1, ZSTD_compressBound(src.remaining())));
+            size = ZSTD_compress(dst, src, ZSTD_LEVEL);
+            if (ZSTD_isError(size)) {
+                MemoryUtil.memFree(dst);
+                throw new IOException("Zstd compression failed");
+            }
+        }
+        dst.limit((int) size);
+        return dst;
+    }
+
+    private static ByteBuffer decompress(Compression compression, ByteBuffer src, int rawSize) throws IOException {
+        ByteBuffer dst = MemoryUtil.memAlloc(Math.max(1, rawSize));
+        dst.limit(rawSize);
+        long size = compression == Compression.LZ4
+                ? LZ4_decompress_safe(src, dst)
+                : ZSTD_decompress(dst, src);
+        if (size != rawSize) {
+            MemoryUtil.memFree(dst);
+            throw new IOException(compression + " decompression failed");
+        }
+        return dst;
+    }
+
+    private static ByteBuffer slice(ByteBuffer file, int offset, int length) {
+        ByteBuffer view = file.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static void putVector(ByteBuffer buffer, Vector3f vector) {
+        buffer.putFloat(vector.x).putFloat(vector.y).putFloat(vector.z);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + BLOB_ALIGNMENT - 1) / BLOB_ALIGNMENT * BLOB_ALIGNMENT;
+    }
+}
@@ -0,0 +1,278 @@
+package fr.acth2.engine.utils.loader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wavefront OBJ reader working directly on the bytes of the file. Numbers are parsed in place
+ * without building Strings and geometry goes straight into primitive arrays. Only {@code v},
+ * {@code vt}, {@code vn} and {@code f} statements are read; everything else is skipped.
+ * <p>
+ * Faces are fan-triangulated and stored as corners of three ints (position, texture coordinate
+ * and normal index, zero based, {@link #NO_VALUE} when absent). Negative (relative) indices
+ * are resolved against the elements read so far.
+ */
+public class ObjParser {
+
+    public static final int NO_VALUE = -1;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private final ByteBuffer data;
+    private final int limit;
+    private int pos;
+
+    private final FloatList positions;
+    private final FloatList texCoords;
+    private final FloatList normals;
+    private final IntList corners;
+    private final IntList faceCorners;
+
+    private ObjParser(ByteBuffer data) {
+        this.data = data;
+        this.pos = data.position();
+        this.limit = data.limit();
+        int estimate = Math.max(16, data.remaining() / 64);
+        positions = new FloatList(estimate);
+        texCoords = new FloatList(estimate);
+        normals = new FloatList(estimate);
+        corners = new IntList(estimate * 3);
+        faceCorners = new IntList(12);
+    }
+
+    public static ObjParser parse(ByteBuffer data) {
+        ObjParser parser = new ObjParser(data);
+        parser.parse();
+        return parser;
+    }
+
+    private void parse() {
+        while (pos < limit) {
+            skipBlanks();
+            if (pos >= limit) {
+                break;
+            }
+
+            byte c = data.get(pos);
+            if (c == 'v') {
+                if (isBlank(pos + 1)) {
+                    pos += 1;
+                    readFloats(positions, 3);
+                } else if (at(pos + 1) == 't' && isBlank(pos + 2)) {
+                    pos += 2;
+                    readFloats(texCoords, 2);
+                } else if (at(pos + 1) == 'n' && isBlank(pos + 2)) {
+                    pos += 2;
+                    readFloats(normals, 3);
+                }
+            } else if (c == 'f' && isBlank(pos + 1)) {
+                pos += 1;
+                readFace();
+            }
+            skipLine();
+        }
+    }
+
+    private void readFloats(FloatList dest, int count) {
+        for (int i = 0; i < count; i++) {
+            skipBlanks();
+            dest.add(parseFloat());
+        }
+    }
+
+    private void readFace() {
+        faceCorners.clear();
+        while (true) {
+            skipBlanks();
+            if (pos >= limit || isLineEnd(data.get(pos))) {
+                break;
+            }
+
+            int idxPos = resolve(parseInt(), positions.size() / 3);
+            int idxTex = NO_VALUE;
+            int idxNorm = NO_VALUE;
+            if (at(pos) == '/') {
+                pos++;
+                if (at(pos) != '/') {
+                    idxTex = resolve(parseInt(), texCoords.size() / 2);
+                }
+                if (at(pos) == '/') {
+                    pos++;
+                    idxNorm = resolve(parseInt(), normals.size() / 3);
+                }
+            }
+            faceCorners.add(idxPos);
+            faceCorners.add(idxTex);
+            faceCorners.add(idxNorm);
+        }
+
+        int numCorners = faceCorners.size() / 3;
+        for (int i = 1; i + 1 < numCorners; i++) {
+            addCorner(0);
+            addCorner(i);
+            addCorner(i + 1);
+        }
+    }
+
+    private void addCorner(int corner) {
+        corners.add(faceCorners.get(corner * 3));
+        corners.add(faceCorners.get(corner * 3 + 1));
+        corners.add(faceCorners.get(corner * 3 + 2));
+    }
+
+    private static int resolve(int index, int count) {
+        return index < 0 ? count + index : index - 1;
+    }
+
+    private int parseInt() {
+        boolean negative = false;
+        byte c = at(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+
+        int start = pos;
+        int value = 0;
+        while (pos < limit && isDigit(data.get(pos))) {
+            value = value * 10 + (data.get(pos) - '0');
+            pos++;
+        }
+        if (pos == start) {
+            throw malformed();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal float with optional sign, fraction and exponent. Up to 18 significant
+     * digits are accumulated exactly in a long and scaled once by a power of ten, which is
+     * well within float precision.
+     */
+    private float parseFloat() {
+        boolean negative = false;
+        byte c = at(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        while (pos < limit && isDigit(data.get(pos))) {
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (data.get(pos) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+            }
+            any = true;
+            pos++;
+        }
+        if (at(pos) == '.') {
+            pos++;
+            while (pos < limit && isDigit(data.get(pos))) {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (data.get(pos) - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                }
+                any = true;
+                pos++;
+            }
+        }
+        if (!any) {
+            throw malformed();
+        }
+
+        c = at(pos);
+        if (c == 'e' || c == 'E') {
+            pos++;
+            exponent += parseInt();
+        }
+
+        double value = mantissa;
+        if (exponent != 0 && mantissa != 0) {
+            value = scale(value, exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static double scale(double value, int exponent) {
+        while (exponent > 22) {
+            value *= 1e22;
+            exponent -= 22;
+        }
+        while (exponent < -22) {
+            value /= 1e22;
+            exponent += 22;
+        }
+        return exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+    }
+
+    private void skipBlanks() {
+        while (pos < limit) {
+            byte c = data.get(pos);
+            if (c != ' ' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void skipLine() {
+        while (pos < limit && data.get(pos) != '\n') {
+            pos++;
+        }
+        pos++;
+    }
+
+    private byte at(int index) {
+        return index < limit ? data.get(index) : 0;
+    }
+
+    private boolean isBlank(int index) {
+        byte c = at(index);
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isLineEnd(byte c) {
+        return c == '\n' || c == '\r' || c == '#';
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private IllegalStateException malformed() {
+        return new IllegalStateException("Malformed OBJ number at byte " + pos);
+    }
+
+    public FloatList getPositions() {
+        return positions;
+    }
+
+    public FloatList getTexCoords() {
+        return texCoords;
+    }
+
+    public FloatList getNormals() {
+        return normals;
+    }
+
+    /**
+     * Triangle corners, three ints each: position, texture coordinate and normal index.
+     */
+    public IntList getCorners() {
+        return corners;
+    }
+}
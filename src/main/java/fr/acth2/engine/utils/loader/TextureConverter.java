@@ -0,0 +1,255 @@
+package fr.acth2.engine.utils.loader;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import fr.acth2.engine.engine.CompressedTextureData;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.ktx.ktxBasisParams;
+import org.lwjgl.util.ktx.ktxTexture;
+import org.lwjgl.util.ktx.ktxTexture2;
+import org.lwjgl.util.ktx.ktxTextureCreateInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.lwjgl.util.ktx.KTX.*;
+
+/**
+ * Offline tool converting the PNG textures of a resource directory to KTX2. Each image gets a
+ * full mip chain computed here with a box filter and is supercompressed with Basis Universal
+ * (UASTC + Zstd by default, ETC1S with {@code --etc1s}), which {@link CompressedTextureData}
+ * transcodes to BC7, BC3 or ETC2 at load time. The output is written next to the source, so
+ * {@code /textures/v2.png} becomes {@code /textures/v2.ktx2} and is picked up automatically.
+ * <p>
+ * Six images named {@code <name>_rt/_lf/_up/_dn/_ft/_bk.png} are combined into a single cube map
+ * {@code <name>.ktx2}. Heightmaps are skipped since they are read on the CPU, not sampled.
+ * <p>
+ * Usage: {@code TextureConverter [--etc1s] [directory]}, the directory defaulting to
+ * {@code src/main/resources/textures}.
+ */
+public final class TextureConverter {
+
+    private static final int VK_FORMAT_R8G8B8A8_UNORM = 37;
+    private static final int ZSTD_LEVEL = 18;
+    private static final int ETC1S_QUALITY = 128;
+    private static final String[] CUBE_FACE_SUFFIXES = {"_rt", "_lf", "_up", "_dn", "_ft", "_bk"};
+
+    private TextureConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean etc1s = false;
+        Path root = Paths.get("src/main/resources/textures");
+        for (String arg : args) {
+            if ("--etc1s".equals(arg)) {
+                etc1s = true;
+            } else {
+                root = Paths.get(arg);
+            }
+        }
+
+        List<Path> images;
+        try (Stream<Path> files = Files.walk(root)) {
+            images = files.filter(p -> p.getFileName().toString().endsWith(".png"))
+                    .filter(p -> !p.getFileName().toString().contains("heightmap"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        Set<Path> converted = new HashSet<>();
+        for (Path image : images) {
+            if (converted.contains(image)) {
+                continue;
+            }
+            Path[] faces = findCubeFaces(image);
+            Path[] sources = faces != null ? faces : new Path[]{image};
+            Path output = faces != null ? cubeMapOutput(image) : Paths.get(CompressedTextureData.compressedPath(image.toString()));
+            try {
+                convert(sources, output, etc1s);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error converting texture: " + image);
+                e.printStackTrace();
+            }
+            for (Path source : sources) {
+                converted.add(source);
+            }
+        }
+    }
+
+    private static Path[] findCubeFaces(Path image) {
+        String name = image.getFileName().toString();
+        String base = null;
+        for (String suffix : CUBE_FACE_SUFFIXES) {
+            if (name.endsWith(suffix + ".png")) {
+                base = name.substring(0, name.length() - suffix.length() - 4);
+                break;
+            }
+        }
+        if (base == null) {
+            return null;
+        }
+
+        Path[] faces = new Path[CUBE_FACE_SUFFIXES.length];
+        for (int i = 0; i < faces.length; i++) {
+            faces[i] = image.resolveSibling(base + CUBE_FACE_SUFFIXES[i] + ".png");
+            if (!Files.exists(faces[i])) {
+                return null;
+            }
+        }
+        return faces;
+    }
+
+    private static Path cubeMapOutput(Path face) {
+        String name = face.getFileName().toString();
+        return face.resolveSibling(name.substring(0, name.lastIndexOf('_')) + CompressedTextureData.EXTENSION);
+    }
+
+    private static void convert(Path[] faces, Path output, boolean etc1s) throws IOException {
+        List<ByteBuffer> images = new ArrayList<>();
+        int width = 0;
+        int height = 0;
+        ktxTexture texture = null;
+        try {
+            for (Path face : faces) {
+                try (InputStream in = Files.newInputStream(face)) {
+                    PNGDecoder decoder = new PNGDecoder(in);
+                    if (images.isEmpty()) {
+                        width = decoder.getWidth();
+                        height = decoder.getHeight();
+                    } else if (decoder.getWidth() != width || decoder.getHeight() != height) {
+                        throw new IOException("Cube map face " + face + " does not match the size of the others");
+                    }
+                    ByteBuffer pixels = MemoryUtil.memAlloc(4 * width * height);
+                    images.add(pixels);
+                    decoder.decode(pixels, width * 4, PNGDecoder.Format.RGBA);
+                    pixels.flip();
+                }
+            }
+
+            int levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+            texture = create(width, height, levels, faces.length);
+
+            for (int face = 0; face < faces.length; face++) {
+                ByteBuffer base = images.get(face);
+                ByteBuffer level = base;
+                int levelWidth = width;
+                int levelHeight = height;
+                try {
+                    for (int i = 0; i < levels; i++) {
+                        check(output, ktxTexture_SetImageFromMemory(texture, i, 0, face, level));
+                        if (i + 1 < levels) {
+                            ByteBuffer next = downsample(level, levelWidth, levelHeight);
+                            if (level != base) {
+                                MemoryUtil.memFree(level);
+                            }
+                            level = next;
+                            levelWidth = Math.max(1, levelWidth / 2);
+                            levelHeight = Math.max(1, levelHeight / 2);
+                        }
+                    }
+                } finally {
+                    // The base level is freed with the images, smaller ones here, even on failure.
+                    if (level != base) {
+                        MemoryUtil.memFree(level);
+                    }
+                }
+            }
+
+            ktxTexture2 texture2 = ktxTexture2.create(texture.address());
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                ktxBasisParams params = ktxBasisParams.calloc(stack)
+                        .structSize(ktxBasisParams.SIZEOF)
+                        .uastc(!etc1s)
+                        .threadCount(Runtime.getRuntime().availableProcessors());
+                if (etc1s) {
+                    params.qualityLevel(ETC1S_QUALITY);
+                } else {
+                    params.uastcFlags(KTX_PACK_UASTC_LEVEL_DEFAULT);
+                }
+                check(output, ktxTexture2_CompressBasisEx(texture2, params));
+            }
+            if (!etc1s) {
+                check(output, ktxTexture2_DeflateZstd(texture2, ZSTD_LEVEL));
+            }
+            check(output, ktxWriteToNamedFile(texture, output.toString()));
+
+            long sourceBytes = 0;
+            for (Path face : faces) {
+                sourceBytes += Files.size(face);
+            }
+            System.out.println(String.format("%s: %dx%d, %d level(s), %d face(s), %d KB -> %d KB",
+                    output, width, height, levels, faces.length, sourceBytes >> 10, Files.size(output) >> 10));
+        } finally {
+            if (texture != null) {
+                ktxTexture_Destroy(texture);
+            }
+            for (ByteBuffer image : images) {
+                MemoryUtil.memFree(image);
+            }
+        }
+    }
+
+    private static ktxTexture create(int width, int height, int levels, int faces) throws IOException {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            ktxTextureCreateInfo info = ktxTextureCreateInfo.calloc(stack)
+                    .vkFormat(VK_FORMAT_R8G8B8A8_UNORM)
+                    .baseWidth(width)
+                    .baseHeight(height)
+                    .baseDepth(1)
+                    .numDimensions(2)
+                    .numLevels(levels)
+                    .numLayers(1)
+                    .numFaces(faces)
+                    .isArray(false)
+                    .generateMipmaps(false);
+            PointerBuffer out = stack.mallocPointer(1);
+            int result = ktxTexture2_Create(info, KTX_TEXTURE_CREATE_ALLOC_STORAGE, out);
+            if (result != KTX_SUCCESS) {
+                throw new IOException("Unable to create KTX2 texture: " + ktxErrorString(result));
+            }
+            return ktxTexture.create(out.get(0));
+        }
+    }
+
+    private static void check(Path output, int result) throws IOException {
+        if (result != KTX_SUCCESS) {
+            throw new IOException("Unable to write " + output + ": " + ktxErrorString(result));
+        }
+    }
+
+    /**
+     * Halves an RGBA8 image with a 2x2 box filter. Odd edges reuse their last row or column.
+     */
+    static ByteBuffer downsample(ByteBuffer src, int width, int height) {
+        int dstWidth = Math.max(1, width / 2);
+        int dstHeight = Math.max(1, height / 2);
+        ByteBuffer dst = MemoryUtil.memAlloc(4 * dstWidth * dstHeight);
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = Math.min(2 * y, height - 1);
+            int y1 = Math.min(2 * y + 1, height - 1);
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = Math.min(2 * x, width - 1);
+                int x1 = Math.min(2 * x + 1, width - 1);
+                for (int c = 0; c < 4; c++) {
+                    int sum = (src.get((y0 * width + x0) * 4 + c) & 0xFF)
+                            + (src.get((y0 * width + x1) * 4 + c) & 0xFF)
+                            + (src.get((y1 * width + x0) * 4 + c) & 0xFF)
+                            + (src.get((y1 * width + x1) * 4 + c) & 0xFF);
+                    dst.put((y * dstWidth + x) * 4 + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+        return dst;
+    }
+}
@@ -1,17 +0,0 @@
-package fr.acth2.engine.utils.models;
-
-public class IdxGroup {
-    public static final int NO_VALUE = -1;
-
-    public int idxPos;
-
-    public int idxTextCoord;
-
-    public int idxVecNormal;
-
-    public IdxGroup() {
-        idxPos = NO_VALUE;
-        idxTextCoord = NO_VALUE;
-        idxVecNormal = NO_VALUE;
-    }
-}
\ No newline at end of file
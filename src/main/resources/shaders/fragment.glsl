@@ -6,8 +6,7 @@ in vec2 outTexCoord;
 
 out vec4 fragColor;
 
-const int MAX_POINT_LIGHTS = 5;
-const int MAX_SPOT_LIGHTS = 5;
+const int LIGHT_TEXELS = 4;
 
 struct Attenuation
 {
@@ -49,15 +48,20 @@ struct Material
     int disableSpecular;
 };
 
+layout (std140) uniform FrameLights
+{
+    vec3 ambientLight;
+    float specularPower;
+    ivec4 clusterDims;
+    vec4 clusterParams;
+    DirectionalLight directionalLight;
+};
+
 uniform sampler2D texture_sampler;
 uniform Material material;
-uniform vec3 ambientLight;
-uniform float specularPower;
-uniform int pointLightCount;
-uniform int spotLightCount;
-uniform PointLight pointLights[MAX_POINT_LIGHTS];
-uniform SpotLight spotLights[MAX_SPOT_LIGHTS];
-uniform DirectionalLight directionalLight;
+uniform samplerBuffer lightData;
+uniform isamplerBuffer lightGrid;
+uniform isamplerBuffer lightIndices;
 
 vec4 calcLightColor(vec3 light_color, float light_intensity, vec3 position, vec3 to_light_dir, vec3 normal)
 {
@@ -111,6 +115,40 @@ vec4 calcDirectionalLight(DirectionalLight light, vec3 position, vec3 normal)
     return calcLightColor(light.color, light.intensity, position, normalize(to_light_dir), normal);
 }
 
+int calcClusterIndex(vec3 position)
+{
+    float depth = max(-position.z, 0.0001);
+    int slice = min(int(max(log(depth) * clusterParams.x - clusterParams.y, 0.0)), clusterDims.z - 1);
+    ivec2 tile = min(ivec2(gl_FragCoord.xy * clusterParams.zw), clusterDims.xy - 1);
+    return tile.x + clusterDims.x * (tile.y + clusterDims.y * slice);
+}
+
+vec4 calcLocalLight(int lightIndex, vec3 position, vec3 normal)
+{
+    int base = lightIndex * LIGHT_TEXELS;
+    vec4 posIntensity = texelFetch(lightData, base);
+    vec4 colorConstant = texelFetch(lightData, base + 1);
+    vec4 attType = texelFetch(lightData, base + 2);
+
+    PointLight pl;
+    pl.position = posIntensity.xyz;
+    pl.intensity = posIntensity.w;
+    pl.color = colorConstant.rgb;
+    pl.att.constant = colorConstant.w;
+    pl.att.linear = attType.x;
+    pl.att.exponent = attType.y;
+
+    if (attType.z > 0.5) {
+        vec4 coneCutOff = texelFetch(lightData, base + 3);
+        SpotLight spotLight;
+        spotLight.pl = pl;
+        spotLight.coneDirection = coneCutOff.xyz;
+        spotLight.cutOff = coneCutOff.w;
+        return calcSpotLight(spotLight, position, normal);
+    }
+    return calcPointLight(pl, position, normal);
+}
+
 void main()
 {
     if (material.unlit == 1) {
@@ -141,12 +179,9 @@ void main()
     vec3 normal = normalize(mvVertexNormal);
     vec4 totalLight = vec4(ambientLight, 1.0) * material.ambient;
 
-    for (int i = 0; i < pointLightCount; i++) {
-        totalLight += calcPointLight(pointLights[i], mvVertexPos, normal);
-    }
-
-    for (int i = 0; i < spotLightCount; i++) {
-        totalLight += calcSpotLight(spotLights[i], mvVertexPos, normal);
+    ivec2 cluster = texelFetch(lightGrid, calcClusterIndex(mvVertexPos)).xy;
+    for (int i = 0; i < cluster.y; i++) {
+        totalLight += calcLocalLight(texelFetch(lightIndices, cluster.x + i).x, mvVertexPos, normal);
     }
 
     totalLight += calcDirectionalLight(directionalLight, mvVertexPos, normal);
@@ -4,12 +4,15 @@ layout (location=0) in vec3 position;
 
 out vec3 texCoord;
 
-uniform mat4 projectionMatrix;
-uniform mat4 viewMatrix;
+layout (std140) uniform FrameMatrices
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+};
 
 void main()
 {
     texCoord = position;
-    vec4 pos = projectionMatrix * viewMatrix * vec4(position, 1.0);
+    vec4 pos = projectionMatrix * mat4(mat3(viewMatrix)) * vec4(position, 1.0);
     gl_Position = pos.xyww;
 }
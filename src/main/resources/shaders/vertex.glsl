@@ -3,20 +3,47 @@
 layout (location=0) in vec3 position;
 layout (location=1) in vec2 texCoord;
 layout (location=2) in vec3 vertexNormal;
+layout (location=3) in mat4 modelInstancedMatrix;
 
 out vec3 mvVertexPos;
 out vec3 mvVertexNormal;
 out vec2 outTexCoord;
 
+layout (std140) uniform FrameMatrices
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+};
+
 uniform mat4 modelViewMatrix;
-uniform mat4 projectionMatrix;
+uniform int isInstanced;
+uniform int octNormals;
+uniform vec3 positionScale;
+uniform vec3 positionOffset;
+
+vec3 decodeOctNormal(vec2 e)
+{
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.x += n.x >= 0.0 ? -t : t;
+    n.y += n.y >= 0.0 ? -t : t;
+    return normalize(n);
+}
 
 void main()
 {
-    vec4 mvPos = modelViewMatrix * vec4(position, 1.0);
+    mat4 modelView = modelViewMatrix;
+    if (isInstanced == 1) {
+        modelView = viewMatrix * modelInstancedMatrix;
+    }
+
+    vec3 localPos = positionOffset + position * positionScale;
+    vec3 normal = octNormals == 1 ? decodeOctNormal(vertexNormal.xy) : vertexNormal;
+
+    vec4 mvPos = modelView * vec4(localPos, 1.0);
     gl_Position = projectionMatrix * mvPos;
     mvVertexPos = mvPos.xyz;
     outTexCoord = texCoord;
-    mat3 normalMatrix = transpose(inverse(mat3(modelViewMatrix)));
-    mvVertexNormal = normalize(normalMatrix * vertexNormal);
+    mat3 normalMatrix = transpose(inverse(mat3(modelView)));
+    mvVertexNormal = normalize(normalMatrix * normal);
 }
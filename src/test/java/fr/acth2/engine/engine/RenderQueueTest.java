@@ -0,0 +1,157 @@
+package fr.acth2.engine.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderQueueTest {
+
+    // Field widths and shifts of the documented key layout, from the depth up.
+    private static final int[] BITS = {20, 12, 12, 12, 8};
+    private static final int[] SHIFTS = {0, 20, 32, 44, 56};
+    private static final int MAX_DEPTH = (1 << 20) - 1;
+
+    private static long field(long key, int field) {
+        return key >>> SHIFTS[field] & ((1L << BITS[field]) - 1);
+    }
+
+    /**
+     * Fills a queue with {@code keys}, item i carrying key i, sorts it and checks the keys come
+     * out in unsigned ascending order, with equal keys keeping their insertion order.
+     */
+    private static void assertSorts(long[] keys) {
+        RenderQueue queue = new RenderQueue(1);
+        for (int i = 0; i < keys.length; i++) {
+            queue.add(keys[i], i);
+        }
+        queue.sort();
+
+        // Flipping the sign bit turns the unsigned order into the signed one Arrays.sort uses.
+        long[] expected = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            expected[i] = keys[i] ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(expected);
+
+        assertEquals(keys.length, queue.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected[i] ^ Long.MIN_VALUE, queue.getKey(i), "key " + i);
+            assertEquals(queue.getKey(i), keys[queue.getItem(i)], "item " + i);
+            if (i > 0 && queue.getKey(i) == queue.getKey(i - 1)) {
+                assertTrue(queue.getItem(i) > queue.getItem(i - 1), "stable at " + i);
+            }
+        }
+    }
+
+    @Test
+    void sortMatchesArraysSortOnRandomKeys() {
+        Random random = new Random(5);
+        for (int size : new int[]{0, 1, 2, 3, 255, 256, 257, 1000, 20_000}) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = random.nextLong();
+            }
+            assertSorts(keys);
+        }
+    }
+
+    @Test
+    void sortMatchesArraysSortOnFrameLikeKeys() {
+        Random random = new Random(8);
+        long[] keys = new long[5000];
+        for (int i = 0; i < keys.length; i++) {
+            // Few shaders and materials, so most high digits are shared and many keys repeat.
+            keys[i] = RenderQueue.makeKey(random.nextInt(3) * 100, random.nextInt(4), random.nextInt(20),
+                    random.nextInt(50), random.nextInt(16), 16);
+        }
+        assertSorts(keys);
+
+        long[] same = new long[300];
+        Arrays.fill(same, RenderQueue.makeKey(200, 7, 7, 7, 0.5f, 1));
+        assertSorts(same);
+    }
+
+    @Test
+    void clearedQueuesSortOnlyTheirNewKeys() {
+        RenderQueue queue = new RenderQueue(4);
+        for (int i = 0; i < 100; i++) {
+            queue.add(100 - i, i);
+        }
+        queue.sort();
+        queue.clear();
+        queue.add(-1L, 0);
+        queue.add(3, 1);
+        queue.sort();
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.getKey(0));
+        assertEquals(1, queue.getItem(0));
+        assertEquals(-1L, queue.getKey(1));
+        assertEquals(0, queue.getItem(1));
+    }
+
+    @Test
+    void depthQuantizationIsMonotonic() {
+        float maxDepth = 250;
+        long previous = -1;
+        for (int i = -1000; i <= 30_000; i++) {
+            float depth = i * 0.01f;
+            long quantized = field(RenderQueue.makeKey(0, 0, 0, 0, depth, maxDepth), 0);
+            assertTrue(quantized >= previous, "depth " + depth);
+            previous = quantized;
+        }
+        assertEquals(0, field(RenderQueue.makeKey(0, 0, 0, 0, -5, maxDepth), 0));
+        assertEquals(0, field(RenderQueue.makeKey(0, 0, 0, 0, 0, maxDepth), 0));
+        assertEquals(MAX_DEPTH, field(RenderQueue.makeKey(0, 0, 0, 0, maxDepth, maxDepth), 0));
+        assertEquals(MAX_DEPTH, field(RenderQueue.makeKey(0, 0, 0, 0, Float.POSITIVE_INFINITY, maxDepth), 0));
+        assertTrue(field(RenderQueue.makeKey(0, 0, 0, 0, 1, maxDepth), 0)
+                < field(RenderQueue.makeKey(0, 0, 0, 0, 1.01f, maxDepth), 0));
+
+        // Depth never reaches into the mesh field.
+        assertEquals(0, RenderQueue.makeKey(0, 0, 0, 0, Float.MAX_VALUE, maxDepth) >>> BITS[0]);
+    }
+
+    private static long keyWithField(int field, int id) {
+        int[] ids = new int[5];
+        ids[field] = id;
+        return RenderQueue.makeKey(ids[4], ids[3], ids[2], ids[1], 0, 1);
+    }
+
+    @Test
+    void oversizedIdsAreClampedToTheirField() {
+        for (int field = 1; field < BITS.length; field++) {
+            int max = (1 << BITS[field]) - 1;
+            for (int id : new int[]{max + 1, max + 2, 1 << (BITS[field] + 1), Integer.MAX_VALUE}) {
+                long key = keyWithField(field, id);
+                assertEquals(max, field(key, field), "id " + id + " in field " + field);
+                assertEquals(0, key & ~(((1L << BITS[field]) - 1) << SHIFTS[field]),
+                        "id " + id + " in field " + field + " spills over");
+            }
+            assertEquals(keyWithField(field, max), keyWithField(field, max + 1));
+            assertEquals(0, keyWithField(field, -1));
+            assertEquals(0, keyWithField(field, Integer.MIN_VALUE));
+        }
+    }
+
+    @Test
+    void keysOrderByShaderMaterialTextureMeshThenDepth() {
+        for (int field = 1; field < BITS.length; field++) {
+            int max = (1 << BITS[field]) - 1;
+            for (int id = 1; id <= max + 3; id++) {
+                assertTrue(Long.compareUnsigned(keyWithField(field, id - 1), keyWithField(field, id)) <= 0,
+                        "id " + id + " in field " + field);
+            }
+        }
+        long nearest = RenderQueue.makeKey(3, 2, 1, 1, 0, 1);
+        long furthest = RenderQueue.makeKey(3, 2, 1, 1, 1, 1);
+        long nextMesh = RenderQueue.makeKey(3, 2, 1, 2, 0, 1);
+        long nextShader = RenderQueue.makeKey(4, 0, 0, 0, 0, 1);
+        assertTrue(Long.compareUnsigned(nearest, furthest) < 0);
+        assertTrue(Long.compareUnsigned(furthest, nextMesh) < 0);
+        assertTrue(Long.compareUnsigned(nextMesh, nextShader) < 0);
+        assertTrue(Long.compareUnsigned(nextShader, RenderQueue.makeKey(255, 0, 0, 0, 0, 1)) < 0);
+    }
+}
@@ -0,0 +1,205 @@
+package fr.acth2.engine.engine.items;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransformStoreTest {
+
+    /** Against JOML's quaternion formula, which the store reproduces. */
+    private static final float EPSILON = 1e-5f;
+    /** Against the heap path, which rotates by Euler angles instead of a quaternion. */
+    private static final float HEAP_EPSILON = 1e-4f;
+
+    private final Random random = new Random(42);
+    private TransformStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new TransformStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.free();
+    }
+
+    private float randomIn(float range) {
+        return (random.nextFloat() * 2f - 1f) * range;
+    }
+
+    private Quaternionf randomRotation() {
+        return new Quaternionf(randomIn(1f), randomIn(1f), randomIn(1f), randomIn(1f)).normalize();
+    }
+
+    /**
+     * Gives an item a random transform; rotations cover every axis in full.
+     */
+    private void randomize(Item item) {
+        item.setPosition(randomIn(500f), randomIn(500f), randomIn(500f));
+        item.setRotation(randomIn(360f), randomIn(360f), randomIn(360f));
+        item.setScale(0.1f + random.nextFloat() * 10f);
+    }
+
+    private static void assertMatrix(Matrix4f expected, Matrix4f actual) {
+        assertMatrix(expected, actual, EPSILON);
+    }
+
+    private static void assertMatrix(Matrix4f expected, Matrix4f actual, float epsilon) {
+        float[] e = expected.get(new float[16]);
+        float[] a = actual.get(new float[16]);
+        for (int i = 0; i < 16; i++) {
+            // Rounding scales with the column: the item's scale, or its distance from the origin.
+            int column = i & ~3;
+            float length = (float) Math.sqrt(e[column] * e[column] + e[column + 1] * e[column + 1]
+                    + e[column + 2] * e[column + 2]);
+            assertEquals(e[i], a[i], epsilon * Math.max(1f, length), "element " + i + " of " + actual);
+        }
+    }
+
+    private Matrix4f storedMatrix(int slot) {
+        return new Matrix4f().setFromAddress(store.getWorldMatrixAddress(slot));
+    }
+
+    @Test
+    void worldMatricesMatchJoml() {
+        int count = 1000;
+        float[] transforms = new float[count * 8];
+        for (int slot = 0; slot < count; slot++) {
+            assertEquals(slot, store.allocate());
+            Quaternionf q = randomRotation();
+            int t = slot * 8;
+            transforms[t] = randomIn(500f);
+            transforms[t + 1] = randomIn(500f);
+            transforms[t + 2] = randomIn(500f);
+            transforms[t + 3] = q.x;
+            transforms[t + 4] = q.y;
+            transforms[t + 5] = q.z;
+            transforms[t + 6] = q.w;
+            transforms[t + 7] = 0.1f + random.nextFloat() * 10f;
+            store.setPosition(slot, transforms[t], transforms[t + 1], transforms[t + 2]);
+            store.setRotation(slot, q.x, q.y, q.z, q.w);
+            store.setScale(slot, transforms[t + 7]);
+        }
+
+        store.updateWorldMatrices(0, store.size());
+
+        for (int slot = 0; slot < count; slot++) {
+            int t = slot * 8;
+            float s = transforms[t + 7];
+            Matrix4f expected = new Matrix4f().translationRotateScale(transforms[t], transforms[t + 1], transforms[t + 2],
+                    transforms[t + 3], transforms[t + 4], transforms[t + 5], transforms[t + 6], s, s, s);
+            assertFalse(store.isDirty(slot));
+            assertMatrix(expected, storedMatrix(slot));
+            assertMatrix(expected, store.getWorldMatrix(slot, new Matrix4f()));
+        }
+    }
+
+    @Test
+    void storedItemsMatchHeapItems() {
+        for (int i = 0; i < 500; i++) {
+            Item heap = new Item();
+            Item stored = new Item();
+            stored.attachTo(store);
+            long seed = random.nextLong();
+            random.setSeed(seed);
+            randomize(heap);
+            random.setSeed(seed);
+            randomize(stored);
+
+            assertMatrix(heap.getWorldMatrix(), stored.getWorldMatrix(), HEAP_EPSILON);
+            assertEquals(heap.getWorldScale(), stored.getWorldScale());
+
+            // Previous state and interpolation source follow the same path.
+            heap.storePreviousState();
+            stored.storePreviousState();
+            assertFalse(stored.hasMoved());
+            random.setSeed(seed + 1);
+            randomize(heap);
+            random.setSeed(seed + 1);
+            randomize(stored);
+            assertTrue(stored.hasMoved());
+            assertMatrix(heap.getWorldMatrix(), stored.getWorldMatrix(), HEAP_EPSILON);
+            assertMatrix(heap.getPreviousWorldMatrix(new Matrix4f()), stored.getPreviousWorldMatrix(new Matrix4f()),
+                    HEAP_EPSILON);
+        }
+    }
+
+    @Test
+    void freedSlotsAreReusedWithAnIdentityTransform() {
+        for (int slot = 0; slot < 10; slot++) {
+            store.allocate();
+            store.setPosition(slot, slot, 2f * slot, 3f * slot);
+            store.setScale(slot, 2f);
+        }
+        store.updateWorldMatrices(0, store.size());
+        store.free(3);
+        store.free(7);
+
+        int reused = store.allocate();
+        int reusedToo = store.allocate();
+        assertTrue(reused == 7 && reusedToo == 3, "got slots " + reused + " and " + reusedToo);
+        assertEquals(10, store.allocate());
+        assertEquals(11, store.size());
+
+        assertTrue(store.isDirty(reused));
+        store.updateWorldMatrices(0, store.size());
+        assertMatrix(new Matrix4f(), storedMatrix(reused));
+        assertMatrix(new Matrix4f(), storedMatrix(reusedToo));
+        // Neighbours keep their transforms.
+        assertMatrix(new Matrix4f().translation(2f, 4f, 6f).scale(2f), storedMatrix(2));
+        assertMatrix(new Matrix4f().translation(8f, 16f, 24f).scale(2f), storedMatrix(8));
+    }
+
+    @Test
+    void detachedItemsGiveTheirSlotToTheNextItem() {
+        Item first = new Item();
+        first.attachTo(store);
+        randomize(first);
+        Item second = new Item();
+        second.attachTo(store);
+        randomize(second);
+        Matrix4f secondMatrix = new Matrix4f(second.getWorldMatrix());
+        int slot = first.getSlot();
+
+        first.detach();
+        Item third = new Item();
+        randomize(third);
+        Matrix4f thirdHeap = new Matrix4f(third.getWorldMatrix());
+        third.attachTo(store);
+
+        assertEquals(slot, third.getSlot());
+        assertEquals(-1, first.getSlot());
+        assertMatrix(thirdHeap, third.getWorldMatrix(), HEAP_EPSILON);
+        assertMatrix(secondMatrix, second.getWorldMatrix());
+        // The detached item computes its own matrix again, from the same transform.
+        Item copy = new Item();
+        copy.setPosition(first.getPosition().x, first.getPosition().y, first.getPosition().z);
+        copy.setRotation(first.getRotation().x, first.getRotation().y, first.getRotation().z);
+        copy.setScale(first.getScale());
+        assertMatrix(copy.getWorldMatrix(), first.getWorldMatrix(), HEAP_EPSILON);
+    }
+
+    @Test
+    void growingKeepsEveryTransform() {
+        int count = 2000;
+        for (int slot = 0; slot < count; slot++) {
+            store.allocate();
+            store.setPosition(slot, slot, -slot, 0.5f * slot);
+        }
+        store.updateWorldMatrices(0, store.size());
+
+        for (int slot = 0; slot < count; slot++) {
+            assertMatrix(new Matrix4f().translation(slot, -slot, 0.5f * slot), storedMatrix(slot));
+        }
+        assertEquals(count, store.size());
+    }
+}
@@ -0,0 +1,119 @@
+package fr.acth2.engine.engine.light;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LightClusterGridTest {
+
+    private static final float Z_NEAR = 1f;
+    private static final float Z_FAR = 100f;
+
+    private LightClusterGrid grid;
+
+    @BeforeEach
+    void setUp() {
+        // A 90 degree square frustum, so a view-space point at depth d has ndc x = -x / d.
+        grid = new LightClusterGrid(4, 4, 16);
+        grid.updateClusters(new Matrix4f().perspective((float) Math.toRadians(90), 1f, Z_NEAR, Z_FAR), Z_NEAR, Z_FAR);
+    }
+
+    private Set<Integer> clustersOf(int light) {
+        Set<Integer> clusters = new HashSet<>();
+        int[] indices = grid.getLightIndices();
+        for (int cluster = 0; cluster < grid.getNumClusters(); cluster++) {
+            int offset = grid.getClusterLightOffset(cluster);
+            for (int i = offset; i < offset + grid.getClusterLightCount(cluster); i++) {
+                if (indices[i] == light) {
+                    clusters.add(cluster);
+                }
+            }
+        }
+        return clusters;
+    }
+
+    private Set<Integer> clusters(int... indices) {
+        Set<Integer> clusters = new HashSet<>();
+        for (int index : indices) {
+            clusters.add(index);
+        }
+        return clusters;
+    }
+
+    private float sliceMiddle(int slice) {
+        return (float) Math.sqrt(grid.getSliceDepth(slice) * grid.getSliceDepth(slice + 1));
+    }
+
+    @Test
+    void smallLightInsideOneClusterIsAssignedToItOnly() {
+        float depth = sliceMiddle(5);
+        // Middle of tile (0, 2): ndc x in [-1, -0.5], ndc y in [0, 0.5].
+        grid.assignLights(new float[]{-0.75f * depth, 0.25f * depth, -depth, 0.01f}, 1);
+
+        assertEquals(clusters(grid.getClusterIndex(0, 2, 5)), clustersOf(0));
+        assertEquals(grid.getClusterIndex(0, 2, 5), grid.getClusterIndex(-0.75f, 0.25f, depth));
+    }
+
+    @Test
+    void lightOnTileCornerIsAssignedToTheFourTilesAroundIt() {
+        float depth = sliceMiddle(7);
+        grid.assignLights(new float[]{0f, 0f, -depth, 0.01f}, 1);
+
+        assertEquals(clusters(grid.getClusterIndex(1, 1, 7), grid.getClusterIndex(2, 1, 7),
+                grid.getClusterIndex(1, 2, 7), grid.getClusterIndex(2, 2, 7)), clustersOf(0));
+    }
+
+    @Test
+    void lightOnSliceBoundaryIsAssignedToBothSlices() {
+        float depth = grid.getSliceDepth(9);
+        grid.assignLights(new float[]{-0.75f * depth, 0.25f * depth, -depth, 0.01f}, 1);
+
+        assertEquals(clusters(grid.getClusterIndex(0, 2, 8), grid.getClusterIndex(0, 2, 9)), clustersOf(0));
+    }
+
+    @Test
+    void lightsOutsideTheFrustumAreNotAssigned() {
+        grid.assignLights(new float[]{
+                0f, 0f, 10f, 1f,
+                1000f, 0f, -10f, 1f,
+                0f, 0f, -500f, 1f
+        }, 3);
+
+        assertEquals(0, grid.getLightIndexCount());
+    }
+
+    @Test
+    void lightsAreListedInEveryClusterTheyTouchAndNowhereElse() {
+        float depth = sliceMiddle(3);
+        float[] spheres = {
+                -0.75f * depth, 0.25f * depth, -depth, 0.01f,
+                0f, 0f, 10f, 1f,
+                0f, 0f, -grid.getSliceDepth(12), grid.getSliceDepth(12) * 0.3f
+        };
+        grid.assignLights(spheres, 3);
+
+        assertEquals(clusters(grid.getClusterIndex(0, 2, 3)), clustersOf(0));
+        assertTrue(clustersOf(1).isEmpty());
+        Set<Integer> big = clustersOf(2);
+        assertTrue(big.contains(grid.getClusterIndex(1, 1, 11)));
+        assertTrue(big.contains(grid.getClusterIndex(2, 2, 12)));
+        for (int cluster : big) {
+            int slice = cluster / (grid.getNumX() * grid.getNumY());
+            assertTrue(slice >= 10 && slice <= 12, "slice " + slice);
+        }
+
+        int total = 0;
+        for (int cluster = 0; cluster < grid.getNumClusters(); cluster++) {
+            total += grid.getClusterLightCount(cluster);
+        }
+        assertEquals(grid.getLightIndexCount(), total);
+        assertEquals(1 + big.size(), total, Arrays.toString(Arrays.copyOf(grid.getLightIndices(), total)));
+    }
+}
@@ -0,0 +1,90 @@
+package fr.acth2.engine.engine.models;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CollisionMeshTest {
+
+    private final Random random = new Random(42);
+    private final Vector3f normal = new Vector3f();
+
+    private static void assertHit(float expected, float actual) {
+        if (expected != actual) {
+            // Rounding differs between the engine's test and the one by one scan.
+            assertEquals(expected, actual, 1e-4f * Math.max(1f, expected));
+        }
+    }
+
+    /**
+     * Casts rays at the mesh from outside it, and from inside it, and compares each hit with a
+     * test of every triangle.
+     */
+    private void assertMatchesBruteForce(CollisionMesh mesh, float[] positions, int[] indices) {
+        int hits = 0;
+        for (int r = 0; r < 200; r++) {
+            float ox = random.nextFloat() * 4f - 2f, oy = random.nextFloat() * 4f - 2f, oz = r % 4 == 0 ? 0f : 3f;
+            float dx = random.nextFloat() - 0.5f - ox * 0.2f, dy = random.nextFloat() - 0.5f - oy * 0.2f, dz = -1f;
+            float expected = TestMeshes.raycastTriangles(positions, indices, ox, oy, oz, dx, dy, dz);
+            assertHit(expected, mesh.raycast(ox, oy, oz, dx, dy, dz, Float.POSITIVE_INFINITY, normal));
+            if (expected != Float.POSITIVE_INFINITY) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 50, "too few rays hit the mesh to be a useful check");
+    }
+
+    @Test
+    void smallMeshMatchesBruteForce() {
+        int[][] indices = new int[1][];
+        float[] positions = TestMeshes.bumpySphere(6, indices);
+        CollisionMesh mesh = new CollisionMesh(positions, indices[0]);
+
+        assertTrue(mesh.getTriangleCount() < 64);
+        assertMatchesBruteForce(mesh, positions, indices[0]);
+    }
+
+    @Test
+    void meshWithHierarchyMatchesBruteForce() {
+        int[][] indices = new int[1][];
+        float[] positions = TestMeshes.bumpySphere(96, indices);
+        CollisionMesh mesh = new CollisionMesh(positions, indices[0]);
+        mesh.buildBvh();
+
+        assertEquals(96 * 48 * 2, mesh.getTriangleCount());
+        assertMatchesBruteForce(mesh, positions, indices[0]);
+    }
+
+    @Test
+    void hierarchyIsBuiltOnTheFirstCast() {
+        int[][] indices = new int[1][];
+        float[] positions = TestMeshes.bumpySphere(64, indices);
+
+        assertMatchesBruteForce(new CollisionMesh(positions, indices[0]), positions, indices[0]);
+    }
+
+    @Test
+    void hitsPastMaxDistanceAreMisses() {
+        int[][] indices = new int[1][];
+        CollisionMesh mesh = new CollisionMesh(TestMeshes.bumpySphere(64, indices), indices[0]);
+
+        float distance = mesh.raycast(0f, 0f, 5f, 0f, 0f, -1f, Float.POSITIVE_INFINITY, normal);
+        assertEquals(4f, distance, 0.06f);
+        assertEquals(Float.POSITIVE_INFINITY, mesh.raycast(0f, 0f, 5f, 0f, 0f, -1f, distance * 0.9f, normal));
+        assertEquals(Float.POSITIVE_INFINITY, mesh.raycast(0f, 0f, 5f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, normal));
+    }
+
+    @Test
+    void normalIsThatOfTheTriangleHit() {
+        CollisionMesh mesh = new CollisionMesh(new float[]{0, 0, 0, 1, 0, 0, 0, 0, 1}, new int[]{0, 2, 1});
+
+        assertEquals(2f, mesh.raycast(0.25f, 2f, 0.25f, 0f, -1f, 0f, Float.POSITIVE_INFINITY, normal));
+        assertEquals(0f, normal.x);
+        assertTrue(normal.y > 0f);
+        assertEquals(0f, normal.z);
+    }
+}
@@ -0,0 +1,116 @@
+package fr.acth2.engine.engine.models;
+
+import org.joml.Vector3f;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Meshes for tests that run without a GL context.
+ */
+public final class TestMeshes {
+
+    private TestMeshes() {
+    }
+
+    /**
+     * A mesh with no GL buffers whose bounds are a cube of side {@code size} around the origin.
+     * Every constructor of {@link Mesh} uploads to GL, so the instance is allocated without one
+     * and only its CPU-side state is filled in; it must never be rendered or cleaned up.
+     */
+    public static Mesh cube(float size) {
+        try {
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Mesh mesh = (Mesh) ((Unsafe) unsafeField.get(null)).allocateInstance(Mesh.class);
+            Vector3f min = new Vector3f(-size / 2);
+            Vector3f max = new Vector3f(size / 2);
+            set(mesh, "vertexFormat", VertexFormat.SEPARATE);
+            set(mesh, "material", new Material());
+            set(mesh, "aabbMin", min);
+            set(mesh, "aabbMax", max);
+            set(mesh, "boundingCenter", new Vector3f());
+            set(mesh, "boundingRadius", min.distance(max) / 2);
+            set(mesh, "positionScale", new Vector3f(1, 1, 1));
+            set(mesh, "positionOffset", new Vector3f());
+            return mesh;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create a test mesh", e);
+        }
+    }
+
+    private static void set(Mesh mesh, String name, Object value) throws ReflectiveOperationException {
+        Field field = Mesh.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mesh, value);
+    }
+
+    /**
+     * Positions and triangle indices of a unit sphere with small bumps, {@code segments} around
+     * and {@code segments / 2} from pole to pole.
+     *
+     * @return the positions, 3 floats per vertex, and the indices in {@code indicesDest}
+     */
+    public static float[] bumpySphere(int segments, int[][] indicesDest) {
+        int rings = segments / 2;
+        float[] positions = new float[(rings + 1) * (segments + 1) * 3];
+        int[] indices = new int[rings * segments * 6];
+        for (int ring = 0; ring <= rings; ring++) {
+            double polar = Math.PI * ring / rings;
+            for (int segment = 0; segment <= segments; segment++) {
+                double azimuth = 2 * Math.PI * segment / segments;
+                float radius = 1f + 0.05f * (float) (Math.sin(polar * 7) * Math.sin(azimuth * 9));
+                int v = (ring * (segments + 1) + segment) * 3;
+                positions[v] = radius * (float) (Math.sin(polar) * Math.cos(azimuth));
+                positions[v + 1] = radius * (float) Math.cos(polar);
+                positions[v + 2] = radius * (float) (Math.sin(polar) * Math.sin(azimuth));
+            }
+        }
+        int i = 0;
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                int a = ring * (segments + 1) + segment;
+                int b = a + segments + 1;
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = a + 1;
+                indices[i++] = a + 1;
+                indices[i++] = b;
+                indices[i++] = b + 1;
+            }
+        }
+        indicesDest[0] = indices;
+        return positions;
+    }
+
+    /**
+     * Closest hit of a ray among all the triangles, tested one by one, or +inf.
+     */
+    public static float raycastTriangles(float[] positions, int[] indices, float ox, float oy, float oz,
+                                         float dx, float dy, float dz) {
+        float closest = Float.POSITIVE_INFINITY;
+        Vector3f v0 = new Vector3f(), e1 = new Vector3f(), e2 = new Vector3f();
+        Vector3f p = new Vector3f(), s = new Vector3f(), q = new Vector3f();
+        Vector3f direction = new Vector3f(dx, dy, dz);
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = indices[i] * 3, b = indices[i + 1] * 3, c = indices[i + 2] * 3;
+            v0.set(positions[a], positions[a + 1], positions[a + 2]);
+            e1.set(positions[b], positions[b + 1], positions[b + 2]).sub(v0);
+            e2.set(positions[c], positions[c + 1], positions[c + 2]).sub(v0);
+            direction.cross(e2, p);
+            float det = e1.dot(p);
+            if (det == 0f) {
+                continue;
+            }
+            s.set(ox, oy, oz).sub(v0);
+            float u = s.dot(p) / det;
+            s.cross(e1, q);
+            float v = direction.dot(q) / det;
+            float t = e2.dot(q) / det;
+            if (u >= 0f && v >= 0f && u + v <= 1f && t >= 0f && t < closest) {
+                closest = t;
+            }
+        }
+        return closest;
+    }
+}
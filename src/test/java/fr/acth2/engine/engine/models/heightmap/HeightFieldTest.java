@@ -0,0 +1,119 @@
+package fr.acth2.engine.engine.models.heightmap;
+
+import fr.acth2.engine.engine.models.TestMeshes;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeightFieldTest {
+
+    private static final int SIZE = 65;
+    private static final float START = -32f;
+    private static final float CELL_SIZE = 1f;
+
+    private final Random random = new Random(42);
+    private final Vector3f normal = new Vector3f();
+    private float[] heights;
+    private HeightField field;
+    /** The field's triangles, split like {@link HeightMapMesh} splits them. */
+    private float[] positions;
+    private int[] indices;
+
+    @BeforeEach
+    void setUp() {
+        heights = new float[SIZE * SIZE];
+        positions = new float[SIZE * SIZE * 3];
+        indices = new int[(SIZE - 1) * (SIZE - 1) * 6];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int v = row * SIZE + col;
+                heights[v] = 4f * (float) (Math.sin(col * 0.2) * Math.cos(row * 0.15)) + random.nextFloat() * 0.5f;
+                positions[v * 3] = START + col * CELL_SIZE;
+                positions[v * 3 + 1] = heights[v];
+                positions[v * 3 + 2] = START + row * CELL_SIZE;
+                if (row < SIZE - 1 && col < SIZE - 1) {
+                    int i = (row * (SIZE - 1) + col) * 6;
+                    indices[i] = v;
+                    indices[i + 1] = v + SIZE;
+                    indices[i + 2] = v + 1;
+                    indices[i + 3] = v + 1;
+                    indices[i + 4] = v + SIZE;
+                    indices[i + 5] = v + SIZE + 1;
+                }
+            }
+        }
+        field = new HeightField(SIZE, SIZE, START, START, CELL_SIZE, CELL_SIZE, heights);
+    }
+
+    private static void assertHit(float expected, float actual) {
+        if (expected != actual) {
+            // Rounding differs between the engine's test and the one by one scan.
+            assertEquals(expected, actual, 1e-4f * Math.max(1f, expected));
+        }
+    }
+
+    @Test
+    void raysFromAboveMatchBruteForce() {
+        int hits = 0;
+        for (int r = 0; r < 200; r++) {
+            // From above the field, or from beside it, towards a point on it.
+            float targetX = START + random.nextFloat() * (SIZE - 1), targetZ = START + random.nextFloat() * (SIZE - 1);
+            float ox = (random.nextFloat() - 0.5f) * SIZE * 1.5f, oy = 2f + random.nextFloat() * 10f;
+            float oz = (random.nextFloat() - 0.5f) * SIZE * 1.5f;
+            float dx = targetX - ox, dy = field.getHeight(targetX, targetZ) - oy, dz = targetZ - oz;
+
+            float expected = TestMeshes.raycastTriangles(positions, indices, ox, oy, oz, dx, dy, dz);
+            assertHit(expected, field.raycast(ox, oy, oz, dx, dy, dz, Float.POSITIVE_INFINITY, normal));
+            if (expected != Float.POSITIVE_INFINITY) {
+                hits++;
+                assertTrue(normal.y > 0f);
+            }
+        }
+        assertTrue(hits > 150, "too few rays hit the field to be a useful check");
+    }
+
+    @Test
+    void raysAlongTheAxesMatchBruteForce() {
+        for (int r = 0; r < 50; r++) {
+            float x = START + random.nextFloat() * (SIZE - 1), z = START + random.nextFloat() * (SIZE - 1);
+            // Straight down, and level with the terrain along X and Z.
+            assertHit(TestMeshes.raycastTriangles(positions, indices, x, 10f, z, 0f, -1f, 0f),
+                    field.raycast(x, 10f, z, 0f, -1f, 0f, Float.POSITIVE_INFINITY, normal));
+            assertHit(TestMeshes.raycastTriangles(positions, indices, START - 5f, 0f, z, 1f, 0f, 0f),
+                    field.raycast(START - 5f, 0f, z, 1f, 0f, 0f, Float.POSITIVE_INFINITY, normal));
+            assertHit(TestMeshes.raycastTriangles(positions, indices, x, 0f, START - 5f, 0f, 0f, 1f),
+                    field.raycast(x, 0f, START - 5f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, normal));
+        }
+    }
+
+    @Test
+    void verticalRayHitsAtTheInterpolatedHeight() {
+        for (int r = 0; r < 50; r++) {
+            float x = START + random.nextFloat() * (SIZE - 1), z = START + random.nextFloat() * (SIZE - 1);
+            float distance = field.raycast(x, 10f, z, 0f, -1f, 0f, Float.POSITIVE_INFINITY, normal);
+            assertEquals(field.getHeight(x, z), 10f - distance, 1e-4f);
+        }
+    }
+
+    @Test
+    void raysAwayFromTheFieldOrStoppedShortMiss() {
+        assertEquals(Float.POSITIVE_INFINITY, field.raycast(0f, 10f, 0f, 0.3f, 1f, 0.2f, Float.POSITIVE_INFINITY, normal));
+        assertEquals(Float.POSITIVE_INFINITY, field.raycast(START - 5f, 10f, 0f, -1f, -1f, 0f, Float.POSITIVE_INFINITY, normal));
+
+        float distance = field.raycast(0f, 10f, 0f, 0f, -1f, 0f, Float.POSITIVE_INFINITY, normal);
+        assertEquals(Float.POSITIVE_INFINITY, field.raycast(0f, 10f, 0f, 0f, -1f, 0f, distance * 0.9f, normal));
+    }
+
+    @Test
+    void heightOutsideTheFieldIsNaN() {
+        assertTrue(Float.isNaN(field.getHeight(START - 0.1f, 0f)));
+        assertTrue(Float.isNaN(field.getHeight(0f, START + SIZE)));
+        assertEquals(heights[0], field.getHeight(START, START));
+        assertEquals(heights[SIZE * SIZE - 1], field.getHeight(START + SIZE - 1, START + SIZE - 1));
+    }
+}
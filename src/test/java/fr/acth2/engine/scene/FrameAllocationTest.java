@@ -0,0 +1,150 @@
+package fr.acth2.engine.scene;
+
+import fr.acth2.engine.engine.RenderSnapshot;
+import fr.acth2.engine.engine.SpriteList;
+import fr.acth2.engine.engine.camera.Camera;
+import fr.acth2.engine.engine.items.Item;
+import fr.acth2.engine.engine.light.DirectionalLight;
+import fr.acth2.engine.engine.light.PointLight;
+import fr.acth2.engine.engine.light.SpotLight;
+import fr.acth2.engine.engine.models.Mesh;
+import fr.acth2.engine.engine.models.TestMeshes;
+import fr.acth2.engine.utils.FrameAllocationMonitor;
+import fr.acth2.engine.utils.Refs;
+import fr.acth2.engine.utils.hud.IHud;
+import fr.acth2.engine.utils.jobs.JobSystem;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the simulation side of a frame the way the game loop does, ticking the scene, capturing it
+ * into triple-buffered snapshots and reading them back as the renderer does, and checks that the
+ * thread driving it allocates no more than {@link Refs#FRAME_ALLOCATION_BUDGET} per frame once warm.
+ */
+class FrameAllocationTest {
+
+    private static final int ITEMS = 2000;
+    private static final int WARMUP_FRAMES = 1000;
+    private static final int MEASURED_FRAMES = 200;
+
+    private static final IHud HUD = new IHud() {
+        @Override
+        public long getVersion() {
+            return 0;
+        }
+
+        @Override
+        public void addTo(SpriteList sprites) {
+        }
+    };
+
+    private JobSystem jobs;
+    private Scene scene;
+    private Camera camera;
+    private RenderSnapshot[] snapshots;
+    private FloatBuffer transforms;
+    private final List<Item> roots = new ArrayList<>();
+    private final List<Item> parents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jobs = new JobSystem(2);
+        scene = new Scene(jobs);
+        SceneLight light = new SceneLight();
+        light.setAmbientLight(new Vector3f(0.8f));
+        light.setPointLights(new PointLight[0]);
+        light.setSpotLights(new SpotLight[0]);
+        light.setDirectionalLight(new DirectionalLight(new Vector3f(1), new Vector3f(-1), 0.8f));
+        scene.setSceneLight(light);
+
+        Mesh mesh = TestMeshes.cube(1f);
+        for (int i = 0; i < ITEMS; i++) {
+            Item item = new Item(mesh);
+            item.setPosition((i % 50) * 3f - 75f, 0f, -(i / 50) * 3f);
+            if (i % 10 == 0) {
+                // Hierarchies stay on the heap instead of the transform store.
+                Item child = new Item(mesh);
+                child.setPosition(0f, 1.5f, 0f);
+                item.addChild(child);
+                parents.add(item);
+                scene.addItem(child);
+            } else {
+                roots.add(item);
+            }
+            scene.addItem(item);
+        }
+        scene.applyPendingChanges();
+
+        camera = new Camera();
+        camera.setPosition(0f, 5f, 10f);
+        snapshots = new RenderSnapshot[]{new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+        transforms = MemoryUtil.memAllocFloat(ITEMS * 2 * 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Scene.cleanUp deletes GL buffers, so only what the test allocated is freed.
+        for (RenderSnapshot snapshot : snapshots) {
+            snapshot.free();
+        }
+        MemoryUtil.memFree(transforms);
+        jobs.shutdown();
+    }
+
+    private void frame(int frame) {
+        scene.applyPendingChanges();
+        scene.storePreviousState();
+        // A tenth of the items move every tick, and some wander far enough to be reinserted.
+        for (int i = frame % 10; i < roots.size(); i += 10) {
+            Vector3f position = roots.get(i).getPosition();
+            float step = i % 7 == 0 ? 0.5f : 0.01f;
+            roots.get(i).setPosition(position.x, (frame % 40) < 20 ? position.y + step : position.y - step, position.z);
+        }
+        Item parent = parents.get(frame % parents.size());
+        parent.setRotation(0f, frame, 0f);
+        camera.movePosition(0f, 0f, frame % 2 == 0 ? -0.05f : 0.05f);
+        camera.moveRotation(0f, 0.1f, 0f);
+        scene.update();
+
+        RenderSnapshot snapshot = snapshots[frame % snapshots.length];
+        snapshot.setWindowSize(Refs.WINDOW_WIDTH, Refs.WINDOW_HEIGHT, Refs.WINDOW_WIDTH, Refs.WINDOW_HEIGHT);
+        scene.capture(snapshot, camera, HUD, System.nanoTime());
+        camera.storePreviousState();
+
+        float alpha = snapshot.getAlpha(System.nanoTime());
+        for (int i = 0; i < snapshot.getItemCount(); i++) {
+            snapshot.getTransform(i, alpha, transforms, i * 16);
+        }
+    }
+
+    @Test
+    void tickAndCaptureStayWithinTheFrameAllocationBudget() {
+        FrameAllocationMonitor monitor = new FrameAllocationMonitor(Refs.FRAME_ALLOCATION_BUDGET);
+        assumeTrue(monitor.isSupported(), "thread allocation counters are not available");
+
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            frame(frame);
+        }
+        assertTrue(snapshots[0].getItemCount() > 0, "nothing was captured");
+
+        long worst = 0;
+        for (int frame = WARMUP_FRAMES; frame < WARMUP_FRAMES + MEASURED_FRAMES; frame++) {
+            monitor.beginFrame();
+            frame(frame);
+            monitor.endFrame();
+            worst = Math.max(worst, monitor.getLastFrameBytes());
+        }
+        assertTrue(worst <= Refs.FRAME_ALLOCATION_BUDGET,
+                "a frame allocated " + worst + " bytes, budget is " + Refs.FRAME_ALLOCATION_BUDGET);
+    }
+}
@@ -0,0 +1,256 @@
+package fr.acth2.engine.scene.spatial;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DynamicBvhTest {
+
+    private static final float WORLD_SIZE = 200f;
+    private static final float MARGIN = 1f;
+    private static final int COUNT = 2000;
+
+    private final Random random = new Random(42);
+    private DynamicBvh<Integer> bvh;
+    /** Exact bounds of each item, 6 floats each; NaN for removed items. */
+    private float[] boxes;
+    private int[] proxies;
+
+    @BeforeEach
+    void setUp() {
+        bvh = new DynamicBvh<>(MARGIN);
+        boxes = new float[COUNT * 6];
+        proxies = new int[COUNT];
+    }
+
+    private void place(int id, float x, float y, float z, float size) {
+        int b = id * 6;
+        boxes[b] = x;
+        boxes[b + 1] = y;
+        boxes[b + 2] = z;
+        boxes[b + 3] = x + size;
+        boxes[b + 4] = y + size;
+        boxes[b + 5] = z + size;
+    }
+
+    private void placeRandomly(int id) {
+        place(id, random.nextFloat() * WORLD_SIZE, random.nextFloat() * 20f, random.nextFloat() * WORLD_SIZE,
+                0.5f + random.nextFloat() * 4f);
+    }
+
+    private void insertAll() {
+        for (int id = 0; id < COUNT; id++) {
+            placeRandomly(id);
+            int b = id * 6;
+            proxies[id] = bvh.insert(id, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+    }
+
+    private boolean update(int id) {
+        int b = id * 6;
+        return bvh.update(proxies[id], boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+    }
+
+    /**
+     * Nudges a tenth of the items and teleports a few, as a simulation tick would.
+     */
+    private void moveRandomly() {
+        for (int k = 0; k < COUNT / 10; k++) {
+            int id = random.nextInt(COUNT);
+            if (Float.isNaN(boxes[id * 6])) {
+                continue;
+            }
+            int b = id * 6;
+            place(id, boxes[b] + random.nextFloat() * 3f - 1.5f, boxes[b + 1], boxes[b + 2] + random.nextFloat() * 3f - 1.5f,
+                    boxes[b + 3] - boxes[b]);
+            update(id);
+        }
+        for (int k = 0; k < COUNT / 100; k++) {
+            int id = random.nextInt(COUNT);
+            if (!Float.isNaN(boxes[id * 6])) {
+                placeRandomly(id);
+                update(id);
+            }
+        }
+    }
+
+    private Set<Integer> query(BoundsTest test) {
+        Set<Integer> found = new HashSet<>();
+        List<Integer> visits = new ArrayList<>();
+        bvh.query(test, visits::add);
+        found.addAll(visits);
+        assertEquals(visits.size(), found.size(), "items visited more than once");
+        return found;
+    }
+
+    private Set<Integer> scan(BoundsTest test) {
+        Set<Integer> found = new HashSet<>();
+        for (int id = 0; id < COUNT; id++) {
+            int b = id * 6;
+            if (!Float.isNaN(boxes[b])
+                    && test.test(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]) != BoundsTest.OUTSIDE) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    private float scanRay(float ox, float oy, float oz, float dx, float dy, float dz) {
+        float closest = Float.POSITIVE_INFINITY;
+        float[] origin = {ox, oy, oz};
+        float[] direction = {dx, dy, dz};
+        for (int id = 0; id < COUNT; id++) {
+            int b = id * 6;
+            if (Float.isNaN(boxes[b])) {
+                continue;
+            }
+            float near = 0f, far = Float.POSITIVE_INFINITY;
+            for (int axis = 0; axis < 3; axis++) {
+                float t1 = (boxes[b + axis] - origin[axis]) / direction[axis];
+                float t2 = (boxes[b + 3 + axis] - origin[axis]) / direction[axis];
+                near = Math.max(near, Math.min(t1, t2));
+                far = Math.min(far, Math.max(t1, t2));
+            }
+            if (near <= far) {
+                closest = Math.min(closest, near);
+            }
+        }
+        return closest;
+    }
+
+    private void assertQueriesMatchScan() {
+        bvh.validate();
+        for (int i = 0; i < 30; i++) {
+            float x = random.nextFloat() * WORLD_SIZE, z = random.nextFloat() * WORLD_SIZE;
+            BoundsTest sphere = BoundsTest.sphere(x, 10f, z, 5f + random.nextFloat() * 20f);
+            assertEquals(scan(sphere), query(sphere));
+            BoundsTest box = BoundsTest.aabb(x, 0f, z, x + random.nextFloat() * 40f, 15f, z + random.nextFloat() * 40f);
+            assertEquals(scan(box), query(box));
+        }
+        Matrix4f projView = new Matrix4f()
+                .perspective((float) Math.toRadians(70), 16f / 9f, 0.1f, 100f)
+                .lookAt(WORLD_SIZE / 2, 10f, WORLD_SIZE / 2, WORLD_SIZE, 5f, WORLD_SIZE / 3, 0, 1, 0);
+        BoundsTest frustum = BoundsTest.frustum(new FrustumIntersection(projView));
+        assertEquals(scan(frustum), query(frustum));
+
+        // Item bounds are the hit shapes, so the first box entered is the closest hit.
+        RayCallback<Integer> boxHit = (id, boxDistance, maxDistance) -> boxDistance;
+        for (int i = 0; i < 30; i++) {
+            float ox = random.nextFloat() * WORLD_SIZE, oz = random.nextFloat() * WORLD_SIZE;
+            float dx = random.nextFloat() - 0.5f, dy = -0.05f, dz = random.nextFloat() - 0.5f;
+            float expected = scanRay(ox, 15f, oz, dx, dy, dz);
+            float actual = bvh.raycast(ox, 15f, oz, dx, dy, dz, Float.POSITIVE_INFINITY, boxHit);
+            if (expected != actual) {
+                // The tree multiplies by the inverse direction, the scan divides.
+                assertEquals(expected, actual, 1e-4f * Math.max(1f, expected));
+            }
+        }
+    }
+
+    @Test
+    void insertedItemsAreFoundLikeALinearScan() {
+        insertAll();
+
+        assertEquals(COUNT, bvh.size());
+        for (int id = 0; id < COUNT; id++) {
+            assertEquals(id, bvh.getItem(proxies[id]));
+        }
+        assertQueriesMatchScan();
+    }
+
+    @Test
+    void batchInsertionBuildsAValidTree() {
+        bvh.beginBatch();
+        insertAll();
+        bvh.validate();
+        bvh.endBatch();
+
+        assertEquals(COUNT, bvh.size());
+        assertQueriesMatchScan();
+    }
+
+    @Test
+    void movesWithinTheMarginLeaveTheTreeUntouched() {
+        insertAll();
+        int b = 7 * 6;
+        place(7, boxes[b] + MARGIN * 0.5f, boxes[b + 1], boxes[b + 2] - MARGIN * 0.5f, boxes[b + 3] - boxes[b]);
+
+        assertFalse(update(7));
+        place(7, boxes[b] + WORLD_SIZE, boxes[b + 1], boxes[b + 2], boxes[b + 3] - boxes[b]);
+        assertTrue(update(7));
+        assertQueriesMatchScan();
+    }
+
+    @Test
+    void queriesMatchALinearScanAfterRandomMoves() {
+        insertAll();
+        for (int tick = 0; tick < 20; tick++) {
+            moveRandomly();
+            bvh.optimize();
+            assertQueriesMatchScan();
+        }
+    }
+
+    @Test
+    void removedItemsAreNoLongerFound() {
+        insertAll();
+        for (int id = 0; id < COUNT; id += 2) {
+            bvh.remove(proxies[id]);
+            boxes[id * 6] = Float.NaN;
+        }
+        assertEquals(COUNT / 2, bvh.size());
+        assertQueriesMatchScan();
+
+        // Freed nodes are reused by new items.
+        for (int id = 0; id < COUNT; id += 2) {
+            placeRandomly(id);
+            int b = id * 6;
+            proxies[id] = bvh.insert(id, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+        assertEquals(COUNT, bvh.size());
+        assertQueriesMatchScan();
+    }
+
+    @Test
+    void rebuildKeepsProxiesAndDoesNotRaiseTheCost() {
+        insertAll();
+        for (int tick = 0; tick < 10; tick++) {
+            moveRandomly();
+        }
+        float refittedCost = bvh.getCost();
+
+        bvh.rebuild();
+
+        assertTrue(bvh.getCost() <= refittedCost);
+        for (int id = 0; id < COUNT; id++) {
+            assertEquals(id, bvh.getItem(proxies[id]));
+        }
+        assertQueriesMatchScan();
+        moveRandomly();
+        assertQueriesMatchScan();
+    }
+
+    @Test
+    void clearEmptiesTheTree() {
+        insertAll();
+        bvh.clear();
+        for (int id = 0; id < COUNT; id++) {
+            boxes[id * 6] = Float.NaN;
+        }
+
+        assertEquals(0, bvh.size());
+        assertTrue(query(BoundsTest.aabb(-1f, -1f, -1f, WORLD_SIZE + 10f, 30f, WORLD_SIZE + 10f)).isEmpty());
+        assertQueriesMatchScan();
+    }
+}
@@ -0,0 +1,205 @@
+package fr.acth2.engine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongIntHashMapTest {
+
+    @Test
+    void zeroIsAnOrdinaryKey() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertFalse(map.containsKey(0));
+        assertEquals(-1, map.get(0, -1));
+
+        assertEquals(5, map.putIfAbsent(0, 5));
+        assertEquals(5, map.putIfAbsent(0, 6));
+        assertTrue(map.containsKey(0));
+        assertEquals(5, map.get(0, -1));
+        assertEquals(1, map.size());
+
+        map.put(0, 7);
+        assertEquals(7, map.get(0, -1));
+        assertEquals(1, map.size());
+
+        map.put(1, 8);
+        assertEquals(2, map.size());
+        assertEquals(7, map.get(0, -1));
+        assertEquals(8, map.get(1, -1));
+    }
+
+    @Test
+    void putOverwritesAndPutIfAbsentKeeps() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertEquals(1, map.putIfAbsent(42, 1));
+        assertEquals(1, map.putIfAbsent(42, 2));
+        assertEquals(1, map.get(42, -1));
+
+        map.put(42, 3);
+        assertEquals(3, map.get(42, -1));
+        assertEquals(3, map.putIfAbsent(42, 4));
+        assertEquals(1, map.size());
+
+        map.put(-42, 5);
+        assertEquals(5, map.get(-42, -1));
+        assertEquals(3, map.get(42, -1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void growingKeepsEveryMapping() {
+        LongIntHashMap map = new LongIntHashMap(0);
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            // Keys sharing their low bits, as packed index triples do.
+            long key = (long) i << 20;
+            assertEquals(i, map.putIfAbsent(key, i));
+            assertEquals(i + 1, map.size());
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.get((long) i << 20, -1));
+        }
+        assertFalse(map.containsKey((long) count << 20));
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test
+    void clearForgetsEveryMapping() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(map.containsKey(i));
+            assertEquals(-1, map.get(i, -1));
+        }
+
+        assertEquals(9, map.putIfAbsent(0, 9));
+        assertEquals(10, map.putIfAbsent(500, 10));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(12);
+        LongIntHashMap map = new LongIntHashMap(8);
+        Map<Long, Integer> reference = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range so operations hit existing keys, including 0, half of the time.
+            long key = random.nextInt(4) == 0 ? random.nextLong() : random.nextInt(50_000) - 1000;
+            int value = random.nextInt();
+            switch (random.nextInt(4)) {
+                case 0:
+                    map.put(key, value);
+                    reference.put(key, value);
+                    break;
+                case 1:
+                    Integer existing = reference.putIfAbsent(key, value);
+                    assertEquals(existing == null ? value : existing, map.putIfAbsent(key, value));
+                    break;
+                case 2:
+                    assertEquals(reference.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals(reference.getOrDefault(key, -7), map.get(key, -7));
+                    break;
+            }
+            assertEquals(reference.size(), map.size());
+            if (i == 100_000) {
+                map.clear();
+                reference.clear();
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey(), -7));
+        }
+    }
+
+    @Test
+    void bitsForCoversTheRange() {
+        assertEquals(0, LongIntHashMap.bitsFor(0));
+        assertEquals(0, LongIntHashMap.bitsFor(1));
+        assertEquals(1, LongIntHashMap.bitsFor(2));
+        assertEquals(2, LongIntHashMap.bitsFor(3));
+        assertEquals(2, LongIntHashMap.bitsFor(4));
+        assertEquals(3, LongIntHashMap.bitsFor(5));
+        for (int bits = 1; bits < 31; bits++) {
+            assertEquals(bits, LongIntHashMap.bitsFor(1 << bits));
+            assertEquals(bits + 1, LongIntHashMap.bitsFor((1 << bits) + 1));
+            // The largest value stored must fit in the returned width.
+            assertEquals(0, ((1 << bits) - 1) >>> LongIntHashMap.bitsFor(1 << bits));
+        }
+        assertEquals(31, LongIntHashMap.bitsFor(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Packs every triple around the edges of each field for these element counts and checks that
+     * no two share a key.
+     */
+    private static void assertPackedKeysAreUnique(int numPositions, int numTexCoords, int numNormals) {
+        int texBits = LongIntHashMap.bitsFor(numTexCoords + 1);
+        int normBits = LongIntHashMap.bitsFor(numNormals + 1);
+        assertTrue(LongIntHashMap.bitsFor(numPositions) + texBits + normBits <= 64);
+
+        int[] positions = edges(0, numPositions - 1);
+        int[] texCoords = edges(-1, numTexCoords - 1);
+        int[] normals = edges(-1, numNormals - 1);
+        Set<Long> keys = new HashSet<>();
+        for (int idxPos : positions) {
+            for (int idxTextCoord : texCoords) {
+                for (int idxVecNormal : normals) {
+                    long key = LongIntHashMap.packIndices(idxPos, idxTextCoord, idxVecNormal, texBits, normBits);
+                    assertTrue(keys.add(key), idxPos + "/" + idxTextCoord + "/" + idxVecNormal);
+                }
+            }
+        }
+    }
+
+    /**
+     * The two smallest and two largest values of {@code [min, max]}.
+     */
+    private static int[] edges(int min, int max) {
+        return new HashSet<>(Arrays.asList(min, Math.min(min + 1, max), Math.max(max - 1, min), max))
+                .stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    void packedKeysAreUniqueAtTheFieldBoundaries() {
+        assertPackedKeysAreUnique(1, 0, 0);
+        assertPackedKeysAreUnique(2, 1, 1);
+        for (int bits = 1; bits <= 16; bits++) {
+            int power = 1 << bits;
+            // Counts of 2^n - 1 fill their field once "absent" is counted, 2^n need a bit more.
+            assertPackedKeysAreUnique(power, power - 1, power - 1);
+            assertPackedKeysAreUnique(power + 1, power, power);
+            assertPackedKeysAreUnique(power - 1, power + 1, power - 2);
+        }
+        // All 64 bits used: 31 for positions, 17 and 16 for the others.
+        assertPackedKeysAreUnique(Integer.MAX_VALUE, 1 << 16, (1 << 16) - 1);
+    }
+
+    @Test
+    void absentAttributesOfTheFirstPositionPackToZero() {
+        int texBits = LongIntHashMap.bitsFor(11);
+        int normBits = LongIntHashMap.bitsFor(6);
+        assertEquals(0, LongIntHashMap.packIndices(0, -1, -1, texBits, normBits));
+
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertEquals(0, map.putIfAbsent(LongIntHashMap.packIndices(0, -1, -1, texBits, normBits), 0));
+        assertEquals(1, map.putIfAbsent(LongIntHashMap.packIndices(0, 0, -1, texBits, normBits), 1));
+        assertEquals(2, map.putIfAbsent(LongIntHashMap.packIndices(0, -1, 0, texBits, normBits), 2));
+        assertEquals(0, map.putIfAbsent(LongIntHashMap.packIndices(0, -1, -1, texBits, normBits), 3));
+    }
+}
@@ -0,0 +1,111 @@
+package fr.acth2.engine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TripleBufferTest {
+
+    private static final int VALUES = 64;
+    private static final long PUBLICATIONS = 200_000;
+
+    /** A value written field by field, so a reader racing the writer would see it torn. */
+    private static final class Slot {
+        volatile boolean writing;
+        final long[] values = new long[VALUES];
+
+        void fill(long value) {
+            writing = true;
+            for (int i = 0; i < VALUES; i++) {
+                values[i] = value;
+            }
+            writing = false;
+        }
+    }
+
+    @Test
+    void nothingIsReadBeforeTheFirstPublication() {
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+
+        assertFalse(buffer.hasUpdate());
+        assertNull(buffer.acquire());
+    }
+
+    @Test
+    void readerGetsTheNewestPublishedSlot() {
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+        for (long value = 1; value <= 5; value++) {
+            buffer.getWriteSlot().fill(value);
+            buffer.publish();
+        }
+
+        assertTrue(buffer.hasUpdate());
+        Slot read = buffer.acquire();
+        assertEquals(5, read.values[0]);
+        assertFalse(buffer.hasUpdate());
+        // Without a new publication the reader keeps its slot.
+        assertSame(read, buffer.acquire());
+
+        buffer.getWriteSlot().fill(6);
+        assertFalse(buffer.hasUpdate());
+        assertSame(read, buffer.acquire());
+        buffer.publish();
+        assertEquals(6, buffer.acquire().values[0]);
+    }
+
+    @Test
+    void writerNeverFillsTheSlotBeingRead() {
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+        buffer.getWriteSlot().fill(1);
+        buffer.publish();
+        Slot read = buffer.acquire();
+
+        for (long value = 2; value < 10; value++) {
+            assertTrue(buffer.getWriteSlot() != read);
+            buffer.getWriteSlot().fill(value);
+            buffer.publish();
+        }
+        assertEquals(1, read.values[0]);
+    }
+
+    @Test
+    void concurrentReaderSeesWholeValuesInOrder() throws InterruptedException {
+        TripleBuffer<Slot> buffer = new TripleBuffer<>(new Slot(), new Slot(), new Slot());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (long value = 1; value <= PUBLICATIONS; value++) {
+                buffer.getWriteSlot().fill(value);
+                buffer.publish();
+            }
+        }, "writer");
+        writer.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+        writer.start();
+
+        long last = 0;
+        while (last < PUBLICATIONS) {
+            Slot slot = buffer.acquire();
+            if (slot == null) {
+                continue;
+            }
+            assertFalse(slot.writing, "read a slot the writer is filling");
+            long value = slot.values[0];
+            for (int i = 1; i < VALUES; i++) {
+                assertEquals(value, slot.values[i], "read a torn value");
+            }
+            assertFalse(slot.writing, "the writer started filling a slot being read");
+            assertTrue(value >= last, "read " + value + " after " + last);
+            last = value;
+        }
+        writer.join();
+
+        assertNull(failure.get());
+        // Once the writer is done, the last publication is what the reader holds.
+        assertEquals(PUBLICATIONS, buffer.acquire().values[0]);
+    }
+}
@@ -0,0 +1,184 @@
+package fr.acth2.engine.utils.jobs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobSystemTest {
+
+    private static final int WORKERS = 4;
+
+    private JobSystem jobs;
+    private final AtomicInteger clock = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        jobs = new JobSystem(WORKERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobs.shutdown();
+    }
+
+    /** Job recording when it started and finished on a shared clock. */
+    private final class Stamped extends Job {
+        volatile int started;
+        volatile int finished;
+
+        Stamped(String name) {
+            super(name, null);
+        }
+
+        @Override
+        protected void execute() {
+            started = clock.incrementAndGet();
+            // Give the other branch a chance to run at the same time.
+            Thread.yield();
+            finished = clock.incrementAndGet();
+        }
+    }
+
+    private static void assertRanAfter(Stamped job, Stamped dependency) {
+        assertTrue(dependency.finished > 0 && job.started > dependency.finished,
+                job.getName() + " started before " + dependency.getName() + " finished");
+    }
+
+    @Test
+    void jobsStartAfterTheirDependenciesOnEveryRun() {
+        JobGraph graph = new JobGraph();
+        Stamped source = graph.add(new Stamped("source"));
+        Stamped left = graph.add(new Stamped("left"));
+        Stamped right = graph.add(new Stamped("right"));
+        Stamped join = graph.add(new Stamped("join"));
+        Stamped tail = graph.add(new Stamped("tail"));
+        Stamped independent = graph.add(new Stamped("independent"));
+        left.after(source);
+        right.after(source);
+        join.after(left, right);
+        tail.after(join);
+
+        for (int run = 0; run < 200; run++) {
+            int start = clock.get();
+            jobs.run(graph);
+
+            for (Job job : graph.getJobs()) {
+                assertTrue(((Stamped) job).started > start, job.getName() + " did not run");
+            }
+            assertRanAfter(left, source);
+            assertRanAfter(right, source);
+            assertRanAfter(join, left);
+            assertRanAfter(join, right);
+            assertRanAfter(tail, join);
+            assertTrue(independent.finished > start);
+        }
+    }
+
+    private void assertEveryIndexOnce(int count, int grain) {
+        AtomicIntegerArray visits = new AtomicIntegerArray(Math.max(1, count));
+        JobGraph graph = new JobGraph();
+        graph.add(new ParallelFor("visit", () -> count, grain, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                visits.incrementAndGet(i);
+            }
+        }));
+
+        jobs.run(graph);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(1, visits.get(i), "index " + i + " of " + count + " with grain " + grain);
+        }
+    }
+
+    @Test
+    void parallelForVisitsEveryIndexExactlyOnce() {
+        int[] counts = {0, 1, 2, 3, WORKERS - 1, WORKERS, WORKERS + 1, 7, 100, 1000, 10_007};
+        for (int count : counts) {
+            assertEveryIndexOnce(count, 1);
+            assertEveryIndexOnce(count, 3);
+            assertEveryIndexOnce(count, 64);
+        }
+    }
+
+    @Test
+    void parallelForFollowsTheCountAcrossRuns() {
+        int[] counts = {5000, 3, 10_000, 0, 1, 777};
+        AtomicInteger count = new AtomicInteger();
+        AtomicIntegerArray visits = new AtomicIntegerArray(10_000);
+        JobGraph graph = new JobGraph();
+        graph.add(new ParallelFor("visit", count::get, 16, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                visits.incrementAndGet(i);
+            }
+        }));
+
+        for (int n : counts) {
+            count.set(n);
+            for (int i = 0; i < visits.length(); i++) {
+                visits.set(i, 0);
+            }
+            jobs.run(graph);
+            for (int i = 0; i < visits.length(); i++) {
+                assertEquals(i < n ? 1 : 0, visits.get(i), "index " + i + " of " + n);
+            }
+        }
+    }
+
+    @Test
+    void failuresAreRethrownAndTheGraphRunsAgain() {
+        RuntimeException failure = new IllegalStateException("job failed");
+        AtomicInteger fail = new AtomicInteger(1);
+        AtomicInteger dependentRuns = new AtomicInteger();
+        JobGraph graph = new JobGraph();
+        Job first = graph.add(new Job("first", () -> {
+            if (fail.get() != 0) {
+                throw failure;
+            }
+        }));
+        graph.add(new Job("second", dependentRuns::incrementAndGet)).after(first);
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> jobs.run(graph)));
+        fail.set(0);
+        jobs.run(graph);
+        assertEquals(2, dependentRuns.get());
+    }
+
+    @Test
+    void interruptedCallerWaitsForTheRunAndKeepsItsInterrupt() {
+        AtomicInteger done = new AtomicInteger();
+        JobGraph graph = new JobGraph();
+        graph.add(new Job("slow", () -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.incrementAndGet();
+        }));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Thread.currentThread().interrupt();
+        try {
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            jobs.run(graph);
+            long cpuTime = threads.getCurrentThreadCpuTime() - cpuStart;
+
+            assertEquals(1, done.get());
+            assertTrue(Thread.currentThread().isInterrupted());
+            // Parking with the flag set would return at once and spin for the whole job.
+            assertTrue(cpuTime < 100_000_000L, "spent " + cpuTime / 1_000_000 + "ms of CPU waiting");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.acth2.engine.utils.loader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+/**
+ * The line and String based OBJ parsing {@link Loader} used before {@link ObjParser}, kept as the
+ * reference of {@link ObjParserTest} and the baseline of {@code ObjParserBenchmark}: lines are
+ * split on whitespace, numbers parsed from Strings, and every vertex and face corner boxed.
+ */
+final class LegacyObjParser {
+
+    static final int NO_VALUE = -1;
+
+    final List<Vector3f> vertices = new ArrayList<>();
+    final List<Vector2f> textures = new ArrayList<>();
+    final List<Vector3f> normals = new ArrayList<>();
+    final List<Face> faces = new ArrayList<>();
+
+    static LegacyObjParser parse(byte[] data) throws IOException {
+        LegacyObjParser obj = new LegacyObjParser();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            for (String l : lines) {
+                obj.parseLine(l);
+            }
+        }
+        return obj;
+    }
+
+    private void parseLine(String line) {
+        String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "v":
+                vertices.add(new Vector3f(
+                        Float.parseFloat(tokens[1]),
+                        Float.parseFloat(tokens[2]),
+                        Float.parseFloat(tokens[3])));
+                break;
+            case "vt":
+                textures.add(new Vector2f(
+                        Float.parseFloat(tokens[1]),
+                        Float.parseFloat(tokens[2])));
+                break;
+            case "vn":
+                normals.add(new Vector3f(
+                        Float.parseFloat(tokens[1]),
+                        Float.parseFloat(tokens[2]),
+                        Float.parseFloat(tokens[3])));
+                break;
+            case "f":
+                if (tokens.length > 4) {
+                    for (int i = 2; i < tokens.length - 1; i++) {
+                        faces.add(new Face(tokens[1], tokens[i], tokens[i + 1]));
+                    }
+                } else {
+                    faces.add(new Face(tokens[1], tokens[2], tokens[3]));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    static final class IdxGroup {
+        int idxPos = NO_VALUE;
+        int idxTextCoord = NO_VALUE;
+        int idxVecNormal = NO_VALUE;
+    }
+
+    static final class Face {
+
+        final IdxGroup[] idxGroups;
+
+        Face(String v1, String v2, String v3) {
+            idxGroups = new IdxGroup[]{parseCorner(v1), parseCorner(v2), parseCorner(v3)};
+        }
+
+        private static IdxGroup parseCorner(String corner) {
+            IdxGroup idxGroup = new IdxGroup();
+            String[] lineTokens = corner.split("/");
+            int length = lineTokens.length;
+            idxGroup.idxPos = Integer.parseInt(lineTokens[0]) - 1;
+            if (length > 1) {
+                String textCoord = lineTokens[1];
+                idxGroup.idxTextCoord = textCoord.length() > 0 ? Integer.parseInt(textCoord) - 1 : NO_VALUE;
+                if (length > 2) {
+                    idxGroup.idxVecNormal = Integer.parseInt(lineTokens[2]) - 1;
+                }
+            }
+            return idxGroup;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package fr.acth2.engine.utils.loader;
+
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.VertexFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoaderTest {
+
+    private static final String[] MODELS = {"/models/cuboid.obj", "/models/light.obj", "/models/sun.obj", "/models/torus.obj"};
+
+    private static void assertBothPathsAgree(ObjParser obj, int expectedVertices) {
+        MeshData packed = Loader.reorderLists(obj, VertexFormat.SEPARATE, true);
+        MeshData paired = Loader.reorderLists(obj, VertexFormat.SEPARATE, false);
+        try {
+            assertEquals(expectedVertices, packed.getNumVertices());
+            assertEquals(packed.getNumVertices(), paired.getNumVertices());
+            assertEquals(packed.getNumIndices(), paired.getNumIndices());
+            assertEquals(packed.getVertices(), paired.getVertices());
+            assertEquals(packed.getIndices(), paired.getIndices());
+        } finally {
+            packed.free();
+            paired.free();
+        }
+    }
+
+    @Test
+    void pairedKeysDedupeModelsLikePackedKeys() throws IOException {
+        for (String model : MODELS) {
+            ObjParser obj = ObjParser.parse(Loader.readResourceBytes(model));
+            assertBothPathsAgree(obj, distinctCorners(obj));
+        }
+    }
+
+    @Test
+    void pairedKeysDedupeMixedCornersLikePackedKeys() {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("v ").append(i).append(' ').append(i * 2).append(' ').append(i * 3).append('\n');
+        }
+        for (int i = 0; i < 9; i++) {
+            text.append("vt ").append(i / 9f).append(' ').append(1 - i / 9f).append('\n');
+        }
+        for (int i = 0; i < 5; i++) {
+            text.append("vn 0 ").append(i % 2).append(' ').append(1 - i % 2).append('\n');
+        }
+        // Every form of corner, with position 0 and absent attributes included.
+        String[] forms = {"%d", "%d/%d", "%d//%d", "%d/%d/%d"};
+        for (int face = 0; face < 3000; face++) {
+            String form = forms[random.nextInt(forms.length)];
+            text.append('f');
+            for (int corner = 0; corner < 3; corner++) {
+                int pos = face < 4 ? 1 : 1 + random.nextInt(40);
+                int tex = 1 + random.nextInt(9);
+                int norm = 1 + random.nextInt(5);
+                text.append(' ').append(form.equals("%d//%d")
+                        ? String.format(form, pos, norm)
+                        : String.format(form, pos, tex, norm));
+            }
+            text.append('\n');
+        }
+        ObjParser obj = ObjParser.parse(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)));
+        assertBothPathsAgree(obj, distinctCorners(obj));
+    }
+
+    @Test
+    void outOfRangeIndicesAreRejected() {
+        ObjParser obj = ObjParser.parse(ByteBuffer.wrap("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 4\n"
+                .getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(IllegalStateException.class, () -> Loader.reorderLists(obj, VertexFormat.SEPARATE, true));
+        assertThrows(IllegalStateException.class, () -> Loader.reorderLists(obj, VertexFormat.SEPARATE, false));
+    }
+
+    /**
+     * Number of distinct position/texture/normal triples among the corners, counted without the
+     * loader's maps.
+     */
+    private static int distinctCorners(ObjParser obj) {
+        Set<String> triples = new HashSet<>();
+        for (int i = 0; i < obj.getCorners().size(); i += 3) {
+            triples.add(obj.getCorners().get(i) + "/" + obj.getCorners().get(i + 1) + "/" + obj.getCorners().get(i + 2));
+        }
+        return triples.size();
+    }
+}
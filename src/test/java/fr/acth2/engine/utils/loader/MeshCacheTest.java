@@ -0,0 +1,196 @@
+package fr.acth2.engine.utils.loader;
+
+import fr.acth2.engine.engine.models.MeshData;
+import fr.acth2.engine.engine.models.VertexFormat;
+import fr.acth2.engine.utils.Refs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MeshCacheTest {
+
+    private static final long SOURCE_HASH = 0x0123456789abcdefL;
+
+    @TempDir
+    Path directory;
+
+    private String previousDirectory;
+
+    @BeforeEach
+    void setUp() {
+        previousDirectory = Refs.MESH_CACHE_DIRECTORY;
+        Refs.MESH_CACHE_DIRECTORY = directory.toString();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Refs.MESH_CACHE_DIRECTORY = previousDirectory;
+    }
+
+    /**
+     * A {@code size} x {@code size} grid of quads on a wavy surface, with texture coordinates and
+     * normals.
+     */
+    private static MeshData grid(int size, VertexFormat vertexFormat) {
+        int side = size + 1;
+        float[] positions = new float[side * side * 3];
+        float[] texCoords = new float[side * side * 2];
+        float[] normals = new float[side * side * 3];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int vertex = y * side + x;
+                positions[vertex * 3] = x;
+                positions[vertex * 3 + 1] = (float) Math.sin(x * 0.3) * (float) Math.cos(y * 0.2);
+                positions[vertex * 3 + 2] = y;
+                texCoords[vertex * 2] = (float) x / size;
+                texCoords[vertex * 2 + 1] = (float) y / size;
+                normals[vertex * 3 + 1] = 1;
+            }
+        }
+        int[] indices = new int[size * size * 6];
+        int i = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int corner = y * side + x;
+                indices[i++] = corner;
+                indices[i++] = corner + side;
+                indices[i++] = corner + 1;
+                indices[i++] = corner + 1;
+                indices[i++] = corner + side;
+                indices[i++] = corner + side + 1;
+            }
+        }
+        return MeshData.build(positions, texCoords, normals, indices, vertexFormat);
+    }
+
+    private static void assertSameMesh(MeshData expected, MeshData actual) {
+        assertEquals(expected.getVertexFormat(), actual.getVertexFormat());
+        assertEquals(expected.getNumVertices(), actual.getNumVertices());
+        assertEquals(expected.getNumIndices(), actual.getNumIndices());
+        assertEquals(expected.getIndexType(), actual.getIndexType());
+        assertEquals(expected.hasTexCoords(), actual.hasTexCoords());
+        assertEquals(expected.hasNormals(), actual.hasNormals());
+        assertEquals(expected.getAabbMin(), actual.getAabbMin());
+        assertEquals(expected.getAabbMax(), actual.getAabbMax());
+        assertEquals(expected.getBoundingCenter(), actual.getBoundingCenter());
+        assertEquals(expected.getBoundingRadius(), actual.getBoundingRadius());
+        assertEquals(expected.getVertices(), actual.getVertices());
+        assertEquals(expected.getIndices(), actual.getIndices());
+    }
+
+    private static void roundTrip(MeshCache.Compression compression) {
+        for (VertexFormat vertexFormat : VertexFormat.values()) {
+            MeshData data = grid(24, vertexFormat);
+            try {
+                MeshCache.store(SOURCE_HASH, data, compression);
+                MeshData loaded = MeshCache.load(SOURCE_HASH, vertexFormat);
+                assertNotNull(loaded, compression + " " + vertexFormat);
+                try {
+                    assertSameMesh(data, loaded);
+                } finally {
+                    loaded.free();
+                }
+            } finally {
+                data.free();
+            }
+        }
+    }
+
+    @Test
+    void uncompressedEntriesRoundTrip() {
+        roundTrip(MeshCache.Compression.NONE);
+    }
+
+    @Test
+    void lz4EntriesRoundTrip() {
+        roundTrip(MeshCache.Compression.LZ4);
+    }
+
+    @Test
+    void zstdEntriesRoundTrip() {
+        roundTrip(MeshCache.Compression.ZSTD);
+    }
+
+    @Test
+    void otherKeysMiss() {
+        MeshData data = grid(4, VertexFormat.INTERLEAVED);
+        try {
+            MeshCache.store(SOURCE_HASH, data, MeshCache.Compression.NONE);
+        } finally {
+            data.free();
+        }
+        assertNull(MeshCache.load(SOURCE_HASH + 1, VertexFormat.INTERLEAVED));
+        assertNull(MeshCache.load(SOURCE_HASH, VertexFormat.QUANTIZED));
+    }
+
+    /**
+     * Stores a mesh, applies {@code corruption} to the header of its entry and expects a miss.
+     */
+    private void assertCorruptedHeaderMisses(MeshCache.Compression compression, Consumer<ByteBuffer> corruption)
+            throws IOException {
+        MeshData data = grid(8, VertexFormat.INTERLEAVED);
+        try {
+            MeshCache.store(SOURCE_HASH, data, compression);
+        } finally {
+            data.free();
+        }
+        Path path = MeshCache.pathFor(SOURCE_HASH, VertexFormat.INTERLEAVED);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(96).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            corruption.accept(header);
+            header.clear();
+            channel.write(header, 0);
+        }
+        assertNull(MeshCache.load(SOURCE_HASH, VertexFormat.INTERLEAVED));
+    }
+
+    @Test
+    void corruptedHeadersMiss() throws IOException {
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(16, 3));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(16, -1));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(20, 0x1401));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(24, header.getInt(24) + 1));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(28, header.getInt(28) * 2));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(28, -6));
+        assertCorruptedHeaderMisses(MeshCache.Compression.NONE, header -> header.putInt(76, header.getInt(76) - 4));
+        assertCorruptedHeaderMisses(MeshCache.Compression.LZ4, header -> header.putInt(76, header.getInt(72) * 2));
+        assertCorruptedHeaderMisses(MeshCache.Compression.ZSTD, header -> header.putInt(84, -1));
+        assertCorruptedHeaderMisses(MeshCache.Compression.ZSTD, header -> header.putInt(84, header.getInt(84) + 64));
+    }
+
+    @Test
+    void truncatedEntriesMiss() throws IOException {
+        MeshData data = grid(8, VertexFormat.SEPARATE);
+        try {
+            MeshCache.store(SOURCE_HASH, data, MeshCache.Compression.NONE);
+        } finally {
+            data.free();
+        }
+        Path path = MeshCache.pathFor(SOURCE_HASH, VertexFormat.SEPARATE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertNull(MeshCache.load(SOURCE_HASH, VertexFormat.SEPARATE));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(40);
+        }
+        assertNull(MeshCache.load(SOURCE_HASH, VertexFormat.SEPARATE));
+        assertEquals(40, Files.size(path));
+    }
+}
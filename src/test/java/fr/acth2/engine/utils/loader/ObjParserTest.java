@@ -0,0 +1,183 @@
+package fr.acth2.engine.utils.loader;
+
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ObjParserTest {
+
+    private static final String[] MODELS = {"/models/cuboid.obj", "/models/light.obj", "/models/sun.obj", "/models/torus.obj"};
+
+    private static final int N = ObjParser.NO_VALUE;
+
+    private static ObjParser parse(String text) {
+        return ObjParser.parse(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static void assertSameAsLegacy(byte[] bytes) throws IOException {
+        ObjParser parsed = ObjParser.parse(ByteBuffer.wrap(bytes));
+        LegacyObjParser legacy = LegacyObjParser.parse(bytes);
+
+        float[] positions = new float[legacy.vertices.size() * 3];
+        for (int i = 0; i < legacy.vertices.size(); i++) {
+            Vector3f v = legacy.vertices.get(i);
+            positions[i * 3] = v.x;
+            positions[i * 3 + 1] = v.y;
+            positions[i * 3 + 2] = v.z;
+        }
+        assertArrayEquals(positions, parsed.getPositions().toArray());
+
+        float[] texCoords = new float[legacy.textures.size() * 2];
+        for (int i = 0; i < legacy.textures.size(); i++) {
+            Vector2f t = legacy.textures.get(i);
+            texCoords[i * 2] = t.x;
+            texCoords[i * 2 + 1] = t.y;
+        }
+        assertArrayEquals(texCoords, parsed.getTexCoords().toArray());
+
+        float[] normals = new float[legacy.normals.size() * 3];
+        for (int i = 0; i < legacy.normals.size(); i++) {
+            Vector3f n = legacy.normals.get(i);
+            normals[i * 3] = n.x;
+            normals[i * 3 + 1] = n.y;
+            normals[i * 3 + 2] = n.z;
+        }
+        assertArrayEquals(normals, parsed.getNormals().toArray());
+
+        int[] corners = new int[legacy.faces.size() * 9];
+        int c = 0;
+        for (LegacyObjParser.Face face : legacy.faces) {
+            for (LegacyObjParser.IdxGroup group : face.idxGroups) {
+                corners[c++] = group.idxPos;
+                corners[c++] = group.idxTextCoord;
+                corners[c++] = group.idxVecNormal;
+            }
+        }
+        assertArrayEquals(corners, parsed.getCorners().toArray());
+    }
+
+    @Test
+    void modelsParseLikeTheLegacyParser() throws IOException {
+        for (String model : MODELS) {
+            try (InputStream in = ObjParserTest.class.getResourceAsStream(model)) {
+                assertNotNull(in, model);
+                assertSameAsLegacy(in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void cornerFormsParseLikeTheLegacyParser() throws IOException {
+        String text = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+                + "vt 0 0\nvt 1 0\nvt 1 1\n"
+                + "vn 0 0 1\nvn 0 1 0\n"
+                + "f 1 2 3\n"
+                + "f 1/1 2/2 3/3\n"
+                + "f 1//2 2//1 3//2\n"
+                + "f 1/1/1 2/2/2 3/3/1 4/1/2\n"
+                + "f 4/3/2 3//1 2/1 1\n";
+        assertSameAsLegacy(text.getBytes(StandardCharsets.US_ASCII));
+
+        ObjParser obj = parse(text);
+        assertArrayEquals(new int[]{
+                0, N, N, 1, N, N, 2, N, N,
+                0, 0, N, 1, 1, N, 2, 2, N,
+                0, N, 1, 1, N, 0, 2, N, 1,
+                0, 0, 0, 1, 1, 1, 2, 2, 0,
+                0, 0, 0, 2, 2, 0, 3, 0, 1,
+                3, 2, 1, 2, N, 0, 1, 0, N,
+                3, 2, 1, 1, 0, N, 0, N, N
+        }, obj.getCorners().toArray());
+    }
+
+    @Test
+    void negativeIndicesCountBackFromTheLastElement() {
+        ObjParser obj = parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nvt 0 0\nvt 1 1\nvn 0 0 1\n"
+                + "f -3/-2/-1 -2/-1/-1 -1//-1\n"
+                + "v 0 1 0\n"
+                + "f -1 1 -3/2\n");
+        assertArrayEquals(new int[]{
+                0, 0, 0, 1, 1, 0, 2, N, 0,
+                3, N, N, 0, N, N, 1, 1, N
+        }, obj.getCorners().toArray());
+    }
+
+    @Test
+    void lineEndingsCommentsAndBlankLinesAreSkipped() throws IOException {
+        String lf = "# exported\n"
+                + "\n"
+                + "o cube\n"
+                + "v 1 2 3 # first\n"
+                + "   \n"
+                + "mtllib cube.mtl\n"
+                + "\tv 4 5 6\n"
+                + "vt 0.5 0.25\n"
+                + "vn 0 0 -1\n"
+                + "# v 9 9 9\n"
+                + "usemtl a\n"
+                + "s off\n"
+                + "v 7 8 9\n"
+                + "f 1/1/1 2/1/1 3/1/1 # triangle\n";
+        ObjParser unix = parse(lf);
+        ObjParser windows = parse(lf.replace("\n", "\r\n"));
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, unix.getPositions().toArray());
+        assertArrayEquals(new float[]{0.5f, 0.25f}, unix.getTexCoords().toArray());
+        assertArrayEquals(new float[]{0, 0, -1}, unix.getNormals().toArray());
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0, 0, 2, 0, 0}, unix.getCorners().toArray());
+
+        assertArrayEquals(unix.getPositions().toArray(), windows.getPositions().toArray());
+        assertArrayEquals(unix.getTexCoords().toArray(), windows.getTexCoords().toArray());
+        assertArrayEquals(unix.getNormals().toArray(), windows.getNormals().toArray());
+        assertArrayEquals(unix.getCorners().toArray(), windows.getCorners().toArray());
+
+        // The legacy parser only copes with whole-line comments and unindented, non-blank lines.
+        String legacySafe = lf.replace(" # first", "").replace(" # triangle", "")
+                .replace("   \n", "\n").replace("\tv", "v");
+        assertSameAsLegacy(legacySafe.replace("\n", "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void floatsMatchFloatParseFloat() throws IOException {
+        String[] values = {
+                "0", "-0", "+1", "1.", ".5", "-.5", "0.1", "3.14159265358979323846", "123456789",
+                "1e3", "1E3", "1e+3", "2.5e-3", "-7.25E-2", "6.02214076e23", "1.17549435e-38",
+                "3.4028235e38", "0.000001234567", "9999999.999", "1234567890123456789012345"
+        };
+        StringBuilder text = new StringBuilder();
+        for (String value : values) {
+            text.append("v ").append(value).append(' ').append(value).append(' ').append(value).append('\n');
+        }
+        assertSameAsLegacy(text.toString().getBytes(StandardCharsets.US_ASCII));
+
+        FloatList positions = parse(text.toString()).getPositions();
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Float.parseFloat(values[i]), positions.get(i * 3), values[i]);
+        }
+    }
+
+    @Test
+    void theLastLineNeedsNoNewline() throws IOException {
+        String text = "v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nf 1//1 2//1 3//1";
+        assertSameAsLegacy(text.getBytes(StandardCharsets.US_ASCII));
+        assertArrayEquals(new int[]{0, N, 0, 1, N, 0, 2, N, 0}, parse(text).getCorners().toArray());
+
+        ObjParser vertexLast = parse("v 1 2 3\nv 4 5 6e1");
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5, 60}, vertexLast.getPositions().toArray());
+    }
+
+    @Test
+    void malformedNumbersAreRejected() {
+        assertThrows(IllegalStateException.class, () -> parse("v 1 x 3\n"));
+        assertThrows(IllegalStateException.class, () -> parse("v 1 2 3\nf 1 a 1\n"));
+    }
+}
@@ -0,0 +1,114 @@
+package fr.acth2.engine.utils.loader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextureConverterTest {
+
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (ByteBuffer buffer : buffers) {
+            MemoryUtil.memFree(buffer);
+        }
+    }
+
+    /**
+     * An RGBA image whose channel {@code c} of pixel (x, y) is {@code value(x, y) + c}.
+     */
+    private ByteBuffer image(int width, int height, int[] values) {
+        ByteBuffer pixels = track(MemoryUtil.memAlloc(4 * width * height));
+        for (int i = 0; i < width * height; i++) {
+            for (int c = 0; c < 4; c++) {
+                pixels.put(i * 4 + c, (byte) (values[i] + c));
+            }
+        }
+        return pixels;
+    }
+
+    private ByteBuffer track(ByteBuffer buffer) {
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    private ByteBuffer downsample(ByteBuffer src, int width, int height) {
+        return track(TextureConverter.downsample(src, width, height));
+    }
+
+    private static void assertPixels(ByteBuffer pixels, int... values) {
+        assertEquals(4 * values.length, pixels.capacity(), "pixel count");
+        for (int i = 0; i < values.length; i++) {
+            for (int c = 0; c < 4; c++) {
+                assertEquals(values[i] + c, pixels.get(i * 4 + c) & 0xFF, "channel " + c + " of pixel " + i);
+            }
+        }
+    }
+
+    @Test
+    void averagesEachTwoByTwoBlock() {
+        ByteBuffer src = image(4, 2, new int[]{
+                0, 20, 100, 100,
+                40, 60, 200, 200});
+
+        assertPixels(downsample(src, 4, 2), 30, 150);
+    }
+
+    @Test
+    void roundsToNearest() {
+        ByteBuffer src = image(2, 2, new int[]{0, 1, 1, 0});
+
+        // (0 + 1 + 1 + 0) / 4 = 0.5 rounds up, on every channel.
+        assertPixels(downsample(src, 2, 2), 1);
+    }
+
+    @Test
+    void oddSizesDropTheirLastRowAndColumn() {
+        ByteBuffer src = image(3, 3, new int[]{
+                0, 20, 250,
+                60, 80, 250,
+                250, 250, 250});
+
+        assertPixels(downsample(src, 3, 3), 40);
+    }
+
+    @Test
+    void singleColumnAveragesVerticalPairs() {
+        ByteBuffer src = image(1, 4, new int[]{0, 50, 100, 150});
+
+        assertPixels(downsample(src, 1, 4), 25, 125);
+    }
+
+    @Test
+    void singleRowAveragesHorizontalPairs() {
+        ByteBuffer src = image(4, 1, new int[]{0, 50, 100, 150});
+
+        assertPixels(downsample(src, 4, 1), 25, 125);
+    }
+
+    @Test
+    void singlePixelStaysAsIs() {
+        assertPixels(downsample(image(1, 1, new int[]{77}), 1, 1), 77);
+    }
+
+    @Test
+    void oddChainEndsInOnePixel() {
+        ByteBuffer level = image(5, 3, new int[]{
+                0, 20, 40, 60, 80,
+                20, 40, 60, 80, 100,
+                200, 200, 200, 200, 200});
+
+        // 5x3 -> 2x1 -> 1x1, the number of levels the converter computes for a 5x3 image.
+        level = downsample(level, 5, 3);
+        assertPixels(level, 20, 60);
+        level = downsample(level, 2, 1);
+        assertPixels(level, 40);
+    }
+}